@@ -62,5 +62,11 @@ public class Messages
 	/** Wrn no usermapping found for user {0} */
 	public static final Message WRN_NO_USERMAPPING_FOUND_FOR_USER = MESSAGE_SET.getMessage("WrnNoUsermappingFoundForUser");
 
+	/** Invalid record in TID store {0}: {1} */
+	public static final Message WRN_INVALID_TID_RECORD = MESSAGE_SET.getMessage("WrnInvalidTidRecord");
+
+	/** Could not access the generated method cache file {0} */
+	public static final Message WRN_GENERATED_METHOD_CACHE = MESSAGE_SET.getMessage("WrnGeneratedMethodCache");
+
 
 }
\ No newline at end of file
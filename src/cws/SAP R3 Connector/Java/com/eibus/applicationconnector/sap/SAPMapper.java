@@ -58,8 +58,29 @@ public class SAPMapper extends ApplicationConnector
     {
         try
         {
-            m_config.closeAllConnections();
+            // Stop the listeners first, so no new IDOCs are buffered while the rest is closed.
             m_config.stopIDOCListeners();
+
+            if (m_config.getSOAPDispatcher() != null)
+            {
+                // The listeners are stopped, so no new IDOCs are sent to their targets.
+                m_config.getSOAPDispatcher().close();
+            }
+
+            if (m_config.getIDocNumberResolver() != null)
+            {
+                // Resolve the queued IDOC numbers while the connections are still open. This
+                // stores the buffered IDOCs first.
+                m_config.getIDocNumberResolver().close();
+            }
+
+            m_config.closeAllConnections();
+
+            if (m_config.getIDocWriteBehind() != null)
+            {
+                // Last, so the IDOCs that were added while closing are stored as well.
+                m_config.getIDocWriteBehind().close();
+            }
             m_config.setRepository(null);
             m_config.setIDOCRepository(null);
             m_config.getTargetMappingFinder().clear();
@@ -19,15 +19,13 @@
 
 import com.cordys.coe.exception.ServerLocalizableException;
 import com.cordys.coe.util.general.ExceptionUtil;
-import com.cordys.coe.util.xml.nom.XPathHelper;
 
 import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
 import com.eibus.applicationconnector.sap.connection.ISAPRequestHandler;
 import com.eibus.applicationconnector.sap.connection.jco.SAPJCoRequestHandler;
 import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
-import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
-import com.eibus.applicationconnector.sap.soap.BaseMethod;
-import com.eibus.applicationconnector.sap.soap.EDynamicAction;
+import com.eibus.applicationconnector.sap.soap.IRequestDispatch;
+import com.eibus.applicationconnector.sap.soap.RequestDispatcher;
 
 import com.eibus.soap.ApplicationTransaction;
 import com.eibus.soap.BodyBlock;
@@ -37,13 +35,6 @@ import com.eibus.util.logger.CordysLogger;
 
 import com.eibus.xml.nom.Document;
 import com.eibus.xml.nom.Node;
-import com.eibus.xml.xpath.XPathMetaInfo;
-
-import java.lang.reflect.Constructor;
-
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
 
 /**
  * This object is created for every SOAP transaction received by the SOAP Processor. Based on the
@@ -52,65 +43,10 @@ import java.util.List;
 public class SAPTransaction
     implements ApplicationTransaction
 {
-    /**
-     * Holds the type for the SAP utility methodset.
-     */
-    private static final String TYPE_SAP_UTIL = "SAPUtil";
-    /**
-     * Holds the type for the SAP BAPI execution method.
-     */
-    private static final String TYPE_SAPBAPI = "SAPBAPI";
-    /**
-     * Holds the type for the SAP RFC execution method.
-     */
-    private static final String TYPE_SAPRFC = "SAPRFC";
-    /**
-     * Holds the type for the SAP IDOC execution method.
-     */
-    private static final String TYPE_SAPIDOC = "SAPIDOC";
-    /**
-     * Holds the type for the SAP XBP execution method.
-     */
-    private static final String TYPE_SAP_XBP = "SAPXBP";
-    /**
-     * Holds the type for the methods which use the tuple format.
-     */
-    private static final String TYPE_SAP_TUPLE = "SAPTuple";
-    /**
-     * Holds the type for the SAP metadata.
-     */
-    private static final String TYPE_SAP_METADATA = "SAPMetadata";
-    /**
-     * Holds the type for the SAP connector new style.
-     */
-    private static final String TYPE_SAP_CONNECTOR = "SAP_CONNECTOR";
-    /**
-     * Holds the type for the SAP publishing/creation of methods.
-     */
-    private static final String TYPE_SAP_PUBLISH = "SAPPublish";
     /**
      * Holds the logger to use.
      */
     private static final CordysLogger LOG = CordysLogger.getCordysLogger(SAPTransaction.class);
-    /**
-     * Holds all the types that are supported by this connector.
-     */
-    private static List<String> s_types;
-
-    static
-    {
-        s_types = Collections.synchronizedList(new ArrayList<String>());
-
-        s_types.add(TYPE_SAP_METADATA);
-        s_types.add(TYPE_SAP_CONNECTOR);
-        s_types.add(TYPE_SAP_PUBLISH);
-        s_types.add(TYPE_SAP_TUPLE);
-        s_types.add(TYPE_SAP_UTIL);
-        s_types.add(TYPE_SAPBAPI);
-        s_types.add(TYPE_SAPIDOC);
-        s_types.add(TYPE_SAPRFC);
-        s_types.add(TYPE_SAP_XBP);
-    }
 
     /**
      * Holds the configuration that can be used.
@@ -163,8 +99,9 @@ public class SAPTransaction
     }
 
     /**
-     * Returns true if the type is either SAPBAPI or SAPRFC or SAPIDOC or SAPUtil or SAPMetadata or
-     * SAPPublish.
+     * Returns true if a handling is registered in the RequestDispatcher for the type, by default
+     * SAPBAPI, SAPRFC, SAPIDOC, SAPTuple, SAPMetadata, SAPPublish, SAPUtil, SAPXBP and
+     * SAP_CONNECTOR.
      *
      * @param   type  The type to check.
      *
@@ -176,10 +113,10 @@ public class SAPTransaction
     {
         if (LOG.isDebugEnabled())
         {
-            LOG.debug("Can process type " + type + ": " + (s_types.contains(type)));
+            LOG.debug("Can process type " + type + ": " + RequestDispatcher.canProcess(type));
         }
 
-        return s_types.contains(type);
+        return RequestDispatcher.canProcess(type);
     }
 
     /**
@@ -219,69 +156,11 @@ public class SAPTransaction
 
         try
         {
-            if (requestType.equalsIgnoreCase(TYPE_SAPBAPI))
-            {
-                return requestHandler.handleBAPIRequest(request, response);
-                       // return requestHandler.handleRFCReqeust(request, response);
-            }
-            else if (requestType.equalsIgnoreCase(TYPE_SAPRFC))
-            {
-                return requestHandler.handleRFCReqeust(request, response);
-            }
-            else if (requestType.equalsIgnoreCase(TYPE_SAPIDOC))
-            {
-                return requestHandler.handleIDOCRequest(request, response);
-            }
-            else if (requestType.equalsIgnoreCase(TYPE_SAP_TUPLE))
-            {
-                return requestHandler.handleTupleRequest(request, response);
-            }
-            else if (requestType.equalsIgnoreCase(TYPE_SAP_METADATA))
-            {
-                return requestHandler.handleMetaDataRequest(request, response);
-            }
-            else if (requestType.equalsIgnoreCase(TYPE_SAP_PUBLISH))
-            {
-                return requestHandler.handleMethodPublishRequest(request, response);
-            }
-            else if (requestType.equalsIgnoreCase(TYPE_SAP_UTIL))
-            {
-                return requestHandler.handleUtilRequest(request, response);
-            }
-            else if (requestType.equalsIgnoreCase(TYPE_SAP_XBP))
-            {
-                return ((SAPJCoRequestHandler)requestHandler).handleXBPReqeust(request, response);
-            }
-            else if (requestType.equalsIgnoreCase(TYPE_SAP_CONNECTOR))
-            {
-                String sAction = getActionFromImplementation(request);
-                EDynamicAction daAction = null;
+            IRequestDispatch dispatch = RequestDispatcher.getDispatch(requestType);
 
-                try
-                {
-                    daAction = EDynamicAction.valueOf(sAction.toUpperCase());
-                }
-                catch (Exception e)
-                {
-                    // Most likely the enum could not be parsed. So the action is invalid.
-                    // Just to be sure we'll log the exception when debug is enabled. Otherwise
-                    // we just return the invalid action message
-                    if (LOG.isDebugEnabled())
-                    {
-                        LOG.debug("Error determining the action type", e);
-                    }
-                    throw new SAPConnectorException(SAPConnectorExceptionMessages.INVALID_ACTION_TYPE0,
-                                                    sAction);
-                }
-
-                // Instantiate the proper class.
-                Class<? extends BaseMethod> cClass = daAction.getImplementationClass();
-                Constructor<? extends BaseMethod> cConstructor = cClass.getConstructor(BodyBlock.class,
-                                                                                       BodyBlock.class,
-                                                                                       ISAPConfiguration.class);
-
-                BaseMethod bmMethod = cConstructor.newInstance(request, response, m_config);
-                bmMethod.execute();
+            if (dispatch != null)
+            {
+                bReturn = dispatch.dispatch(requestHandler, request, response, m_config);
             }
         }
         catch (Throwable tException)
@@ -320,34 +199,4 @@ public class SAPTransaction
 
         return bReturn;
     }
-
-    /**
-     * This method gets the desired action from the method's implementation.
-     *
-     * @param   bbRequest  The request that was received.
-     *
-     * @return  The action in the implementation.
-     *
-     * @throws  SAPConnectorException  EmailIOException In case the action was not found.
-     */
-    private String getActionFromImplementation(BodyBlock bbRequest)
-                                        throws SAPConnectorException
-    {
-        String sAction;
-
-        int iImplNode = bbRequest.getMethodDefinition().getImplementation();
-
-        XPathMetaInfo xmi = new XPathMetaInfo();
-        xmi.addNamespaceBinding("ns", SAPConnectorConstants.NS_SAP_IMPLEMENTATION);
-
-        sAction = XPathHelper.getStringValue(iImplNode, "ns:sapconnector/ns:action/text()", xmi,
-                                             "");
-
-        if (sAction.length() == 0)
-        {
-            throw new SAPConnectorException(SAPConnectorExceptionMessages.NO_ACTION_FOUND_IN_THE_METHOD_IMPLEMENTATION);
-        }
-
-        return sAction;
-    }
 }
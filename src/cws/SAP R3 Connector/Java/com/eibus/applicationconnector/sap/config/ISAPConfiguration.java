@@ -18,10 +18,16 @@
  package com.eibus.applicationconnector.sap.config;
 
 import com.eibus.applicationconnector.sap.connection.ISAPConnection;
+import com.eibus.applicationconnector.sap.connection.jco.FunctionTemplateCache;
+import com.eibus.applicationconnector.sap.connection.jco.IDocNumberResolver;
 import com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnectionManager;
 import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
 import com.eibus.applicationconnector.sap.idoc.TargetMappingFinder;
+import com.eibus.applicationconnector.sap.metadata.GeneratedMethodCache;
 import com.eibus.applicationconnector.sap.metadata.IMetadataCache;
+import com.eibus.applicationconnector.sap.request.IDocWriteBehind;
+import com.eibus.applicationconnector.sap.util.SOAPDispatcher;
+import com.eibus.applicationconnector.sap.xmi.XMISessionManager;
 
 import com.sap.mw.idoc.IDoc;
 import com.sap.mw.jco.IRepository;
@@ -106,6 +112,13 @@ public interface ISAPConfiguration
      */
     boolean getFallbackToSystemUser();
 
+    /**
+     * This method gets the cache for the function templates of the SAP repository.
+     *
+     * @return  The cache for the function templates of the SAP repository.
+     */
+    FunctionTemplateCache getFunctionTemplateCache();
+
     /**
      * This method gets the gateway service name.
      *
@@ -113,6 +126,13 @@ public interface ISAPConfiguration
      */
     String getGatewayService();
 
+    /**
+     * This method gets the cache for the WSDL that is generated by GenerateMethods.
+     *
+     * @return  The cache for the generated WSDL.
+     */
+    GeneratedMethodCache getGeneratedMethodCache();
+
     /**
      * This method gets the relative path in the cache repository.
      *
@@ -141,6 +161,35 @@ public interface ISAPConfiguration
      */
     IDoc.Repository getIDOCRepository();
 
+    /**
+     * This method gets the resolver that reads the numbers of the outbound IDOCs.
+     *
+     * @return  The IDOC number resolver.
+     */
+    IDocNumberResolver getIDocNumberResolver();
+
+    /**
+     * This method gets the writer that stores the outbound IDOCs in the background.
+     *
+     * @return  The writer, or null if the IDOCs are stored right away.
+     */
+    IDocWriteBehind getIDocWriteBehind();
+
+    /**
+     * This method gets the dispatcher that sends the inbound IDOCs to their targets without
+     * blocking the IDOC listener.
+     *
+     * @return  The dispatcher, or null if the IDOCs are sent one by one.
+     */
+    SOAPDispatcher getSOAPDispatcher();
+
+    /**
+     * This method gets the number of seconds the SOAP node of a method stays in the SOAPNodeCache.
+     *
+     * @return  The time to live in seconds. 0 means the SOAP node is looked up for every request.
+     */
+    int getSOAPNodeCacheTTL();
+
     /**
      * This method returns the JCo connection manager.
      *
@@ -197,6 +246,13 @@ public interface ISAPConfiguration
      */
     String getProgramID();
 
+    /**
+     * This method gets the maximum number of rows that is read with one call to RFC_READ_TABLE.
+     *
+     * @return  The maximum number of rows per page.
+     */
+    int getReadTablePageSize();
+
     /**
      * This method gets the SAP repository to use for information.
      *
@@ -284,6 +340,13 @@ public interface ISAPConfiguration
      */
     String getUserID();
 
+    /**
+     * This method gets the manager that keeps the XMI sessions logged on between requests.
+     *
+     * @return  The XMI session manager.
+     */
+    XMISessionManager getXMISessionManager();
+
     /**
      * This method sets the BAPI invoke URL.
      *
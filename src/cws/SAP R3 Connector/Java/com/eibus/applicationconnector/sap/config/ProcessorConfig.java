@@ -22,24 +22,35 @@ import com.cordys.coe.util.xml.nom.XPathHelper;
 import com.eibus.applicationconnector.sap.Messages;
 import com.eibus.applicationconnector.sap.SAPConnectorConstants;
 import com.eibus.applicationconnector.sap.connection.ISAPConnection;
+import com.eibus.applicationconnector.sap.connection.ISAPConnectionFactory;
+import com.eibus.applicationconnector.sap.connection.jco.FunctionTemplateCache;
+import com.eibus.applicationconnector.sap.connection.jco.IDocNumberResolver;
 import com.eibus.applicationconnector.sap.connection.jco.MetadataSAPConnection;
 import com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnection;
 import com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnectionManager;
+import com.eibus.applicationconnector.sap.connection.jco.SAPJCoUserConnectionPool;
 import com.eibus.applicationconnector.sap.connection.jco.SAPJCoRequestHandler;
 import com.eibus.applicationconnector.sap.exception.SAPConfigurationException;
 import com.eibus.applicationconnector.sap.exception.SAPConfigurationExceptionMessages;
 import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
 import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+import com.eibus.applicationconnector.sap.idoc.IDocPipeline;
 import com.eibus.applicationconnector.sap.idoc.SAPIDocServer;
+import com.eibus.applicationconnector.sap.idoc.TIDStore;
 import com.eibus.applicationconnector.sap.idoc.TargetMappingFinder;
+import com.eibus.applicationconnector.sap.metadata.GeneratedMethodCache;
 import com.eibus.applicationconnector.sap.metadata.IMetadataCache;
 import com.eibus.applicationconnector.sap.metadata.MetadataCacheFactory;
 import com.eibus.applicationconnector.sap.metadata.storage.CacheStorageFactory;
 import com.eibus.applicationconnector.sap.metadata.storage.ICacheStorage;
+import com.eibus.applicationconnector.sap.request.IDocWriteBehind;
 import com.eibus.applicationconnector.sap.soap.ClearCache;
 import com.eibus.applicationconnector.sap.usermapping.IUserMapping;
 import com.eibus.applicationconnector.sap.usermapping.UserMappingFactory;
+import com.eibus.applicationconnector.sap.util.SOAPDispatcher;
+import com.eibus.applicationconnector.sap.util.SOAPNodeCache;
 import com.eibus.applicationconnector.sap.util.Util;
+import com.eibus.applicationconnector.sap.xmi.XMISessionManager;
 
 import com.eibus.util.logger.CordysLogger;
 import com.eibus.util.system.EIBProperties;
@@ -79,6 +90,10 @@ class ProcessorConfig
      * Holds the default location for the IDOC interface cache.
      */
     private static final String DEFAULT_INTERFACES_IDOC = "Interfaces/IDOC";
+    /**
+     * Holds the number of generated WSDLs that are kept in memory.
+     */
+    private static final int DEFAULT_GENERATED_METHOD_CACHE_SIZE = 100;
     /**
      * Holds the name of the tag 'gwserv'.
      */
@@ -95,6 +110,18 @@ class ProcessorConfig
      * Holds the name of the tag 'idocservers'.
      */
     private static final String TAG_IDOCSERVERS = "idocservers";
+    /**
+     * Holds the name of the tag 'idocWorkers'.
+     */
+    private static final String TAG_IDOC_WORKERS = "idocWorkers";
+    /**
+     * Holds the name of the tag 'idocQueueSize'.
+     */
+    private static final String TAG_IDOC_QUEUE_SIZE = "idocQueueSize";
+    /**
+     * Holds the name of the tag 'tidStore'.
+     */
+    private static final String TAG_TID_STORE = "tidStore";
     /**
      * Holds the name of the tag 'maxCons'.
      */
@@ -119,6 +146,145 @@ class ProcessorConfig
      * Holds the default value for the maximum number of connections.
      */
     private static final int DEFAULT_MAX_CONNECTIONS = 10;
+    /**
+     * Holds the name of the tag 'templateCacheSize'.
+     */
+    private static final String TAG_TEMPLATE_CACHE_SIZE = "templateCacheSize";
+    /**
+     * Holds the name of the tag 'templateCacheTTL'.
+     */
+    private static final String TAG_TEMPLATE_CACHE_TTL = "templateCacheTTL";
+    /**
+     * Holds the default maximum number of cached function templates.
+     */
+    private static final int DEFAULT_TEMPLATE_CACHE_SIZE = 500;
+    /**
+     * Holds the default time to live in seconds for cached function templates. 0 means never.
+     */
+    private static final int DEFAULT_TEMPLATE_CACHE_TTL = 0;
+    /**
+     * Holds the name of the tag 'poolMode'.
+     */
+    private static final String TAG_POOL_MODE = "poolMode";
+    /**
+     * Holds the name of the tag 'poolWaitTimeout'.
+     */
+    private static final String TAG_POOL_WAIT_TIMEOUT = "poolWaitTimeout";
+    /**
+     * Holds the name of the tag 'poolValidationInterval'.
+     */
+    private static final String TAG_POOL_VALIDATION_INTERVAL = "poolValidationInterval";
+    /**
+     * Holds the name of the tag 'cacheStorage'.
+     */
+    private static final String TAG_CACHE_STORAGE = "cacheStorage";
+    /**
+     * Holds the name of the tag 'xmiSessionTimeout'.
+     */
+    private static final String TAG_XMI_SESSION_TIMEOUT = "xmiSessionTimeout";
+    /**
+     * Holds the name of the tag 'idocNumberResolution'.
+     */
+    private static final String TAG_IDOC_NUMBER_RESOLUTION = "idocNumberResolution";
+    /**
+     * Holds the name of the tag 'idocNumberBatchSize'.
+     */
+    private static final String TAG_IDOC_NUMBER_BATCH_SIZE = "idocNumberBatchSize";
+    /**
+     * Holds the name of the tag 'idocNumberFlushInterval'.
+     */
+    private static final String TAG_IDOC_NUMBER_FLUSH_INTERVAL = "idocNumberFlushInterval";
+    /**
+     * Holds the name of the tag 'idocWriteBehindBatchSize'.
+     */
+    private static final String TAG_IDOC_WRITE_BEHIND_BATCH_SIZE = "idocWriteBehindBatchSize";
+    /**
+     * Holds the name of the tag 'idocWriteBehindBufferSize'.
+     */
+    private static final String TAG_IDOC_WRITE_BEHIND_BUFFER_SIZE = "idocWriteBehindBufferSize";
+    /**
+     * Holds the name of the tag 'idocWriteBehindFlushInterval'.
+     */
+    private static final String TAG_IDOC_WRITE_BEHIND_FLUSH_INTERVAL = "idocWriteBehindFlushInterval";
+    /**
+     * Holds the name of the tag 'soapMaxInFlight'.
+     */
+    private static final String TAG_SOAP_MAX_IN_FLIGHT = "soapMaxInFlight";
+    /**
+     * Holds the name of the tag 'soapNodeCacheTTL'.
+     */
+    private static final String TAG_SOAP_NODE_CACHE_TTL = "soapNodeCacheTTL";
+    /**
+     * Holds the name of the tag 'soapTimeout'.
+     */
+    private static final String TAG_SOAP_TIMEOUT = "soapTimeout";
+    /**
+     * Holds the name of the tag 'readTablePageSize'.
+     */
+    private static final String TAG_READ_TABLE_PAGE_SIZE = "readTablePageSize";
+    /**
+     * Holds the pool mode in which all users share one connection list.
+     */
+    private static final String POOL_MODE_SHARED = "shared";
+    /**
+     * Holds the pool mode in which every user has its own sub pool.
+     */
+    private static final String POOL_MODE_PER_USER = "peruser";
+    /**
+     * Holds the default number of milliseconds to wait for a free connection.
+     */
+    private static final int DEFAULT_POOL_WAIT_TIMEOUT = 60000;
+    /**
+     * Holds the default number of seconds between two liveness checks of idle connections.
+     */
+    private static final int DEFAULT_POOL_VALIDATION_INTERVAL = 60;
+    /**
+     * Holds the default number of seconds an XMI session may be idle before it is logged off.
+     */
+    private static final int DEFAULT_XMI_SESSION_TIMEOUT = 300;
+    /**
+     * Holds the default maximum number of transaction IDs per IDOC number query.
+     */
+    private static final int DEFAULT_IDOC_NUMBER_BATCH_SIZE = 100;
+    /**
+     * Holds the default number of milliseconds a transaction ID waits for its IDOC number.
+     */
+    private static final int DEFAULT_IDOC_NUMBER_FLUSH_INTERVAL = 1000;
+    /**
+     * Holds the default number of IDOCs per write-behind Update request. 0 means the IDOCs are
+     * stored right away.
+     */
+    private static final int DEFAULT_IDOC_WRITE_BEHIND_BATCH_SIZE = 0;
+    /**
+     * Holds the default number of IDOCs the write-behind buffer holds before it spools to disk.
+     */
+    private static final int DEFAULT_IDOC_WRITE_BEHIND_BUFFER_SIZE = 1000;
+    /**
+     * Holds the default number of milliseconds an IDOC waits in the write-behind buffer.
+     */
+    private static final int DEFAULT_IDOC_WRITE_BEHIND_FLUSH_INTERVAL = 1000;
+    /**
+     * Holds the name of the file in the cache directory the write-behind buffer spools to.
+     */
+    private static final String IDOC_SPOOL_FILE = "idocspool.bin";
+    /**
+     * Holds the default maximum number of IDOCs that are sent to their targets at the same time. 0
+     * means the IDOCs are sent one by one.
+     */
+    private static final int DEFAULT_SOAP_MAX_IN_FLIGHT = 0;
+    /**
+     * Holds the default number of seconds the SOAP node of a method is cached.
+     */
+    private static final int DEFAULT_SOAP_NODE_CACHE_TTL = (int) (SOAPNodeCache.DEFAULT_TTL / 1000);
+    /**
+     * Holds the default number of milliseconds to wait for the response of a target. 0 means the
+     * timeout of the connector is used.
+     */
+    private static final int DEFAULT_SOAP_TIMEOUT = 0;
+    /**
+     * Holds the default maximum number of rows that is read with one call to RFC_READ_TABLE.
+     */
+    private static final int DEFAULT_READ_TABLE_PAGE_SIZE = 10000;
     /**
      * Holds the name of the tag 'client'.
      */
@@ -148,6 +314,15 @@ class ProcessorConfig
      * Holds the default value for the maximum number of IDOC servers.
      */
     private static final int DEFAULT_IDOC_SERVERS = 0;
+    /**
+     * Holds the default number of IDOC pipeline workers. 0 means the listeners process the IDOCs
+     * themselves.
+     */
+    private static final int DEFAULT_IDOC_WORKERS = 0;
+    /**
+     * Holds the default capacity of the queue of each IDOC pipeline worker.
+     */
+    private static final int DEFAULT_IDOC_QUEUE_SIZE = 100;
     /**
      * Holds whether or not to fall back to the system user if no usermapping is defined.
      */
@@ -184,10 +359,18 @@ class ProcessorConfig
      * Holds the local cache directory.
      */
     private String m_cacheDirectory;
+    /**
+     * Holds the cache for the function templates.
+     */
+    private FunctionTemplateCache m_functionTemplateCache;
     /**
      * Holds the gateway service name.
      */
     private String m_gatewayService;
+    /**
+     * Holds the cache for the generated WSDL.
+     */
+    private GeneratedMethodCache m_generatedMethodCache;
     /**
      * Holds the relative path in the cache repository.
      */
@@ -224,6 +407,90 @@ class ProcessorConfig
      * Holds the maximum number of connections.
      */
     private int m_maxConnections;
+    /**
+     * Holds the maximum number of cached function templates.
+     */
+    private int m_templateCacheSize;
+    /**
+     * Holds the time to live in seconds for cached function templates.
+     */
+    private int m_templateCacheTTL;
+    /**
+     * Holds the connection pool mode.
+     */
+    private String m_poolMode;
+    /**
+     * Holds the number of milliseconds to wait for a free connection.
+     */
+    private int m_poolWaitTimeout;
+    /**
+     * Holds the number of seconds between two liveness checks of idle connections.
+     */
+    private int m_poolValidationInterval;
+    /**
+     * Holds the type of storage for the metadata cache (xml or binary).
+     */
+    private String m_cacheStorage;
+    /**
+     * Holds the number of seconds an XMI session may be idle. 0 means sessions are not reused.
+     */
+    private int m_xmiSessionTimeout;
+    /**
+     * Holds the manager that keeps the XMI sessions logged on.
+     */
+    private XMISessionManager m_xmiSessionManager;
+    /**
+     * Holds how the IDOC numbers are resolved (sync or async).
+     */
+    private String m_idocNumberResolution;
+    /**
+     * Holds the maximum number of transaction IDs per IDOC number query.
+     */
+    private int m_idocNumberBatchSize;
+    /**
+     * Holds the number of milliseconds a transaction ID waits for its IDOC number.
+     */
+    private int m_idocNumberFlushInterval;
+    /**
+     * Holds the resolver that reads the numbers of the outbound IDOCs.
+     */
+    private IDocNumberResolver m_idocNumberResolver;
+    /**
+     * Holds the number of IDOCs per write-behind Update request. 0 disables the write-behind.
+     */
+    private int m_idocWriteBehindBatchSize;
+    /**
+     * Holds the number of IDOCs the write-behind buffer holds before it spools to disk.
+     */
+    private int m_idocWriteBehindBufferSize;
+    /**
+     * Holds the number of milliseconds an IDOC waits in the write-behind buffer.
+     */
+    private int m_idocWriteBehindFlushInterval;
+    /**
+     * Holds the writer that stores the outbound IDOCs in the background, if configured.
+     */
+    private IDocWriteBehind m_idocWriteBehind;
+    /**
+     * Holds the dispatcher that sends the inbound IDOCs to their targets, if configured.
+     */
+    private SOAPDispatcher m_soapDispatcher;
+    /**
+     * Holds the maximum number of IDOCs that are sent to their targets at the same time.
+     */
+    private int m_soapMaxInFlight;
+    /**
+     * Holds the number of seconds the SOAP node of a method is cached.
+     */
+    private int m_soapNodeCacheTTL;
+    /**
+     * Holds the number of milliseconds to wait for the response of a target.
+     */
+    private int m_soapTimeout;
+    /**
+     * Holds the maximum number of rows that is read with one call to RFC_READ_TABLE.
+     */
+    private int m_readTablePageSize;
     /**
      * Holds the metadata cache that is used for this connector.
      */
@@ -232,6 +499,27 @@ class ProcessorConfig
      * Holds the number of IDOC servers to instantiate.
      */
     private int m_nrOfIDOCServers;
+    /**
+     * Holds the number of IDOC pipeline workers.
+     */
+    private int m_nrOfIDOCWorkers;
+    /**
+     * Holds the capacity of the queue of each IDOC pipeline worker.
+     */
+    private int m_idocQueueSize;
+    /**
+     * Holds the pipeline that processes the inbound IDOCs, if configured.
+     */
+    private IDocPipeline m_idocPipeline;
+    /**
+     * Holds the local store of the transaction IDs of the IDOC listeners, if configured.
+     */
+    private TIDStore m_tidStore;
+    /**
+     * Holds the file of the local TID store. If empty the IDOC listeners check the transaction
+     * IDs in the database.
+     */
+    private String m_tidStoreFile;
     /**
      * Holds the organization under which this conenctor is running.
      */
@@ -364,11 +652,23 @@ class ProcessorConfig
 
         // Create proper cache folders.
         createCacheDirectory(getCacheDirectory());
+        m_generatedMethodCache = new GeneratedMethodCache(new File(m_cacheDirectory,
+                                                                   GeneratedMethodCache.FOLDER),
+                                                          DEFAULT_GENERATED_METHOD_CACHE_SIZE);
 
         // Parse middleware specific parameters.
         parseJCO(jco, xmi);
 
-        m_jcoConManager = new SAPJCoConnectionManager(getMaxConnections() - 1);
+        if (POOL_MODE_PER_USER.equalsIgnoreCase(m_poolMode))
+        {
+            m_jcoConManager = new SAPJCoUserConnectionPool(getMaxConnections() - 1,
+                                                           m_poolWaitTimeout,
+                                                           m_poolValidationInterval * 1000L);
+        }
+        else
+        {
+            m_jcoConManager = new SAPJCoConnectionManager(getMaxConnections() - 1);
+        }
 
         SAPJCoConnection connectionForRepositories = m_jcoConManager
                                                      .getUserConnectionForRepositories(this,
@@ -379,6 +679,27 @@ class ProcessorConfig
         String systemID = connectionForRepositories.getAttributes().getSystemID();
         m_repository = JCO.createRepository(systemID, connectionForRepositories);
         m_idocRepository = JCoIDoc.createRepository(systemID, connectionForRepositories);
+        m_functionTemplateCache = new FunctionTemplateCache(m_repository, m_templateCacheSize,
+                                                            m_templateCacheTTL * 1000L);
+        m_xmiSessionManager = new XMISessionManager(m_xmiSessionTimeout * 1000L);
+        m_idocNumberResolver = new IDocNumberResolver(this,
+                                                      IDocNumberResolver.MODE_ASYNC.equals(m_idocNumberResolution),
+                                                      m_idocNumberBatchSize,
+                                                      m_idocNumberFlushInterval);
+
+        if (m_idocWriteBehindBatchSize > 0)
+        {
+            m_idocWriteBehind = new IDocWriteBehind(this, m_idocWriteBehindBatchSize,
+                                                    m_idocWriteBehindBufferSize,
+                                                    m_idocWriteBehindFlushInterval,
+                                                    new File(m_cacheDirectory, IDOC_SPOOL_FILE));
+        }
+
+        if (m_soapMaxInFlight > 0)
+        {
+            m_soapDispatcher = new SOAPDispatcher(m_soapMaxInFlight, m_soapTimeout);
+        }
+        SOAPNodeCache.getInstance().setTimeToLive(m_soapNodeCacheTTL * 1000L);
 
         if (LOG.isDebugEnabled())
         {
@@ -408,10 +729,16 @@ class ProcessorConfig
             LOG.debug("Creating metadata cache");
         }
 
-        // For now we'll use the default file system cache.
-        ICacheStorage storage = CacheStorageFactory.createDefaultCacheStorage(organization);
+        ICacheStorage storage = CacheStorageFactory.createCacheStorage(m_cacheStorage, organization);
         m_metadataCache = MetadataCacheFactory.createCache(systemID, getSAPConnectionForMetadata(),
-                                                           storage);
+                                                           storage, new ISAPConnectionFactory()
+            {
+                public ISAPConnection createConnection()
+                                                throws SAPConnectorException
+                {
+                    return getSAPConnectionForMetadata();
+                }
+            });
     }
 
     /**
@@ -497,6 +824,14 @@ class ProcessorConfig
         return m_fallbackToSystemUser;
     }
 
+    /**
+     * @see  com.eibus.applicationconnector.sap.config.ISAPConfiguration#getFunctionTemplateCache()
+     */
+    public FunctionTemplateCache getFunctionTemplateCache()
+    {
+        return m_functionTemplateCache;
+    }
+
     /**
      * @see  com.eibus.applicationconnector.sap.config.ISAPConfiguration#getGatewayService()
      */
@@ -505,6 +840,14 @@ class ProcessorConfig
         return m_gatewayService;
     }
 
+    /**
+     * @see  com.eibus.applicationconnector.sap.config.ISAPConfiguration#getGeneratedMethodCache()
+     */
+    public GeneratedMethodCache getGeneratedMethodCache()
+    {
+        return m_generatedMethodCache;
+    }
+
     /**
      * This method gets the relative path in the cache repository.
      *
@@ -541,6 +884,38 @@ class ProcessorConfig
         return m_idocRepository;
     }
 
+    /**
+     * @see  com.eibus.applicationconnector.sap.config.ISAPConfiguration#getIDocNumberResolver()
+     */
+    public IDocNumberResolver getIDocNumberResolver()
+    {
+        return m_idocNumberResolver;
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.config.ISAPConfiguration#getIDocWriteBehind()
+     */
+    public IDocWriteBehind getIDocWriteBehind()
+    {
+        return m_idocWriteBehind;
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.config.ISAPConfiguration#getSOAPDispatcher()
+     */
+    public SOAPDispatcher getSOAPDispatcher()
+    {
+        return m_soapDispatcher;
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.config.ISAPConfiguration#getSOAPNodeCacheTTL()
+     */
+    public int getSOAPNodeCacheTTL()
+    {
+        return m_soapNodeCacheTTL;
+    }
+
     /**
      * @see  com.eibus.applicationconnector.sap.config.ISAPConfiguration#getJCoConnectionManager()
      */
@@ -609,6 +984,14 @@ class ProcessorConfig
         return m_programID;
     }
 
+    /**
+     * @see  com.eibus.applicationconnector.sap.config.ISAPConfiguration#getReadTablePageSize()
+     */
+    public int getReadTablePageSize()
+    {
+        return m_readTablePageSize;
+    }
+
     /**
      * This method gets the SAP repository to use for information.
      *
@@ -721,6 +1104,14 @@ class ProcessorConfig
         return m_userID;
     }
 
+    /**
+     * @see  com.eibus.applicationconnector.sap.config.ISAPConfiguration#getXMISessionManager()
+     */
+    public XMISessionManager getXMISessionManager()
+    {
+        return m_xmiSessionManager;
+    }
+
     /**
      * @see  com.eibus.applicationconnector.sap.config.ISAPConfiguration#setBAPIInvokeURL(java.net.URL)
      */
@@ -1013,11 +1404,23 @@ class ProcessorConfig
 
         try
         {
+            if (m_nrOfIDOCWorkers > 0)
+            {
+                m_idocPipeline = new IDocPipeline(this, m_nrOfIDOCWorkers, m_idocQueueSize);
+                m_idocPipeline.start();
+            }
+
+            if (m_tidStoreFile.length() > 0)
+            {
+                m_tidStore = openTIDStore();
+            }
+
             for (int i = 0; i < number_IDOCServers; i++)
             {
                 m_idocServers[i] = new SAPIDocServer(sapServer, gatewayService, programID,
                                                      m_repository, m_idocRepository,
-                                                     (ISAPConfiguration) this);
+                                                     (ISAPConfiguration) this, m_idocPipeline,
+                                                     m_tidStore);
                 m_idocServers[i].start();
             }
 
@@ -1046,6 +1449,18 @@ class ProcessorConfig
                 m_idocServers[i].stop();
             }
 
+            if (m_idocPipeline != null)
+            {
+                m_idocPipeline.stop();
+                m_idocPipeline = null;
+            }
+
+            if (m_tidStore != null)
+            {
+                m_tidStore.close();
+                m_tidStore = null;
+            }
+
             if (LOG.isDebugEnabled())
             {
                 LOG.debug("IDOC Servers stopped.");
@@ -1053,6 +1468,28 @@ class ProcessorConfig
         }
     }
 
+    /**
+     * This method opens the local TID store. A relative file is taken from the cache directory.
+     * The transactions that were busy when the connector stopped are resolved by the first
+     * listener.
+     *
+     * @return  The TID store.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    private TIDStore openTIDStore()
+                           throws SAPConnectorException
+    {
+        File file = new File(m_tidStoreFile);
+
+        if (!file.isAbsolute())
+        {
+            file = new File(m_cacheDirectory, m_tidStoreFile);
+        }
+
+        return new TIDStore(file, TIDStore.DEFAULT_COMPACT_THRESHOLD);
+    }
+
     /**
      * This method checks if the cache directory already exists or not. If not, a new directory is
      * created. It creates sub directories to store interfaces of RFCs and IDOCs also. The naming
@@ -1161,10 +1598,85 @@ class ProcessorConfig
         m_maxConnections = XPathHelper.getIntegerValue(jco, "ns:" + TAG_MAX_CONNECTIONS, xmi,
                                                        DEFAULT_MAX_CONNECTIONS);
 
+        // Get the size and time to live of the function template cache
+        m_templateCacheSize = XPathHelper.getIntegerValue(jco, "ns:" + TAG_TEMPLATE_CACHE_SIZE,
+                                                          xmi, DEFAULT_TEMPLATE_CACHE_SIZE);
+        m_templateCacheTTL = XPathHelper.getIntegerValue(jco, "ns:" + TAG_TEMPLATE_CACHE_TTL, xmi,
+                                                         DEFAULT_TEMPLATE_CACHE_TTL);
+
+        // Get the connection pool settings
+        m_poolMode = XPathHelper.getStringValue(jco, "ns:" + TAG_POOL_MODE, xmi,
+                                                POOL_MODE_SHARED);
+        m_poolWaitTimeout = XPathHelper.getIntegerValue(jco, "ns:" + TAG_POOL_WAIT_TIMEOUT, xmi,
+                                                        DEFAULT_POOL_WAIT_TIMEOUT);
+        m_poolValidationInterval = XPathHelper.getIntegerValue(jco,
+                                                               "ns:" + TAG_POOL_VALIDATION_INTERVAL,
+                                                               xmi,
+                                                               DEFAULT_POOL_VALIDATION_INTERVAL);
+
+        // Get the type of storage for the metadata cache
+        m_cacheStorage = XPathHelper.getStringValue(jco, "ns:" + TAG_CACHE_STORAGE, xmi,
+                                                    CacheStorageFactory.STORAGE_XML);
+
+        // Get the number of seconds an XMI session may be idle
+        m_xmiSessionTimeout = XPathHelper.getIntegerValue(jco, "ns:" + TAG_XMI_SESSION_TIMEOUT,
+                                                          xmi, DEFAULT_XMI_SESSION_TIMEOUT);
+
+        // Get how the numbers of the outbound IDOCs are resolved
+        m_idocNumberResolution = XPathHelper.getStringValue(jco,
+                                                            "ns:" + TAG_IDOC_NUMBER_RESOLUTION,
+                                                            xmi, IDocNumberResolver.MODE_SYNC);
+        m_idocNumberBatchSize = XPathHelper.getIntegerValue(jco,
+                                                            "ns:" + TAG_IDOC_NUMBER_BATCH_SIZE,
+                                                            xmi, DEFAULT_IDOC_NUMBER_BATCH_SIZE);
+        m_idocNumberFlushInterval = XPathHelper.getIntegerValue(jco,
+                                                                "ns:" +
+                                                                TAG_IDOC_NUMBER_FLUSH_INTERVAL,
+                                                                xmi,
+                                                                DEFAULT_IDOC_NUMBER_FLUSH_INTERVAL);
+
+        // Get the write-behind settings for storing the outbound IDOCs
+        m_idocWriteBehindBatchSize = XPathHelper.getIntegerValue(jco,
+                                                                 "ns:" +
+                                                                 TAG_IDOC_WRITE_BEHIND_BATCH_SIZE,
+                                                                 xmi,
+                                                                 DEFAULT_IDOC_WRITE_BEHIND_BATCH_SIZE);
+        m_idocWriteBehindBufferSize = XPathHelper.getIntegerValue(jco,
+                                                                  "ns:" +
+                                                                  TAG_IDOC_WRITE_BEHIND_BUFFER_SIZE,
+                                                                  xmi,
+                                                                  DEFAULT_IDOC_WRITE_BEHIND_BUFFER_SIZE);
+        m_idocWriteBehindFlushInterval = XPathHelper.getIntegerValue(jco,
+                                                                     "ns:" +
+                                                                     TAG_IDOC_WRITE_BEHIND_FLUSH_INTERVAL,
+                                                                     xmi,
+                                                                     DEFAULT_IDOC_WRITE_BEHIND_FLUSH_INTERVAL);
+
+        // Get the settings for sending the inbound IDOCs to their targets
+        m_soapMaxInFlight = XPathHelper.getIntegerValue(jco, "ns:" + TAG_SOAP_MAX_IN_FLIGHT, xmi,
+                                                        DEFAULT_SOAP_MAX_IN_FLIGHT);
+        m_soapTimeout = XPathHelper.getIntegerValue(jco, "ns:" + TAG_SOAP_TIMEOUT, xmi,
+                                                    DEFAULT_SOAP_TIMEOUT);
+
+        // Get the number of seconds the SOAP node of a method is cached
+        m_soapNodeCacheTTL = XPathHelper.getIntegerValue(jco, "ns:" + TAG_SOAP_NODE_CACHE_TTL,
+                                                         xmi, DEFAULT_SOAP_NODE_CACHE_TTL);
+
+        // Get the page size for reading tables
+        m_readTablePageSize = XPathHelper.getIntegerValue(jco, "ns:" + TAG_READ_TABLE_PAGE_SIZE,
+                                                          xmi, DEFAULT_READ_TABLE_PAGE_SIZE);
+
         // Get the number of IDOC servers
         m_nrOfIDOCServers = XPathHelper.getIntegerValue(jco, "ns:" + TAG_IDOCSERVERS, xmi,
                                                         DEFAULT_IDOC_SERVERS);
 
+        // Get the IDOC pipeline settings
+        m_nrOfIDOCWorkers = XPathHelper.getIntegerValue(jco, "ns:" + TAG_IDOC_WORKERS, xmi,
+                                                        DEFAULT_IDOC_WORKERS);
+        m_idocQueueSize = XPathHelper.getIntegerValue(jco, "ns:" + TAG_IDOC_QUEUE_SIZE, xmi,
+                                                      DEFAULT_IDOC_QUEUE_SIZE);
+        m_tidStoreFile = XPathHelper.getStringValue(jco, "ns:" + TAG_TID_STORE, xmi, "");
+
         // Gets the gateway service
         m_gatewayService = XPathHelper.getStringValue(jco, "ns:" + TAG_GATEWAY_SERVICE, xmi, "");
 
@@ -0,0 +1,39 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.connection;
+
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+
+/**
+ * This interface creates SAP connections. The metadata cache uses it to read the different types
+ * of objects at the same time, each over its own connection.
+ *
+ * @author  pgussow
+ */
+public interface ISAPConnectionFactory
+{
+    /**
+     * This method creates a new connection to SAP.
+     *
+     * @return  The new connection.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    ISAPConnection createConnection()
+                             throws SAPConnectorException;
+}
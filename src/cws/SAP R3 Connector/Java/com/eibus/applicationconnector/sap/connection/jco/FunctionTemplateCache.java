@@ -0,0 +1,425 @@
+/**
+ * Copyright 2005 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.connection.jco;
+
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+
+import com.eibus.util.logger.CordysLogger;
+
+import com.sap.mw.jco.IFunctionTemplate;
+import com.sap.mw.jco.IRepository;
+import com.sap.mw.jco.JCO;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * This class caches the function templates of a repository together with an empty request for
+ * each function. New requests are created by cloning that prototype, so repeated calls to the
+ * same RFC do not go to the repository anymore. The cache is bounded: when it is full the least
+ * recently used function is removed. Optionally entries expire after a time to live; an expired
+ * function is removed from the cache of the JCo repository as well, so that it is read from SAP
+ * again. The cache is cleared by ClearCache and ReloadTargetMappings.
+ *
+ * <p>When several threads miss on the same function at the same time, only the first one reads
+ * the template from the repository and the others wait for its result. Clearing or invalidating
+ * the cache also removes the templates from the cache of the JCo repository, so the next call
+ * reads the template from SAP again.</p>
+ *
+ * @author  pgussow
+ */
+public class FunctionTemplateCache
+{
+    /**
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(FunctionTemplateCache.class);
+    /**
+     * Holds the cached entries in least recently used order.
+     */
+    private final LinkedHashMap<String, CacheEntry> m_entries;
+    /**
+     * Holds the number of evicted entries.
+     */
+    private long m_evictions;
+    /**
+     * Holds the generation of the cache. It is increased when the cache is cleared, so that
+     * templates that were being read at that moment are not cached.
+     */
+    private long m_generation;
+    /**
+     * Holds the number of requests that were served from the cache.
+     */
+    private long m_hits;
+    /**
+     * Holds the names of the functions that were read from the repository since the last clear.
+     * Their templates are in the cache of the repository, also when the entry was evicted here.
+     */
+    private final Set<String> m_loaded = new HashSet<String>();
+    /**
+     * Holds the reads from the repository that are running, per function name.
+     */
+    private final Map<String, FutureTask<CacheEntry>> m_loading = new HashMap<String, FutureTask<CacheEntry>>();
+    /**
+     * Holds the maximum number of functions to cache.
+     */
+    private final int m_maxSize;
+    /**
+     * Holds the number of reads from the repository.
+     */
+    private long m_misses;
+    /**
+     * Holds the repository the templates are read from.
+     */
+    private final IRepository m_repository;
+    /**
+     * Holds the time in milliseconds after which an entry expires. 0 means never.
+     */
+    private final long m_timeToLive;
+
+    /**
+     * Creates a new FunctionTemplateCache object.
+     *
+     * @param  repository  The repository to read the templates from.
+     * @param  maxSize     The maximum number of functions to cache.
+     * @param  timeToLive  The time in milliseconds after which an entry expires. 0 means never.
+     */
+    public FunctionTemplateCache(IRepository repository, int maxSize, long timeToLive)
+    {
+        m_repository = repository;
+        m_maxSize = maxSize;
+        m_timeToLive = timeToLive;
+        m_entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true)
+            {
+                private static final long serialVersionUID = 1L;
+
+                @Override protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest)
+                {
+                    if (size() > m_maxSize)
+                    {
+                        m_evictions++;
+                        return true;
+                    }
+                    return false;
+                }
+            };
+    }
+
+    /**
+     * This method removes all cached functions, here and in the cache of the repository.
+     */
+    public void clear()
+    {
+        String[] loaded;
+
+        synchronized (this)
+        {
+            m_entries.clear();
+            m_generation++;
+            loaded = m_loaded.toArray(new String[m_loaded.size()]);
+            m_loaded.clear();
+        }
+
+        for (String rfcName : loaded)
+        {
+            m_repository.removeFunctionTemplateFromCache(rfcName);
+        }
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Function template cache cleared. " + this);
+        }
+    }
+
+    /**
+     * This method returns a new, empty request for the given RFC.
+     *
+     * @param   rfcName  The name of the RFC.
+     *
+     * @return  The new request.
+     *
+     * @throws  SAPConnectorException  In case the function template could not be retrieved.
+     */
+    public JCO.Request createRequest(String rfcName)
+                              throws SAPConnectorException
+    {
+        CacheEntry entry = getEntry(rfcName);
+
+        synchronized (entry)
+        {
+            return (JCO.Request) entry.m_prototype.clone();
+        }
+    }
+
+    /**
+     * This method returns the number of evicted entries.
+     *
+     * @return  The number of evicted entries.
+     */
+    public synchronized long getEvictions()
+    {
+        return m_evictions;
+    }
+
+    /**
+     * This method returns the function template for the given RFC.
+     *
+     * @param   rfcName  The name of the RFC.
+     *
+     * @return  The function template.
+     *
+     * @throws  SAPConnectorException  In case the function template could not be retrieved.
+     */
+    public IFunctionTemplate getFunctionTemplate(String rfcName)
+                                          throws SAPConnectorException
+    {
+        return getEntry(rfcName).m_template;
+    }
+
+    /**
+     * This method returns the number of requests that were served from the cache.
+     *
+     * @return  The number of hits.
+     */
+    public synchronized long getHits()
+    {
+        return m_hits;
+    }
+
+    /**
+     * This method returns the number of reads from the repository.
+     *
+     * @return  The number of misses.
+     */
+    public synchronized long getMisses()
+    {
+        return m_misses;
+    }
+
+    /**
+     * This method removes the given RFC from the cache and from the cache of the repository.
+     *
+     * @param  rfcName  The name of the RFC.
+     */
+    public void invalidate(String rfcName)
+    {
+        String rfcNameInUpperCase = rfcName.toUpperCase();
+
+        synchronized (this)
+        {
+            m_entries.remove(rfcNameInUpperCase);
+            m_loaded.remove(rfcNameInUpperCase);
+            m_generation++;
+        }
+
+        m_repository.removeFunctionTemplateFromCache(rfcNameInUpperCase);
+    }
+
+    /**
+     * This method returns the number of cached functions.
+     *
+     * @return  The number of cached functions.
+     */
+    public synchronized int size()
+    {
+        return m_entries.size();
+    }
+
+    /**
+     * @see  java.lang.Object#toString()
+     */
+    @Override public synchronized String toString()
+    {
+        return "Size: " + m_entries.size() + ", hits: " + m_hits + ", misses: " + m_misses +
+               ", evictions: " + m_evictions;
+    }
+
+    /**
+     * This method returns the cache entry for the given RFC. If it is not cached yet the template
+     * is read from the repository. The repository is called outside the lock so that a slow
+     * lookup does not block requests for other functions. Only one thread reads a function at a
+     * time; other threads that miss on the same function wait for that read.
+     *
+     * @param   rfcName  The name of the RFC.
+     *
+     * @return  The cache entry.
+     *
+     * @throws  SAPConnectorException  In case the function template could not be retrieved.
+     */
+    private CacheEntry getEntry(String rfcName)
+                         throws SAPConnectorException
+    {
+        final String rfcNameInUpperCase = rfcName.toUpperCase();
+        FutureTask<CacheEntry> load;
+        boolean leader = false;
+
+        synchronized (this)
+        {
+            CacheEntry entry = m_entries.get(rfcNameInUpperCase);
+
+            if ((entry != null) &&
+                    ((m_timeToLive <= 0) ||
+                         ((System.currentTimeMillis() - entry.m_created) < m_timeToLive)))
+            {
+                m_hits++;
+                return entry;
+            }
+
+            load = m_loading.get(rfcNameInUpperCase);
+
+            if (load == null)
+            {
+                final long generation = m_generation;
+                final boolean expired = (entry != null);
+
+                load = new FutureTask<CacheEntry>(new Callable<CacheEntry>()
+                    {
+                        public CacheEntry call()
+                                        throws Exception
+                        {
+                            return loadEntry(rfcNameInUpperCase, generation, expired);
+                        }
+                    });
+                m_loading.put(rfcNameInUpperCase, load);
+                m_misses++;
+                leader = true;
+            }
+        }
+
+        if (leader)
+        {
+            try
+            {
+                load.run();
+            }
+            finally
+            {
+                synchronized (this)
+                {
+                    m_loading.remove(rfcNameInUpperCase);
+                }
+            }
+        }
+
+        try
+        {
+            return load.get();
+        }
+        catch (ExecutionException e)
+        {
+            throw new SAPConnectorException(e.getCause(),
+                                            SAPConnectorExceptionMessages.ERROR_GETTING_FUNCTION_TEMPLATE,
+                                            rfcName);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.ERROR_GETTING_FUNCTION_TEMPLATE,
+                                            rfcName);
+        }
+    }
+
+    /**
+     * This method reads the template of the given RFC from the repository and caches it, unless
+     * the cache was cleared while it was read. When the previous entry expired, the template is
+     * first removed from the cache of the repository, otherwise the repository would return the
+     * same template again instead of reading it from SAP.
+     *
+     * @param   rfcNameInUpperCase  The name of the RFC in upper case.
+     * @param   generation          The generation of the cache when the read started.
+     * @param   expired             Whether the RFC is read again because its entry expired.
+     *
+     * @return  The cache entry.
+     *
+     * @throws  Exception  In case the function template could not be retrieved.
+     */
+    private CacheEntry loadEntry(String rfcNameInUpperCase, long generation, boolean expired)
+                          throws Exception
+    {
+        if (expired)
+        {
+            m_repository.removeFunctionTemplateFromCache(rfcNameInUpperCase);
+        }
+
+        IFunctionTemplate ft = m_repository.getFunctionTemplate(rfcNameInUpperCase);
+
+        if (ft == null)
+        {
+            throw new Exception("Function Template could not be retrieved for the rfc " +
+                                rfcNameInUpperCase);
+        }
+
+        CacheEntry returnValue = new CacheEntry(ft);
+
+        synchronized (this)
+        {
+            m_loaded.add(rfcNameInUpperCase);
+
+            if (generation == m_generation)
+            {
+                m_entries.put(rfcNameInUpperCase, returnValue);
+            }
+        }
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Cached function template for " + rfcNameInUpperCase + ". " + this);
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * Holds a cached template and its request prototype.
+     */
+    private static class CacheEntry
+    {
+        /**
+         * Holds the time the entry was created.
+         */
+        private final long m_created;
+        /**
+         * Holds the empty request that is cloned for every call.
+         */
+        private final JCO.Request m_prototype;
+        /**
+         * Holds the function template.
+         */
+        private final IFunctionTemplate m_template;
+
+        /**
+         * Creates a new CacheEntry object.
+         *
+         * @param  template  The function template.
+         */
+        CacheEntry(IFunctionTemplate template)
+        {
+            m_template = template;
+            m_prototype = template.getRequest();
+            m_created = System.currentTimeMillis();
+        }
+    }
+}
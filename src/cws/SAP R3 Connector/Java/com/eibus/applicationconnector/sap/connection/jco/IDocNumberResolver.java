@@ -0,0 +1,719 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.connection.jco;
+
+import com.eibus.applicationconnector.sap.SAPConnectorConstants;
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+import com.eibus.applicationconnector.sap.request.OLEDBRequestSender;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.util.logger.CordysLogger;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Find;
+import com.eibus.xml.nom.Node;
+
+import com.sap.mw.jco.JCO;
+
+import java.text.SimpleDateFormat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class reads the numbers SAP gave to outbound IDocs. SAP does not return the number when an
+ * IDoc is sent, so the connector puts the transaction ID in the recipient logical address (RCVLAD)
+ * of the control record and reads it back from EDIDC with RFC_READ_TABLE. The resolver reads the
+ * numbers of many transaction IDs with one query, so the IDocs of a batch or of many requests
+ * cost one round trip instead of one per IDoc.
+ *
+ * <p>In synchronous mode the caller waits for the numbers with resolve(). In asynchronous mode the
+ * IDocs are stored with the transaction ID as their temporary number and the transaction IDs are
+ * queued with resolveLater(). A background thread resolves the queue when it holds batchSize
+ * transaction IDs or when the flush interval has passed, and updates the stored IDocs. A
+ * transaction ID that is not found yet is tried again with the next flush, at most
+ * MAX_ATTEMPTS times. After a flush that failed or left transaction IDs in the queue the thread
+ * waits twice as long as before, up to MAX_BACKOFF times the flush interval.</p>
+ *
+ * <p>Both modes use the lowest number when SAP returns more than one IDoc for a transaction ID,
+ * like the single row query this class replaced.</p>
+ *
+ * @author  pgussow
+ */
+public class IDocNumberResolver
+{
+    /**
+     * Holds the mode in which the callers wait for the IDoc numbers.
+     */
+    public static final String MODE_SYNC = "sync";
+    /**
+     * Holds the mode in which the IDoc numbers are resolved in the background.
+     */
+    public static final String MODE_ASYNC = "async";
+    /**
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(IDocNumberResolver.class);
+    /**
+     * Holds whether the query is limited to the IDocs created around today, which lets SAP use
+     * the index on the creation date.
+     */
+    private static final boolean BOOL_IDOC_GETIDOCNUMBER_BYDATE = "true".equals(System
+                                                                                 .getProperty("idoc.getidocnumber.bydate",
+                                                                                              "false"));
+    /**
+     * Holds the delimiter between the fields of a row.
+     */
+    private static final String DELIMITER = "|";
+    /**
+     * Holds the number of times a transaction ID that is not found is tried again.
+     */
+    private static final int MAX_ATTEMPTS = 3;
+    /**
+     * Holds the maximum factor by which the flush interval grows after failed flushes.
+     */
+    private static final int MAX_BACKOFF = 32;
+    /**
+     * Holds the number of milliseconds in a day.
+     */
+    private static final long MILLIS_IN_A_DAY = 1000 * 60 * 60 * 24;
+    /**
+     * Holds the RFC_READ_TABLE request for the IDoc numbers. The OPTIONS are added per query.
+     */
+    private static final String RFCREADTABLE_REQUEST_XML = "<RFC_READ_TABLE xmlns=\"http://connector/internal/rfcreadtable\">" +
+                                                           "<QUERY_TABLE>EDIDC</QUERY_TABLE>" +
+                                                           "<DELIMITER>" + DELIMITER +
+                                                           "</DELIMITER><ROWCOUNT>0</ROWCOUNT>" +
+                                                           "<OPTIONS/><FIELDS>" +
+                                                           "<item><FIELDNAME>DOCNUM</FIELDNAME></item>" +
+                                                           "<item><FIELDNAME>RCVLAD</FIELDNAME></item>" +
+                                                           "</FIELDS></RFC_READ_TABLE>";
+    /**
+     * Holds whether the numbers are resolved in the background.
+     */
+    private final boolean m_async;
+    /**
+     * Holds the maximum number of transaction IDs per query.
+     */
+    private final int m_batchSize;
+    /**
+     * Indicates whether the resolver is closed.
+     */
+    private boolean m_closed;
+    /**
+     * Holds the configuration of the connector.
+     */
+    private final ISAPConfiguration m_config;
+    /**
+     * Holds the document for the background resolution.
+     */
+    private Document m_doc;
+    /**
+     * Holds the number of milliseconds the queued transaction IDs may wait.
+     */
+    private final long m_flushInterval;
+    /**
+     * Holds the thread that resolves the queue.
+     */
+    private Thread m_flusher;
+    /**
+     * Holds the sender that updates the stored IDocs.
+     */
+    private OLEDBRequestSender m_oleDBRequestSender;
+    /**
+     * Holds the queued transaction IDs with their message type and attempts.
+     */
+    private final Map<String, Pending> m_pending = new LinkedHashMap<String, Pending>();
+    /**
+     * Holds the sender for the RFC_READ_TABLE calls.
+     */
+    private SAPJCoRequestSender m_requestSender;
+
+    /**
+     * Creates a new IDocNumberResolver object.
+     *
+     * @param  config         The configuration of the connector.
+     * @param  async          Whether the numbers are resolved in the background.
+     * @param  batchSize      The maximum number of transaction IDs per query. In asynchronous
+     *                        mode the queue is also resolved when it reaches this size.
+     * @param  flushInterval  The number of milliseconds a queued transaction ID may wait.
+     */
+    public IDocNumberResolver(ISAPConfiguration config, boolean async, int batchSize,
+                              long flushInterval)
+    {
+        m_config = config;
+        m_async = async;
+        m_batchSize = Math.max(1, batchSize);
+        m_flushInterval = Math.max(1, flushInterval);
+    }
+
+    /**
+     * This method stops the background thread and resolves the transaction IDs that are still
+     * queued.
+     */
+    public void close()
+    {
+        Thread flusher;
+
+        synchronized (m_pending)
+        {
+            m_closed = true;
+            flusher = m_flusher;
+            m_flusher = null;
+            m_pending.notifyAll();
+        }
+
+        if (flusher != null)
+        {
+            try
+            {
+                flusher.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        try
+        {
+            flush();
+        }
+        catch (SAPConnectorException e)
+        {
+            LOG.error("Could not resolve the queued IDOC numbers: " + e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * This method resolves the queued transaction IDs and updates the stored IDocs with their
+     * numbers. Transaction IDs that are not found, or that were not updated because the flush
+     * failed, are queued again.
+     *
+     * @return  true if all the transaction IDs were resolved or given up, false if some of them
+     *          were queued again.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    public synchronized boolean flush()
+                               throws SAPConnectorException
+    {
+        Map<String, Pending> pending;
+
+        synchronized (m_pending)
+        {
+            if (m_pending.isEmpty())
+            {
+                return true;
+            }
+
+            pending = new LinkedHashMap<String, Pending>(m_pending);
+            m_pending.clear();
+        }
+
+        if (m_doc == null)
+        {
+            m_doc = new Document();
+        }
+
+        if (m_oleDBRequestSender == null)
+        {
+            m_oleDBRequestSender = createOLEDBRequestSender();
+        }
+
+        Map<String, String> transactions = new LinkedHashMap<String, String>();
+
+        for (Map.Entry<String, Pending> entry : pending.entrySet())
+        {
+            transactions.put(entry.getKey(), entry.getValue().m_mesType);
+        }
+
+        Map<String, List<String>> idocNumbers;
+        JCO.Client client = null;
+
+        try
+        {
+            client = acquireConnection();
+            idocNumbers = resolve(transactions, client, m_doc);
+        }
+        catch (SAPConnectorException e)
+        {
+            requeue(pending);
+            throw e;
+        }
+        finally
+        {
+            if (client != null)
+            {
+                releaseConnection(client);
+            }
+        }
+
+        try
+        {
+            if (m_config.getIDocWriteBehind() != null)
+            {
+                // The IDocs must be in the table before their numbers can be updated.
+                m_config.getIDocWriteBehind().flush();
+            }
+
+            for (Iterator<Map.Entry<String, Pending>> iterator = pending.entrySet().iterator();
+                     iterator.hasNext();)
+            {
+                Map.Entry<String, Pending> entry = iterator.next();
+                String number = selectNumber(entry.getKey(), idocNumbers.get(entry.getKey()));
+
+                if (number != null)
+                {
+                    m_oleDBRequestSender.updateIDOCNumber(entry.getKey(), number,
+                                                          m_config.getServiceGroup(), m_doc);
+                    iterator.remove();
+                }
+                else if (++entry.getValue().m_attempts >= MAX_ATTEMPTS)
+                {
+                    LOG.error("IDOC number not found in SAP for transaction " + entry.getKey());
+                    iterator.remove();
+                }
+            }
+        }
+        finally
+        {
+            // Only the processed entries were removed, so a failed update leaves the rest queued.
+            requeue(pending);
+        }
+
+        return pending.isEmpty();
+    }
+
+    /**
+     * This method returns the number to use for a transaction ID. SAP can return more than one
+     * IDoc for a transaction ID, for example when a failed call was repeated with the same ID. The
+     * lowest number is used then.
+     *
+     * @param   tid      The transaction ID.
+     * @param   numbers  The IDoc numbers in ascending order as returned by resolve().
+     *
+     * @return  The IDoc number, or null if the transaction ID was not found.
+     */
+    public static String selectNumber(String tid, List<String> numbers)
+    {
+        if ((numbers == null) || numbers.isEmpty())
+        {
+            return null;
+        }
+
+        if ((numbers.size() > 1) && LOG.isDebugEnabled())
+        {
+            LOG.debug("SAP returned " + numbers.size() + " IDOC numbers for transaction " + tid +
+                     ", using " + numbers.get(0));
+        }
+
+        return numbers.get(0);
+    }
+
+    /**
+     * This method returns whether the numbers are resolved in the background.
+     *
+     * @return  true if the callers should queue the transaction IDs with resolveLater().
+     */
+    public boolean isAsynchronous()
+    {
+        return m_async;
+    }
+
+    /**
+     * This method reads the numbers of the IDocs that were sent with the given transaction IDs.
+     * The transaction IDs are read with one RFC_READ_TABLE per batchSize transaction IDs.
+     *
+     * @param   transactions  The transaction IDs with the message type of their IDocs.
+     * @param   client        The client to use.
+     * @param   doc           The document to use.
+     *
+     * @return  The IDoc numbers in ascending order per transaction ID. The list is empty if the
+     *          transaction ID was not found.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    public Map<String, List<String>> resolve(Map<String, String> transactions, JCO.Client client,
+                                             Document doc)
+                                      throws SAPConnectorException
+    {
+        Map<String, List<String>> returnValue = new HashMap<String, List<String>>();
+
+        for (String tid : transactions.keySet())
+        {
+            returnValue.put(tid, new ArrayList<String>());
+        }
+
+        List<String> tids = new ArrayList<String>(transactions.keySet());
+
+        for (int start = 0; start < tids.size(); start += m_batchSize)
+        {
+            List<String> chunk = tids.subList(start, Math.min(tids.size(), start + m_batchSize));
+            Set<String> mesTypes = new LinkedHashSet<String>();
+
+            for (String tid : chunk)
+            {
+                mesTypes.add(transactions.get(tid));
+            }
+
+            readNumbers(chunk, mesTypes, client, doc, returnValue);
+        }
+
+        for (List<String> numbers : returnValue.values())
+        {
+            // IDocs of one transmission get ascending numbers in the order of the list.
+            Collections.sort(numbers);
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method queues a transaction ID. Its IDoc must have been stored with the transaction ID
+     * as number.
+     *
+     * @param  tid      The transaction ID.
+     * @param  mesType  The message type of the IDoc.
+     */
+    public void resolveLater(String tid, String mesType)
+    {
+        synchronized (m_pending)
+        {
+            m_pending.put(tid, new Pending(mesType));
+
+            if (m_closed)
+            {
+                // Resolved by close().
+                return;
+            }
+
+            if (m_flusher == null)
+            {
+                m_flusher = new Flusher();
+                m_flusher.start();
+            }
+
+            if (m_pending.size() >= m_batchSize)
+            {
+                m_pending.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * This method gets a connection for the background resolution.
+     *
+     * @return  The connection.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    protected JCO.Client acquireConnection()
+                                    throws SAPConnectorException
+    {
+        return m_config.getJCoConnectionManager().getUserConnection(m_config, m_config.getUserID(),
+                                                                    m_config.getPassword());
+    }
+
+    /**
+     * This method creates the sender that updates the stored IDocs.
+     *
+     * @return  The sender for the IDoc table.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    protected OLEDBRequestSender createOLEDBRequestSender()
+                                                   throws SAPConnectorException
+    {
+        return new OLEDBRequestSender(SAPConnectorConstants.IDOC_TABLE_NAME,
+                                      m_config.getOrganization());
+    }
+
+    /**
+     * This method executes the RFC_READ_TABLE request.
+     *
+     * @param   requestNode  The request.
+     * @param   client       The client to use.
+     * @param   doc          The document to use.
+     *
+     * @return  The response.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    protected int readTable(int requestNode, JCO.Client client, Document doc)
+                     throws SAPConnectorException
+    {
+        if (m_requestSender == null)
+        {
+            m_requestSender = new SAPJCoRequestSender(m_config);
+        }
+
+        return m_requestSender.sendRFCRequestForInternalPurpose(requestNode, client,
+                                                                "RFC_READ_TABLE", null, doc);
+    }
+
+    /**
+     * This method returns the connection of the background resolution to the pool.
+     *
+     * @param  client  The connection.
+     */
+    protected void releaseConnection(JCO.Client client)
+    {
+        if (client instanceof SAPJCoConnection)
+        {
+            m_config.getJCoConnectionManager().putUserConnection((SAPJCoConnection) client);
+        }
+    }
+
+    /**
+     * This method adds a condition to the OPTIONS of the request. Every condition gets its own
+     * line, as a line of RFC_READ_TABLE holds at most 72 characters.
+     *
+     * @param  optionsNode  The OPTIONS node.
+     * @param  text         The condition.
+     */
+    private static void addOption(int optionsNode, String text)
+    {
+        int item = Node.createElement("item", optionsNode);
+        Node.setDataElement(item, "TEXT", text);
+    }
+
+    /**
+     * This method reads the numbers of one chunk of transaction IDs.
+     *
+     * @param   tids         The transaction IDs.
+     * @param   mesTypes     The message types of their IDocs.
+     * @param   client       The client to use.
+     * @param   doc          The document to use.
+     * @param   idocNumbers  The numbers per transaction ID that are filled.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    private void readNumbers(List<String> tids, Set<String> mesTypes, JCO.Client client,
+                             Document doc, Map<String, List<String>> idocNumbers)
+                      throws SAPConnectorException
+    {
+        int requestNode;
+
+        try
+        {
+            requestNode = doc.parseString(RFCREADTABLE_REQUEST_XML);
+        }
+        catch (Exception xe)
+        {
+            throw new SAPConnectorException(xe,
+                                            SAPConnectorExceptionMessages.ERROR_PARSING_TEMPLATE,
+                                            "RFCREADTABLE_REQUEST_XML");
+        }
+
+        int responseNode = 0;
+
+        try
+        {
+            int optionsNode = Node.getElement(requestNode, "OPTIONS");
+            String prefix = "( ";
+
+            for (String mesType : mesTypes)
+            {
+                addOption(optionsNode, prefix + "MESTYP = '" + mesType + "'");
+                prefix = "OR ";
+            }
+
+            addOption(optionsNode, ")");
+
+            if (BOOL_IDOC_GETIDOCNUMBER_BYDATE)
+            {
+                SimpleDateFormat dateFormat = new SimpleDateFormat("yyyyMMdd");
+                long now = new Date().getTime();
+
+                addOption(optionsNode,
+                          "AND CREDAT IN ('" + dateFormat.format(new Date(now - MILLIS_IN_A_DAY)) +
+                          "','" + dateFormat.format(new Date(now)) + "','" +
+                          dateFormat.format(new Date(now + MILLIS_IN_A_DAY)) + "')");
+            }
+
+            prefix = "AND ( ";
+
+            for (String tid : tids)
+            {
+                addOption(optionsNode, prefix + "RCVLAD = '" + tid + "'");
+                prefix = "OR ";
+            }
+
+            addOption(optionsNode, ")");
+
+            responseNode = readTable(requestNode, client, doc);
+
+            int[] rows = Find.match(responseNode, "<RFC_READ_TABLE.Response><DATA><item><WA>");
+
+            for (int row : rows)
+            {
+                String data = Node.getDataWithDefault(row, "");
+                int index = data.indexOf(DELIMITER);
+
+                if (index < 0)
+                {
+                    continue;
+                }
+
+                List<String> numbers = idocNumbers.get(data.substring(index + 1).trim());
+
+                if (numbers != null)
+                {
+                    numbers.add(data.substring(0, index).trim());
+                }
+            }
+
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Read " + rows.length + " IDOC numbers for " + tids.size() +
+                          " transactions");
+            }
+        }
+        finally
+        {
+            BACUtil.deleteNode(requestNode);
+            BACUtil.deleteNode(responseNode);
+        }
+    }
+
+    /**
+     * This method queues the transaction IDs again that are not resolved.
+     *
+     * @param  pending  The transaction IDs.
+     */
+    private void requeue(Map<String, Pending> pending)
+    {
+        if (pending.isEmpty())
+        {
+            return;
+        }
+
+        synchronized (m_pending)
+        {
+            for (Map.Entry<String, Pending> entry : pending.entrySet())
+            {
+                if (!m_pending.containsKey(entry.getKey()))
+                {
+                    m_pending.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Thread that resolves the queue when it is full or when the flush interval has passed.
+     */
+    private class Flusher extends Thread
+    {
+        /**
+         * Creates a new Flusher object.
+         */
+        Flusher()
+        {
+            super("IDocNumberResolver");
+            setDaemon(true);
+        }
+
+        /**
+         * @see  java.lang.Thread#run()
+         */
+        @Override public void run()
+        {
+            int backoff = 1;
+
+            while (true)
+            {
+                synchronized (m_pending)
+                {
+                    long deadline = System.currentTimeMillis() + (m_flushInterval * backoff);
+                    long remaining;
+
+                    // After a failed flush the thread waits the whole interval, even if the queue
+                    // is full.
+                    while (!m_closed && ((backoff > 1) || (m_pending.size() < m_batchSize)) &&
+                               ((remaining = deadline - System.currentTimeMillis()) > 0))
+                    {
+                        try
+                        {
+                            m_pending.wait(remaining);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            return;
+                        }
+                    }
+
+                    if (m_closed)
+                    {
+                        return;
+                    }
+                }
+
+                boolean resolved = false;
+
+                try
+                {
+                    resolved = flush();
+                }
+                catch (SAPConnectorException e)
+                {
+                    LOG.error("Could not resolve the queued IDOC numbers: " +
+                              e.getLocalizedMessage());
+                }
+
+                backoff = resolved ? 1 : Math.min(backoff * 2, MAX_BACKOFF);
+            }
+        }
+    }
+
+    /**
+     * Holds a queued transaction ID.
+     */
+    private static class Pending
+    {
+        /**
+         * Holds the number of times the transaction ID was not found.
+         */
+        private int m_attempts;
+        /**
+         * Holds the message type of the IDoc.
+         */
+        private final String m_mesType;
+
+        /**
+         * Creates a new Pending object.
+         *
+         * @param  mesType  The message type of the IDoc.
+         */
+        Pending(String mesType)
+        {
+            m_mesType = mesType;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.connection.jco;
+
+import com.eibus.xml.nom.Node;
+
+import com.sap.mw.idoc.IDoc;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * This class fills the segments of an outbound IDoc from the NOM request without an intermediate
+ * XML string. It replaces the IDoc.Segment.fromXML() call per segment and follows the same XML
+ * layout: a segment is an element named after the segment type with a child element per field
+ * and an element per child segment.
+ *
+ * <p>For every segment type the positions of the fields and the child segment types are read
+ * once from the IDoc.SegmentMetaData and kept in a layout. The metadata is held weakly, so the
+ * layouts of IDoc types that are no longer in the repository are removed.</p>
+ *
+ * <p>Child segments are added in the order of the segment definition and, per type, in the order
+ * of the request, just like before. Elements that are neither a field nor a child segment are
+ * ignored and empty elements leave the initial value of the field untouched. Values that do not
+ * fit a field are rejected by the IDoc library itself.</p>
+ *
+ * @author  pgussow
+ */
+public final class IDocSegmentBuilder
+{
+    /**
+     * Holds the layouts per segment type.
+     */
+    private static final Map<IDoc.SegmentMetaData, SegmentLayout> s_layouts = new WeakHashMap<IDoc.SegmentMetaData, SegmentLayout>();
+
+    /**
+     * Utility class, no instances.
+     */
+    private IDocSegmentBuilder()
+    {
+    }
+
+    /**
+     * This method adds the child segments of the given segment for the segment elements that are
+     * found under the given node. The fields of each added segment are filled from the child
+     * elements of its segment element. The fields of the given segment itself are not filled,
+     * because for the root segment the node is the IDoc element.
+     *
+     * @param  segment  The segment to add the children to.
+     * @param  node     The element holding the child segment elements.
+     */
+    public static void addSegments(IDoc.Segment segment, int node)
+    {
+        addChildSegments(segment, getLayout(segment.getSegmentMetaData()), node);
+    }
+
+    /**
+     * This method returns the layout of the given segment type. The layout is created when the
+     * type is used for the first time.
+     *
+     * @param   metaData  The metadata of the segment type.
+     *
+     * @return  The layout.
+     */
+    private static SegmentLayout getLayout(IDoc.SegmentMetaData metaData)
+    {
+        synchronized (s_layouts)
+        {
+            SegmentLayout returnValue = s_layouts.get(metaData);
+
+            if (returnValue == null)
+            {
+                returnValue = new SegmentLayout(metaData);
+                s_layouts.put(metaData, returnValue);
+            }
+
+            return returnValue;
+        }
+    }
+
+    /**
+     * This method adds a child segment for every segment element under the given node. The
+     * segment elements are grouped per type with a counting sort, so the children are added in the
+     * order of the segment definition without searching the node once per type.
+     *
+     * @param  parent  The segment to add the children to.
+     * @param  layout  The layout of the parent segment.
+     * @param  node    The element of the parent segment.
+     */
+    private static void addChildSegments(IDoc.Segment parent, SegmentLayout layout, int node)
+    {
+        int noOfTypes = layout.m_children.length;
+
+        if (noOfTypes == 0)
+        {
+            return;
+        }
+
+        int[] nodes = new int[8];
+        int[] types = new int[8];
+        int[] counts = new int[noOfTypes + 1];
+        int noOfSegments = 0;
+
+        for (int child = Node.getFirstElement(node); child != 0;
+                 child = Node.getNextElement(child))
+        {
+            Integer type = layout.m_childIndexes.get(Node.getLocalName(child));
+
+            if (type == null)
+            {
+                continue;
+            }
+
+            if (noOfSegments == nodes.length)
+            {
+                nodes = grow(nodes);
+                types = grow(types);
+            }
+            nodes[noOfSegments] = child;
+            types[noOfSegments] = type.intValue();
+            counts[type.intValue() + 1]++;
+            noOfSegments++;
+        }
+
+        for (int i = 1; i <= noOfTypes; i++)
+        {
+            counts[i] += counts[i - 1];
+        }
+
+        int[] orderedNodes = new int[noOfSegments];
+        int[] orderedTypes = new int[noOfSegments];
+
+        for (int i = 0; i < noOfSegments; i++)
+        {
+            int position = counts[types[i]]++;
+
+            orderedNodes[position] = nodes[i];
+            orderedTypes[position] = types[i];
+        }
+
+        SegmentLayout[] childLayouts = new SegmentLayout[noOfTypes];
+
+        for (int i = 0; i < noOfSegments; i++)
+        {
+            int segmentNode = orderedNodes[i];
+            int type = orderedTypes[i];
+
+            if (childLayouts[type] == null)
+            {
+                childLayouts[type] = getLayout(layout.m_children[type]);
+            }
+
+            SegmentLayout childLayout = childLayouts[type];
+            IDoc.Segment childSegment = parent.addChild(childLayout.m_type);
+
+            fillFields(childSegment, childLayout, segmentNode);
+            addChildSegments(childSegment, childLayout, segmentNode);
+        }
+    }
+
+    /**
+     * This method sets the fields of the segment from the child elements of the given node.
+     *
+     * @param  segment  The segment to fill.
+     * @param  layout   The layout of the segment.
+     * @param  node     The element of the segment.
+     */
+    private static void fillFields(IDoc.Segment segment, SegmentLayout layout, int node)
+    {
+        for (int child = Node.getFirstElement(node); child != 0;
+                 child = Node.getNextElement(child))
+        {
+            Integer index = layout.m_fieldIndexes.get(Node.getLocalName(child));
+
+            if (index != null)
+            {
+                String value = Node.getDataWithDefault(child, "");
+
+                if (value.length() > 0)
+                {
+                    segment.setValue(index.intValue(), value);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method returns a copy of the array with twice the size.
+     *
+     * @param   values  The array.
+     *
+     * @return  The bigger array.
+     */
+    private static int[] grow(int[] values)
+    {
+        int[] returnValue = new int[values.length * 2];
+
+        System.arraycopy(values, 0, returnValue, 0, values.length);
+
+        return returnValue;
+    }
+
+    /**
+     * Holds the field positions and the child segment types of a segment type.
+     */
+    private static final class SegmentLayout
+    {
+        /**
+         * Holds the positions of the child segment types per type.
+         */
+        private final Map<String, Integer> m_childIndexes;
+        /**
+         * Holds the metadata of the child segment types in the order of the definition.
+         */
+        private final IDoc.SegmentMetaData[] m_children;
+        /**
+         * Holds the positions of the fields per field name.
+         */
+        private final Map<String, Integer> m_fieldIndexes;
+        /**
+         * Holds the segment type.
+         */
+        private final String m_type;
+
+        /**
+         * Creates a new SegmentLayout object.
+         *
+         * @param  metaData  The metadata of the segment type.
+         */
+        SegmentLayout(IDoc.SegmentMetaData metaData)
+        {
+            m_type = metaData.getType();
+
+            int noOfChildren = metaData.getNumChildren();
+
+            m_children = new IDoc.SegmentMetaData[noOfChildren];
+            m_childIndexes = new HashMap<String, Integer>(noOfChildren * 2);
+
+            for (int i = 0; i < noOfChildren; i++)
+            {
+                m_children[i] = metaData.getChild(i);
+                m_childIndexes.put(m_children[i].getType(), i);
+            }
+
+            int noOfFields = metaData.getNumFields();
+
+            m_fieldIndexes = new HashMap<String, Integer>(noOfFields * 2);
+
+            for (int i = 0; i < noOfFields; i++)
+            {
+                m_fieldIndexes.put(metaData.getName(i), i);
+            }
+        }
+    }
+}
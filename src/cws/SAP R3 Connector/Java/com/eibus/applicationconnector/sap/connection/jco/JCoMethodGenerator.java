@@ -20,6 +20,7 @@ package com.eibus.applicationconnector.sap.connection.jco;
 import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
 import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
 import com.eibus.applicationconnector.sap.metadata.ESAPDataType;
+import com.eibus.applicationconnector.sap.metadata.ESAPObjectType;
 import com.eibus.applicationconnector.sap.metadata.MethodGenerator;
 import com.eibus.applicationconnector.sap.util.SpecialCharactersConvertorUtil;
 import com.eibus.applicationconnector.sap.xsd.XSDAnnotation;
@@ -39,8 +40,6 @@ import com.sap.mw.jco.IFunctionTemplate;
 import com.sap.mw.jco.IRepository;
 import com.sap.mw.jco.JCO;
 
-import java.util.ArrayList;
-
 import javax.xml.XMLConstants;
 
 import javax.xml.namespace.QName;
@@ -153,6 +152,36 @@ public class JCoMethodGenerator extends MethodGenerator
                                          tableParameterList);
     }
 
+    /**
+     * @see  com.eibus.applicationconnector.sap.metadata.MethodGenerator#appendFingerprint(java.lang.StringBuilder,
+     *       com.eibus.applicationconnector.sap.metadata.ESAPObjectType, java.lang.String,
+     *       java.lang.String)
+     */
+    @Override protected boolean appendFingerprint(StringBuilder fingerprint, ESAPObjectType type,
+                                                  String sapItemName, String extension)
+                                           throws SAPConnectorException
+    {
+        if (type == ESAPObjectType.IDOC)
+        {
+            if (m_idocRepository == null)
+            {
+                return false;
+            }
+
+            IDoc.Document idoc = JCoIDoc.createDocument(m_idocRepository, sapItemName, extension);
+            appendSegmentFingerprint(fingerprint, idoc.getRootSegment().getSegmentMetaData());
+        }
+        else
+        {
+            JCO.Function function = getFunctionObject(sapItemName);
+            appendRecordFingerprint(fingerprint, function.getImportParameterList());
+            appendRecordFingerprint(fingerprint, function.getExportParameterList());
+            appendRecordFingerprint(fingerprint, function.getTableParameterList());
+        }
+
+        return true;
+    }
+
     /**
      * This method generates the output schema element for the IDOC methods. <tid>...</tid> </IDOCNum>
      *
@@ -200,6 +229,89 @@ public class JCoMethodGenerator extends MethodGenerator
         idocNumberElement.setType(type_IdocNumber);
     }
 
+    /**
+     * This method appends the fields of a parameter list, structure or table to the fingerprint.
+     * Structures and tables are appended recursively. Everything the schema is generated from is
+     * part of the fingerprint.
+     *
+     * @param  fingerprint  The fingerprint to append to.
+     * @param  record       The parameter list, structure or table. May be null.
+     */
+    private static void appendRecordFingerprint(StringBuilder fingerprint, JCO.Record record)
+    {
+        fingerprint.append('{');
+
+        if (record != null)
+        {
+            int noOfFields = record.getNumFields();
+
+            for (int i = 0; i < noOfFields; i++)
+            {
+                JCO.Field field = record.getField(i);
+
+                fingerprint.append(field.getName()).append('|').append(field.getType()).append('|');
+                fingerprint.append(field.getLength()).append('|').append(field.getDecimals());
+                fingerprint.append('|').append(field.isOptional()).append('|');
+                fingerprint.append(record.getTabName(i)).append('|');
+                fingerprint.append(field.getDescription()).append('\n');
+
+                if (field.isStructure())
+                {
+                    appendRecordFingerprint(fingerprint, field.getStructure());
+                }
+                else if (field.isTable())
+                {
+                    appendRecordFingerprint(fingerprint, field.getTable());
+                }
+            }
+        }
+
+        fingerprint.append('}');
+    }
+
+    /**
+     * This method appends the child segments of the given segment and their fields to the
+     * fingerprint. The child segments are appended recursively.
+     *
+     * @param  fingerprint      The fingerprint to append to.
+     * @param  segmentMetadata  The metadata of the segment.
+     */
+    private static void appendSegmentFingerprint(StringBuilder fingerprint,
+                                                 IDoc.SegmentMetaData segmentMetadata)
+    {
+        int noOfChildSegments = segmentMetadata.getNumChildren();
+
+        fingerprint.append('{');
+
+        for (int i = 0; i < noOfChildSegments; i++)
+        {
+            IDoc.SegmentMetaData childSegmentMetadata = segmentMetadata.getChild(i);
+
+            fingerprint.append(childSegmentMetadata.getType()).append('|');
+            fingerprint.append(childSegmentMetadata.getMinOccurrence()).append('|');
+            fingerprint.append(childSegmentMetadata.getMaxOccurrence()).append('|');
+            fingerprint.append(childSegmentMetadata.getDescription()).append('\n');
+
+            IDoc.RecordMetaData recordMetadata = childSegmentMetadata.getRecordMetaData();
+            int noOfFields = recordMetadata.getNumFields();
+
+            for (int j = 0; j < noOfFields; j++)
+            {
+                IDoc.FieldMetaData fieldMetadata = recordMetadata.getFieldMetaData(j);
+
+                fingerprint.append(fieldMetadata.getFieldName()).append('|');
+                fingerprint.append(fieldMetadata.getDataTypeName()).append('|');
+                fingerprint.append(fieldMetadata.getOutputLength()).append('|');
+                fingerprint.append(recordMetadata.getDecimals(j)).append('|');
+                fingerprint.append(fieldMetadata.getDescription()).append('\n');
+            }
+
+            appendSegmentFingerprint(fingerprint, childSegmentMetadata);
+        }
+
+        fingerprint.append('}');
+    }
+
     /**
      * This method is called two times Once to generate the schema element for input, with import
      * parameters and table parameters. Second to generate the schema element for output, with
@@ -617,7 +729,8 @@ public class JCoMethodGenerator extends MethodGenerator
     }
 
     /**
-     * This method returns whether or not the given type already exists in the schema.
+     * This method returns whether or not the given type already exists in the schema. The type
+     * registry of the schema is used, so the check does not depend on the number of types.
      *
      * @param   schema        The current schema.
      * @param   refereceType  The type to check.
@@ -626,20 +739,7 @@ public class JCoMethodGenerator extends MethodGenerator
      */
     private boolean schemaTypeExists(XSDSchema schema, String refereceType)
     {
-        boolean returnValue = false;
-
-        ArrayList<XSDType> types = schema.getTypes();
-
-        for (XSDType xsdType : types)
-        {
-            if (refereceType.equals(xsdType.getName().getLocalPart()))
-            {
-                returnValue = true;
-                break;
-            }
-        }
-
-        return returnValue;
+        return schema.findTypeByLocalName(refereceType) != null;
     }
     
     private void serializeIDOCMetadata(IDoc.Document idoc)
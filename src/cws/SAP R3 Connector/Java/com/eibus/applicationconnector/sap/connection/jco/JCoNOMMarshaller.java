@@ -0,0 +1,246 @@
+/**
+ * Copyright 2005 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.connection.jco;
+
+import com.eibus.applicationconnector.sap.util.XMLCharacterFilter;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Node;
+
+import com.sap.mw.jco.JCO;
+
+/**
+ * This class moves data between NOM nodes and JCo records without an intermediate XML string. It
+ * replaces the JCO.Request.fromXML() / JCO.Response.toXML() round trip and follows the same XML
+ * layout: scalar parameters are elements with the value as text, structures are elements with a
+ * child element per field and tables are elements with an &lt;item&gt; child per row. Like JCo, the
+ * '/' of namespaced names (e.g. /BIC/ZFIELD) is written as '_-' in the element names.
+ *
+ * @author  pgussow
+ */
+public final class JCoNOMMarshaller
+{
+    /**
+     * Holds the name of the element that represents a table row.
+     */
+    private static final String TAG_ITEM = "item";
+    /**
+     * Holds the character JCo escapes in element names.
+     */
+    private static final String NAMESPACE_SEPARATOR = "/";
+    /**
+     * Holds the escape JCo writes for the namespace separator.
+     */
+    private static final String NAMESPACE_SEPARATOR_ESCAPED = "_-";
+
+    /**
+     * Utility class, no instances.
+     */
+    private JCoNOMMarshaller()
+    {
+    }
+
+    /**
+     * This method fills the given record (request, structure or table row) with the values from
+     * the child elements of the given node. Elements that do not match a field of the record are
+     * ignored, just like fromXML does. Empty scalar elements leave the initial value of the field
+     * untouched.
+     *
+     * @param   record  The record to fill.
+     * @param   node    The NOM node holding the values.
+     *
+     * @throws  JCO.ConversionException  In case a value cannot be converted to the field type.
+     */
+    public static void fillRecord(JCO.Record record, int node)
+    {
+        for (int child = Node.getFirstElement(node); child != 0;
+                 child = Node.getNextElement(child))
+        {
+            String name = decodeName(Node.getLocalName(child));
+
+            if (!record.hasField(name))
+            {
+                continue;
+            }
+
+            JCO.Field field = record.getField(name);
+
+            if (field.isStructure())
+            {
+                fillRecord(field.getStructure(), child);
+            }
+            else if (field.isTable())
+            {
+                fillTable(field.getTable(), child);
+            }
+            else
+            {
+                String value = Node.getDataWithDefault(child, "");
+
+                if (value.length() > 0)
+                {
+                    field.setValue(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * This method converts the given record (usually a JCO.Response) into a NOM element with the
+     * given name. The values are read with getString() so the formatting is the same as the one
+     * produced by toXML().
+     *
+     * @param   record                The record to convert.
+     * @param   doc                   The document to create the nodes in.
+     * @param   rootName              The name for the root element.
+     * @param   stripIllegalXMLChars  Whether or not characters that are not allowed in XML should
+     *                                be removed from the values.
+     *
+     * @return  The root element that was created.
+     */
+    public static int toNOM(JCO.Record record, Document doc, String rootName,
+                            boolean stripIllegalXMLChars)
+    {
+        int root = doc.createElement(rootName);
+
+        appendRecord(record, doc, root, stripIllegalXMLChars);
+
+        return root;
+    }
+
+    /**
+     * This method appends the fields of the given record as child elements of the parent node.
+     *
+     * @param  record                The record to convert.
+     * @param  doc                   The document to create the nodes in.
+     * @param  parent                The parent node.
+     * @param  stripIllegalXMLChars  Whether or not to strip characters that are invalid in XML.
+     */
+    private static void appendRecord(JCO.Record record, Document doc, int parent,
+                                     boolean stripIllegalXMLChars)
+    {
+        int noOfFields = record.getNumFields();
+
+        for (int i = 0; i < noOfFields; i++)
+        {
+            JCO.Field field = record.getField(i);
+            String name = encodeName(field.getName());
+
+            if (field.isStructure())
+            {
+                int structureNode = doc.createElement(name, parent);
+                appendRecord(field.getStructure(), doc, structureNode, stripIllegalXMLChars);
+            }
+            else if (field.isTable())
+            {
+                int tableNode = doc.createElement(name, parent);
+                appendTable(field.getTable(), doc, tableNode, stripIllegalXMLChars);
+            }
+            else
+            {
+                String value = field.getString();
+
+                if (value == null)
+                {
+                    value = "";
+                }
+                else if (stripIllegalXMLChars)
+                {
+                    value = XMLCharacterFilter.strip(value);
+                }
+
+                doc.createTextElement(name, value, parent);
+            }
+        }
+    }
+
+    /**
+     * This method appends all rows of the table as &lt;item&gt; elements to the table node.
+     *
+     * @param  table                 The table to convert.
+     * @param  doc                   The document to create the nodes in.
+     * @param  tableNode             The node representing the table.
+     * @param  stripIllegalXMLChars  Whether or not to strip characters that are invalid in XML.
+     */
+    private static void appendTable(JCO.Table table, Document doc, int tableNode,
+                                    boolean stripIllegalXMLChars)
+    {
+        int noOfRows = table.getNumRows();
+
+        for (int row = 0; row < noOfRows; row++)
+        {
+            table.setRow(row);
+
+            int itemNode = doc.createElement(TAG_ITEM, tableNode);
+            appendRecord(table, doc, itemNode, stripIllegalXMLChars);
+        }
+    }
+
+    /**
+     * This method returns the field name for the given element name, the way fromXML() reads it.
+     *
+     * @param   elementName  The name of the element.
+     *
+     * @return  The name of the field.
+     */
+    private static String decodeName(String elementName)
+    {
+        if (elementName.indexOf(NAMESPACE_SEPARATOR_ESCAPED) == -1)
+        {
+            return elementName;
+        }
+
+        return elementName.replace(NAMESPACE_SEPARATOR_ESCAPED, NAMESPACE_SEPARATOR);
+    }
+
+    /**
+     * This method returns the element name for the given field name, the way toXML() writes it.
+     *
+     * @param   fieldName  The name of the field.
+     *
+     * @return  The name of the element.
+     */
+    private static String encodeName(String fieldName)
+    {
+        if (fieldName.indexOf(NAMESPACE_SEPARATOR) == -1)
+        {
+            return fieldName;
+        }
+
+        return fieldName.replace(NAMESPACE_SEPARATOR, NAMESPACE_SEPARATOR_ESCAPED);
+    }
+
+    /**
+     * This method appends a row to the table for each &lt;item&gt; child of the table node.
+     *
+     * @param  table      The table to fill.
+     * @param  tableNode  The node holding the rows.
+     */
+    private static void fillTable(JCO.Table table, int tableNode)
+    {
+        for (int item = Node.getFirstElement(tableNode); item != 0;
+                 item = Node.getNextElement(item))
+        {
+            if (TAG_ITEM.equals(Node.getLocalName(item)))
+            {
+                table.appendRow();
+                fillRecord(table, item);
+            }
+        }
+    }
+}
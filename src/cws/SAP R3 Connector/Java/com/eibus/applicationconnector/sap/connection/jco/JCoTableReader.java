@@ -0,0 +1,121 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.connection.jco;
+
+import com.eibus.applicationconnector.sap.Messages;
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+
+import com.eibus.util.logger.CordysLogger;
+
+import com.sap.mw.jco.JCO;
+
+/**
+ * This class reads the pages of a table by executing RFC_READ_TABLE on a JCo client. The rows are
+ * taken from the DATA table of the response directly, without converting the response to XML.
+ *
+ * @author  pgussow
+ */
+public class JCoTableReader extends TableReader
+{
+    /**
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(JCoTableReader.class);
+    /**
+     * Holds the client to execute RFC_READ_TABLE on.
+     */
+    private final JCO.Client m_client;
+    /**
+     * Holds the configuration of the connector.
+     */
+    private final ISAPConfiguration m_config;
+
+    /**
+     * Creates a new JCoTableReader object.
+     *
+     * @param  config  The configuration of the connector.
+     * @param  client  The client to execute RFC_READ_TABLE on.
+     */
+    public JCoTableReader(ISAPConfiguration config, JCO.Client client)
+    {
+        super(config.getReadTablePageSize());
+
+        m_config = config;
+        m_client = client;
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.connection.jco.TableReader#fetchPage(int, int, int)
+     */
+    @Override protected Page fetchPage(int requestNode, int rowSkips, int rowCount)
+                                throws SAPConnectorException
+    {
+        JCO.Request sapRequest = m_config.getFunctionTemplateCache().createRequest(RFC_NAME);
+
+        try
+        {
+            JCoNOMMarshaller.fillRecord(sapRequest, requestNode);
+        }
+        catch (JCO.ConversionException jce)
+        {
+            LOG.warn(jce, Messages.WRN_CONVERT);
+        }
+
+        sapRequest.setValue(rowSkips, "ROWSKIPS");
+        sapRequest.setValue(rowCount, "ROWCOUNT");
+
+        JCO.Response sapResponse;
+
+        try
+        {
+            sapResponse = m_client.execute(sapRequest);
+        }
+        catch (Exception ex)
+        {
+            throw new SAPConnectorException(ex,
+                                            SAPConnectorExceptionMessages.ERROR_EXECUTING_REQUEST,
+                                            sapRequest.toXML());
+        }
+
+        JCO.Table fields = sapResponse.getTable("FIELDS");
+        Column[] columns = new Column[fields.getNumRows()];
+
+        for (int i = 0; i < columns.length; i++)
+        {
+            fields.setRow(i);
+            columns[i] = new Column(fields.getString("FIELDNAME"), fields.getInt("OFFSET"),
+                                    fields.getInt("LENGTH"), fields.getString("TYPE"),
+                                    fields.getString("FIELDTEXT"));
+        }
+
+        JCO.Table data = sapResponse.getTable("DATA");
+        String[] rows = new String[data.getNumRows()];
+
+        for (int i = 0; i < rows.length; i++)
+        {
+            data.setRow(i);
+
+            String row = data.getString("WA");
+            rows[i] = (row == null) ? "" : row;
+        }
+
+        return new Page(columns, rows, rows.length);
+    }
+}
@@ -41,7 +41,7 @@ public class SAPJCoConnection extends JCO.Client
      * @param  user
      * @param  password
      */
-    SAPJCoConnection(ISAPConfiguration config, String user, String password)
+    protected SAPJCoConnection(ISAPConfiguration config, String user, String password)
     {
         super(config.getSAPClient(), user, password, config.getLanguage(), config.getSAPServer(),
               config.getSystemNumber());
@@ -243,9 +243,9 @@ public class SAPJCoConnectionManager
      *
      * @throws  SAPConnectorException  In case of any exception.
      */
-    private SAPJCoConnection createNewConnection(ISAPConfiguration config, String user,
-                                                 String password)
-                                          throws SAPConnectorException
+    protected SAPJCoConnection createNewConnection(ISAPConfiguration config, String user,
+                                                   String password)
+                                            throws SAPConnectorException
     {
         SAPJCoConnection jcoConnection = new SAPJCoConnection(config, user, password);
 
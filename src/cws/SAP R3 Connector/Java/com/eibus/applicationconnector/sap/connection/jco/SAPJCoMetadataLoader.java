@@ -130,8 +130,6 @@ public class SAPJCoMetadataLoader extends MetadataLoader
 
         try
         {
-            m_loadingBOMetadata = true;
-
             if (LOG.isDebugEnabled())
             {
                 LOG.debug("Fetching BO Metadata");
@@ -165,12 +163,10 @@ public class SAPJCoMetadataLoader extends MetadataLoader
                                                 SAPConnectorExceptionMessages.ERROR_WRITING_FILE,
                                                 filename);
             }
-            m_loadingBOMetadata = false;
             return BOMetadataNode;
         }
         catch (SAPConnectorException sf)
         {
-            m_loadingBOMetadata = false;
             BACUtil.deleteNode(BOMetadataNode);
             throw sf;
         }
@@ -197,8 +193,6 @@ public class SAPJCoMetadataLoader extends MetadataLoader
 
         try
         {
-            loadingComponentMetadata = true;
-
             if (LOG.isDebugEnabled())
             {
                 LOG.debug(" Fetching Component Metadata");
@@ -230,12 +224,10 @@ public class SAPJCoMetadataLoader extends MetadataLoader
                                                 SAPConnectorExceptionMessages.ERROR_WRITING_FILE,
                                                 filename);
             }
-            loadingComponentMetadata = false;
             return ComponentMetadata;
         }
         catch (SAPConnectorException sf)
         {
-            loadingComponentMetadata = false;
             BACUtil.deleteNode(ComponentMetadata);
             throw sf;
         }
@@ -267,8 +259,6 @@ public class SAPJCoMetadataLoader extends MetadataLoader
 
         try
         {
-            loadingIDOCInterface = true;
-
             if (LOG.isDebugEnabled())
             {
                 LOG.debug(" Fetching IDOC Interface.");
@@ -312,12 +302,10 @@ public class SAPJCoMetadataLoader extends MetadataLoader
                                                 SAPConnectorExceptionMessages.ERROR_WRITING_FILE,
                                                 filename);
             }
-            loadingIDOCInterface = false;
             return IDOCResponseNode;
         }
         catch (SAPConnectorException sf)
         {
-            loadingIDOCInterface = false;
             BACUtil.deleteNode(IDOCRequestNode);
             BACUtil.deleteNode(IDOCResponseNode);
             throw sf;
@@ -345,8 +333,6 @@ public class SAPJCoMetadataLoader extends MetadataLoader
 
         try
         {
-            m_loadingIDOCMetadata = true;
-
             if (LOG.isDebugEnabled())
             {
                 LOG.debug(" Fetching IDOC Metadata");
@@ -386,12 +372,10 @@ public class SAPJCoMetadataLoader extends MetadataLoader
                                                 SAPConnectorExceptionMessages.ERROR_WRITING_FILE,
                                                 filename);
             }
-            m_loadingIDOCMetadata = false;
             return IDOCMetadataNode;
         }
         catch (SAPConnectorException sf)
         {
-            m_loadingIDOCMetadata = false;
             BACUtil.deleteNode(IDOCMetadataNode);
             throw sf;
         }
@@ -419,7 +403,6 @@ public class SAPJCoMetadataLoader extends MetadataLoader
 
         int rfcRequestNode = 0;
 
-        loadingRFCInterface = true;
         try
         {
             if (LOG.isDebugEnabled())
@@ -467,8 +450,6 @@ public class SAPJCoMetadataLoader extends MetadataLoader
         }
         finally
         {
-        	loadingRFCInterface = false;
-        	
         	rfcRequestNode = BACUtil.deleteNode(rfcRequestNode);
         }
         
@@ -499,8 +480,6 @@ public class SAPJCoMetadataLoader extends MetadataLoader
 
         int rfcResponseNode = 0;
 
-        loadingRFCMetadata = true;
-        
         try
         {
             rfcResponseNode = requestSender.sendRFCRequestForInternalPurpose(TEMPLATE_RFC_REQUEST,
@@ -525,13 +504,9 @@ public class SAPJCoMetadataLoader extends MetadataLoader
         }
         catch (SAPConnectorException sf)
         {
-            
+            BACUtil.deleteNode(rfcResponseNode);
             throw sf;
         }
-        finally
-        {
-        	loadingRFCMetadata = false;
-        }
     }
 
     /**
@@ -19,6 +19,7 @@ package com.eibus.applicationconnector.sap.connection.jco;
 
 import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
 import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+import com.eibus.applicationconnector.sap.metadata.GeneratedMethodCache;
 import com.eibus.applicationconnector.sap.metadata.MethodGenerator;
 import com.eibus.applicationconnector.sap.metadata.SAPMethodGenerator;
 
@@ -44,6 +45,10 @@ import com.sap.mw.jco.JCO;
  */
 public class SAPJCoMethodGenerator extends SAPMethodGenerator
 {
+    /**
+     * Holds the cache for the generated WSDL.
+     */
+    private GeneratedMethodCache m_cache;
     /**
      * DOCUMENTME.
      */
@@ -59,11 +64,14 @@ public class SAPJCoMethodGenerator extends SAPMethodGenerator
      *
      * @param  repository      DOCUMENTME
      * @param  IDOCRepository  DOCUMENTME
+     * @param  cache           The cache for the generated WSDL. May be null.
      */
-    SAPJCoMethodGenerator(IRepository repository, IDoc.Repository IDOCRepository)
+    SAPJCoMethodGenerator(IRepository repository, IDoc.Repository IDOCRepository,
+                          GeneratedMethodCache cache)
     {
         this.repository = repository;
         this.IDOCRepository = IDOCRepository;
+        m_cache = cache;
     }
 
     /**
@@ -73,7 +81,11 @@ public class SAPJCoMethodGenerator extends SAPMethodGenerator
     @Override public MethodGenerator createMethodGenerator(BodyBlock request, BodyBlock response)
                                                     throws SAPConnectorException
     {
-        return new JCoMethodGenerator(request, response, repository, IDOCRepository);
+        MethodGenerator returnValue = new JCoMethodGenerator(request, response, repository,
+                                                             IDOCRepository);
+        returnValue.setCache(m_cache);
+
+        return returnValue;
     }
 
     /**
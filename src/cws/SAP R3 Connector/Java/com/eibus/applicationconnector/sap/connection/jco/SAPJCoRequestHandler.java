@@ -26,6 +26,8 @@ import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessage
 import com.eibus.applicationconnector.sap.idoc.TargetMappingFinder;
 import com.eibus.applicationconnector.sap.metadata.MetadataLoader;
 import com.eibus.applicationconnector.sap.metadata.SAPMethodGenerator;
+import com.eibus.applicationconnector.sap.soap.impl.IMethodImplementation;
+import com.eibus.applicationconnector.sap.soap.impl.MethodImplementationCache;
 import com.eibus.applicationconnector.sap.usermapping.IUserMapping;
 import com.eibus.applicationconnector.sap.usermapping.UserMappingFactory;
 import com.eibus.applicationconnector.sap.util.BACUtil;
@@ -246,9 +248,9 @@ public class SAPJCoRequestHandler
             LOG.debug("RequestNode is " + Node.writeToString(requestNode, true));
         }
 
-        int implementationNode = request.getMethodDefinition().getImplementation();
+        IMethodImplementation implementation = MethodImplementationCache.getImplementation(request);
 
-        String rfmName = XPathHelper.getStringValue(implementationNode, "RFMName", "");
+        String rfmName = implementation.getRFMName();
 
         if (!Util.isSet(rfmName))
         {
@@ -256,14 +258,14 @@ public class SAPJCoRequestHandler
                                             "RFMName");
         }
 
-        autoCommit = XPathHelper.getBooleanValue(implementationNode, "AutoCommit");
+        autoCommit = implementation.isAutoCommit();
 
         if (LOG.isDebugEnabled())
         {
             LOG.debug("RFC Name is " + rfmName + ", AutoCommit is " + autoCommit);
         }
 
-        autoRollBack = XPathHelper.getBooleanValue(implementationNode, "AutoRollback");
+        autoRollBack = implementation.isAutoRollback();
 
         // int requestNodeToBeSent = Node.getFirstChild(requestNode);
         // To set the root tag name to the RFM name from BO.BAPI name
@@ -303,25 +305,14 @@ public class SAPJCoRequestHandler
         }
 
         // System.out.println("Before sending IDOC " + doc.getNumUsedNodes(true));
-        MethodDefinition methodDefinition = request.getMethodDefinition();
-
-        
-        int implementationNode = methodDefinition.getImplementation();
+        IMethodImplementation implementation = MethodImplementationCache.getImplementation(request);
 
-        String mesType = XPathHelper.getStringValue(implementationNode, "MESType", "");
+        String mesType = implementation.getMESType();
         
         /**
          * Getting the IDOCType information from the method implementation. If IDOCType attribute is not found in the implementation then method name is taken as IDOC Type
          */
-        String idocType = XPathHelper.getStringValue(implementationNode, "IDOCType", "");
-        if("".equalsIgnoreCase(idocType))
-        { 
-        	if (LOG.isErrorEnabled())
-            {
-                LOG.error("IDOC Type information is not found in the method implementation. This could be a method generated from old isvp");
-            }
-        	 idocType = methodDefinition.getMethodName();
-        }
+        String idocType = implementation.getIDOCType();
 
         if (!Util.isSet(mesType))
         {
@@ -329,7 +320,7 @@ public class SAPJCoRequestHandler
                                             "Message type");
         }
 
-        String cimType = XPathHelper.getStringValue(implementationNode, "CIMType", "");
+        String cimType = implementation.getCIMType();
 
         if (!Util.isSet(cimType))
         {
@@ -390,10 +381,16 @@ public class SAPJCoRequestHandler
         if (m_methodGenerator == null)
         {
             m_methodGenerator = new SAPJCoMethodGenerator(m_config.getRepository(),
-                                                          m_config.getIDOCRepository());
+                                                          m_config.getIDOCRepository(),
+                                                          m_config.getGeneratedMethodCache());
         }
 
-        return m_methodGenerator.publishMethod(request, response);
+        boolean returnValue = m_methodGenerator.publishMethod(request, response);
+
+        // The implementations of republished methods must be parsed again.
+        MethodImplementationCache.clear();
+
+        return returnValue;
     }
 
     /**
@@ -414,10 +411,8 @@ public class SAPJCoRequestHandler
             LOG.debug("RequestNode is " + Node.writeToString(requestNode, true));
         }
 
-        MethodDefinition methodDefinition = request.getMethodDefinition();
-
-        int implementationNode = methodDefinition.getImplementation();
-        String rfmName = XPathHelper.getStringValue(implementationNode, "RFMName", "");
+        IMethodImplementation implementation = MethodImplementationCache.getImplementation(request);
+        String rfmName = implementation.getRFMName();
 
         if (!Util.isSet(rfmName))
         {
@@ -425,14 +420,14 @@ public class SAPJCoRequestHandler
                                             "RFMName");
         }
 
-        autoCommit = XPathHelper.getBooleanValue(implementationNode, "AutoCommit");
+        autoCommit = implementation.isAutoCommit();
 
         if (LOG.isDebugEnabled())
         {
             LOG.debug("AutoCommit is " + autoCommit);
         }
 
-        autoRollBack = XPathHelper.getBooleanValue(implementationNode, "AutoRollback");
+        autoRollBack = implementation.isAutoRollback();
 
         // This eliminates the LDAP method name tag from the request.
         // int requestNodeToBeSent = Node.getFirstChild(requestNode);
@@ -481,6 +476,7 @@ public class SAPJCoRequestHandler
 		session.setExtProduct(this.m_config.getXMIProductName());
 		XBPRequestManager xbpRequestManager = new XBPRequestManager() ;
 		session.setNomDocument(this.getDocument());
+		session.setRequestSender(requestSender);
 		xbpRequestManager.setM_config(m_config);
 		
 		xbpRequestManager.setSession(session);
@@ -523,6 +519,8 @@ public class SAPJCoRequestHandler
         {
             TargetMappingFinder mappingFinder = m_config.getTargetMappingFinder();
             mappingFinder.loadTargetMapppings();
+            // Changed mappings usually come with changed functions in SAP.
+            m_config.getFunctionTemplateCache().clear();
 
             return true;
         }
@@ -585,6 +583,36 @@ public class SAPJCoRequestHandler
                                                 idocNumber, idocStatus);
             }
         }
+        else if (methodName.equalsIgnoreCase("SendIDOCBatch"))
+        {
+            /*
+             * Sample Request <SendIDOCBatch>     <BatchSize>100</BatchSize>     <Documents>
+             * <Document IDOCType="ORDERS05" MESType="ORDERS">  <IDOC BEGIN="1">...</IDOC>
+             * </Document>     </Documents> </SendIDOCBatch> It sends the IDocs in batches and
+             * returns the result of every IDoc.
+             */
+            initializeClientAndRequestSender();
+
+            int batchSize = 0;
+            String batchSizeValue = XPathHelper.getStringValue(requestNode,
+                                                               "//SendIDOCBatch/BatchSize", "");
+
+            if (Util.isSet(batchSizeValue))
+            {
+                try
+                {
+                    batchSize = Integer.parseInt(batchSizeValue.trim());
+                }
+                catch (NumberFormatException e)
+                {
+                    throw new SAPConnectorException(e,
+                                                    SAPConnectorExceptionMessages.ERROR_INVALID_REQUEST_PARAMETERS);
+                }
+            }
+
+            requestSender.sendIDOCBatch(requestNode, responseNode, m_jcoCon, batchSize);
+            return true;
+        }
         else if (methodName.equals("GetSystemDate"))
         {
             Document doc = Node.getDocument(requestNode);
@@ -620,9 +648,13 @@ public class SAPJCoRequestHandler
         }
         else if("RFC_READ_TABLE".equals(methodName))
         {// This utility method is provided as it gets mostly used.
-        	this.handleRFCReqeust(request, response);
-        	BACUtil.formatRFC_READ_TABLEResponse(requestNode,responseNode);
-        	
+            initializeClientAndRequestSender();
+            // To remove the namespace common to all requests in Cordys.
+            Node.removeAttribute(requestNode, commonAttributeName);
+
+            // The table is read in pages, so large tables do not have to fit in one response.
+            new JCoTableReader(m_config, m_jcoCon).read(requestNode, responseNode);
+            return true;
         }
         
         return false;
@@ -17,8 +17,22 @@
  */
 package com.eibus.applicationconnector.sap.connection.jco;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.cordys.coe.util.xml.nom.XPathHelper;
 import com.eibus.applicationconnector.sap.Messages;
@@ -29,6 +43,7 @@ import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessage
 import com.eibus.applicationconnector.sap.request.OLEDBRequestSender;
 import com.eibus.applicationconnector.sap.util.BACUtil;
 import com.eibus.applicationconnector.sap.util.Util;
+import com.eibus.applicationconnector.sap.util.XMLCharacterFilter;
 import com.eibus.util.logger.CordysLogger;
 import com.eibus.xml.nom.Document;
 import com.eibus.xml.nom.Find;
@@ -36,8 +51,6 @@ import com.eibus.xml.nom.Node;
 import com.eibus.xml.xpath.XPathMetaInfo;
 import com.sap.mw.idoc.IDoc;
 import com.sap.mw.idoc.jco.JCoIDoc;
-import com.sap.mw.jco.IFunctionTemplate;
-import com.sap.mw.jco.IRepository;
 import com.sap.mw.jco.JCO;
 
 /**
@@ -52,23 +65,48 @@ import com.sap.mw.jco.JCO;
 public class SAPJCoRequestSender
 {
 	
-	private static final ThreadLocal <SimpleDateFormat> dateFormatter = new ThreadLocal<SimpleDateFormat>()
-	{
-		protected SimpleDateFormat initialValue()
-		{
-			return new SimpleDateFormat("yyyyMMdd");
-		}
-		
-	} ;
-	
-	private static final long MILLIS_IN_A_DAY = 1000*60*60*24; 
-	private static final Boolean BOOL_IDOC_GETIDOCNUMBER_BYDATE = System.getProperty("idoc.getidocnumber.bydate", "false").equals("true")?true:false ;
+	/**
+	 * Whether the RFC parameters are marshalled directly between NOM and JCo instead of going
+	 * through fromXML() and toXML(). Set rfc.marshalling.direct to false to use the XML strings.
+	 */
+	private static final boolean BOOL_RFC_MARSHALLING_DIRECT = !"false".equals(System.getProperty("rfc.marshalling.direct", "true"));
 	
 	
     /**
      * Holds the logger to use.
      */
     private static final CordysLogger LOG = CordysLogger.getCordysLogger(SAPJCoRequestSender.class);
+    /**
+     * Holds the number of IDocs per transmission of a batch request that does not specify it.
+     */
+    public static final int DEFAULT_IDOC_BATCH_SIZE = 100;
+    /**
+     * Holds the maximum number of batch requests whose IDocs are sent in the background at the
+     * same time. Set idoc.batch.transmitters to change it.
+     */
+    private static final int MAX_IDOC_TRANSMITTERS = Integer.getInteger("idoc.batch.transmitters", 8);
+    /**
+     * Holds the threads that send the IDocs of batch requests. Idle threads end after a minute.
+     * When all threads are busy a batch request sends its IDocs itself.
+     */
+    private static final ExecutorService IDOC_TRANSMITTERS = new ThreadPoolExecutor(0,
+                                                                                    MAX_IDOC_TRANSMITTERS,
+                                                                                    60,
+                                                                                    TimeUnit.SECONDS,
+                                                                                    new SynchronousQueue<Runnable>(),
+                                                                                    new ThreadFactory()
+        {
+            private final AtomicInteger m_number = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable)
+            {
+                Thread returnValue = new Thread(runnable,
+                                                "IDocTransmitter " + m_number.getAndIncrement());
+                returnValue.setDaemon(true);
+
+                return returnValue;
+            }
+        });
     /**
      * For inbound IDOCs, target system is always SAP.
      */
@@ -76,8 +114,6 @@ public class SAPJCoRequestSender
     /**
      * DOCUMENTME.
      */
-    private static String RFCREADTABLE_reqeustXML = new String("<RFC_READ_TABLE xmlns=\"http://connector/internal/rfcreadtable\"><QUERY_TABLE></QUERY_TABLE><ROWCOUNT></ROWCOUNT><OPTIONS></OPTIONS><FIELDS><item><FIELDNAME></FIELDNAME><OFFSET>000000</OFFSET><LENGTH>000000</LENGTH><TYPE/><FIELDTEXT/></item></FIELDS></RFC_READ_TABLE>");
-    
     private static String EDIDS_RFCREADTABLE_reqeustXML = new String("<RFC_READ_TABLE><DELIMITER>:</DELIMITER><QUERY_TABLE></QUERY_TABLE><ROWCOUNT></ROWCOUNT><OPTIONS><item><TEXT/></item></OPTIONS><FIELDS>" +
     		"<item><FIELDNAME></FIELDNAME><OFFSET>000000</OFFSET><LENGTH>000000</LENGTH><TYPE/><FIELDTEXT/></item>" +
     		"<item><FIELDNAME>STATXT</FIELDNAME></item>" +
@@ -91,10 +127,6 @@ public class SAPJCoRequestSender
      * DOCUMENTME.
      */
     private static String WDLDEDISTATUSSET_requestXML = new String("<WDLD_EDI_STATUS_SET><PI_STATUS/><PI_T_WDLSP><item><DOCNUM/></item></PI_T_WDLSP></WDLD_EDI_STATUS_SET>");
-    /**
-     * DOCUMENTME.
-     */
-    private static String controlTableName = "EDIDC";
     /**
      * DOCUMENTME.
      */
@@ -141,7 +173,7 @@ public class SAPJCoRequestSender
      * @param   toLogicalSystem    DOCUMENTME
      *
      * @return  : Returns the transaction id as a String and appends the transaction id in <tid/> and idoc number in <IDOCNum/> node under 
-     * responseNode
+     * responseNode. If the IDoc numbers are resolved asynchronously <IDOCNum/> is empty.
      *
      * @throws  SAPConnectorException
      */
@@ -151,8 +183,7 @@ public class SAPJCoRequestSender
     {
         if (oleDBRequestSender == null)
         {
-            oleDBRequestSender = new OLEDBRequestSender(SAPConnectorConstants.IDOC_TABLE_NAME,
-                                                        m_config.getOrganization());
+            oleDBRequestSender = createOLEDBRequestSender();
         }
 
         Document doc = Node.getDocument(requestNode);
@@ -262,8 +293,18 @@ public class SAPJCoRequestSender
             throw new SAPConnectorException(je,
                                             SAPConnectorExceptionMessages.ERROR_DISPATCHING_IDOC);
         }
-        idocNum = getIDOCNumberFromSAP(transactionID,mesType, client, doc);
-        idoc.setIDocNumber(idocNum);
+        IDocNumberResolver numberResolver = m_config.getIDocNumberResolver();
+
+        if (numberResolver.isAsynchronous())
+        {
+            // The IDOC is stored with the tid as number until the resolver has read the number.
+            idocNum = "";
+        }
+        else
+        {
+            idocNum = getIDOCNumberFromSAP(transactionID,mesType, client, doc);
+            idoc.setIDocNumber(idocNum);
+        }
         
         localStatus = "Dispatched";
         // Store the IDOC in the database.
@@ -274,12 +315,164 @@ public class SAPJCoRequestSender
         {
             LOG.debug(" IDOC saved in the database.");
         }
+
+        if (numberResolver.isAsynchronous())
+        {
+            numberResolver.resolveLater(transactionID, mesType);
+        }
        
         Node.createTextElement("tid", transactionID, responseNode);
         Node.createTextElement("IDOCNum", idocNum, responseNode);
         return transactionID;
     }
 
+    /**
+     * This method sends a batch of IDocs to the SAP server. The IDocs are grouped per IDoc type,
+     * extension and message type and every group is sent as IDoc.DocumentList transmissions of at
+     * most batchSize IDocs, each under its own transaction ID. The IDocs of the next transmission
+     * are converted while the previous one is being sent. Afterwards the IDoc numbers are read
+     * of all transmissions with one IDocNumberResolver call and the IDocs are stored in the
+     * database.
+     *
+     * <p>Sample request: &lt;SendIDOCBatch&gt; &lt;BatchSize&gt;100&lt;/BatchSize&gt;
+     * &lt;Documents&gt; &lt;Document IDOCType="ORDERS05" MESType="ORDERS" CIMType=""&gt;
+     * &lt;IDOC BEGIN="1"&gt;...&lt;/IDOC&gt; &lt;/Document&gt; &lt;/Documents&gt;
+     * &lt;/SendIDOCBatch&gt;. For every Document the response gets a Document element, in the
+     * same order, with the tid, IDOCNum, Status and Error of that IDoc. An IDoc that fails does
+     * not fail the other IDocs.</p>
+     *
+     * @param   requestNode   The batch request.
+     * @param   responseNode  The response node the results are added to.
+     * @param   client        The client for the current user.
+     * @param   batchSize     The maximum number of IDocs per transmission. If 0 or less
+     *                        DEFAULT_IDOC_BATCH_SIZE is used.
+     *
+     * @throws  SAPConnectorException  In case the request contains no IDocs.
+     */
+    public void sendIDOCBatch(int requestNode, int responseNode, JCO.Client client, int batchSize)
+                       throws SAPConnectorException
+    {
+        if (oleDBRequestSender == null)
+        {
+            oleDBRequestSender = createOLEDBRequestSender();
+        }
+
+        if (batchSize <= 0)
+        {
+            batchSize = DEFAULT_IDOC_BATCH_SIZE;
+        }
+
+        int[] documents = XPathHelper.selectNodes(requestNode, "//Documents/Document");
+
+        if (documents.length == 0)
+        {
+            throw new SAPConnectorException(SAPConnectorExceptionMessages.NO_IDOCS_IN_BATCH_REQUEST);
+        }
+
+        Document doc = Node.getDocument(requestNode);
+        boolean isPartnerUnicode = (client instanceof SAPJCoConnection) &&
+                                   ((SAPJCoConnection) client).isPartnerSystemUnicode();
+        int resultsNode = Node.createElement("Documents", responseNode);
+
+        Map<String, IDocBatch> openBatches = new LinkedHashMap<String, IDocBatch>();
+        List<IDocBatch> batches = new ArrayList<IDocBatch>();
+        IDocTransmitter transmitter = new IDocTransmitter(client);
+        transmitter.start();
+
+        try
+        {
+            for (int document : documents)
+            {
+                int resultNode = Node.createElement("Document", resultsNode);
+                String idocType = Node.getAttribute(document, "IDOCType", "");
+                String mesType = Node.getAttribute(document, "MESType", "");
+                String cimType = Node.getAttribute(document, "CIMType", "");
+                JCoIDoc.JCoDocument idoc;
+
+                try
+                {
+                    if (!Util.isSet(idocType) || !Util.isSet(mesType))
+                    {
+                        throw new SAPConnectorException(SAPConnectorExceptionMessages.COULD_NOT_FIND_TAG_IN_IMPLEMENTATION,
+                                                        "IDOCType/MESType");
+                    }
+
+                    idoc = createIDOC(m_config.getIDOCRepository(), idocType, cimType, document,
+                                      isPartnerUnicode);
+
+                    try
+                    {
+                        idoc.checkSyntax();
+                    }
+                    catch (IDoc.SyntaxException se)
+                    {
+                        throw new SAPConnectorException(se,
+                                                        SAPConnectorExceptionMessages.ERROR_CHECKING_IDOC_SYNTAX,
+                                                        se.getFieldName());
+                    }
+                }
+                catch (SAPConnectorException e)
+                {
+                    setIDocResult(resultNode, "", "", "Error", e.getLocalizedMessage());
+                    continue;
+                }
+                catch (JCO.Exception je)
+                {
+                    setIDocResult(resultNode, "", "", "Error", je.getMessage());
+                    continue;
+                }
+
+                String key = idocType + "/" + cimType + "/" + mesType;
+                IDocBatch batch = openBatches.get(key);
+
+                if (batch == null)
+                {
+                    batch = new IDocBatch(createIDOCList(idocType, cimType), mesType);
+                    openBatches.put(key, batch);
+                }
+
+                batch.add(idoc, document, resultNode);
+
+                if (batch.size() >= batchSize)
+                {
+                    openBatches.remove(key);
+                    batches.add(batch);
+                    transmitter.transmit(batch);
+                }
+            }
+
+            for (IDocBatch batch : openBatches.values())
+            {
+                batches.add(batch);
+                transmitter.transmit(batch);
+            }
+        }
+        finally
+        {
+            transmitter.finish();
+        }
+
+        // The numbers of all transmissions are read together.
+        Map<String, String> transactions = new LinkedHashMap<String, String>();
+
+        for (IDocBatch batch : batches)
+        {
+            if (batch.m_sent)
+            {
+                transactions.put(batch.m_tid, batch.m_mesType);
+            }
+        }
+
+        Map<String, List<String>> idocNumbers = m_config.getIDocNumberResolver().resolve(transactions,
+                                                                                          client,
+                                                                                          doc);
+
+        for (IDocBatch batch : batches)
+        {
+            completeIDOCBatch(batch, idocNumbers.get(batch.m_tid), doc);
+        }
+    }
+
     /**
      * This method send the request to SAP backend and return the response thus it got form SAP
      * backend.It parses the incoming RFC request and appropriately set the import and table
@@ -321,7 +514,7 @@ public class SAPJCoRequestSender
             LOG.debug("Creating JCO.Request object.");
         }
 
-        JCO.Request sapRequest = createRequest(m_config.getRepository(), rfcName);
+        JCO.Request sapRequest = createRequest(rfcName);
 
         if (LOG.isDebugEnabled())
         {
@@ -362,8 +555,7 @@ public class SAPJCoRequestSender
                 }
             }
 
-            String requestString = Node.writeToString(requestNode, false);
-            sapRequest.fromXML(requestString);
+            fillRequest(sapRequest, requestNode);
 
             if (LOG.isDebugEnabled())
             {
@@ -382,7 +574,7 @@ public class SAPJCoRequestSender
 
         JCO.Response sapResponse = executeFunction(client, sapRequest);
         // Not checking the RETURN parameter. Returning the response as it is.
-        int responseNode = convertSAPResponseToXML(sapResponse, doc, false);
+        int responseNode = convertSAPResponseToXML(sapResponse, doc, false, responseNodeName);
 
         // Removing RETURN parameter from the response
         Node.setName(responseNode, responseNodeName);
@@ -419,8 +611,41 @@ public class SAPJCoRequestSender
             methodTagName = Node.getName(requestNode);
         }
 
-        String requestString = Node.writeToString(requestNode, false);
-        return sendRFCRequestForInternalPurpose(requestString, client, rfcName, methodTagName, doc);
+        if (!BOOL_RFC_MARSHALLING_DIRECT)
+        {
+            String requestString = Node.writeToString(requestNode, false);
+            return sendRFCRequestForInternalPurpose(requestString, client, rfcName, methodTagName,
+                                                    doc);
+        }
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Creating JCO.Request object.");
+        }
+
+        JCO.Request sapRequest = createRequest(rfcName);
+
+        try
+        {
+            JCoNOMMarshaller.fillRecord(sapRequest, requestNode);
+
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Request going to SAP " + sapRequest.toXML());
+            }
+        }
+        catch (JCO.ConversionException jce)
+        {
+            LOG.warn(jce, Messages.WRN_CONVERT);
+        }
+        catch (Exception rte)
+        {
+            throw new SAPConnectorException(rte,
+                                            SAPConnectorExceptionMessages.ERROR_TRANSFORMING_REQUEST_TO_XML,
+                                            Node.writeToString(requestNode, false));
+        }
+
+        return executeRequestForInternalPurpose(sapRequest, client, methodTagName, doc);
     }
 
     /**
@@ -443,17 +668,12 @@ public class SAPJCoRequestSender
                                                 Document doc)
                                          throws SAPConnectorException
     {
-        // To bring it in sync with BC response
-        String responseNodeName = methodTagName + ".Response";
-        // String requestString = Node.writeToString(requestNode,false);
-        StringBuffer errorMessage = new StringBuffer();
-
         if (LOG.isDebugEnabled())
         {
             LOG.debug("Creating JCO.Request object.");
         }
 
-        JCO.Request sapRequest = createRequest(m_config.getRepository(), rfcName);
+        JCO.Request sapRequest = createRequest(rfcName);
 
         if (LOG.isDebugEnabled())
         {
@@ -480,6 +700,29 @@ public class SAPJCoRequestSender
                                             requestString);
         }
 
+        return executeRequestForInternalPurpose(sapRequest, client, methodTagName, doc);
+    }
+
+    /**
+     * This method executes the filled request and checks the RETURN parameter. If there is an
+     * error, it throws a SOAP Fault.
+     *
+     * @param   sapRequest     The request to execute.
+     * @param   client         The client to execute the request with.
+     * @param   methodTagName  The name of the method tag, used to name the response.
+     * @param   doc            The document to create the response in.
+     *
+     * @return  The response node.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    private int executeRequestForInternalPurpose(JCO.Request sapRequest, JCO.Client client,
+                                                 String methodTagName, Document doc)
+                                          throws SAPConnectorException
+    {
+        // To bring it in sync with BC response
+        String responseNodeName = methodTagName + ".Response";
+        StringBuffer errorMessage = new StringBuffer();
         JCO.Response sapResponse;
 
         long start = System.currentTimeMillis();
@@ -500,7 +743,8 @@ public class SAPJCoRequestSender
             // Not checking the RETURN parameter. Returning the response as it is.
             if (isFunctionCallSuccessful(sapResponse, errorMessage))
             {
-                int responseNode = convertSAPResponseToXML(sapResponse, doc, true);
+                int responseNode = convertSAPResponseToXML(sapResponse, doc, true,
+                                                           responseNodeName);
                 // Removing RETURN parameter from the response
                 BACUtil.deleteNode(Find.firstMatch(responseNode,
                                                    "<" + Node.getName(responseNode) + "><RETURN>"));
@@ -557,7 +801,7 @@ public class SAPJCoRequestSender
             LOG.debug(" Creating JCO.Request object.");
         }
 
-        JCO.Request sapRequest = createRequest(m_config.getRepository(), rfcName);
+        JCO.Request sapRequest = createRequest(rfcName);
 
         if (LOG.isDebugEnabled())
         {
@@ -687,8 +931,7 @@ public class SAPJCoRequestSender
     {
         if (oleDBRequestSender == null)
         {
-            oleDBRequestSender = new OLEDBRequestSender(SAPConnectorConstants.IDOC_TABLE_NAME,
-                                                        m_config.getOrganization());
+            oleDBRequestSender = createOLEDBRequestSender();
         }
         return oleDBRequestSender.updateIDOCStatus(idocNumber,m_config.getServiceGroup(), idocStatus, doc);
     }
@@ -751,48 +994,6 @@ public class SAPJCoRequestSender
         }
     }
 
-    /**
-     * This method adds child segements to an IDOC based on its metadata. For each segment added,
-     * fields are filled from the request node.
-     *
-     * @param   parentSegment          DOCUMENTME
-     * @param   parentSegmentMetadata  DOCUMENTME
-     * @param   correspondingNode      DOCUMENTME
-     *
-     * @throws  JCO.Exception  In case of any exceptions
-     */
-    private void addChildSegments(IDoc.Segment parentSegment,
-                                  IDoc.SegmentMetaData parentSegmentMetadata, int correspondingNode)
-                           throws JCO.Exception
-    {
-        int noOfChildSegments = parentSegmentMetadata.getNumChildren();
-
-        // For each fhild segment
-        for (int i = 0; i < noOfChildSegments; i++)
-        {
-            IDoc.SegmentMetaData childSegmentMetadata = parentSegmentMetadata.getChild(i);
-            String childSegmentType = childSegmentMetadata.getType();
-            String name_correspondingNode = Node.getName(correspondingNode);
-            int[] segmentNodes = Find.match(correspondingNode,
-                                            "<" + name_correspondingNode + "><" + childSegmentType +
-                                            ">");
-            int number_segmentNodes = segmentNodes.length;
-
-            for (int j = 0; j < number_segmentNodes; j++)
-            {
-                int segmentNode = segmentNodes[j];
-                JCoIDoc.JCoSegment childSegment = (JCoIDoc.JCoSegment) parentSegment.addChild(childSegmentType);
-                addChildSegments(childSegment, childSegmentMetadata, segmentNode);
-                // System.out.println(Node.writeToString(segmentNode, true));
-                childSegment.fromXML(Node.writeToString(segmentNode, false));
-                // If a segmentXML nodes has child segment XML nodes also, fromXML method is
-                // throwing an exception. i.e if the segmentXML node is nested, it is throwing an
-                // exception. Delete a segmentNode after fromXML.
-                BACUtil.deleteNode(segmentNode);
-            }
-        }
-    }
-
     /**
      * This method adds child segements to add an IDOC based on its metadata. Only after that
      * fromXML method frames the request.
@@ -818,15 +1019,17 @@ public class SAPJCoRequestSender
     /**
      * This method converts the JCO.Response object from SAP into an XML Node and returns it.
      *
-     * @param   sapResponse  DOCUMENTME
-     * @param   doc          DOCUMENTME
+     * @param   sapResponse           DOCUMENTME
+     * @param   doc                   DOCUMENTME
+     * @param   stripIllegalXMLChars  Whether or not to remove characters that are invalid in XML.
+     * @param   responseNodeName      The name for the response node.
      *
      * @return  DOCUMENTME
      *
      * @throws  SAPConnectorException  In case of any exceptions
      */
     private int convertSAPResponseToXML(JCO.Response sapResponse, Document doc, 
-            boolean stripIllegalXMLChars) throws SAPConnectorException
+            boolean stripIllegalXMLChars, String responseNodeName) throws SAPConnectorException
     {
         if (LOG.isDebugEnabled())
         {
@@ -835,6 +1038,19 @@ public class SAPJCoRequestSender
 
         try
         {
+            if (BOOL_RFC_MARSHALLING_DIRECT)
+            {
+                int responseNode = JCoNOMMarshaller.toNOM(sapResponse, doc, responseNodeName,
+                                                          stripIllegalXMLChars);
+
+                if (LOG.isDebugEnabled())
+                {
+                    LOG.debug("Response from SAP converted to XML:" +
+                              Node.writeToString(responseNode, false));
+                }
+                return responseNode;
+            }
+
             String sapResponseXML = "";
             if (stripIllegalXMLChars == true)
             {
@@ -861,6 +1077,72 @@ public class SAPJCoRequestSender
         }
     }
 
+    /**
+     * This method sets the IDoc numbers of a transmission and stores the IDocs in the database.
+     *
+     * @param   batch        The transmitted batch.
+     * @param   idocNumbers  The IDoc numbers of the transmission in ascending order. null if the
+     *                       batch was not sent.
+     * @param   doc          The document to use.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    private void completeIDOCBatch(IDocBatch batch, List<String> idocNumbers, Document doc)
+                            throws SAPConnectorException
+    {
+        // IDocs of one transmission get ascending numbers in the order of the list.
+        if ((idocNumbers != null) && (idocNumbers.size() != batch.size()))
+        {
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Found " + idocNumbers.size() + " IDOC numbers for " + batch.size() +
+                          " IDOCs of transaction " + batch.m_tid);
+            }
+            idocNumbers = null;
+        }
+
+        for (int i = 0; i < batch.size(); i++)
+        {
+            JCoIDoc.JCoDocument idoc = batch.m_idocs.get(i);
+            String idocNum = "";
+
+            if (idocNumbers != null)
+            {
+                idocNum = idocNumbers.get(i);
+                idoc.setIDocNumber(idocNum);
+            }
+
+            if (batch.m_tid != null)
+            {
+                oleDBRequestSender.saveIDOCInDataBase(idoc, batch.m_requestNodes.get(i), batch.m_tid,
+                                                      batch.m_localStatus, batch.m_errorMessage,
+                                                      IDOCTargetSystem, m_config.getServiceGroup(),
+                                                      doc);
+            }
+
+            setIDocResult(batch.m_resultNodes.get(i), batch.m_tid, idocNum, batch.m_localStatus,
+                          batch.m_errorMessage);
+        }
+    }
+
+    /**
+     * This method creates an empty IDoc list for the given IDoc type.
+     *
+     * @param   idocType  The IDoc type.
+     * @param   cimType   The extension of the IDoc type.
+     *
+     * @return  The IDoc list.
+     */
+    private IDoc.DocumentList createIDOCList(String idocType, String cimType)
+    {
+        if (Util.isSet(cimType))
+        {
+            return JCoIDoc.createDocumentList(m_config.getIDOCRepository(), idocType, cimType);
+        }
+
+        return JCoIDoc.createDocumentList(m_config.getIDOCRepository(), idocType);
+    }
+
     /**
      * This method creates an IDOC with the given idoctype and cimtype. And sets the values for
      * fields in the control record and data record from the requestNode. And then returns the IDOC.
@@ -893,15 +1175,17 @@ public class SAPJCoRequestSender
         
         String controlStrucreName = idoc.getTableStructureName();       
         int idocNode = Node.getFirstChildElement(requestNode);
-        int clone_idocNode = Node.duplicate(idocNode);    
-
-        int controlRecordNode = Node.getElement(clone_idocNode, controlStrucreName);        
+        int requestControlRecordNode = Node.getElement(idocNode, controlStrucreName);        
 
-        if (controlRecordNode == 0)
+        if (requestControlRecordNode == 0)
         {
             throw new SAPConnectorException(SAPConnectorExceptionMessages.CONTROL_RECORD_NOT_FOUND_IN_THE_REQUEST);
         }
 
+        // Only the control record is copied, because it may be renamed. The segments are read
+        // from the request itself.
+        int controlRecordNode = Node.duplicate(requestControlRecordNode);
+
         try
         {
             // Fill up control record
@@ -912,52 +1196,72 @@ public class SAPJCoRequestSender
         	
             idoc.fromXML(Node.writeToString(controlRecordNode, false));         
             // Add segments and fill up each segment
-            IDoc.Segment rootSegment = idoc.getRootSegment();
-            IDoc.SegmentMetaData rootSegmentMetadata = rootSegment.getSegmentMetaData();
-            BACUtil.deleteNode(controlRecordNode);
-            addChildSegments(rootSegment, rootSegmentMetadata, clone_idocNode);
+            IDocSegmentBuilder.addSegments(idoc.getRootSegment(), idocNode);
         }
         catch (JCO.Exception je)
         {
             throw new SAPConnectorException(je,
                                             SAPConnectorExceptionMessages.ERROR_SETTING_REQUEST_PARAMETERS_FOR_THE_IDOC);
         }
-        BACUtil.deleteNode(clone_idocNode);
+        finally
+        {
+            BACUtil.deleteNode(controlRecordNode);
+        }
         return idoc;
     }
 
     /**
-     * This method creates a reqest object for the given RFC.
+     * This method sets the request parameters from the given request node. Depending on the
+     * rfc.marshalling.direct property the values are written directly into the JCo fields or the
+     * node is serialized and passed to fromXML().
+     *
+     * @param  sapRequest   The request to fill.
+     * @param  requestNode  The request node holding the parameters.
+     */
+    private void fillRequest(JCO.Request sapRequest, int requestNode)
+    {
+        if (BOOL_RFC_MARSHALLING_DIRECT)
+        {
+            JCoNOMMarshaller.fillRecord(sapRequest, requestNode);
+        }
+        else
+        {
+            sapRequest.fromXML(Node.writeToString(requestNode, false));
+        }
+    }
+
+    /**
+     * This method creates the sender that stores the IDocs in the database. Subclasses can
+     * override it to store the IDocs somewhere else.
+     *
+     * @return  The sender for the IDoc table.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    protected OLEDBRequestSender createOLEDBRequestSender()
+                                                   throws SAPConnectorException
+    {
+        OLEDBRequestSender returnValue = new OLEDBRequestSender(SAPConnectorConstants.IDOC_TABLE_NAME,
+                                                                m_config.getOrganization());
+        returnValue.setWriteBehind(m_config.getIDocWriteBehind());
+
+        return returnValue;
+    }
+
+    /**
+     * This method creates a reqest object for the given RFC. The function template is taken from
+     * the function template cache, so only the first call for an RFC goes to the repository.
      *
-     * @param   repository  DOCUMENTME
-     * @param   rfcName     DOCUMENTME
+     * @param   rfcName  DOCUMENTME
      *
      * @return  DOCUMENTME
      *
      * @throws  SAPConnectorException  In case of any exceptions
      */
-    private JCO.Request createRequest(IRepository repository, String rfcName)
+    private JCO.Request createRequest(String rfcName)
                                throws SAPConnectorException
     {
-        String rfcNameInUpperCase = rfcName.toUpperCase();
-
-        try
-        {
-            IFunctionTemplate ft = repository.getFunctionTemplate(rfcNameInUpperCase);
-
-            if (ft == null)
-            {
-                throw new Exception("Function Template could not be retrieved for the rfc " +
-                                    rfcNameInUpperCase);
-            }
-            return ft.getRequest();
-        }
-        catch (Exception e)
-        {
-            throw new SAPConnectorException(e,
-                                            SAPConnectorExceptionMessages.ERROR_GETTING_FUNCTION_TEMPLATE,
-                                            rfcName);
-        }
+        return m_config.getFunctionTemplateCache().createRequest(rfcName);
     }
 
     /**
@@ -1005,102 +1309,24 @@ public class SAPJCoRequestSender
                                         Document doc)
                                  throws SAPConnectorException
     {
-        String returnValue = null;
-        int requestNode = 0;
-
-        try
-        {
-            requestNode = doc.parseString(RFCREADTABLE_reqeustXML);
-        }
-        catch (Exception xe)
-        {
-            throw new SAPConnectorException(xe,
-                                            SAPConnectorExceptionMessages.ERROR_PARSING_TEMPLATE,
-                                            "RFCREADTABLE_reqeustXML");
-        }
+        List<String> idocNumbers = m_config.getIDocNumberResolver()
+                                           .resolve(Collections.singletonMap(transactionID,
+                                                                             mesType), client, doc)
+                                           .get(transactionID);
+        String returnValue = IDocNumberResolver.selectNumber(transactionID, idocNumbers);
 
+        if (returnValue == null)
         {
-//        /*This code will be obselete*/
-//        int queryTableNode = Find.firstMatch(requestNode, "<RFC_READ_TABLE><QUERY_TABLE>");
-//        doc.createText(controlTableName, queryTableNode);
-//
-//        int fieldNameNode = Find.firstMatch(requestNode,
-//                                            "<RFC_READ_TABLE><FIELDS><item><FIELDNAME>");
-//        doc.createText("DOCNUM", fieldNameNode);
-//
-//        String whereClause = "RCVLAD = '" + transactionID + "'";
-//        int TEXTNode = Find.firstMatch(requestNode, "<RFC_READ_TABLE><OPTIONS><item><TEXT>");
-//        doc.createText(whereClause, TEXTNode);
-//        
-//        /**/
-        }
-        {
-        	//int queryTableNode = Node.getElement(requestNode,"QUERY_TABLE");
-        	Node.setDataElement(requestNode, "QUERY_TABLE", controlTableName);
-        	Node.setDataElement(requestNode, "ROWCOUNT", "1");
-        	
-        	int queryFieldsNode = Node.getElement(requestNode,"FIELDS");
-        	/*
-        	 * Get the query item
-        	 */
-        	int item1 = Node.getElement(queryFieldsNode,"item");
-        	Node.setDataElement(item1,"FIELDNAME","DOCNUM");
-        	
-        	/*
-        	 * Form the where clause now.
-        	 */
-        	int optionsNode = Node.getElement(requestNode,"OPTIONS");
-        	int option_messagetype = Node.createElement("item",optionsNode);
-        	String whereMessageTypeString = "MESTYP ='"+mesType+"'" ;
-        	Node.setDataElement(option_messagetype,"TEXT",whereMessageTypeString);
-        	
-        	if(BOOL_IDOC_GETIDOCNUMBER_BYDATE)
-			{
-				int option_credat = Node.createElement("item", optionsNode);
-				Date currentDate = new Date() ;		
-				String todaysFormatedDate = dateFormatter.get().format(currentDate.getTime()+MILLIS_IN_A_DAY) ;
-				String yesterdaysFormatedDate = dateFormatter.get().format(currentDate.getTime()) ;
-				String tommorowsFormatedDate = dateFormatter.get().format(currentDate.getTime()-MILLIS_IN_A_DAY) ;
-				
-				String whereCREDATString = "and CREDAT IN ('"+todaysFormatedDate+"','"+tommorowsFormatedDate+"','"+yesterdaysFormatedDate+"')" ;
-				Node.setDataElement(option_credat, "TEXT",
-						whereCREDATString);
-			}
-        	
-        	int option_rcvlad = Node.createElement("item",optionsNode);
-        	String whereRCVLADEqualsString = "and RCVLAD = '" + transactionID + "'";
-        	Node.setDataElement(option_rcvlad,"TEXT",whereRCVLADEqualsString);        	
-        	
-        	
-        }    
-        int responseNode = 0;
-
-        try
-        {
-            responseNode = sendRFCRequestForInternalPurpose(requestNode, client, "RFC_READ_TABLE",
-                                                            null, doc);
-
-            // System.out.println(Node.writeToString(responseNode, true));
-            int WANode = Find.firstMatch(responseNode, "<RFC_READ_TABLE.Response><DATA><item><WA>");
-            returnValue = Node.getDataWithDefault(WANode, "");
-
-            if (returnValue.equals(""))
-            {
-                if (LOG.isDebugEnabled())
-                {
-                    LOG.debug("IDOC Number not found in SAP.");
-                }
-            }
-
             if (LOG.isDebugEnabled())
             {
-                LOG.debug("IDOC Number is " + returnValue);
+                LOG.debug("IDOC Number not found in SAP.");
             }
+            return "";
         }
-        finally
+
+        if (LOG.isDebugEnabled())
         {
-            BACUtil.deleteNode(requestNode);
-            BACUtil.deleteNode(responseNode);
+            LOG.debug("IDOC Number is " + returnValue);
         }
         return returnValue;
     }
@@ -1258,36 +1484,23 @@ public class SAPJCoRequestSender
     
     
 
-  /**
-     *http://cse-mjmcl.cse.bris.ac.uk/blog/2007/02/14/1171465494443.html   
-     * This method ensures that the output String has only
-     * valid XML unicode characters as specified by the
-     * XML 1.0 standard. For reference, please see
-     * <a href=â€�http://www.w3.org/TR/2000/REC-xml-20001006#NT-Charâ€�>the
-     * standard</a>. This method will return an empty
-     * String if the input is null or empty.
-     *
-     * @param in The String whose non-valid characters we want to remove.
-     * @return The in String, stripped of non-valid characters.
+    /**
+     * This method ensures that the output String has only valid XML unicode characters as
+     * specified by the XML 1.0 standard. Characters outside the Basic Multilingual Plane are kept
+     * when they are encoded as a valid surrogate pair. If the input is clean it is returned as is.
+     * This method will return an empty String if the input is null.
+     *
+     * @param   in  The String whose non-valid characters we want to remove.
+     *
+     * @return  The in String, stripped of non-valid characters.
+     *
+     * @see     XMLCharacterFilter#strip(String)
      */
-    public String stripNonValidXMLCharacters(String in) {
-        StringBuffer out = new StringBuffer(); // Used to hold the output.
-        char current; // Used to reference the current character.
-
-        if (in == null || ("".equals(in))) return ""; // vacancy test.
-        for (int i = 0; i < in.length(); i++) {
-            current = in.charAt(i); // NOTE: No IndexOutOfBoundsException caught here; it should not happen.
-            if ((current == 0x9) ||
-                (current == 0xA) ||
-                (current == 0xD) ||
-                ((current >= 0x20) && (current <= 0xD7FF)) ||
-                ((current >= 0xE000) && (current <= 0xFFFD)) ||
-                ((current >= 0x10000) && (current <= 0x10FFFF)))
-                out.append(current);
-        }
-        return out.toString();
-    }   
-    
+    public static String stripNonValidXMLCharacters(String in)
+    {
+        return XMLCharacterFilter.strip(in);
+    }
+
     /** Splits the item data and adds them a nodes. The root node then would be retured to the calling code
      * @param itemNode
      */
@@ -1328,4 +1541,297 @@ public class SAPJCoRequestSender
     		
     	}
     }
+
+    /**
+     * This method fills the result of one IDoc of a batch.
+     *
+     * @param  resultNode    The result node.
+     * @param  tid           The transaction ID.
+     * @param  idocNum       The IDoc number.
+     * @param  localStatus   The status of the IDoc.
+     * @param  errorMessage  The error message.
+     */
+    private static void setIDocResult(int resultNode, String tid, String idocNum,
+                                      String localStatus, String errorMessage)
+    {
+        Node.createTextElement("tid", (tid == null) ? "" : tid, resultNode);
+        Node.createTextElement("IDOCNum", idocNum, resultNode);
+        Node.createTextElement("Status", localStatus, resultNode);
+        Node.createTextElement("Error", errorMessage, resultNode);
+    }
+
+    /**
+     * Holds the IDocs that are sent in one transmission.
+     */
+    private static class IDocBatch
+    {
+        /**
+         * Holds the error message if the transmission failed.
+         */
+        private String m_errorMessage = "";
+        /**
+         * Holds the IDocs in the order of the request.
+         */
+        private final List<JCoIDoc.JCoDocument> m_idocs = new ArrayList<JCoIDoc.JCoDocument>();
+        /**
+         * Holds the list that is sent.
+         */
+        private final IDoc.DocumentList m_idocList;
+        /**
+         * Holds the status of the IDocs after the transmission.
+         */
+        private String m_localStatus;
+        /**
+         * Holds the message type of the IDocs.
+         */
+        private final String m_mesType;
+        /**
+         * Holds the request node of every IDoc.
+         */
+        private final List<Integer> m_requestNodes = new ArrayList<Integer>();
+        /**
+         * Holds the result node of every IDoc.
+         */
+        private final List<Integer> m_resultNodes = new ArrayList<Integer>();
+        /**
+         * Indicates whether the IDocs arrived in SAP, so their numbers can be read.
+         */
+        private boolean m_sent;
+        /**
+         * Holds the transaction ID of the transmission.
+         */
+        private String m_tid;
+
+        /**
+         * Creates a new IDocBatch object.
+         *
+         * @param  idocList  The empty list to send.
+         * @param  mesType   The message type of the IDocs.
+         */
+        IDocBatch(IDoc.DocumentList idocList, String mesType)
+        {
+            m_idocList = idocList;
+            m_mesType = mesType;
+        }
+
+        /**
+         * This method adds an IDoc to the batch.
+         *
+         * @param  idoc         The IDoc.
+         * @param  requestNode  The request node of the IDoc.
+         * @param  resultNode   The result node of the IDoc.
+         */
+        void add(JCoIDoc.JCoDocument idoc, int requestNode, int resultNode)
+        {
+            m_idocList.add(idoc);
+            m_idocs.add(idoc);
+            m_requestNodes.add(requestNode);
+            m_resultNodes.add(resultNode);
+        }
+
+        /**
+         * This method returns the number of IDocs in the batch.
+         *
+         * @return  The number of IDocs.
+         */
+        int size()
+        {
+            return m_idocs.size();
+        }
+    }
+
+    /**
+     * Sends the batches of a batch request on a thread of IDOC_TRANSMITTERS, so the next batch can
+     * be converted while the previous one is being sent. It only uses the JCo client; the NOM
+     * nodes are left to the thread that handles the request. When no transmitter thread is free
+     * the batches are sent by the thread that handles the request.
+     */
+    private static class IDocTransmitter
+        implements Runnable
+    {
+        /**
+         * Marks the end of the batches.
+         */
+        private static final IDocBatch END = new IDocBatch(null, null);
+        /**
+         * Holds the client to send with.
+         */
+        private final JCO.Client m_client;
+        /**
+         * Is released when the last batch is sent.
+         */
+        private final CountDownLatch m_done = new CountDownLatch(1);
+        /**
+         * Holds the task on the transmitter thread, or null if the batches are sent directly.
+         */
+        private Future<?> m_future;
+        /**
+         * Holds the batches to send. One batch is sent while the next one is converted.
+         */
+        private final BlockingQueue<IDocBatch> m_queue = new ArrayBlockingQueue<IDocBatch>(1);
+
+        /**
+         * Creates a new IDocTransmitter object.
+         *
+         * @param  client  The client to send with.
+         */
+        IDocTransmitter(JCO.Client client)
+        {
+            m_client = client;
+        }
+
+        /**
+         * This method waits until all batches are sent.
+         */
+        public void finish()
+        {
+            if (m_future == null)
+            {
+                return;
+            }
+
+            try
+            {
+                m_queue.put(END);
+                m_done.await();
+            }
+            catch (InterruptedException e)
+            {
+                m_future.cancel(true);
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * @see  java.lang.Runnable#run()
+         */
+        public void run()
+        {
+            try
+            {
+                IDocBatch batch;
+
+                while ((batch = m_queue.take()) != END)
+                {
+                    send(batch);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                // The request was aborted.
+            }
+            finally
+            {
+                m_done.countDown();
+            }
+        }
+
+        /**
+         * This method starts sending on a transmitter thread. If none is free the batches are
+         * sent directly by transmit().
+         */
+        public void start()
+        {
+            try
+            {
+                m_future = IDOC_TRANSMITTERS.submit(this);
+            }
+            catch (RejectedExecutionException e)
+            {
+                if (LOG.isDebugEnabled())
+                {
+                    LOG.debug("No IDoc transmitter thread available, sending the batches directly");
+                }
+            }
+        }
+
+        /**
+         * This method hands a batch to the transmitter thread, or sends it if there is none.
+         *
+         * @param   batch  The batch to send.
+         *
+         * @throws  SAPConnectorException  In case the thread was interrupted.
+         */
+        public void transmit(IDocBatch batch)
+                      throws SAPConnectorException
+        {
+            if (m_future == null)
+            {
+                send(batch);
+                return;
+            }
+
+            try
+            {
+                m_queue.put(batch);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new SAPConnectorException(e,
+                                                SAPConnectorExceptionMessages.ERROR_HANDLING_IDOC_REQUEST);
+            }
+        }
+
+        /**
+         * This method sends the batch with a new transaction ID and confirms it. The outcome is
+         * stored in the batch.
+         *
+         * @param  batch  The batch to send.
+         */
+        private void send(IDocBatch batch)
+        {
+            try
+            {
+                batch.m_tid = m_client.createTID();
+            }
+            catch (Exception e)
+            {
+                batch.m_localStatus = "Error";
+                batch.m_errorMessage = "An exception occured while creating the transaction ID, " +
+                                       e.getMessage();
+                LOG.error(batch.m_errorMessage);
+                return;
+            }
+
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Sending " + batch.size() + " IDOCs with transaction ID " + batch.m_tid);
+            }
+
+            try
+            {
+                for (JCoIDoc.JCoDocument idoc : batch.m_idocs)
+                {
+                    // set tid in the field RCVLAD to get the IDOC numbers generated.
+                    idoc.setRecipientLogicalAddress(batch.m_tid);
+                }
+
+                m_client.send(batch.m_idocList, batch.m_tid);
+            }
+            catch (Exception e)
+            {
+                batch.m_localStatus = "Error while dispatching.";
+                batch.m_errorMessage = "An exception occured while sending the IDOC to the SAP server, " +
+                                       e.getMessage();
+                LOG.error(batch.m_errorMessage);
+                return;
+            }
+
+            batch.m_sent = true;
+
+            try
+            {
+                m_client.confirmTID(batch.m_tid);
+                batch.m_localStatus = "Dispatched";
+            }
+            catch (Exception e)
+            {
+                batch.m_localStatus = "Error";
+                batch.m_errorMessage = " An exception occured while confirming the transaction ID, " +
+                                       e.getMessage();
+                LOG.error(batch.m_errorMessage);
+            }
+        }
+    }
 }
@@ -0,0 +1,555 @@
+/**
+ * Copyright 2005 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.connection.jco;
+
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+
+import com.eibus.util.logger.CordysLogger;
+
+import com.sap.mw.jco.JCO;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Connection pool with a sub pool per user. Unlike the SAPJCoConnectionManager there is no single
+ * monitor: a request only locks the sub pool of its own user, and only when no idle connection for
+ * the user exists the shared capacity is touched. The number of connections in use is bounded by
+ * a fair semaphore, so waiting requests are served in arrival order and give up after the
+ * configured timeout. When the pool is full the least recently used idle connection of another
+ * user is closed to make room; connections that are in use are never taken away. Dead idle
+ * connections are removed by a background task instead of calling isAlive() on every borrow.
+ *
+ * @author  pgussow
+ */
+public class SAPJCoUserConnectionPool extends SAPJCoConnectionManager
+{
+    /**
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(SAPJCoUserConnectionPool.class);
+    /**
+     * Holds all connections created by this pool, idle or in use.
+     */
+    private final Set<SAPJCoConnection> m_allConnections = Collections.newSetFromMap(new ConcurrentHashMap<SAPJCoConnection, Boolean>());
+    /**
+     * Guards m_totalConnections and the choice between creating and evicting a connection.
+     */
+    private final Object m_capacityLock = new Object();
+    /**
+     * Is notified when a connection becomes idle or capacity is freed.
+     */
+    private final Object m_idleSignal = new Object();
+    /**
+     * Holds the number of times a connection became idle or capacity was freed. Guarded by
+     * m_idleSignal.
+     */
+    private long m_idleVersion;
+    /**
+     * Holds the maximum number of connections.
+     */
+    private final int m_maxConnections;
+    /**
+     * Holds the number of connections that are in use or being created.
+     */
+    private final Semaphore m_permits;
+    /**
+     * Holds the number of connections that exist or are being created.
+     */
+    private int m_totalConnections;
+    /**
+     * Holds the sub pools per user.
+     */
+    private final Map<String, UserPool> m_userPools = new ConcurrentHashMap<String, UserPool>();
+    /**
+     * Holds the timer for the liveness validation.
+     */
+    private Timer m_validationTimer;
+    /**
+     * Holds the number of milliseconds to wait for a free connection.
+     */
+    private final long m_waitTimeout;
+
+    /**
+     * Creates a new SAPJCoUserConnectionPool object.
+     *
+     * @param  maxConnections      The maximum number of connections to create.
+     * @param  waitTimeout         The number of milliseconds to wait for a free connection.
+     * @param  validationInterval  The number of milliseconds between two liveness checks of the
+     *                             idle connections. 0 disables the check.
+     */
+    public SAPJCoUserConnectionPool(int maxConnections, long waitTimeout, long validationInterval)
+    {
+        super(maxConnections);
+
+        m_maxConnections = maxConnections;
+        m_waitTimeout = waitTimeout;
+        m_permits = new Semaphore(maxConnections, true);
+
+        if (validationInterval > 0)
+        {
+            m_validationTimer = new Timer("SAPJCoUserConnectionPool validation", true);
+            m_validationTimer.schedule(new TimerTask()
+                {
+                    @Override public void run()
+                    {
+                        removeDeadConnections();
+                    }
+                }, validationInterval, validationInterval);
+        }
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnectionManager#closeAllConnections()
+     */
+    @Override public void closeAllConnections()
+                             throws SAPConnectorException
+    {
+        if (m_validationTimer != null)
+        {
+            m_validationTimer.cancel();
+        }
+
+        super.closeAllConnections();
+
+        try
+        {
+            for (SAPJCoConnection connection : m_allConnections)
+            {
+                connection.disconnect();
+            }
+        }
+        catch (JCO.Exception jce)
+        {
+            throw new SAPConnectorException(jce,
+                                            SAPConnectorExceptionMessages.ERR_COULD_NOT_DISCONNECT,
+                                            jce.getMessage());
+        }
+        finally
+        {
+            m_allConnections.clear();
+            m_userPools.clear();
+
+            synchronized (m_capacityLock)
+            {
+                m_totalConnections = 0;
+            }
+            signalIdle();
+        }
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnectionManager#getUserConnection(com.eibus.applicationconnector.sap.config.ISAPConfiguration,
+     *       java.lang.String, java.lang.String)
+     */
+    @Override public SAPJCoConnection getUserConnection(ISAPConfiguration config, String user,
+                                                        String password)
+                                                 throws SAPConnectorException
+    {
+        try
+        {
+            if (!m_permits.tryAcquire(m_waitTimeout, TimeUnit.MILLISECONDS))
+            {
+                throw new SAPConnectorException(SAPConnectorExceptionMessages.TIMEOUT_WAITING_FOR_FREE_CONNECTION,
+                                                user, m_waitTimeout);
+            }
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            throw new SAPConnectorException(SAPConnectorExceptionMessages.ERROR_WAITING_FOR_FREE_CONNECTION);
+        }
+
+        boolean success = false;
+
+        try
+        {
+            SAPJCoConnection jcoConnection = getUserPool(user).pollIdle();
+
+            if (jcoConnection != null)
+            {
+                if (LOG.isDebugEnabled())
+                {
+                    LOG.debug("Got cached Connectionobject");
+                }
+            }
+            else
+            {
+                jcoConnection = createPooledConnection(config, user, password);
+            }
+
+            jcoConnection.setUseStatus(true);
+            success = true;
+
+            return jcoConnection;
+        }
+        finally
+        {
+            if (!success)
+            {
+                m_permits.release();
+            }
+        }
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnectionManager#putUserConnection(com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnection)
+     */
+    @Override public void putUserConnection(SAPJCoConnection jcoConnection)
+    {
+        jcoConnection.setUseStatus(false);
+
+        if (m_allConnections.contains(jcoConnection))
+        {
+            getUserPool(jcoConnection.getUser()).addIdle(jcoConnection);
+            signalIdle();
+        }
+        m_permits.release();
+    }
+
+    /**
+     * This method creates a new connection for the user. If the pool is full the least recently
+     * used idle connection of any user is closed first. The caller holds a permit, so the number of
+     * connections in use is below the maximum. An idle connection may still be borrowed by its
+     * owner just before it can be closed; in that case the method waits, outside the capacity
+     * lock, until a connection becomes idle or capacity is freed, up to the wait timeout.
+     *
+     * @param   config    The configuration.
+     * @param   user      The user name.
+     * @param   password  The password.
+     *
+     * @return  The new connection.
+     *
+     * @throws  SAPConnectorException  In case the connection could not be created.
+     */
+    private SAPJCoConnection createPooledConnection(ISAPConfiguration config, String user,
+                                                    String password)
+                                             throws SAPConnectorException
+    {
+        SAPJCoConnection victim = null;
+        long deadline = System.currentTimeMillis() + m_waitTimeout;
+
+        while (true)
+        {
+            long version;
+
+            synchronized (m_idleSignal)
+            {
+                version = m_idleVersion;
+            }
+
+            synchronized (m_capacityLock)
+            {
+                if (m_totalConnections < m_maxConnections)
+                {
+                    m_totalConnections++;
+                    break;
+                }
+
+                victim = removeLeastRecentlyUsedIdle();
+
+                if (victim != null)
+                {
+                    break;
+                }
+            }
+
+            waitForIdle(version, deadline, user);
+        }
+
+        if (victim != null)
+        {
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Closing idle connection of user " + victim.getUser() +
+                          " to make room for user " + user);
+            }
+            disconnectQuietly(victim);
+        }
+
+        try
+        {
+            SAPJCoConnection jcoConnection = createNewConnection(config, user, password);
+            m_allConnections.add(jcoConnection);
+            return jcoConnection;
+        }
+        catch (SAPConnectorException sce)
+        {
+            synchronized (m_capacityLock)
+            {
+                m_totalConnections--;
+            }
+            signalIdle();
+            throw sce;
+        }
+    }
+
+    /**
+     * This method disconnects the connection and ignores any errors.
+     *
+     * @param  connection  The connection to close.
+     */
+    private void disconnectQuietly(SAPJCoConnection connection)
+    {
+        m_allConnections.remove(connection);
+
+        try
+        {
+            connection.disconnect();
+        }
+        catch (JCO.Exception jce)
+        {
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Error disconnecting idle connection: " + jce.getMessage());
+            }
+        }
+    }
+
+    /**
+     * This method returns the sub pool for the given user, creating it if needed.
+     *
+     * @param   user  The user name.
+     *
+     * @return  The sub pool.
+     */
+    private UserPool getUserPool(String user)
+    {
+        UserPool pool = m_userPools.get(user);
+
+        if (pool == null)
+        {
+            synchronized (m_userPools)
+            {
+                pool = m_userPools.get(user);
+
+                if (pool == null)
+                {
+                    pool = new UserPool();
+                    m_userPools.put(user, pool);
+                }
+            }
+        }
+
+        return pool;
+    }
+
+    /**
+     * This method checks all idle connections and closes the ones that are no longer alive.
+     */
+    private void removeDeadConnections()
+    {
+        List<SAPJCoConnection> dead = new ArrayList<SAPJCoConnection>();
+
+        for (UserPool pool : m_userPools.values())
+        {
+            pool.removeDead(dead);
+        }
+
+        if (!dead.isEmpty())
+        {
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Removing " + dead.size() + " terminated connections from the pool.");
+            }
+
+            synchronized (m_capacityLock)
+            {
+                m_totalConnections -= dead.size();
+            }
+            signalIdle();
+
+            for (SAPJCoConnection connection : dead)
+            {
+                disconnectQuietly(connection);
+            }
+        }
+    }
+
+    /**
+     * This method removes the idle connection that has not been used for the longest time.
+     *
+     * @return  The removed connection or null if there are no idle connections.
+     */
+    private SAPJCoConnection removeLeastRecentlyUsedIdle()
+    {
+        UserPool oldestPool = null;
+        long oldest = Long.MAX_VALUE;
+
+        for (UserPool pool : m_userPools.values())
+        {
+            long lastUsed = pool.getOldestIdleTime();
+
+            if (lastUsed < oldest)
+            {
+                oldest = lastUsed;
+                oldestPool = pool;
+            }
+        }
+
+        return (oldestPool == null) ? null : oldestPool.removeOldestIdle();
+    }
+
+    /**
+     * This method wakes up the threads that wait for an idle connection or free capacity.
+     */
+    private void signalIdle()
+    {
+        synchronized (m_idleSignal)
+        {
+            m_idleVersion++;
+            m_idleSignal.notifyAll();
+        }
+    }
+
+    /**
+     * This method waits until a connection became idle or capacity was freed after the given
+     * version was read.
+     *
+     * @param   version   The version that was read before the pool was checked.
+     * @param   deadline  The time at which the wait times out.
+     * @param   user      The user name.
+     *
+     * @throws  SAPConnectorException  In case the timeout passed or the thread was interrupted.
+     */
+    private void waitForIdle(long version, long deadline, String user)
+                      throws SAPConnectorException
+    {
+        synchronized (m_idleSignal)
+        {
+            while (m_idleVersion == version)
+            {
+                long remaining = deadline - System.currentTimeMillis();
+
+                if (remaining <= 0)
+                {
+                    throw new SAPConnectorException(SAPConnectorExceptionMessages.TIMEOUT_WAITING_FOR_FREE_CONNECTION,
+                                                    user, m_waitTimeout);
+                }
+
+                try
+                {
+                    m_idleSignal.wait(remaining);
+                }
+                catch (InterruptedException ie)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new SAPConnectorException(SAPConnectorExceptionMessages.ERROR_WAITING_FOR_FREE_CONNECTION);
+                }
+            }
+        }
+    }
+
+    /**
+     * Holds the idle connections of one user. The most recently returned connection is at the
+     * front, so the oldest one is at the end.
+     */
+    private static class UserPool
+    {
+        /**
+         * Holds the idle connections.
+         */
+        private final LinkedList<SAPJCoConnection> m_idle = new LinkedList<SAPJCoConnection>();
+        /**
+         * Holds the time each idle connection was returned, in the same order as m_idle.
+         */
+        private final LinkedList<Long> m_returned = new LinkedList<Long>();
+
+        /**
+         * Adds the connection as most recently used.
+         *
+         * @param  connection  The connection.
+         */
+        synchronized void addIdle(SAPJCoConnection connection)
+        {
+            m_idle.addFirst(connection);
+            m_returned.addFirst(System.currentTimeMillis());
+        }
+
+        /**
+         * Returns the time the oldest idle connection was returned.
+         *
+         * @return  The time or Long.MAX_VALUE if there are no idle connections.
+         */
+        synchronized long getOldestIdleTime()
+        {
+            return m_returned.isEmpty() ? Long.MAX_VALUE : m_returned.getLast();
+        }
+
+        /**
+         * Removes and returns the most recently used idle connection.
+         *
+         * @return  The connection or null.
+         */
+        synchronized SAPJCoConnection pollIdle()
+        {
+            if (m_idle.isEmpty())
+            {
+                return null;
+            }
+            m_returned.removeFirst();
+            return m_idle.removeFirst();
+        }
+
+        /**
+         * Removes the idle connections that are no longer alive.
+         *
+         * @param  dead  The list to add the removed connections to.
+         */
+        synchronized void removeDead(List<SAPJCoConnection> dead)
+        {
+            for (int i = m_idle.size() - 1; i >= 0; i--)
+            {
+                SAPJCoConnection connection = m_idle.get(i);
+
+                if (!connection.isAlive())
+                {
+                    m_idle.remove(i);
+                    m_returned.remove(i);
+                    dead.add(connection);
+                }
+            }
+        }
+
+        /**
+         * Removes and returns the least recently used idle connection.
+         *
+         * @return  The connection or null.
+         */
+        synchronized SAPJCoConnection removeOldestIdle()
+        {
+            if (m_idle.isEmpty())
+            {
+                return null;
+            }
+            m_returned.removeLast();
+            return m_idle.removeLast();
+        }
+    }
+}
@@ -0,0 +1,455 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.connection.jco;
+
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+
+import com.eibus.util.logger.CordysLogger;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Node;
+
+/**
+ * This class reads a table with RFC_READ_TABLE in pages of a fixed number of rows. Every page is
+ * fetched with ROWSKIPS and ROWCOUNT set, decoded and appended to the response before the next
+ * page is fetched, so only one page of raw rows is held at a time.
+ *
+ * <p>The WA of a row is decoded with the offset and length of each field as returned in FIELDS,
+ * so no regular expression is needed and a delimiter in the data does not shift the fields. The
+ * response has the same layout as the formatted RFC_READ_TABLE response: DATA holds an element
+ * per row named after the table with an element per field, followed by FIELDS and OPTIONS. If the
+ * request has no DELIMITER the rows are returned as &lt;item&gt;&lt;WA&gt; like before.</p>
+ *
+ * <p>Subclasses implement the fetch of a page.</p>
+ *
+ * @author  pgussow
+ */
+public abstract class TableReader
+{
+    /**
+     * Holds the name of the RFC that reads tables.
+     */
+    public static final String RFC_NAME = "RFC_READ_TABLE";
+    /**
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(TableReader.class);
+    /**
+     * Holds the maximum number of rows per page.
+     */
+    private final int m_pageSize;
+
+    /**
+     * Creates a new TableReader object.
+     *
+     * @param  pageSize  The maximum number of rows per page. 0 means the rows are read with one
+     *                   call.
+     */
+    public TableReader(int pageSize)
+    {
+        m_pageSize = pageSize;
+    }
+
+    /**
+     * This method reads the table of the given RFC_READ_TABLE request and appends the rows to the
+     * response.
+     *
+     * @param   requestNode   The RFC_READ_TABLE request.
+     * @param   responseNode  The response node to append DATA, FIELDS and OPTIONS to.
+     *
+     * @return  The number of rows that were read.
+     *
+     * @throws  SAPConnectorException  In case a page could not be fetched.
+     */
+    public int read(int requestNode, int responseNode)
+             throws SAPConnectorException
+    {
+        Document doc = Node.getDocument(responseNode);
+        String tableName = Node.getDataElement(requestNode, "QUERY_TABLE", "Item");
+        boolean decode = Node.getDataElement(requestNode, "DELIMITER", "").length() > 0;
+        int rowSkips = getIntValue(requestNode, "ROWSKIPS");
+        int rowCount = getIntValue(requestNode, "ROWCOUNT");
+
+        int dataNode = doc.createElement("DATA", responseNode);
+        Column[] columns = null;
+        int pages = 0;
+        int returnValue = 0;
+
+        while (true)
+        {
+            int count = m_pageSize;
+
+            if (rowCount > 0)
+            {
+                count = (count > 0) ? Math.min(count, rowCount - returnValue)
+                                    : (rowCount - returnValue);
+
+                if (count <= 0)
+                {
+                    break;
+                }
+            }
+
+            Page page = fetchPage(requestNode, rowSkips + returnValue, count);
+            pages++;
+
+            if (columns == null)
+            {
+                columns = page.getColumns();
+            }
+
+            int size = page.getSize();
+
+            for (int i = 0; i < size; i++)
+            {
+                if (decode)
+                {
+                    appendRow(doc, dataNode, tableName, columns, page.getRow(i));
+                }
+                else
+                {
+                    int itemNode = doc.createElement("item", dataNode);
+                    doc.createTextElement("WA", page.getRow(i), itemNode);
+                }
+            }
+            returnValue += size;
+
+            // A short page is the last one. Without a page size everything came in one call.
+            if ((count <= 0) || (size < count))
+            {
+                break;
+            }
+        }
+
+        appendFields(doc, responseNode, columns);
+
+        int optionsNode = Node.getElement(requestNode, "OPTIONS");
+
+        if (optionsNode != 0)
+        {
+            Node.duplicateAndAppendToChildren(optionsNode, optionsNode, responseNode);
+        }
+        else
+        {
+            doc.createElement("OPTIONS", responseNode);
+        }
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Read " + returnValue + " rows of table " + tableName + " in " + pages +
+                      " pages");
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method fetches one page of the table. The request must be executed with the given
+     * ROWSKIPS and ROWCOUNT instead of the values in the request.
+     *
+     * @param   requestNode  The RFC_READ_TABLE request.
+     * @param   rowSkips     The number of rows to skip.
+     * @param   rowCount     The maximum number of rows to return. 0 means all rows.
+     *
+     * @return  The page.
+     *
+     * @throws  SAPConnectorException  In case the page could not be fetched.
+     */
+    protected abstract Page fetchPage(int requestNode, int rowSkips, int rowCount)
+                               throws SAPConnectorException;
+
+    /**
+     * This method appends FIELDS in the layout of the RFC_READ_TABLE response.
+     *
+     * @param  doc           The document to use.
+     * @param  responseNode  The response node.
+     * @param  columns       The columns. May be null if no page was read.
+     */
+    private static void appendFields(Document doc, int responseNode, Column[] columns)
+    {
+        int fieldsNode = doc.createElement("FIELDS", responseNode);
+
+        if (columns == null)
+        {
+            return;
+        }
+
+        for (Column column : columns)
+        {
+            int itemNode = doc.createElement("item", fieldsNode);
+            doc.createTextElement("FIELDNAME", column.getName(), itemNode);
+            doc.createTextElement("OFFSET", toNumc(column.getOffset()), itemNode);
+            doc.createTextElement("LENGTH", toNumc(column.getLength()), itemNode);
+            doc.createTextElement("TYPE", column.getType(), itemNode);
+            doc.createTextElement("FIELDTEXT", column.getText(), itemNode);
+        }
+    }
+
+    /**
+     * This method decodes the given row and appends it to DATA.
+     *
+     * @param  doc        The document to use.
+     * @param  dataNode   The DATA node.
+     * @param  tableName  The name of the table, used as name of the row element.
+     * @param  columns    The columns.
+     * @param  row        The WA of the row.
+     */
+    private static void appendRow(Document doc, int dataNode, String tableName, Column[] columns,
+                                  String row)
+    {
+        int rowNode = doc.createElement(tableName, dataNode);
+
+        for (Column column : columns)
+        {
+            doc.createTextElement(column.getName(), column.decode(row), rowNode);
+        }
+    }
+
+    /**
+     * This method returns the integer value of the given child element.
+     *
+     * @param   node  The parent node.
+     * @param   name  The name of the child element.
+     *
+     * @return  The value, or 0 if it is not set.
+     *
+     * @throws  SAPConnectorException  In case the value is not a number.
+     */
+    private static int getIntValue(int node, String name)
+                            throws SAPConnectorException
+    {
+        String value = Node.getDataElement(node, name, "").trim();
+
+        if (value.length() == 0)
+        {
+            return 0;
+        }
+
+        try
+        {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.ERROR_INVALID_REQUEST_PARAMETERS);
+        }
+    }
+
+    /**
+     * This method formats the given number as a NUMC 6 value, the type of OFFSET and LENGTH.
+     *
+     * @param   value  The value.
+     *
+     * @return  The formatted value.
+     */
+    private static String toNumc(int value)
+    {
+        String returnValue = String.valueOf(value);
+
+        return "000000".substring(Math.min(6, returnValue.length())) + returnValue;
+    }
+
+    /**
+     * Holds a field of the table as described in FIELDS.
+     */
+    public static class Column
+    {
+        /**
+         * Holds the length of the field in the WA.
+         */
+        private final int m_length;
+        /**
+         * Holds the name of the field.
+         */
+        private final String m_name;
+        /**
+         * Holds the offset of the field in the WA.
+         */
+        private final int m_offset;
+        /**
+         * Holds the description of the field.
+         */
+        private final String m_text;
+        /**
+         * Holds the ABAP type of the field.
+         */
+        private final String m_type;
+
+        /**
+         * Creates a new Column object.
+         *
+         * @param  name    The name of the field.
+         * @param  offset  The offset of the field in the WA.
+         * @param  length  The length of the field in the WA.
+         * @param  type    The ABAP type of the field.
+         * @param  text    The description of the field.
+         */
+        public Column(String name, int offset, int length, String type, String text)
+        {
+            m_name = name;
+            m_offset = offset;
+            m_length = length;
+            m_type = type;
+            m_text = text;
+        }
+
+        /**
+         * This method returns the value of this field in the given WA, without leading and
+         * trailing blanks. JCo removes the trailing blanks of the WA, so the row may be shorter
+         * than the offset and length of the field.
+         *
+         * @param   row  The WA of the row.
+         *
+         * @return  The value.
+         */
+        public String decode(String row)
+        {
+            int start = m_offset;
+            int end = Math.min(row.length(), m_offset + m_length);
+
+            while ((start < end) && (row.charAt(start) <= ' '))
+            {
+                start++;
+            }
+
+            while ((end > start) && (row.charAt(end - 1) <= ' '))
+            {
+                end--;
+            }
+
+            return (start < end) ? row.substring(start, end) : "";
+        }
+
+        /**
+         * This method returns the length of the field in the WA.
+         *
+         * @return  The length.
+         */
+        public int getLength()
+        {
+            return m_length;
+        }
+
+        /**
+         * This method returns the name of the field.
+         *
+         * @return  The name.
+         */
+        public String getName()
+        {
+            return m_name;
+        }
+
+        /**
+         * This method returns the offset of the field in the WA.
+         *
+         * @return  The offset.
+         */
+        public int getOffset()
+        {
+            return m_offset;
+        }
+
+        /**
+         * This method returns the description of the field.
+         *
+         * @return  The description.
+         */
+        public String getText()
+        {
+            return m_text;
+        }
+
+        /**
+         * This method returns the ABAP type of the field.
+         *
+         * @return  The type.
+         */
+        public String getType()
+        {
+            return m_type;
+        }
+    }
+
+    /**
+     * Holds one page of rows.
+     */
+    public static class Page
+    {
+        /**
+         * Holds the columns of the table.
+         */
+        private final Column[] m_columns;
+        /**
+         * Holds the WA of the rows.
+         */
+        private final String[] m_rows;
+        /**
+         * Holds the number of rows.
+         */
+        private final int m_size;
+
+        /**
+         * Creates a new Page object.
+         *
+         * @param  columns  The columns of the table.
+         * @param  rows     The WA of the rows. The array may be longer than the number of rows.
+         * @param  size     The number of rows.
+         */
+        public Page(Column[] columns, String[] rows, int size)
+        {
+            m_columns = columns;
+            m_rows = rows;
+            m_size = size;
+        }
+
+        /**
+         * This method returns the columns of the table.
+         *
+         * @return  The columns.
+         */
+        public Column[] getColumns()
+        {
+            return m_columns;
+        }
+
+        /**
+         * This method returns the WA of the given row.
+         *
+         * @param   index  The index of the row.
+         *
+         * @return  The WA.
+         */
+        public String getRow(int index)
+        {
+            return m_rows[index];
+        }
+
+        /**
+         * This method returns the number of rows.
+         *
+         * @return  The number of rows.
+         */
+        public int getSize()
+        {
+            return m_size;
+        }
+    }
+}
@@ -38,6 +38,9 @@ public class SAPConnectorExceptionMessages
 	/** Error waiting for free connection */
 	public static final Message ERROR_WAITING_FOR_FREE_CONNECTION = MESSAGE_SET.getMessage("ErrorWaitingForFreeConnection");
 
+	/** No connection became available for user {0} within {1} ms */
+	public static final Message TIMEOUT_WAITING_FOR_FREE_CONNECTION = MESSAGE_SET.getMessage("TimeoutWaitingForFreeConnection");
+
 	/** Error returned from sap. 
 Code: {0}
 Message: {1} */
@@ -61,9 +64,18 @@ Message: {1} */
 	/** Error waiting for other thread to load metadata */
 	public static final Message ERROR_WAITING_FOR_OTHER_THREAD_TO_LOAD_METADATA = MESSAGE_SET.getMessage("ErrorWaitingForOtherThreadToLoadMetadata");
 
+	/** Timed out after {1} ms while waiting for another thread to load {0} */
+	public static final Message TIMEOUT_WAITING_FOR_METADATA_LOAD = MESSAGE_SET.getMessage("TimeoutWaitingForMetadataLoad");
+
+	/** Another thread failed to load {0} */
+	public static final Message METADATA_LOAD_FAILED_IN_OTHER_THREAD = MESSAGE_SET.getMessage("MetadataLoadFailedInOtherThread");
+
 	/** Error loading metadata cache of type {0} from folder {1} */
 	public static final Message ERROR_LOADING_METADATA_CACHE = MESSAGE_SET.getMessage("ErrorLoadingMetadataCache");
 
+	/** Error reloading the {0} objects of metadata cache {1} */
+	public static final Message ERROR_RELOADING_METADATA_CACHE = MESSAGE_SET.getMessage("ErrorReloadingMetadataCache");
+
 	/** Error loading interface template */
 	public static final Message ERROR_LOADING_INTERFACE_TEMPLATE = MESSAGE_SET.getMessage("ErrorLoadingInterfaceTemplate");
 
@@ -106,6 +118,9 @@ Message: {1} */
 	/** Error executing method {0} */
 	public static final Message ERROR_EXECUTING_METHOD = MESSAGE_SET.getMessage("ErrorExecutingMethod");
 
+	/** Error sending method {0} to SOAP node {1} */
+	public static final Message ERROR_SENDING_METHOD_TO_SOAP_NODE = MESSAGE_SET.getMessage("ErrorSendingMethodToSoapNode");
+
 	/** Could not find authenticated user {0} */
 	public static final Message COULD_NOT_FIND_AUTHENTICATED_USER = MESSAGE_SET.getMessage("CouldNotFindAuthenticatedUser");
 
@@ -137,6 +152,9 @@ Full response:
 	/** Control record not found for idoc {0} */
 	public static final Message CONTROL_RECORD_NOT_FOUND_FOR_IDOC = MESSAGE_SET.getMessage("ControlRecordNotFoundForIdoc");
 
+	/** Interrupted while processing the IDOCs with tid {0} */
+	public static final Message INTERRUPTED_WHILE_PROCESSING_IDOCS = MESSAGE_SET.getMessage("InterruptedWhileProcessingIdocs");
+
 	/** Target mapping not found for idoc {0} */
 	public static final Message TARGET_MAPPING_NOT_FOUND_FOR_IDOC = MESSAGE_SET.getMessage("TargetMappingNotFoundForIdoc");
 
@@ -178,6 +196,9 @@ Segment type: {1} */
 	/** Error dispatching idoc */
 	public static final Message ERROR_DISPATCHING_IDOC = MESSAGE_SET.getMessage("ErrorDispatchingIdoc");
 
+	/** The batch request does not contain any IDoc documents. */
+	public static final Message NO_IDOCS_IN_BATCH_REQUEST = MESSAGE_SET.getMessage("NoIdocsInBatchRequest");
+
 	/** Error handling idoc request */
 	public static final Message ERROR_HANDLING_IDOC_REQUEST = MESSAGE_SET.getMessage("ErrorHandlingIdocRequest");
 
@@ -305,9 +326,30 @@ Certificate path: {3} */
 	/** Error writing cache file {0} */
 	public static final Message ERROR_WRITING_CACHE_FILE = MESSAGE_SET.getMessage("ErrorWritingCacheFile");
 
+	/** Error reading TID store {0} */
+	public static final Message ERROR_READING_TID_STORE = MESSAGE_SET.getMessage("ErrorReadingTidStore");
+
+	/** Error writing TID store {0} */
+	public static final Message ERROR_WRITING_TID_STORE = MESSAGE_SET.getMessage("ErrorWritingTidStore");
+
+	/** Error reading IDOC spool file {0} */
+	public static final Message ERROR_READING_IDOC_SPOOL = MESSAGE_SET.getMessage("ErrorReadingIdocSpool");
+
+	/** Error writing IDOC spool file {0} */
+	public static final Message ERROR_WRITING_IDOC_SPOOL = MESSAGE_SET.getMessage("ErrorWritingIdocSpool");
+
+	/** Interrupted while sending the request for method {0} */
+	public static final Message INTERRUPTED_WHILE_SENDING_REQUEST = MESSAGE_SET.getMessage("InterruptedWhileSendingRequest");
+
+	/** The SOAP dispatcher is closed. The request for method {0} is not sent */
+	public static final Message SOAP_DISPATCHER_CLOSED = MESSAGE_SET.getMessage("SoapDispatcherClosed");
+
 	/** Error loading metadata file {0} */
 	public static final Message ERROR_LOADING_METADATA_FILE = MESSAGE_SET.getMessage("ErrorLoadingMetadataFile");
 
+	/** Unknown metadata cache storage type {0} */
+	public static final Message UNKNOWN_CACHE_STORAGE_TYPE = MESSAGE_SET.getMessage("UnknownCacheStorageType");
+
 	/** Missing tag {0} */
 	public static final Message MISSING_TAG = MESSAGE_SET.getMessage("MissingTag");
 
@@ -320,6 +362,9 @@ Certificate path: {3} */
 	/** Invalid action type {0} */
 	public static final Message INVALID_ACTION_TYPE0 = MESSAGE_SET.getMessage("InvalidActionType0");
 
+	/** Error creating the implementation {0} of action {1} */
+	public static final Message ERROR_CREATING_ACTION_IMPLEMENTATION = MESSAGE_SET.getMessage("ErrorCreatingActionImplementation");
+
 	/** Missing parameter type */
 	public static final Message MISSING_PARAMETER_TYPE = MESSAGE_SET.getMessage("MissingParameterType");
 
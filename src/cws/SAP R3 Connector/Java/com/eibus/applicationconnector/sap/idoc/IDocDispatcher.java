@@ -0,0 +1,543 @@
+/**
+ * Copyright 2005 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.idoc;
+
+import com.eibus.applicationconnector.sap.Messages;
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+import com.eibus.applicationconnector.sap.request.OLEDBRequestSender;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+import com.eibus.applicationconnector.sap.util.SOAPDispatcher;
+
+import com.eibus.util.logger.CordysLogger;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Node;
+
+import com.sap.mw.idoc.IDoc;
+
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * This class processes a single inbound IDoc: it converts the IDoc to XML, finds the target
+ * mapping, sends the IDoc to the target SOAP node and creates the tuple to store the IDoc in the
+ * database. An instance is not thread safe; the listener uses one and every pipeline worker has
+ * its own.
+ *
+ * @author  ygopal
+ */
+public class IDocDispatcher
+{
+    /**
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(IDocDispatcher.class);
+    /**
+     * Holds the name of the parameter in the request to the target method.
+     */
+    private static final String TARGET_METHOD_PARAMETER_NAME = "IDOC";
+    /**
+     * Holds the configuration of the connector.
+     */
+    private ISAPConfiguration m_config;
+    /**
+     * Holds the document to create the nodes in.
+     */
+    private Document m_doc;
+    /**
+     * Holds the sender for the database and SOAP requests.
+     */
+    private OLEDBRequestSender m_oleDBRequestSender;
+    /**
+     * Holds the statistics to update.
+     */
+    private IDocStatistics m_statistics;
+
+    /**
+     * Creates a new IDocDispatcher object.
+     *
+     * @param  config              The configuration of the connector.
+     * @param  oleDBRequestSender  The sender for the database and SOAP requests.
+     * @param  doc                 The document to create the nodes in.
+     * @param  statistics          The statistics to update.
+     */
+    public IDocDispatcher(ISAPConfiguration config, OLEDBRequestSender oleDBRequestSender,
+                          Document doc, IDocStatistics statistics)
+    {
+        m_config = config;
+        m_oleDBRequestSender = oleDBRequestSender;
+        m_doc = doc;
+        m_statistics = statistics;
+    }
+
+    /**
+     * This method processes the IDoc. i.e. it does the following. 1. Tries to find the target
+     * system and send the request to it. 2. Obtain the local status and create the tuple to store
+     * the IDoc in the database.
+     *
+     * @param   idoc  The IDoc to process.
+     * @param   tid   The transaction ID of the IDoc.
+     *
+     * @return  The tuple to store in the database.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    public int dispatch(IDoc.Document idoc, String tid)
+                 throws SAPConnectorException
+    {
+        return complete(start(idoc, null), tid);
+    }
+
+    /**
+     * This method processes the IDocs of a document list. If the connector has a SOAPDispatcher,
+     * all IDocs are sent to their targets before the first response is awaited, so the targets
+     * process them at the same time. Otherwise the IDocs are dispatched one by one. If one of the
+     * IDocs fails the tuples that were created are deleted.
+     *
+     * @param   idocs  The IDocs to process.
+     * @param   tid    The transaction ID of the IDocs.
+     *
+     * @return  The tuples to store in the database, in the order of the IDocs.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    public int[] dispatch(List<IDoc.Document> idocs, String tid)
+                   throws SAPConnectorException
+    {
+        SOAPDispatcher soapDispatcher = (idocs.size() > 1) ? m_config.getSOAPDispatcher() : null;
+        int[] returnValue = new int[idocs.size()];
+        Dispatch[] dispatches = new Dispatch[idocs.size()];
+        int completed = 0;
+
+        try
+        {
+            if (soapDispatcher != null)
+            {
+                for (int i = 0; i < dispatches.length; i++)
+                {
+                    dispatches[i] = start(idocs.get(i), soapDispatcher);
+                }
+            }
+
+            for (; completed < returnValue.length; completed++)
+            {
+                Dispatch dispatch = dispatches[completed];
+
+                if (dispatch == null)
+                {
+                    dispatch = start(idocs.get(completed), null);
+                }
+                returnValue[completed] = complete(dispatch, tid);
+            }
+        }
+        finally
+        {
+            if (completed < returnValue.length)
+            {
+                for (int i = 0; i < completed; i++)
+                {
+                    BACUtil.deleteNode(returnValue[i]);
+                }
+
+                for (int i = completed; i < dispatches.length; i++)
+                {
+                    if (dispatches[i] != null)
+                    {
+                        discard(dispatches[i]);
+                    }
+                }
+            }
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method returns the document in which the nodes are created.
+     *
+     * @return  The document.
+     */
+    public Document getDocument()
+    {
+        return m_doc;
+    }
+
+    /**
+     * This method finds the target for the IDoc.
+     *
+     * @param   mesType     The message type.
+     * @param   idocType    The IDoc type.
+     * @param   receiverLS  The receiving logical system.
+     *
+     * @return  The DN of the target SOAP node, the method name and the namespace.
+     *
+     * @throws  SAPConnectorException  In case no mapping could be found.
+     */
+    protected String[] findTarget(String mesType, String idocType, String receiverLS)
+                           throws SAPConnectorException
+    {
+        StringBuffer targetSOAPNode = new StringBuffer();
+        StringBuffer targetMethod = new StringBuffer();
+        StringBuffer targetNameSpace = new StringBuffer();
+
+        m_config.getTargetMappingFinder().getTargetMapping(mesType, idocType, receiverLS,
+                                                           targetSOAPNode, targetMethod,
+                                                           targetNameSpace);
+
+        return new String[]
+               {
+                   targetSOAPNode.toString().trim(), targetMethod.toString().trim(),
+                   targetNameSpace.toString().trim()
+               };
+    }
+
+    /**
+     * This method creates the tuple to store the IDoc in the database.
+     *
+     * @param   idoc          The IDoc.
+     * @param   idocXMLNode   The XML of the IDoc.
+     * @param   tid           The transaction ID.
+     * @param   localStatus   The local status.
+     * @param   errorText     The error text.
+     * @param   targetSystem  The name of the target system.
+     *
+     * @return  The tuple.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    protected int frameInsertTuple(IDoc.Document idoc, int idocXMLNode, String tid,
+                                   String localStatus, String errorText, String targetSystem)
+                            throws SAPConnectorException
+    {
+        return m_oleDBRequestSender.frameIDOCInsertTuple(idoc, idocXMLNode, tid, localStatus,
+                                                         errorText, targetSystem,
+                                                         m_config.getServiceGroup(), m_doc);
+    }
+
+    /**
+     * This method sends the IDoc to the target method.
+     *
+     * @param   targetSOAPNode   The DN of the target SOAP node.
+     * @param   targetMethod     The name of the method.
+     * @param   targetNameSpace  The namespace of the method.
+     * @param   parameterNode    The parameter holding the IDoc XML.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    protected void sendToTarget(String targetSOAPNode, String targetMethod, String targetNameSpace,
+                                int parameterNode)
+                         throws SAPConnectorException
+    {
+        m_oleDBRequestSender.sendRequestToSOAPNode(targetSOAPNode, targetMethod, targetNameSpace,
+                                                   parameterNode, m_doc);
+    }
+
+    /**
+     * This method sends the IDoc to the target method through the dispatcher, without waiting for
+     * the response.
+     *
+     * @param   targetSOAPNode   The DN of the target SOAP node.
+     * @param   targetMethod     The name of the method.
+     * @param   targetNameSpace  The namespace of the method.
+     * @param   parameterNode    The parameter holding the IDoc XML.
+     * @param   soapDispatcher   The dispatcher to send the request with.
+     *
+     * @return  The future for the response.
+     *
+     * @throws  SAPConnectorException  In case the request could not be handed to the dispatcher.
+     */
+    protected Future<Integer> sendToTarget(String targetSOAPNode, String targetMethod,
+                                           String targetNameSpace, int parameterNode,
+                                           SOAPDispatcher soapDispatcher)
+                                    throws SAPConnectorException
+    {
+        return m_oleDBRequestSender.sendRequestToSOAPNode(targetSOAPNode, targetMethod,
+                                                          targetNameSpace, parameterNode,
+                                                          soapDispatcher, null);
+    }
+
+    /**
+     * This method waits for the response of the target and creates the tuple to store the IDoc in
+     * the database. The nodes of the dispatch are deleted.
+     *
+     * @param   dispatch  The dispatch that was started.
+     * @param   tid       The transaction ID of the IDoc.
+     *
+     * @return  The tuple to store in the database.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    private int complete(Dispatch dispatch, String tid)
+                  throws SAPConnectorException
+    {
+        dispatch.m_done = true;
+
+        if (dispatch.m_response != null)
+        {
+            try
+            {
+                BACUtil.deleteNode(SOAPDispatcher.getResponse(dispatch.m_response,
+                                                              dispatch.m_targetMethod));
+                setDispatched(dispatch);
+            }
+            catch (Exception e)
+            {
+                setFailed(dispatch, e);
+            }
+        }
+
+        long dispatched = System.nanoTime();
+        m_statistics.addStageTime(IDocStatistics.STAGE_DISPATCH, dispatched - dispatch.m_lookedUp);
+
+        try
+        {
+            return frameInsertTuple(dispatch.m_idoc, dispatch.m_idocXMLNode, tid,
+                                    dispatch.m_localStatus, dispatch.m_errorText,
+                                    dispatch.m_targetSystem);
+        }
+        finally
+        {
+            deleteNodes(dispatch);
+
+            m_statistics.addStageTime(IDocStatistics.STAGE_STORE, System.nanoTime() - dispatched);
+            m_statistics.idocProcessed();
+        }
+    }
+
+    /**
+     * This method deletes the nodes of the given dispatch.
+     *
+     * @param  dispatch  The dispatch.
+     */
+    private void deleteNodes(Dispatch dispatch)
+    {
+        // The IDoc XML is either a child of the parameter node or still on its own.
+        BACUtil.deleteNode((dispatch.m_parameterNode != 0) ? dispatch.m_parameterNode
+                                                           : dispatch.m_idocXMLNode);
+    }
+
+    /**
+     * This method drops a dispatch that will not be completed. It waits for the response, so the
+     * response node can be deleted.
+     *
+     * @param  dispatch  The dispatch.
+     */
+    private void discard(Dispatch dispatch)
+    {
+        if (dispatch.m_done)
+        {
+            return;
+        }
+        dispatch.m_done = true;
+
+        if (dispatch.m_response != null)
+        {
+            try
+            {
+                BACUtil.deleteNode(SOAPDispatcher.getResponse(dispatch.m_response,
+                                                              dispatch.m_targetMethod));
+            }
+            catch (SAPConnectorException e)
+            {
+                // The IDoc is not stored, so SAP sends it again.
+            }
+        }
+
+        deleteNodes(dispatch);
+    }
+
+    /**
+     * This method sets the status of an IDoc that was sent to its target.
+     *
+     * @param  dispatch  The dispatch.
+     */
+    private void setDispatched(Dispatch dispatch)
+    {
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("IDOC sent to the target system.");
+        }
+        dispatch.m_localStatus = "Dispatched";
+        dispatch.m_errorText = "";
+    }
+
+    /**
+     * This method sets the status of an IDoc that could not be sent to its target.
+     *
+     * @param  dispatch  The dispatch.
+     * @param  e         The error.
+     */
+    private void setFailed(Dispatch dispatch, Exception e)
+    {
+        dispatch.m_localStatus = "Error";
+        dispatch.m_errorText = "Exception occured while dispatching the IDOC: " + e.toString();
+
+        LOG.error(e, Messages.ERROR_DISPATCHING_IDOC);
+    }
+
+    /**
+     * This method converts the IDoc to XML, finds the target and sends the IDoc to it. If a
+     * SOAPDispatcher is given the IDoc is sent without waiting for the response.
+     *
+     * @param   idoc            The IDoc to process.
+     * @param   soapDispatcher  The dispatcher to send the IDoc with. If null the IDoc is sent
+     *                          right away.
+     *
+     * @return  The dispatch.
+     *
+     * @throws  SAPConnectorException  In case the IDoc could not be converted.
+     */
+    private Dispatch start(IDoc.Document idoc, SOAPDispatcher soapDispatcher)
+                    throws SAPConnectorException
+    {
+        String idocNum = idoc.getIDocNumber();
+        String mesType = idoc.getMessageType();
+        String idocType = idoc.getIDocType();
+        String cimType = idoc.getIDocTypeExtension();
+        String receiverLS = idoc.getRecipientPartnerNumber();
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Received IDOC information: IDOCNumber = " + idocNum + ", MessageType = " +
+                      mesType + ", IDOCType =" + idocType + ", CIMType = " + cimType +
+                      ", Receiver LS = " + receiverLS);
+        }
+
+        long start = System.nanoTime();
+        String idocXMLString = idoc.toXML();
+        Dispatch returnValue = new Dispatch(idoc);
+
+        try
+        {
+            returnValue.m_idocXMLNode = m_doc.parseString(idocXMLString);
+        }
+        catch (Exception xe)
+        {
+            throw new SAPConnectorException(xe, SAPConnectorExceptionMessages.ERROR_PARSING_IDOC,
+                                            idocXMLString);
+        }
+
+        long converted = System.nanoTime();
+        m_statistics.addStageTime(IDocStatistics.STAGE_CONVERT, converted - start);
+        returnValue.m_lookedUp = converted;
+
+        try
+        {
+            String[] target = findTarget(mesType, idocType, receiverLS);
+            String targetSOAPNode = target[0];
+            String targetNameSpace = target[2];
+
+            returnValue.m_targetMethod = target[1];
+            returnValue.m_lookedUp = System.nanoTime();
+            m_statistics.addStageTime(IDocStatistics.STAGE_LOOKUP,
+                                      returnValue.m_lookedUp - converted);
+
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug(" Target Mapping found. TargetSOAPNode: " + targetSOAPNode +
+                          " TargetMethod: " + returnValue.m_targetMethod + " TargetNamespace: " +
+                          targetNameSpace);
+            }
+
+            // Target system is the target SOAPNode name extracted from targetSOAPNode DN.
+            returnValue.m_targetSystem = targetSOAPNode.substring(3, targetSOAPNode.indexOf(","));
+            // parameter to be used in the request to the target SOAP Node
+            returnValue.m_parameterNode = m_doc.createElement(TARGET_METHOD_PARAMETER_NAME);
+            Node.appendToChildren(returnValue.m_idocXMLNode, returnValue.m_parameterNode);
+
+            if (soapDispatcher != null)
+            {
+                returnValue.m_response = sendToTarget(targetSOAPNode, returnValue.m_targetMethod,
+                                                      targetNameSpace,
+                                                      returnValue.m_parameterNode,
+                                                      soapDispatcher);
+            }
+            else
+            {
+                sendToTarget(targetSOAPNode, returnValue.m_targetMethod, targetNameSpace,
+                             returnValue.m_parameterNode);
+                setDispatched(returnValue);
+            }
+        }
+        catch (Exception e)
+        {
+            setFailed(returnValue, e);
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * Holds the state of one IDoc between sending it and creating its tuple.
+     */
+    private static class Dispatch
+    {
+        /**
+         * Indicates whether the dispatch is completed or discarded.
+         */
+        private boolean m_done;
+        /**
+         * Holds the error text.
+         */
+        private String m_errorText;
+        /**
+         * Holds the IDoc.
+         */
+        private final IDoc.Document m_idoc;
+        /**
+         * Holds the XML of the IDoc.
+         */
+        private int m_idocXMLNode;
+        /**
+         * Holds the local status.
+         */
+        private String m_localStatus;
+        /**
+         * Holds the time the target was found.
+         */
+        private long m_lookedUp;
+        /**
+         * Holds the parameter holding the IDoc XML.
+         */
+        private int m_parameterNode;
+        /**
+         * Holds the future for the response if the IDoc was sent through a dispatcher.
+         */
+        private Future<Integer> m_response;
+        /**
+         * Holds the name of the target method.
+         */
+        private String m_targetMethod;
+        /**
+         * Holds the name of the target system.
+         */
+        private String m_targetSystem = "";
+
+        /**
+         * Creates a new Dispatch object.
+         *
+         * @param  idoc  The IDoc.
+         */
+        Dispatch(IDoc.Document idoc)
+        {
+            m_idoc = idoc;
+        }
+    }
+}
@@ -0,0 +1,420 @@
+/**
+ * Copyright 2005 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.idoc;
+
+import com.eibus.applicationconnector.sap.SAPConnectorConstants;
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+import com.eibus.applicationconnector.sap.request.OLEDBRequestSender;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.util.logger.CordysLogger;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Node;
+
+import com.sap.mw.idoc.IDoc;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class processes inbound IDocs with a pool of worker threads. The IDoc listeners hand the
+ * IDocs of a document list to the workers and wait until all of them are dispatched, so the tRFC
+ * handling (onCommit storing the IDocs in the database) is the same as without the pipeline.
+ *
+ * <p>Each worker has its own bounded queue, document and request sender. All IDocs of the same
+ * message type go to the same worker, so they are dispatched in the order SAP sent them. When the
+ * queue of a worker is full the listener blocks, which in turn makes the gateway wait.</p>
+ *
+ * <p>A NOM document must only be used by one thread. The workers therefore hand the tuples back
+ * as XML strings and the listener parses them in its own document.</p>
+ *
+ * @author  pgussow
+ */
+public class IDocPipeline
+{
+    /**
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(IDocPipeline.class);
+    /**
+     * Holds the job that tells a worker to stop.
+     */
+    private static final Job STOP = new Job(null, null, 0, null);
+    /**
+     * Holds the configuration of the connector.
+     */
+    private ISAPConfiguration m_config;
+    /**
+     * Holds the capacity of the queue of each worker.
+     */
+    private int m_queueSize;
+    /**
+     * Holds the statistics of all workers.
+     */
+    private IDocStatistics m_statistics = new IDocStatistics();
+    /**
+     * Holds the workers.
+     */
+    private Worker[] m_workers;
+
+    /**
+     * Creates a new IDocPipeline object. The workers are created by start().
+     *
+     * @param  config     The configuration of the connector.
+     * @param  workers    The number of worker threads.
+     * @param  queueSize  The capacity of the queue of each worker.
+     */
+    public IDocPipeline(ISAPConfiguration config, int workers, int queueSize)
+    {
+        m_config = config;
+        m_workers = new Worker[workers];
+        m_queueSize = queueSize;
+    }
+
+    /**
+     * This method returns the statistics of the workers.
+     *
+     * @return  The statistics.
+     */
+    public IDocStatistics getStatistics()
+    {
+        return m_statistics;
+    }
+
+    /**
+     * This method processes the given IDocs and waits until all of them are done. If one of the
+     * IDocs fails the first error is thrown.
+     *
+     * @param   idocs  The IDocs to process.
+     * @param   tid    The transaction ID of the IDocs.
+     * @param   doc    The document of the calling thread to create the tuples in.
+     *
+     * @return  The tuples to store in the database, in the order of the IDocs.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions.
+     */
+    public int[] process(List<IDoc.Document> idocs, String tid, Document doc)
+                  throws SAPConnectorException
+    {
+        Batch batch = new Batch(idocs.size());
+
+        try
+        {
+            for (int i = 0; i < idocs.size(); i++)
+            {
+                IDoc.Document idoc = idocs.get(i);
+                String messageType = idoc.getMessageType();
+
+                // IDocs without a message type all go to the first worker.
+                int hash = (messageType == null) ? 0 : (messageType.hashCode() & 0x7fffffff);
+                Worker worker = m_workers[hash % m_workers.length];
+
+                // Blocks while the worker is busy, which holds back the gateway.
+                worker.m_queue.put(new Job(idoc, tid, i, batch));
+            }
+
+            batch.m_done.await();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.INTERRUPTED_WHILE_PROCESSING_IDOCS,
+                                            tid);
+        }
+
+        if (batch.m_failure != null)
+        {
+            if (batch.m_failure instanceof SAPConnectorException)
+            {
+                throw (SAPConnectorException) batch.m_failure;
+            }
+            else if (batch.m_failure instanceof RuntimeException)
+            {
+                throw (RuntimeException) batch.m_failure;
+            }
+            else if (batch.m_failure instanceof Error)
+            {
+                throw (Error) batch.m_failure;
+            }
+            throw new SAPConnectorException(batch.m_failure,
+                                            SAPConnectorExceptionMessages.ERROR_HANDLING_IDOC_REQUEST);
+        }
+
+        int[] returnValue = new int[batch.m_tuples.length];
+        int parsed = 0;
+
+        try
+        {
+            for (; parsed < returnValue.length; parsed++)
+            {
+                returnValue[parsed] = doc.parseString(batch.m_tuples[parsed]);
+            }
+        }
+        catch (Exception e)
+        {
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.ERROR_HANDLING_IDOC_REQUEST);
+        }
+        finally
+        {
+            if (parsed < returnValue.length)
+            {
+                for (int i = 0; i < parsed; i++)
+                {
+                    BACUtil.deleteNode(returnValue[i]);
+                }
+            }
+        }
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Processed " + idocs.size() + " IDOCs for tid " + tid + ". " + m_statistics);
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method creates and starts the workers.
+     *
+     * @throws  SAPConnectorException  In case the workers could not be created.
+     */
+    public void start()
+               throws SAPConnectorException
+    {
+        for (int i = 0; i < m_workers.length; i++)
+        {
+            m_workers[i] = new Worker("IDocPipeline worker " + i, createDispatcher(),
+                                      m_queueSize);
+            m_workers[i].start();
+        }
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Started " + m_workers.length + " IDOC pipeline workers.");
+        }
+    }
+
+    /**
+     * This method stops the workers after they have finished the IDocs in their queue.
+     */
+    public void stop()
+    {
+        for (Worker worker : m_workers)
+        {
+            if (worker != null)
+            {
+                try
+                {
+                    worker.m_queue.put(STOP);
+                    worker.join(TimeUnit.SECONDS.toMillis(30));
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("IDOC pipeline stopped. " + m_statistics);
+        }
+    }
+
+    /**
+     * This method creates the dispatcher for a worker.
+     *
+     * @return  The dispatcher.
+     *
+     * @throws  SAPConnectorException  In case the request sender could not be created.
+     */
+    protected IDocDispatcher createDispatcher()
+                                       throws SAPConnectorException
+    {
+        OLEDBRequestSender oleDBRequestSender = new OLEDBRequestSender(SAPConnectorConstants.IDOC_TABLE_NAME,
+                                                                       m_config.getOrganization());
+
+        return new IDocDispatcher(m_config, oleDBRequestSender, new Document(), m_statistics);
+    }
+
+    /**
+     * Holds the state of one document list.
+     */
+    private static class Batch
+    {
+        /**
+         * Counts the IDocs that still have to be processed.
+         */
+        private final CountDownLatch m_done;
+        /**
+         * Holds the first error.
+         */
+        private volatile Throwable m_failure;
+        /**
+         * Holds the XML of the tuple per IDoc.
+         */
+        private final String[] m_tuples;
+
+        /**
+         * Creates a new Batch object.
+         *
+         * @param  size  The number of IDocs.
+         */
+        Batch(int size)
+        {
+            m_tuples = new String[size];
+            m_done = new CountDownLatch(size);
+        }
+    }
+
+    /**
+     * Holds one IDoc to process.
+     */
+    private static class Job
+    {
+        /**
+         * Holds the batch the IDoc belongs to.
+         */
+        private final Batch m_batch;
+        /**
+         * Holds the time the job was queued.
+         */
+        private final long m_queued = System.nanoTime();
+        /**
+         * Holds the IDoc.
+         */
+        private final IDoc.Document m_idoc;
+        /**
+         * Holds the index of the IDoc in the batch.
+         */
+        private final int m_index;
+        /**
+         * Holds the transaction ID.
+         */
+        private final String m_tid;
+
+        /**
+         * Creates a new Job object.
+         *
+         * @param  idoc   The IDoc.
+         * @param  tid    The transaction ID.
+         * @param  index  The index of the IDoc in the batch.
+         * @param  batch  The batch.
+         */
+        Job(IDoc.Document idoc, String tid, int index, Batch batch)
+        {
+            m_idoc = idoc;
+            m_tid = tid;
+            m_index = index;
+            m_batch = batch;
+        }
+    }
+
+    /**
+     * Thread that processes the IDocs from its queue.
+     */
+    private class Worker extends Thread
+    {
+        /**
+         * Holds the dispatcher of this worker.
+         */
+        private final IDocDispatcher m_dispatcher;
+        /**
+         * Holds the queue of this worker.
+         */
+        private final BlockingQueue<Job> m_queue;
+
+        /**
+         * Creates a new Worker object.
+         *
+         * @param  name        The name of the thread.
+         * @param  dispatcher  The dispatcher to use.
+         * @param  queueSize   The capacity of the queue.
+         */
+        Worker(String name, IDocDispatcher dispatcher, int queueSize)
+        {
+            super(name);
+            setDaemon(true);
+
+            m_dispatcher = dispatcher;
+            m_queue = new ArrayBlockingQueue<Job>(queueSize);
+        }
+
+        /**
+         * @see  java.lang.Thread#run()
+         */
+        @Override public void run()
+        {
+            while (true)
+            {
+                Job job;
+
+                try
+                {
+                    job = m_queue.take();
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+
+                if (job == STOP)
+                {
+                    return;
+                }
+
+                m_statistics.addStageTime(IDocStatistics.STAGE_QUEUE,
+                                          System.nanoTime() - job.m_queued);
+
+                try
+                {
+                    if (job.m_batch.m_failure == null)
+                    {
+                        int tuple = m_dispatcher.dispatch(job.m_idoc, job.m_tid);
+
+                        try
+                        {
+                            job.m_batch.m_tuples[job.m_index] = Node.writeToString(tuple, false);
+                        }
+                        finally
+                        {
+                            BACUtil.deleteNode(tuple);
+                        }
+                    }
+                }
+                catch (Throwable t)
+                {
+                    job.m_batch.m_failure = t;
+                }
+                finally
+                {
+                    job.m_batch.m_done.countDown();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright 2005 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.idoc;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class keeps the time spent in each stage of the inbound IDoc processing. It is shared by
+ * all threads that process IDocs for a listener or pipeline.
+ *
+ * @author  pgussow
+ */
+public class IDocStatistics
+{
+    /**
+     * Identifies the stage in which the IDoc waits in the queue of a worker.
+     */
+    public static final int STAGE_QUEUE = 0;
+    /**
+     * Identifies the stage in which the IDoc is converted to XML.
+     */
+    public static final int STAGE_CONVERT = 1;
+    /**
+     * Identifies the stage in which the target mapping is looked up.
+     */
+    public static final int STAGE_LOOKUP = 2;
+    /**
+     * Identifies the stage in which the IDoc is sent to the target SOAP node.
+     */
+    public static final int STAGE_DISPATCH = 3;
+    /**
+     * Identifies the stage in which the database tuple is created.
+     */
+    public static final int STAGE_STORE = 4;
+    /**
+     * Holds the names of the stages.
+     */
+    private static final String[] STAGE_NAMES = new String[]
+                                                {
+                                                    "queue", "convert", "lookup", "dispatch", "store"
+                                                };
+    /**
+     * Holds the number of processed IDocs.
+     */
+    private final AtomicLong m_idocs = new AtomicLong();
+    /**
+     * Holds the total time in nanoseconds per stage.
+     */
+    private final AtomicLongArray m_stageTimes = new AtomicLongArray(STAGE_NAMES.length);
+
+    /**
+     * This method adds the time spent in a stage.
+     *
+     * @param  stage  The stage.
+     * @param  nanos  The time in nanoseconds.
+     */
+    public void addStageTime(int stage, long nanos)
+    {
+        m_stageTimes.addAndGet(stage, nanos);
+    }
+
+    /**
+     * This method returns the number of processed IDocs.
+     *
+     * @return  The number of processed IDocs.
+     */
+    public long getIDocCount()
+    {
+        return m_idocs.get();
+    }
+
+    /**
+     * This method returns the total time spent in the given stage.
+     *
+     * @param   stage  The stage.
+     *
+     * @return  The time in nanoseconds.
+     */
+    public long getStageTime(int stage)
+    {
+        return m_stageTimes.get(stage);
+    }
+
+    /**
+     * This method marks one IDoc as processed.
+     */
+    public void idocProcessed()
+    {
+        m_idocs.incrementAndGet();
+    }
+
+    /**
+     * @see  java.lang.Object#toString()
+     */
+    @Override public String toString()
+    {
+        long idocs = m_idocs.get();
+        StringBuffer sb = new StringBuffer();
+
+        sb.append("IDOCs: ").append(idocs);
+
+        for (int i = 0; i < STAGE_NAMES.length; i++)
+        {
+            long average = (idocs == 0) ? 0 : (m_stageTimes.get(i) / idocs / 1000);
+            sb.append(", ").append(STAGE_NAMES[i]).append(": ").append(average).append(" us");
+        }
+
+        return sb.toString();
+    }
+}
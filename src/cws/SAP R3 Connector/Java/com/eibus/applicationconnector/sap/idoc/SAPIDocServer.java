@@ -21,7 +21,6 @@ import com.eibus.applicationconnector.sap.Messages;
 import com.eibus.applicationconnector.sap.SAPConnectorConstants;
 import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
 import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
-import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
 import com.eibus.applicationconnector.sap.request.OLEDBRequestSender;
 import com.eibus.applicationconnector.sap.util.BACUtil;
 
@@ -29,16 +28,24 @@ import com.eibus.util.logger.CordysLogger;
 
 import com.eibus.xml.nom.Document;
 import com.eibus.xml.nom.Find;
-import com.eibus.xml.nom.Node;
 
 import com.sap.mw.idoc.IDoc;
 import com.sap.mw.idoc.jco.JCoIDoc;
 import com.sap.mw.jco.IRepository;
 import com.sap.mw.jco.JCO;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * This class acts as a listener to the incoming IDOC requests from SAP.
  *
+ * <p>A JCo server handles one call at a time on its own thread, so the tRFC callbacks of a
+ * transaction (onCheckTID, handleRequest, onCommit and onConfirmTID) run one after the other on
+ * that thread. The current tid and tuples are therefore kept per listener, and all nodes of a
+ * listener are created in its own document. Calls are handled in parallel by starting more
+ * listeners.</p>
+ *
  * @author  ygopal
  */
 
@@ -49,31 +56,36 @@ public class SAPIDocServer extends JCoIDoc.Server
      * Holds the logger to use.
      */
     private static final CordysLogger LOG = CordysLogger.getCordysLogger(SAPIDocServer.class);
-    /**
-     * Default parameter name assumed.
-     */
-    //private static String targetMethod_parameterName = "parameter";
-    private static String targetMethod_parameterName = "IDOC";
     /**
      * DOCUMENTME.
      */
     private Document doc;
     /**
-     * Holds the configuration of the connector.
+     * Holds the dispatcher that processes the IDocs when no pipeline is used.
      */
-    private ISAPConfiguration m_config;
+    private IDocDispatcher m_dispatcher;
     /**
      * DOCUMENTME.
      */
-    private TargetMappingFinder mappingFinder;
+    private OLEDBRequestSender oleDBRequestSender;
     /**
-     * DOCUMENTME.
+     * Holds the pipeline that processes the IDocs. If null the IDocs are processed by the
+     * listener thread itself.
      */
-    private OLEDBRequestSender oleDBRequestSender;
+    private IDocPipeline m_pipeline;
+    /**
+     * Holds the statistics of this listener when no pipeline is used.
+     */
+    private IDocStatistics m_statistics = new IDocStatistics();
     /**
      * DOCUMENTME.
      */
     private int[] params_updateMethod;
+    /**
+     * Holds the local store of the transaction IDs. If null the transaction IDs are checked in
+     * the database.
+     */
+    private TIDStore m_tidStore;
     /**
      * This string stores the current tid.
      */
@@ -94,14 +106,67 @@ public class SAPIDocServer extends JCoIDoc.Server
     public SAPIDocServer(String gwhost, String gwserv, String progid, IRepository jcoRepository,
                          IDoc.Repository idocRepository, ISAPConfiguration configuration)
                   throws SAPConnectorException
+    {
+        this(gwhost, gwserv, progid, jcoRepository, idocRepository, configuration, null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param   gwhost          DOCUMENTME
+     * @param   gwserv          DOCUMENTME
+     * @param   progid          DOCUMENTME
+     * @param   jcoRepository   DOCUMENTME
+     * @param   idocRepository  DOCUMENTME
+     * @param   configuration   The configuration of the connector.
+     * @param   pipeline        The pipeline to process the IDocs with. If null the IDocs are
+     *                          processed by the listener thread.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions.
+     */
+    public SAPIDocServer(String gwhost, String gwserv, String progid, IRepository jcoRepository,
+                         IDoc.Repository idocRepository, ISAPConfiguration configuration,
+                         IDocPipeline pipeline)
+                  throws SAPConnectorException
+    {
+        this(gwhost, gwserv, progid, jcoRepository, idocRepository, configuration, pipeline,
+             null);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param   gwhost          DOCUMENTME
+     * @param   gwserv          DOCUMENTME
+     * @param   progid          DOCUMENTME
+     * @param   jcoRepository   DOCUMENTME
+     * @param   idocRepository  DOCUMENTME
+     * @param   configuration   The configuration of the connector.
+     * @param   pipeline        The pipeline to process the IDocs with. If null the IDocs are
+     *                          processed by the listener thread.
+     * @param   tidStore        The local store of the transaction IDs. If null the transaction
+     *                          IDs are checked in the database. The transactions in doubt are
+     *                          resolved with the sender and document of this listener.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions.
+     */
+    public SAPIDocServer(String gwhost, String gwserv, String progid, IRepository jcoRepository,
+                         IDoc.Repository idocRepository, ISAPConfiguration configuration,
+                         IDocPipeline pipeline, TIDStore tidStore)
+                  throws SAPConnectorException
     {
         super(gwhost, gwserv, progid, jcoRepository, idocRepository);
         this.setProperty("jco.server.unicode", "1") ;
-        m_config = configuration;
-        mappingFinder = m_config.getTargetMappingFinder();
         doc = new Document();
-        oleDBRequestSender = new OLEDBRequestSender(SAPConnectorConstants.IDOC_TABLE_NAME,
-                                                    m_config.getOrganization());
+        oleDBRequestSender = createOLEDBRequestSender(configuration);
+        m_dispatcher = createDispatcher(configuration, oleDBRequestSender, doc, m_statistics);
+        m_pipeline = pipeline;
+        m_tidStore = tidStore;
+
+        if (m_tidStore != null)
+        {
+            m_tidStore.resolveInDoubt(oleDBRequestSender, doc);
+        }
         JCO.addServerErrorListener(this);
         JCO.addServerExceptionListener(this);
     }
@@ -154,8 +219,8 @@ public class SAPIDocServer extends JCoIDoc.Server
      *
      * @throws  Exception  DOCUMENTME
      */
-    @Override protected synchronized void handleRequest(IDoc.DocumentList idocList)
-                                                 throws Exception
+    @Override protected void handleRequest(IDoc.DocumentList idocList)
+                                    throws Exception
     {
         int number_idocs = idocList.getNumDocuments();
 
@@ -163,15 +228,26 @@ public class SAPIDocServer extends JCoIDoc.Server
         {
             LOG.debug("Number of IDOCs in the list are " + number_idocs);
         }
-        params_updateMethod = new int[number_idocs];
 
-        // Application specific IDoc processing goes here
-        IDoc.Document idoc;
+        List<IDoc.Document> idocs = new ArrayList<IDoc.Document>(number_idocs);
 
         for (int i = 0; i < number_idocs; i++)
         {
-            idoc = idocList.get(i);
-            processIDOC(idoc, i);
+            idocs.add(idocList.get(i));
+        }
+
+        if (m_pipeline != null)
+        {
+            params_updateMethod = m_pipeline.process(idocs, tid, doc);
+            return;
+        }
+
+        // Application specific IDoc processing goes here
+        params_updateMethod = m_dispatcher.dispatch(idocs, tid);
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Processed " + number_idocs + " IDOCs. " + m_statistics);
         }
     }
 
@@ -189,6 +265,11 @@ public class SAPIDocServer extends JCoIDoc.Server
             {
                 LOG.debug(" In onCheckTID method. Tid is " + tid);
             }
+
+            if (m_tidStore != null)
+            {
+                return m_tidStore.check(tid, oleDBRequestSender, doc);
+            }
             return checkTIDInDataBase(tid);
         }
         catch (SAPConnectorException sf)
@@ -210,6 +291,11 @@ public class SAPIDocServer extends JCoIDoc.Server
         {
             oleDBRequestSender.sendOleDBUpdateRequest(params_updateMethod, doc);
 
+            if (m_tidStore != null)
+            {
+                m_tidStore.commit(tid);
+            }
+
             if (LOG.isDebugEnabled())
             {
                 LOG.debug("IDOC(s) stored in the database.");
@@ -240,6 +326,18 @@ public class SAPIDocServer extends JCoIDoc.Server
             }
         }
         // System.out.println("After Confirming " + doc.getNumUsedNodes(true));
+
+        if (m_tidStore != null)
+        {
+            try
+            {
+                m_tidStore.confirm(tid);
+            }
+            catch (SAPConnectorException sf)
+            {
+                LOG.error(sf, Messages.ERR_CHECKING_TID, sf.getLocalizedMessage());
+            }
+        }
     }
 
     // Application specific TID rolling back goes here
@@ -252,6 +350,18 @@ public class SAPIDocServer extends JCoIDoc.Server
         {
             LOG.debug("in rollback tid" + tid);
         }
+
+        if (m_tidStore != null)
+        {
+            try
+            {
+                m_tidStore.rollback(tid);
+            }
+            catch (SAPConnectorException sf)
+            {
+                LOG.error(sf, Messages.ERR_CHECKING_TID, sf.getLocalizedMessage());
+            }
+        }
     }
 
     /**
@@ -282,6 +392,41 @@ public class SAPIDocServer extends JCoIDoc.Server
         // addChildSegments(siblingSegment, siblingMetadata);
     }
 
+    /**
+     * This method creates the dispatcher that processes the IDocs when no pipeline is used. It is
+     * called from the constructor, so overriding methods must not use fields of the subclass.
+     *
+     * @param   configuration       The configuration of the connector.
+     * @param   oleDBRequestSender  The sender for the database and SOAP requests.
+     * @param   document            The document to create the nodes in.
+     * @param   statistics          The statistics to update.
+     *
+     * @return  The dispatcher.
+     */
+    protected IDocDispatcher createDispatcher(ISAPConfiguration configuration,
+                                              OLEDBRequestSender oleDBRequestSender,
+                                              Document document, IDocStatistics statistics)
+    {
+        return new IDocDispatcher(configuration, oleDBRequestSender, document, statistics);
+    }
+
+    /**
+     * This method creates the sender that stores the IDocs in the database. It is called from the
+     * constructor, so overriding methods must not use fields of the subclass.
+     *
+     * @param   configuration  The configuration of the connector.
+     *
+     * @return  The sender for the IDoc table.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    protected OLEDBRequestSender createOLEDBRequestSender(ISAPConfiguration configuration)
+                                                   throws SAPConnectorException
+    {
+        return new OLEDBRequestSender(SAPConnectorConstants.IDOC_TABLE_NAME,
+                                      configuration.getOrganization());
+    }
+
     /**
      * This method checks for tid in the database. Returns true if the tid is not in the database
      *
@@ -310,108 +455,4 @@ public class SAPIDocServer extends JCoIDoc.Server
             return false;
         }
     }
-
-    /**
-     * This method processes each IDOC. i.e. it does the following. 1. Tries to find the target
-     * system and send the request to it. 2. Obtain the local status and store the IDOC in the
-     * database.
-     *
-     * @param   idoc         DOCUMENTME
-     * @param   indexInList  DOCUMENTME
-     *
-     * @throws  SAPConnectorException  In case of any exceptions
-     */
-    private void processIDOC(IDoc.Document idoc, int indexInList)
-                      throws SAPConnectorException
-    {
-        String idocNum = idoc.getIDocNumber();
-        String mesType = idoc.getMessageType();
-        String idocType = idoc.getIDocType();
-        String cimType = idoc.getIDocTypeExtension();
-        String receiverLS = idoc.getRecipientPartnerNumber();
-
-        if (LOG.isDebugEnabled())
-        {
-            LOG.debug("Received IDOC information: IDOCNumber = " + idocNum + ", MessageType = " +
-                      mesType + ", IDOCType =" + idocType + ", CIMType = " + cimType +
-                      ", Receiver LS = " + receiverLS);
-        }
-
-        String idocXMLString = idoc.toXML();
-        int idocXMLNode;
-        String localStatus;
-        String errorText;
-        String targetSystem;
-        targetSystem = "";
-
-        try
-        {
-            idocXMLNode = doc.parseString(idocXMLString);
-        }
-        catch (Exception xe)
-        {
-            throw new SAPConnectorException(xe, SAPConnectorExceptionMessages.ERROR_PARSING_IDOC,
-                                            idocXMLString);
-        }
-
-        StringBuffer targetSOAPNode = new StringBuffer();
-        StringBuffer targetMethod = new StringBuffer();
-        StringBuffer targetNameSpace = new StringBuffer();
-        int parameterNode = 0;
-
-        try
-        {
-            mappingFinder.getTargetMapping(mesType, idocType, receiverLS, targetSOAPNode,
-                                           targetMethod, targetNameSpace);
-
-            String str_targetSOAPNode = targetSOAPNode.substring(0).trim();
-            String str_targetMethod = targetMethod.substring(0).trim();
-            String str_targetNameSpace = targetNameSpace.substring(0).trim();
-
-            /*String str_targetSOAPNode = "cn=Java Call Service,cn=soap
-             * nodes,o=system,cn=cordys,o=vanenburg.com".trim(); String str_targetMethod =
-             * "ReceiveIDOC".trim();String str_targetNameSpace =
-             * "http://schemas.cordys.com/IDOCReceiver".trim();*/
-            if (LOG.isDebugEnabled())
-            {
-                LOG.debug(" Target Mapping found. TargetSOAPNode: " + str_targetSOAPNode +
-                          " TargetMethod: " + str_targetMethod + " TargetNamespace: " +
-                          str_targetNameSpace);
-            }
-            // System.out.println(" Target Mapping found. TargetSOAPNode: "+ str_targetSOAPNode + "
-            // TargetMethod: "+ str_targetMethod + " TargetNamespace: " + str_targetNameSpace);
-            // Target system is the target SOAPNode name extracted from targetSOAPNode DN.
-            targetSystem = str_targetSOAPNode.substring(3, str_targetSOAPNode.indexOf(","));
-            // parameter to be used in the request to the target SOAP Node
-            parameterNode = doc.createElement(targetMethod_parameterName);
-            Node.appendToChildren(idocXMLNode, parameterNode);
-            oleDBRequestSender.sendRequestToSOAPNode(str_targetSOAPNode, str_targetMethod,
-                                                     str_targetNameSpace, parameterNode, doc);
-
-            if (LOG.isDebugEnabled())
-            {
-                LOG.debug("IDOC sent to the target system.");
-            }
-            // System.out.println("IDOC sent to the target system.");
-            localStatus = "Dispatched";
-            errorText = "";
-        }
-        catch (Exception e)
-        {
-            localStatus = "Error";
-            errorText = "Exception occured while dispatching the IDOC: " + e.toString();
-
-            LOG.error(e, Messages.ERROR_DISPATCHING_IDOC);
-        }
-
-        params_updateMethod[indexInList] = oleDBRequestSender.frameIDOCInsertTuple(idoc,
-                                                                                   idocXMLNode, tid,
-                                                                                   localStatus,
-                                                                                   errorText,
-                                                                                   targetSystem,
-                                                                                   m_config
-                                                                                   .getServiceGroup(),
-                                                                                   doc);
-        BACUtil.deleteNode(parameterNode);
-    }
 }
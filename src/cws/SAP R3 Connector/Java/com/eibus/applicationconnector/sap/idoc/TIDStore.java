@@ -0,0 +1,602 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.idoc;
+
+import com.eibus.applicationconnector.sap.Messages;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+import com.eibus.applicationconnector.sap.request.OLEDBRequestSender;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.util.logger.CordysLogger;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Find;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class keeps the state of the transactions of the IDoc listener in a local file, so that
+ * onCheckTID does not need a round trip to the database for every transaction.
+ *
+ * <p>The file is an append-only log with one line per state change: the state and the TID. A
+ * TID is checked (C) when SAP announces it, stored (S) when its IDocs are committed, and removed
+ * again when it is rolled back (R) or confirmed (F). The check and the commit are forced to disk;
+ * the other records may get lost in a crash without harm. When the log has grown to more than
+ * twice the number of open transactions, it is compacted: the open transactions are written to a
+ * temporary file, which then replaces the log.</p>
+ *
+ * <p>When the store is opened, the log is replayed. A record that was only partly written when the
+ * process died is dropped. Transactions that were checked but not committed or rolled back are in
+ * doubt: their IDocs may have been stored without the commit record, because the process died
+ * between the two or because writing the commit record failed. A transaction in doubt is only
+ * processed again when it is not in the IDoc table. check does this lookup when SAP sends the
+ * transaction again; resolveInDoubt does it for all of them.</p>
+ *
+ * @author  pgussow
+ */
+public class TIDStore
+{
+    /**
+     * Holds the default number of records after which the log is compacted.
+     */
+    public static final int DEFAULT_COMPACT_THRESHOLD = 10000;
+    /**
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(TIDStore.class);
+    /**
+     * Holds the record type of a checked transaction.
+     */
+    private static final char CHECKED = 'C';
+    /**
+     * Holds the record type of a confirmed transaction.
+     */
+    private static final char CONFIRMED = 'F';
+    /**
+     * Holds the record type of a rolled back transaction.
+     */
+    private static final char ROLLED_BACK = 'R';
+    /**
+     * Holds the record type of a committed transaction.
+     */
+    private static final char STORED = 'S';
+    /**
+     * Holds the extension of the file the log is compacted into.
+     */
+    private static final String TEMP_EXTENSION = ".tmp";
+    /**
+     * Holds the channel the records are appended to.
+     */
+    private FileChannel m_channel;
+    /**
+     * Holds the number of records after which the log is compacted.
+     */
+    private final int m_compactThreshold;
+    /**
+     * Holds the log file.
+     */
+    private final File m_file;
+    /**
+     * Holds the number of records in the log.
+     */
+    private int m_records;
+    /**
+     * Holds the state of the open transactions.
+     */
+    private final Map<String, Character> m_states = new HashMap<String, Character>();
+
+    /**
+     * Creates a new TIDStore object. The log is created if it does not exist yet, otherwise it is
+     * replayed.
+     *
+     * @param   file              The log file.
+     * @param   compactThreshold  The number of records after which the log is compacted.
+     *
+     * @throws  SAPConnectorException  In case the log cannot be read.
+     */
+    public TIDStore(File file, int compactThreshold)
+             throws SAPConnectorException
+    {
+        m_file = file;
+        m_compactThreshold = compactThreshold;
+
+        File tempFile = getTempFile();
+
+        if (m_file.exists())
+        {
+            // An unfinished compaction. The log is still complete.
+            tempFile.delete();
+        }
+        else if (tempFile.exists() && !tempFile.renameTo(m_file))
+        {
+            // The compacted log was forced before the log was deleted.
+            throw new SAPConnectorException(SAPConnectorExceptionMessages.ERROR_READING_TID_STORE,
+                                            m_file.getAbsolutePath());
+        }
+
+        if (m_file.getParentFile() != null)
+        {
+            m_file.getParentFile().mkdirs();
+        }
+
+        long length = replay();
+
+        try
+        {
+            RandomAccessFile raf = new RandomAccessFile(m_file, "rw");
+            m_channel = raf.getChannel();
+
+            // Drop the record that was partly written.
+            m_channel.truncate(length);
+            m_channel.position(length);
+        }
+        catch (IOException e)
+        {
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.ERROR_READING_TID_STORE,
+                                            m_file.getAbsolutePath());
+        }
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Opened TID store " + m_file.getAbsolutePath() + " with " + m_records +
+                      " records and " + m_states.size() + " open transactions");
+        }
+    }
+
+    /**
+     * This method is called from onCheckTID. It returns whether the IDocs of the transaction must
+     * be processed, which is the case unless the transaction was committed before. A transaction
+     * in doubt is looked up in the IDoc table; if its IDocs are there it is committed. The check
+     * record is forced to disk before the method returns true.
+     *
+     * @param   tid                 The transaction ID.
+     * @param   oleDBRequestSender  The sender for the IDoc table.
+     * @param   doc                 The document to create the requests in.
+     *
+     * @return  true if the transaction is new.
+     *
+     * @throws  SAPConnectorException  In case the record cannot be written or the IDoc table
+     *                                 cannot be read.
+     */
+    public boolean check(String tid, OLEDBRequestSender oleDBRequestSender, Document doc)
+                  throws SAPConnectorException
+    {
+        // The IDoc table is read outside the lock, so the other listeners do not wait for it.
+        if (isInDoubt(tid) && isStored(tid, oleDBRequestSender, doc))
+        {
+            commit(tid);
+            return false;
+        }
+
+        synchronized (this)
+        {
+            Character state = m_states.get(tid);
+
+            if ((state != null) && (state.charValue() == STORED))
+            {
+                return false;
+            }
+
+            if (state == null)
+            {
+                m_states.put(tid, CHECKED);
+                append(CHECKED, tid, true);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * This method closes the log.
+     */
+    public synchronized void close()
+    {
+        try
+        {
+            m_channel.close();
+        }
+        catch (IOException e)
+        {
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Error closing TID store " + m_file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * This method is called from onCommit after the IDocs of the transaction are stored. The
+     * record is forced to disk before the method returns. If the record cannot be written the
+     * transaction is still known as committed until the process stops; after that the check
+     * record makes it a transaction in doubt.
+     *
+     * @param   tid  The transaction ID.
+     *
+     * @throws  SAPConnectorException  In case the record cannot be written.
+     */
+    public synchronized void commit(String tid)
+                             throws SAPConnectorException
+    {
+        m_states.put(tid, STORED);
+        append(STORED, tid, true);
+    }
+
+    /**
+     * This method is called from onConfirmTID. SAP will not send the transaction again, so it is
+     * removed.
+     *
+     * @param   tid  The transaction ID.
+     *
+     * @throws  SAPConnectorException  In case the record cannot be written.
+     */
+    public synchronized void confirm(String tid)
+                              throws SAPConnectorException
+    {
+        if (m_states.remove(tid) != null)
+        {
+            append(CONFIRMED, tid, false);
+        }
+    }
+
+    /**
+     * This method returns the transactions that were checked, but not committed or rolled back.
+     * Right after the store is opened these are the transactions that were busy when the process
+     * stopped.
+     *
+     * @return  The transaction IDs.
+     */
+    public synchronized List<String> getInDoubt()
+    {
+        List<String> returnValue = new ArrayList<String>();
+
+        for (Map.Entry<String, Character> entry : m_states.entrySet())
+        {
+            if (entry.getValue().charValue() == CHECKED)
+            {
+                returnValue.add(entry.getKey());
+            }
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method returns the number of open transactions.
+     *
+     * @return  The number of transactions that are checked or committed, but not confirmed.
+     */
+    public synchronized int getSize()
+    {
+        return m_states.size();
+    }
+
+    /**
+     * This method returns whether the transaction is in doubt: it was checked, but not committed
+     * or rolled back.
+     *
+     * @param   tid  The transaction ID.
+     *
+     * @return  true if the transaction is in doubt.
+     */
+    public synchronized boolean isInDoubt(String tid)
+    {
+        Character state = m_states.get(tid);
+
+        return (state != null) && (state.charValue() == CHECKED);
+    }
+
+    /**
+     * This method returns whether the transaction was committed.
+     *
+     * @param   tid  The transaction ID.
+     *
+     * @return  true if the transaction was committed and not yet confirmed.
+     */
+    public synchronized boolean isCommitted(String tid)
+    {
+        Character state = m_states.get(tid);
+
+        return (state != null) && (state.charValue() == STORED);
+    }
+
+    /**
+     * This method checks the transactions that are in doubt against the IDoc table. The ones
+     * whose IDocs were stored are committed, the others are rolled back.
+     *
+     * @param   oleDBRequestSender  The sender for the IDoc table.
+     * @param   doc                 The document to create the requests in.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    public void resolveInDoubt(OLEDBRequestSender oleDBRequestSender, Document doc)
+                        throws SAPConnectorException
+    {
+        for (String tid : getInDoubt())
+        {
+            if (isStored(tid, oleDBRequestSender, doc))
+            {
+                commit(tid);
+            }
+            else
+            {
+                rollback(tid);
+            }
+        }
+    }
+
+    /**
+     * This method is called from onRollback. The transaction is removed, so SAP can send it again.
+     * JCo also calls onRollback when onCommit fails; a transaction that is already committed is
+     * kept, because its IDocs are stored.
+     *
+     * @param   tid  The transaction ID.
+     *
+     * @throws  SAPConnectorException  In case the record cannot be written.
+     */
+    public synchronized void rollback(String tid)
+                               throws SAPConnectorException
+    {
+        Character state = m_states.get(tid);
+
+        if ((state != null) && (state.charValue() == CHECKED))
+        {
+            m_states.remove(tid);
+            append(ROLLED_BACK, tid, false);
+        }
+    }
+
+    /**
+     * This method creates the bytes of a record.
+     *
+     * @param   state  The state.
+     * @param   tid    The transaction ID.
+     *
+     * @return  The record.
+     */
+    private static byte[] toRecord(char state, String tid)
+    {
+        try
+        {
+            return (state + " " + tid + "\n").getBytes("US-ASCII");
+        }
+        catch (UnsupportedEncodingException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * This method appends a record to the log and compacts the log when needed.
+     *
+     * @param   state  The state.
+     * @param   tid    The transaction ID.
+     * @param   force  Whether the record must be on disk before the method returns.
+     *
+     * @throws  SAPConnectorException  In case the record cannot be written.
+     */
+    private void append(char state, String tid, boolean force)
+                 throws SAPConnectorException
+    {
+        try
+        {
+            ByteBuffer buffer = ByteBuffer.wrap(toRecord(state, tid));
+
+            while (buffer.hasRemaining())
+            {
+                m_channel.write(buffer);
+            }
+
+            if (force)
+            {
+                m_channel.force(false);
+            }
+            m_records++;
+
+            if ((m_records > m_compactThreshold) && (m_records > (2 * m_states.size())))
+            {
+                compact();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.ERROR_WRITING_TID_STORE,
+                                            m_file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * This method replaces the log with a log that only contains the open transactions.
+     *
+     * @throws  IOException  In case of any exceptions
+     */
+    private void compact()
+                  throws IOException
+    {
+        File tempFile = getTempFile();
+        FileOutputStream fos = new FileOutputStream(tempFile);
+
+        try
+        {
+            OutputStream out = new BufferedOutputStream(fos);
+
+            for (Map.Entry<String, Character> entry : m_states.entrySet())
+            {
+                out.write(toRecord(entry.getValue().charValue(), entry.getKey()));
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        finally
+        {
+            fos.close();
+        }
+
+        m_channel.close();
+
+        if (!tempFile.renameTo(m_file) && !(m_file.delete() && tempFile.renameTo(m_file)))
+        {
+            throw new IOException("Could not replace " + m_file.getAbsolutePath());
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(m_file, "rw");
+        m_channel = raf.getChannel();
+        m_channel.position(m_channel.size());
+        m_records = m_states.size();
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Compacted TID store " + m_file.getAbsolutePath() + " to " + m_records +
+                      " records");
+        }
+    }
+
+    /**
+     * This method returns the file the log is compacted into.
+     *
+     * @return  The temporary file.
+     */
+    private File getTempFile()
+    {
+        return new File(m_file.getPath() + TEMP_EXTENSION);
+    }
+
+    /**
+     * This method returns whether the IDocs of the transaction are in the IDoc table.
+     *
+     * @param   tid                 The transaction ID.
+     * @param   oleDBRequestSender  The sender for the IDoc table.
+     * @param   doc                 The document to create the request in.
+     *
+     * @return  true if the IDocs were stored.
+     *
+     * @throws  SAPConnectorException  In case the IDoc table cannot be read.
+     */
+    private static boolean isStored(String tid, OLEDBRequestSender oleDBRequestSender, Document doc)
+                             throws SAPConnectorException
+    {
+        int responseNode = oleDBRequestSender.getTid(tid, doc);
+
+        try
+        {
+            return Find.firstMatch(responseNode, "<GetTidResponse><tuple>") != 0;
+        }
+        finally
+        {
+            BACUtil.deleteNode(responseNode);
+        }
+    }
+
+    /**
+     * This method replays the log into the state of the open transactions.
+     *
+     * @return  The length of the complete records.
+     *
+     * @throws  SAPConnectorException  In case the log cannot be read.
+     */
+    private long replay()
+                 throws SAPConnectorException
+    {
+        long returnValue = 0;
+
+        if (!m_file.exists())
+        {
+            return returnValue;
+        }
+
+        try
+        {
+            InputStream in = new BufferedInputStream(new FileInputStream(m_file));
+
+            try
+            {
+                ByteArrayOutputStream line = new ByteArrayOutputStream(32);
+                long position = 0;
+                int b;
+
+                while ((b = in.read()) != -1)
+                {
+                    position++;
+
+                    if (b != '\n')
+                    {
+                        line.write(b);
+                        continue;
+                    }
+
+                    String record = line.toString("US-ASCII");
+                    line.reset();
+                    returnValue = position;
+
+                    if ((record.length() < 3) || (record.charAt(1) != ' '))
+                    {
+                        LOG.warn(null, Messages.WRN_INVALID_TID_RECORD, m_file.getAbsolutePath(),
+                                 record);
+                        continue;
+                    }
+
+                    String tid = record.substring(2);
+                    char state = record.charAt(0);
+
+                    if ((state == CHECKED) || (state == STORED))
+                    {
+                        m_states.put(tid, state);
+                    }
+                    else
+                    {
+                        m_states.remove(tid);
+                    }
+                    m_records++;
+                }
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.ERROR_READING_TID_STORE,
+                                            m_file.getAbsolutePath());
+        }
+
+        return returnValue;
+    }
+}
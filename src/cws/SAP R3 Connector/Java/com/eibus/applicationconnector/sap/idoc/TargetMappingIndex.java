@@ -0,0 +1,384 @@
+/**
+ * Copyright 2005 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.idoc;
+
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+
+import com.eibus.xml.nom.Find;
+import com.eibus.xml.nom.Node;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * This class holds the target mappings compiled into a hash index. It is built once when the
+ * mappings are loaded and never changed afterwards, so it can be used by all IDoc listeners
+ * without locking. A lookup probes the seven combinations of message type, IDoc type and
+ * recipient logical system that the search patterns allow, so it does not depend on the number
+ * of mappings.
+ *
+ * <p>The precedence of the search patterns is kept:</p>
+ *
+ * <ul>
+ *   <li>DEFAULT: the single mapping is returned for every IDoc.</li>
+ *   <li>USER-ORDERED: the first mapping in the XML that matches one of the combinations wins.
+ *     Message type and recipient are compared case insensitive.</li>
+ *   <li>BAC: the combinations are tried from most to least specific. If two mappings have the
+ *     same properties the last one wins.</li>
+ * </ul>
+ *
+ * @author  ygopal
+ */
+public final class TargetMappingIndex
+{
+    /**
+     * Identifies the DEFAULT search pattern.
+     */
+    public static final String PATTERN_DEFAULT = "DEFAULT";
+    /**
+     * Identifies the USER-ORDERED search pattern.
+     */
+    public static final String PATTERN_USER_ORDERED = "USER-ORDERED";
+    /**
+     * Identifies the BAC search pattern.
+     */
+    public static final String PATTERN_BAC = "BAC";
+    /**
+     * Index without mappings. Every lookup returns no match.
+     */
+    public static final TargetMappingIndex EMPTY = new TargetMappingIndex("", null,
+                                                                          new HashMap<String, Entry>());
+    /**
+     * Separates the properties in a key. It cannot occur in XML text.
+     */
+    private static final char KEY_SEPARATOR = '\u0000';
+    /**
+     * Holds the mapping used for the DEFAULT search pattern.
+     */
+    private final TargetMapping m_defaultMapping;
+    /**
+     * Holds the mappings per key.
+     */
+    private final Map<String, Entry> m_entries;
+    /**
+     * Holds the search pattern.
+     */
+    private final String m_searchPattern;
+
+    /**
+     * Creates a new TargetMappingIndex object.
+     *
+     * @param  searchPattern   The search pattern.
+     * @param  defaultMapping  The mapping for the DEFAULT search pattern.
+     * @param  entries         The mappings per key.
+     */
+    private TargetMappingIndex(String searchPattern, TargetMapping defaultMapping,
+                               Map<String, Entry> entries)
+    {
+        m_searchPattern = searchPattern;
+        m_defaultMapping = defaultMapping;
+        m_entries = entries;
+    }
+
+    /**
+     * This method compiles the TargetMappings XML into an index. The XML is as follows.
+     * &lt;TargetMappings&gt; &lt;SearchPattern/&gt; &lt;Mapping&gt; &lt;Name/&gt; &lt;MESType/&gt;
+     * &lt;IDOCType/&gt; &lt;RecipientLS/&gt; &lt;OrgDN/&gt; &lt;SOAPNodeDN/&gt; &lt;MethodSet/&gt;
+     * &lt;Method/&gt; &lt;Namespace/&gt; &lt;/Mapping&gt; ... &lt;/TargetMappings&gt;
+     *
+     * @param   targetMappingsNode  The TargetMappings node.
+     *
+     * @return  The index.
+     *
+     * @throws  SAPConnectorException  In case the mappings are not valid.
+     */
+    public static TargetMappingIndex compile(int targetMappingsNode)
+                                      throws SAPConnectorException
+    {
+        if (targetMappingsNode == 0)
+        {
+            throw new SAPConnectorException(SAPConnectorExceptionMessages.TARGET_MAPPINGS_NOT_FOUND_IN_MAPPING_XML);
+        }
+
+        int searchPatternNode = Find.firstMatch(targetMappingsNode,
+                                                "<TargetMappings><SearchPattern>");
+        String searchPattern = Node.getDataWithDefault(searchPatternNode, "").toUpperCase();
+
+        if (!(searchPattern.equals(PATTERN_DEFAULT) || searchPattern.equals(PATTERN_USER_ORDERED) ||
+                  searchPattern.equals(PATTERN_BAC)))
+        {
+            throw new SAPConnectorException(SAPConnectorExceptionMessages.SEARCH_PATTERN_NOT_PROPERLY_SPECIFIED);
+        }
+
+        int[] mappingNodes = Find.match(targetMappingsNode, "<TargetMappings><Mapping>");
+
+        if (searchPattern.equals(PATTERN_DEFAULT))
+        {
+            TargetMapping mapping = (mappingNodes.length == 0) ? null
+                                                               : createMapping(mappingNodes[0]);
+
+            if ((mapping == null) || mapping.getMethod().equals("") ||
+                    mapping.getNamespace().equals("") || mapping.getSOAPNodeDN().equals(""))
+            {
+                throw new SAPConnectorException(SAPConnectorExceptionMessages.INVALID_METHOD_DETAILS);
+            }
+
+            return new TargetMappingIndex(searchPattern, mapping, new HashMap<String, Entry>());
+        }
+
+        if (mappingNodes.length == 0)
+        {
+            throw new SAPConnectorException(SAPConnectorExceptionMessages.NO_MAPPINGS_FOUND_IN_TARGET_MAPPING_XML);
+        }
+
+        boolean userOrdered = searchPattern.equals(PATTERN_USER_ORDERED);
+        Map<String, Entry> entries = new HashMap<String, Entry>(mappingNodes.length * 2);
+
+        for (int i = 0; i < mappingNodes.length; i++)
+        {
+            String mesType = getText(mappingNodes[i], "MESType");
+            String idocType = getText(mappingNodes[i], "IDOCType");
+            String recipientLS = getText(mappingNodes[i], "RecipientLS");
+            String key = createKey(mesType, idocType, recipientLS, userOrdered);
+
+            // In user ordered mode the first mapping wins, in BAC mode the last one.
+            if (!userOrdered || !entries.containsKey(key))
+            {
+                entries.put(key, new Entry(i, createMapping(mappingNodes[i])));
+            }
+        }
+
+        return new TargetMappingIndex(searchPattern, null, entries);
+    }
+
+    /**
+     * This method finds the mapping for an IDoc.
+     *
+     * @param   mesType      The message type.
+     * @param   idocType     The IDoc type.
+     * @param   recipientLS  The recipient logical system.
+     *
+     * @return  The mapping or null if there is no matching mapping.
+     */
+    public TargetMapping find(String mesType, String idocType, String recipientLS)
+    {
+        if (m_defaultMapping != null)
+        {
+            return m_defaultMapping;
+        }
+
+        if (m_entries.isEmpty())
+        {
+            return null;
+        }
+
+        boolean userOrdered = m_searchPattern.equals(PATTERN_USER_ORDERED);
+        Entry best = null;
+
+        mesType = (mesType == null) ? "" : mesType;
+        idocType = (idocType == null) ? "" : idocType;
+        recipientLS = (recipientLS == null) ? "" : recipientLS;
+
+        // The combinations in BAC precedence order.
+        for (int combination = 0; combination < 7; combination++)
+        {
+            Entry entry = m_entries.get(createKey(((combination & 4) == 0) ? mesType : "",
+                                                  ((combination & 2) == 0) ? idocType : "",
+                                                  ((combination & 1) == 0) ? recipientLS : "",
+                                                  userOrdered));
+
+            if (entry != null)
+            {
+                if (!userOrdered)
+                {
+                    return entry.m_mapping;
+                }
+
+                if ((best == null) || (entry.m_position < best.m_position))
+                {
+                    best = entry;
+                }
+            }
+        }
+
+        return (best == null) ? null : best.m_mapping;
+    }
+
+    /**
+     * This method returns the search pattern of the mappings.
+     *
+     * @return  The search pattern.
+     */
+    public String getSearchPattern()
+    {
+        return m_searchPattern;
+    }
+
+    /**
+     * This method returns the number of indexed mappings.
+     *
+     * @return  The number of mappings.
+     */
+    public int size()
+    {
+        return (m_defaultMapping != null) ? 1 : m_entries.size();
+    }
+
+    /**
+     * This method creates the key for the given properties.
+     *
+     * @param   mesType      The message type.
+     * @param   idocType     The IDoc type.
+     * @param   recipientLS  The recipient logical system.
+     * @param   ignoreCase   Whether message type and recipient are case insensitive.
+     *
+     * @return  The key.
+     */
+    private static String createKey(String mesType, String idocType, String recipientLS,
+                                    boolean ignoreCase)
+    {
+        if (ignoreCase)
+        {
+            mesType = mesType.toUpperCase();
+            recipientLS = recipientLS.toUpperCase();
+        }
+
+        StringBuffer key = new StringBuffer(mesType.length() + idocType.length() +
+                                            recipientLS.length() + 2);
+        key.append(mesType).append(KEY_SEPARATOR).append(idocType).append(KEY_SEPARATOR).append(recipientLS);
+
+        return key.toString();
+    }
+
+    /**
+     * This method creates the target of a mapping node.
+     *
+     * @param   mappingNode  The Mapping node.
+     *
+     * @return  The target.
+     */
+    private static TargetMapping createMapping(int mappingNode)
+    {
+        return new TargetMapping(getText(mappingNode, "SOAPNodeDN"), getText(mappingNode, "Method"),
+                                 getText(mappingNode, "Namespace"));
+    }
+
+    /**
+     * This method returns the text of a child of the mapping node.
+     *
+     * @param   mappingNode  The Mapping node.
+     * @param   name         The name of the child.
+     *
+     * @return  The text or an empty string.
+     */
+    private static String getText(int mappingNode, String name)
+    {
+        return Node.getDataWithDefault(Find.firstMatch(mappingNode, "<Mapping><" + name + ">"), "");
+    }
+
+    /**
+     * Holds the target the IDoc should be sent to.
+     */
+    public static final class TargetMapping
+    {
+        /**
+         * Holds the name of the method.
+         */
+        private final String m_method;
+        /**
+         * Holds the namespace of the method.
+         */
+        private final String m_namespace;
+        /**
+         * Holds the DN of the SOAP node.
+         */
+        private final String m_soapNodeDN;
+
+        /**
+         * Creates a new TargetMapping object.
+         *
+         * @param  soapNodeDN  The DN of the SOAP node.
+         * @param  method      The name of the method.
+         * @param  namespace   The namespace of the method.
+         */
+        TargetMapping(String soapNodeDN, String method, String namespace)
+        {
+            m_soapNodeDN = soapNodeDN;
+            m_method = method;
+            m_namespace = namespace;
+        }
+
+        /**
+         * This method returns the name of the method.
+         *
+         * @return  The name of the method.
+         */
+        public String getMethod()
+        {
+            return m_method;
+        }
+
+        /**
+         * This method returns the namespace of the method.
+         *
+         * @return  The namespace.
+         */
+        public String getNamespace()
+        {
+            return m_namespace;
+        }
+
+        /**
+         * This method returns the DN of the SOAP node.
+         *
+         * @return  The DN of the SOAP node.
+         */
+        public String getSOAPNodeDN()
+        {
+            return m_soapNodeDN;
+        }
+    }
+
+    /**
+     * Holds a mapping and its position in the XML.
+     */
+    private static final class Entry
+    {
+        /**
+         * Holds the target.
+         */
+        private final TargetMapping m_mapping;
+        /**
+         * Holds the position of the mapping in the XML.
+         */
+        private final int m_position;
+
+        /**
+         * Creates a new Entry object.
+         *
+         * @param  position  The position of the mapping in the XML.
+         * @param  mapping   The target.
+         */
+        Entry(int position, TargetMapping mapping)
+        {
+            m_position = position;
+            m_mapping = mapping;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.metadata;
+
+import com.eibus.applicationconnector.sap.Messages;
+
+import com.eibus.util.logger.CordysLogger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class caches the WSDL that is generated for a GenerateMethods request. The key is a
+ * fingerprint of the request and of the metadata of the function templates or IDoc segments it
+ * describes, so a changed function in SAP gets a new key. The WSDL is kept in memory for the most
+ * recently used keys and written to a file per key in the cache folder, so it survives a restart.
+ * The cache is cleared by ClearCache.
+ *
+ * @author  pgussow
+ */
+public class GeneratedMethodCache
+{
+    /**
+     * Holds the name of the folder in the cache directory.
+     */
+    public static final String FOLDER = "GeneratedMethods";
+    /**
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(GeneratedMethodCache.class);
+    /**
+     * Holds the encoding of the cache files.
+     */
+    private static final String ENCODING = "UTF-8";
+    /**
+     * Holds the extension of the cache files.
+     */
+    private static final String EXTENSION = ".wsdl";
+    /**
+     * Holds the hexadecimal digits.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /**
+     * Holds the WSDLs that are kept in memory in least recently used order.
+     */
+    private final LinkedHashMap<String, String> m_entries;
+    /**
+     * Holds the folder with the cache files.
+     */
+    private final File m_folder;
+    /**
+     * Holds the number of requests that were served from the cache.
+     */
+    private long m_hits;
+    /**
+     * Holds the maximum number of WSDLs in memory.
+     */
+    private final int m_maxSize;
+    /**
+     * Holds the number of requests that had to generate the WSDL.
+     */
+    private long m_misses;
+
+    /**
+     * Creates a new GeneratedMethodCache object.
+     *
+     * @param  folder   The folder with the cache files.
+     * @param  maxSize  The maximum number of WSDLs in memory.
+     */
+    public GeneratedMethodCache(File folder, int maxSize)
+    {
+        m_folder = folder;
+        m_maxSize = maxSize;
+        m_entries = new LinkedHashMap<String, String>(16, 0.75f, true)
+            {
+                private static final long serialVersionUID = 1L;
+
+                @Override protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+                {
+                    return size() > m_maxSize;
+                }
+            };
+    }
+
+    /**
+     * This method creates the key for the given fingerprint.
+     *
+     * @param   fingerprint  The fingerprint of the request and the metadata.
+     *
+     * @return  The key.
+     */
+    public static String createKey(String fingerprint)
+    {
+        byte[] digest;
+
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-1").digest(fingerprint.getBytes(ENCODING));
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+
+        char[] returnValue = new char[digest.length * 2];
+
+        for (int i = 0; i < digest.length; i++)
+        {
+            returnValue[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+            returnValue[(i * 2) + 1] = HEX[digest[i] & 0xF];
+        }
+
+        return new String(returnValue);
+    }
+
+    /**
+     * This method removes all WSDLs from memory and from the cache folder.
+     */
+    public synchronized void clear()
+    {
+        m_entries.clear();
+
+        File[] files = m_folder.listFiles();
+
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Generated method cache cleared. " + this);
+        }
+    }
+
+    /**
+     * This method returns the WSDL for the given key. If it is not in memory it is read from the
+     * cache folder.
+     *
+     * @param   key  The key.
+     *
+     * @return  The WSDL, or null if it is not cached.
+     */
+    public String get(String key)
+    {
+        synchronized (this)
+        {
+            String returnValue = m_entries.get(key);
+
+            if (returnValue != null)
+            {
+                m_hits++;
+                return returnValue;
+            }
+        }
+
+        String returnValue = read(new File(m_folder, key + EXTENSION));
+
+        synchronized (this)
+        {
+            if (returnValue == null)
+            {
+                m_misses++;
+            }
+            else
+            {
+                m_hits++;
+                m_entries.put(key, returnValue);
+            }
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method returns the number of requests that were served from the cache.
+     *
+     * @return  The number of hits.
+     */
+    public synchronized long getHits()
+    {
+        return m_hits;
+    }
+
+    /**
+     * This method returns the number of requests that had to generate the WSDL.
+     *
+     * @return  The number of misses.
+     */
+    public synchronized long getMisses()
+    {
+        return m_misses;
+    }
+
+    /**
+     * This method stores the WSDL for the given key in memory and in the cache folder. A failure
+     * to write the file is logged, the WSDL is then only cached in memory.
+     *
+     * @param  key   The key.
+     * @param  wsdl  The generated WSDL.
+     */
+    public void put(String key, String wsdl)
+    {
+        synchronized (this)
+        {
+            m_entries.put(key, wsdl);
+        }
+
+        write(new File(m_folder, key + EXTENSION), wsdl);
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Cached generated WSDL " + key + ". " + this);
+        }
+    }
+
+    /**
+     * @see  java.lang.Object#toString()
+     */
+    @Override public synchronized String toString()
+    {
+        return "Size: " + m_entries.size() + ", hits: " + m_hits + ", misses: " + m_misses;
+    }
+
+    /**
+     * This method reads the given cache file.
+     *
+     * @param   file  The cache file.
+     *
+     * @return  The content, or null if the file does not exist or could not be read.
+     */
+    private String read(File file)
+    {
+        if (!file.exists())
+        {
+            return null;
+        }
+
+        StringBuilder returnValue = new StringBuilder((int) file.length());
+        Reader reader = null;
+
+        try
+        {
+            reader = new InputStreamReader(new FileInputStream(file), ENCODING);
+
+            char[] buffer = new char[8192];
+            int read;
+
+            while ((read = reader.read(buffer)) != -1)
+            {
+                returnValue.append(buffer, 0, read);
+            }
+        }
+        catch (IOException e)
+        {
+            LOG.warn(e, Messages.WRN_GENERATED_METHOD_CACHE, file.getAbsolutePath());
+            return null;
+        }
+        finally
+        {
+            close(reader);
+        }
+
+        return returnValue.toString();
+    }
+
+    /**
+     * This method writes the given cache file. The content is written to a temporary file first,
+     * so a reader never sees a partial file.
+     *
+     * @param  file     The cache file.
+     * @param  content  The content.
+     */
+    private void write(File file, String content)
+    {
+        File temp = new File(m_folder, file.getName() + "." + Thread.currentThread().getId());
+        Writer writer = null;
+
+        try
+        {
+            m_folder.mkdirs();
+            writer = new OutputStreamWriter(new FileOutputStream(temp), ENCODING);
+            writer.write(content);
+            writer.close();
+            writer = null;
+
+            if (!temp.renameTo(file))
+            {
+                file.delete();
+
+                if (!temp.renameTo(file))
+                {
+                    throw new IOException("Could not rename " + temp + " to " + file);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            LOG.warn(e, Messages.WRN_GENERATED_METHOD_CACHE, file.getAbsolutePath());
+            close(writer);
+            temp.delete();
+        }
+    }
+
+    /**
+     * This method closes the given stream and ignores errors.
+     *
+     * @param  closeable  The stream. May be null.
+     */
+    private static void close(Closeable closeable)
+    {
+        if (closeable != null)
+        {
+            try
+            {
+                closeable.close();
+            }
+            catch (IOException e)
+            {
+                // Nothing to do.
+            }
+        }
+    }
+}
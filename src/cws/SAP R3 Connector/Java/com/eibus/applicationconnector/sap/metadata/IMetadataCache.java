@@ -97,8 +97,9 @@ public interface IMetadataCache
     ISAPConnection getSAPConnection();
 
     /**
-     * This method will clean all currently cached information and retrieve everything from SAP. The
-     * data that will be loaded is:
+     * This method will replace all currently cached information with everything from SAP. Reads
+     * are served from the current information until the reload is complete. The data that will be
+     * loaded is:
      *
      * <ul>
      *   <li>BAPIs</li>
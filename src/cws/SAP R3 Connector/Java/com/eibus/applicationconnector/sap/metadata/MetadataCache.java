@@ -18,6 +18,7 @@
  package com.eibus.applicationconnector.sap.metadata;
 
 import com.eibus.applicationconnector.sap.connection.ISAPConnection;
+import com.eibus.applicationconnector.sap.connection.ISAPConnectionFactory;
 import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
 import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
 import com.eibus.applicationconnector.sap.metadata.filter.IFilter;
@@ -36,6 +37,11 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This class contains the cache for the metadata. The cache will be persisted as well.
@@ -51,6 +57,9 @@ import java.util.Map;
  *   <li>IDOC interface metadata</li>
  * </ul>
  *
+ * <p>Reads are served from the content that is current at that moment. A reload builds the new
+ * content next to it and swaps it in when it is complete.</p>
+ *
  * @author  pgussow
  */
 public class MetadataCache
@@ -60,26 +69,57 @@ public class MetadataCache
      * Holds the logger to use.
      */
     private static final CordysLogger LOG = CordysLogger.getCordysLogger(MetadataCache.class);
+    /**
+     * Holds the types that are read from SAP, in the order they are read.
+     */
+    private static final ESAPObjectType[] RELOAD_TYPES =
+    {
+        ESAPObjectType.BAPI, ESAPObjectType.RFC, ESAPObjectType.IDOC
+    };
     /**
      * Holds all the BAPIs that are found for the current repository.
      */
-    private Map<String, ITypeContainer> m_allBapis = new LinkedHashMap<String, ITypeContainer>();
+    private volatile Map<String, ITypeContainer> m_allBapis = new LinkedHashMap<String, ITypeContainer>();
     /**
      * Holds all the IDOCs that are found for the current repository.
      */
-    private Map<String, ITypeContainer> m_allIDOCs = new LinkedHashMap<String, ITypeContainer>();
+    private volatile Map<String, ITypeContainer> m_allIDOCs = new LinkedHashMap<String, ITypeContainer>();
     /**
      * Holds all the RFCs that are found for the current repository.
      */
-    private Map<String, ITypeContainer> m_allRFCs = new LinkedHashMap<String, ITypeContainer>();
+    private volatile Map<String, ITypeContainer> m_allRFCs = new LinkedHashMap<String, ITypeContainer>();
     /**
      * Holds the SAP connection to use.
      */
     private ISAPConnection m_connection;
+    /**
+     * Holds the factory for the connections of a reload. If null the reload uses m_connection.
+     */
+    private ISAPConnectionFactory m_connectionFactory;
     /**
      * Holds the ID for this cache.
      */
     private String m_id;
+    /**
+     * Holds the number of entries that were added by the last reload.
+     */
+    private volatile int m_reloadAdded;
+    /**
+     * Holds the number of entries that were changed by the last reload.
+     */
+    private volatile int m_reloadChanged;
+    /**
+     * Makes sure only one reload runs at a time.
+     */
+    private final Object m_reloadLock = new Object();
+    /**
+     * Holds the number of entries that were removed by the last reload.
+     */
+    private volatile int m_reloadRemoved;
+    /**
+     * Holds the number of milliseconds the last reload took.
+     */
+    private volatile long m_reloadTime;
     /**
      * Holds the storage provider.
      */
@@ -96,10 +136,28 @@ public class MetadataCache
      */
     public MetadataCache(String id, ICacheStorage storage, ISAPConnection connection)
                   throws SAPConnectorException
+    {
+        this(id, storage, connection, null);
+    }
+
+    /**
+     * Creates a new MetadataCache object.
+     *
+     * @param   id                 The ID for this cache.
+     * @param   storage            The storage provider.
+     * @param   connection         The SAP connection to use.
+     * @param   connectionFactory  The factory for the connections of a reload. May be null.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions.
+     */
+    public MetadataCache(String id, ICacheStorage storage, ISAPConnection connection,
+                         ISAPConnectionFactory connectionFactory)
+                  throws SAPConnectorException
     {
         m_id = id;
         m_storage = storage;
         m_connection = connection;
+        m_connectionFactory = connectionFactory;
 
         // Check the parameters
         if (!Util.isSet(id))
@@ -132,7 +190,7 @@ public class MetadataCache
      *
      * @param  bapiDetails  The details of the bapi.
      */
-    public void addBAPI(ITypeContainer bapiDetails)
+    public synchronized void addBAPI(ITypeContainer bapiDetails)
     {
         if (m_allBapis.containsKey(bapiDetails.getValue()))
         {
@@ -150,7 +208,7 @@ public class MetadataCache
      *
      * @param  idocDetails  The details of the IDOC.
      */
-    public void addIDOC(ITypeContainer idocDetails)
+    public synchronized void addIDOC(ITypeContainer idocDetails)
     {
         if (m_allIDOCs.containsKey(idocDetails.getValue()))
         {
@@ -168,7 +226,7 @@ public class MetadataCache
      *
      * @param  rfcDetails  The details of the RFC.
      */
-    public void addRFC(ITypeContainer rfcDetails)
+    public synchronized void addRFC(ITypeContainer rfcDetails)
     {
         // RFCs are a bit strange, because they will be indexed based on function name, instead of
         // group name.
@@ -186,7 +244,7 @@ public class MetadataCache
     /**
      * @see  com.eibus.applicationconnector.sap.metadata.IMetadataCache#getAllBAPIs()
      */
-    @Override public Map<String, ITypeContainer> getAllBAPIs()
+    @Override public synchronized Map<String, ITypeContainer> getAllBAPIs()
     {
         return new LinkedHashMap<String, ITypeContainer>(m_allBapis);
     }
@@ -194,7 +252,7 @@ public class MetadataCache
     /**
      * @see  com.eibus.applicationconnector.sap.metadata.IMetadataCache#getAllIDOCs()
      */
-    @Override public Map<String, ITypeContainer> getAllIDOCs()
+    @Override public synchronized Map<String, ITypeContainer> getAllIDOCs()
     {
         return new LinkedHashMap<String, ITypeContainer>(m_allIDOCs);
     }
@@ -202,7 +260,7 @@ public class MetadataCache
     /**
      * @see  com.eibus.applicationconnector.sap.metadata.IMetadataCache#getAllRFCs()
      */
-    @Override public Map<String, ITypeContainer> getAllRFCs()
+    @Override public synchronized Map<String, ITypeContainer> getAllRFCs()
     {
         return new LinkedHashMap<String, ITypeContainer>(m_allRFCs);
     }
@@ -227,6 +285,46 @@ public class MetadataCache
         return m_id;
     }
 
+    /**
+     * This method returns the number of entries that were added by the last reload.
+     *
+     * @return  The number of added entries.
+     */
+    public int getReloadAdded()
+    {
+        return m_reloadAdded;
+    }
+
+    /**
+     * This method returns the number of entries that were changed by the last reload.
+     *
+     * @return  The number of changed entries.
+     */
+    public int getReloadChanged()
+    {
+        return m_reloadChanged;
+    }
+
+    /**
+     * This method returns the number of entries that were removed by the last reload.
+     *
+     * @return  The number of removed entries.
+     */
+    public int getReloadRemoved()
+    {
+        return m_reloadRemoved;
+    }
+
+    /**
+     * This method returns the number of milliseconds the last reload took.
+     *
+     * @return  The duration of the last reload.
+     */
+    public long getReloadTime()
+    {
+        return m_reloadTime;
+    }
+
     /**
      * This method gets the SAP connection to use for reading.
      *
@@ -238,72 +336,85 @@ public class MetadataCache
     }
 
     /**
+     * This method reloads the BAPIs, RFCs and IDOCs from SAP. If a connection factory is set, the
+     * three types are read at the same time, each over its own connection. Otherwise they are read
+     * one after the other over the connection of the cache.
+     *
+     * <p>The new content is compared with the current content. Entries that did not change keep
+     * their current object. While SAP is read the current content is served. When all types are
+     * read the new content of the three types replaces the current content at once. Only the
+     * types that changed are persisted.</p>
+     *
      * @see  com.eibus.applicationconnector.sap.metadata.IMetadataCache#reloadAllData()
      */
     @Override public void reloadAllData()
                                  throws SAPConnectorException
     {
-        // First load all BAPIs available
-        List<ITypeContainer> allBAPIs = m_connection.getAllBAPIs();
-
-        m_allBapis.clear();
-
-        for (ITypeContainer bapiDetails : allBAPIs)
+        synchronized (m_reloadLock)
         {
-            addBAPI(bapiDetails);
-        }
-
-        // Clean up of the temp list
-        if (LOG.isDebugEnabled())
-        {
-            LOG.debug("Added " + allBAPIs.size() + " BAPIs");
-        }
-
-        allBAPIs = null;
-
-        // Now do all RFCs
-        List<ITypeContainer> allRFCs = m_connection.getAllRFCs();
-
-        m_allRFCs.clear();
+            long startTime = System.currentTimeMillis();
+            List<List<ITypeContainer>> fetched = fetchAll();
+
+            Map<String, ITypeContainer> oldBapis = m_allBapis;
+            Map<String, ITypeContainer> oldRFCs = m_allRFCs;
+            Map<String, ITypeContainer> oldIDOCs = m_allIDOCs;
+            Map<String, ITypeContainer> newBapis = new LinkedHashMap<String, ITypeContainer>();
+            Map<String, ITypeContainer> newRFCs = new LinkedHashMap<String, ITypeContainer>();
+            Map<String, ITypeContainer> newIDOCs = new LinkedHashMap<String, ITypeContainer>();
+            int[] counts = new int[3];
+
+            boolean bapisChanged = merge(oldBapis, fetched.get(0), newBapis, counts);
+            boolean rfcsChanged = merge(oldRFCs, fetched.get(1), newRFCs, counts);
+            boolean idocsChanged = merge(oldIDOCs, fetched.get(2), newIDOCs, counts);
+
+            // Swap the content of the three types at once.
+            synchronized (this)
+            {
+                m_allBapis = newBapis;
+                m_allRFCs = newRFCs;
+                m_allIDOCs = newIDOCs;
+            }
 
-        for (ITypeContainer rfcDetails : allRFCs)
-        {
-            addRFC(rfcDetails);
-        }
+            // TODO: Now load the component structure.
 
-        // Clean up of the temp list
-        if (LOG.isDebugEnabled())
-        {
-            LOG.debug("Added " + allRFCs.size() + " RFCs");
-        }
+            // RFC interface metadata and IDOC interface metadata will be read on the fly. We will
+            // not pre-read all interface details.
 
-        allRFCs = null;
+            // Finally, persist the changes. A cache that was empty is persisted as a whole.
+            if (oldBapis.isEmpty() && oldRFCs.isEmpty() && oldIDOCs.isEmpty())
+            {
+                m_storage.persistCache(this);
+            }
+            else
+            {
+                if (bapisChanged)
+                {
+                    m_storage.persistCache(this, ESAPObjectType.BAPI);
+                }
 
-        // Now do all IDOCs
-        List<ITypeContainer> allIDOCs = m_connection.getAllIDOCs();
+                if (rfcsChanged)
+                {
+                    m_storage.persistCache(this, ESAPObjectType.RFC);
+                }
 
-        m_allIDOCs.clear();
+                if (idocsChanged)
+                {
+                    m_storage.persistCache(this, ESAPObjectType.IDOC);
+                }
+            }
 
-        for (ITypeContainer idocDetails : allIDOCs)
-        {
-            addIDOC(idocDetails);
-        }
+            m_reloadAdded = counts[0];
+            m_reloadChanged = counts[1];
+            m_reloadRemoved = counts[2];
+            m_reloadTime = System.currentTimeMillis() - startTime;
 
-        // Clean up of the temp list
-        if (LOG.isDebugEnabled())
-        {
-            LOG.debug("Added " + allIDOCs.size() + " IDOCs");
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Reloaded " + newBapis.size() + " BAPIs, " + newRFCs.size() +
+                          " RFCs and " + newIDOCs.size() + " IDOCs of cache " + m_id + ". " +
+                          toString());
+            }
         }
-
-        allIDOCs = null;
-
-        // TODO: Now load the component structure.
-
-        // RFC interface metadata and IDOC interface metadata will be read on the fly. We will not
-        // pre-read all interface details.
-
-        // Finally, persist the cache
-        m_storage.persistCache(this);
     }
 
     /**
@@ -324,7 +435,7 @@ public class MetadataCache
         }
         else
         {
-            allBAPIs = new ArrayList<ITypeContainer>(m_allBapis.values());
+            allBAPIs = new ArrayList<ITypeContainer>(getAllBAPIs().values());
         }
 
         // If no filter has been set, then return all BAPIs
@@ -351,24 +462,21 @@ public class MetadataCache
                     {
                         ITypeContainer tempContainer = null;
 
-                        ArrayList<ITypeMetadata> items = new ArrayList<ITypeMetadata>(container
-                                                                                      .getItems()
-                                                                                      .values());
-
-                        for (ITypeMetadata metadata : items)
+                        for (ITypeMetadata metadata : container.getItems().values())
                         {
                             IBAPIMetadata bapi = (IBAPIMetadata) metadata;
                             boolean match = false;
 
-                            if ((method != null) && method.match(bapi.getMethodName()))
-                            {
-                                match = true;
-                            }
-
+                            // The description decides if it is set, so the method filter
+                            // only needs to be evaluated without it.
                             if (description != null)
                             {
                                 match = description.match(bapi.getDescription());
                             }
+                            else
+                            {
+                                match = method.match(bapi.getMethodName());
+                            }
 
                             // If this method should be included, we need to add it to the temp
                             // container.
@@ -416,7 +524,7 @@ public class MetadataCache
         }
         else
         {
-            allIDOCs = new ArrayList<ITypeContainer>(m_allIDOCs.values());
+            allIDOCs = new ArrayList<ITypeContainer>(getAllIDOCs().values());
         }
 
         // If no filter has been set, then return all IDOCs
@@ -447,11 +555,7 @@ public class MetadataCache
                     {
                         ITypeContainer tempContainer = null;
 
-                        ArrayList<ITypeMetadata> items = new ArrayList<ITypeMetadata>(container
-                                                                                      .getItems()
-                                                                                      .values());
-
-                        for (ITypeMetadata metadata : items)
+                        for (ITypeMetadata metadata : container.getItems().values())
                         {
                             IIDOCMetadata idoc = (IIDOCMetadata) metadata;
                             boolean match = false;
@@ -507,7 +611,7 @@ public class MetadataCache
         }
         else
         {
-            allRFCs = new ArrayList<ITypeContainer>(m_allRFCs.values());
+            allRFCs = new ArrayList<ITypeContainer>(getAllRFCs().values());
         }
 
         // If no filter has been set, then return all RFCs
@@ -534,24 +638,21 @@ public class MetadataCache
                     {
                         ITypeContainer tempContainer = null;
 
-                        ArrayList<ITypeMetadata> items = new ArrayList<ITypeMetadata>(container
-                                                                                      .getItems()
-                                                                                      .values());
-
-                        for (ITypeMetadata metadata : items)
+                        for (ITypeMetadata metadata : container.getItems().values())
                         {
                             IRFCMetadata rfc = (IRFCMetadata) metadata;
                             boolean match = false;
 
-                            if ((group != null) && group.match(rfc.getGroupName()))
-                            {
-                                match = true;
-                            }
-
+                            // The description decides if it is set, so the group filter only
+                            // needs to be evaluated without it.
                             if (description != null)
                             {
                                 match = description.match(rfc.getShortText());
                             }
+                            else
+                            {
+                                match = group.match(rfc.getGroupName());
+                            }
 
                             // If this method should be included, we need to add it to the temp
                             // container.
@@ -591,6 +692,16 @@ public class MetadataCache
         m_storage = storage;
     }
 
+    /**
+     * This method sets the factory for the connections of a reload.
+     *
+     * @param  connectionFactory  The factory for the connections of a reload. May be null.
+     */
+    public void setConnectionFactory(ISAPConnectionFactory connectionFactory)
+    {
+        m_connectionFactory = connectionFactory;
+    }
+
     /**
      * This method sets the ID for this cache.
      *
@@ -610,4 +721,177 @@ public class MetadataCache
     {
         m_connection = connection;
     }
+
+    /**
+     * @see  java.lang.Object#toString()
+     */
+    @Override public String toString()
+    {
+        return "Last reload: " + m_reloadTime + " ms, added: " + m_reloadAdded + ", changed: " +
+               m_reloadChanged + ", removed: " + m_reloadRemoved;
+    }
+
+    /**
+     * This method reads the objects of the given type from SAP.
+     *
+     * @param   connection  The connection to read with.
+     * @param   type        The type of objects.
+     *
+     * @return  The objects.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    private static List<ITypeContainer> fetch(ISAPConnection connection, ESAPObjectType type)
+                                       throws SAPConnectorException
+    {
+        switch (type)
+        {
+            case BAPI:
+                return connection.getAllBAPIs();
+
+            case IDOC:
+                return connection.getAllIDOCs();
+
+            default:
+                return connection.getAllRFCs();
+        }
+    }
+
+    /**
+     * This method puts the objects that were read from SAP in the new content of a type. An object
+     * that did not change is replaced by the current object. The counts are updated with the
+     * entries that were added, changed and removed.
+     *
+     * @param   current  The current content.
+     * @param   fetched  The objects read from SAP.
+     * @param   result   The new content.
+     * @param   counts   The numbers of added, changed and removed entries.
+     *
+     * @return  true if the new content differs from the current content.
+     */
+    private static boolean merge(Map<String, ITypeContainer> current,
+                                 List<ITypeContainer> fetched,
+                                 Map<String, ITypeContainer> result, int[] counts)
+    {
+        boolean returnValue = false;
+
+        for (ITypeContainer container : fetched)
+        {
+            ITypeContainer old = current.get(container.getValue());
+
+            if ((old != null) && SAPMetadataFactory.isEqual(old, container))
+            {
+                result.put(container.getValue(), old);
+                continue;
+            }
+
+            counts[(old == null) ? 0 : 1]++;
+            returnValue = true;
+            result.put(container.getValue(), container);
+        }
+
+        for (String value : current.keySet())
+        {
+            if (!result.containsKey(value))
+            {
+                counts[2]++;
+                returnValue = true;
+            }
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method reads all types from SAP. If there is a connection factory, every type is read
+     * on its own thread over its own connection.
+     *
+     * @return  The objects per type, in the order of RELOAD_TYPES.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    private List<List<ITypeContainer>> fetchAll()
+                                         throws SAPConnectorException
+    {
+        List<List<ITypeContainer>> returnValue = new ArrayList<List<ITypeContainer>>(RELOAD_TYPES.length);
+
+        if (m_connectionFactory == null)
+        {
+            for (ESAPObjectType type : RELOAD_TYPES)
+            {
+                returnValue.add(fetch(m_connection, type));
+            }
+
+            return returnValue;
+        }
+
+        final ISAPConnectionFactory connectionFactory = m_connectionFactory;
+        ExecutorService executor = Executors.newFixedThreadPool(RELOAD_TYPES.length);
+
+        try
+        {
+            List<Future<List<ITypeContainer>>> futures = new ArrayList<Future<List<ITypeContainer>>>(RELOAD_TYPES.length);
+
+            for (final ESAPObjectType type : RELOAD_TYPES)
+            {
+                futures.add(executor.submit(new Callable<List<ITypeContainer>>()
+                    {
+                        public List<ITypeContainer> call()
+                                                  throws SAPConnectorException
+                        {
+                            return fetch(connectionFactory.createConnection(), type);
+                        }
+                    }));
+            }
+
+            for (int i = 0; i < RELOAD_TYPES.length; i++)
+            {
+                returnValue.add(getResult(futures.get(i), RELOAD_TYPES[i]));
+            }
+        }
+        finally
+        {
+            // If one type failed, the others are not needed anymore.
+            executor.shutdownNow();
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method waits for the objects of a type that are read on another thread.
+     *
+     * @param   future  The future of the read.
+     * @param   type    The type of objects.
+     *
+     * @return  The objects.
+     *
+     * @throws  SAPConnectorException  In case the read failed or the thread was interrupted.
+     */
+    private List<ITypeContainer> getResult(Future<List<ITypeContainer>> future,
+                                           ESAPObjectType type)
+                                    throws SAPConnectorException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.ERROR_RELOADING_METADATA_CACHE,
+                                            type, m_id);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof SAPConnectorException)
+            {
+                throw (SAPConnectorException) e.getCause();
+            }
+            throw new SAPConnectorException(e.getCause(),
+                                            SAPConnectorExceptionMessages.ERROR_RELOADING_METADATA_CACHE,
+                                            type, m_id);
+        }
+    }
 }
@@ -18,6 +18,7 @@
  package com.eibus.applicationconnector.sap.metadata;
 
 import com.eibus.applicationconnector.sap.connection.ISAPConnection;
+import com.eibus.applicationconnector.sap.connection.ISAPConnectionFactory;
 import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
 import com.eibus.applicationconnector.sap.metadata.storage.CacheStorageFactory;
 import com.eibus.applicationconnector.sap.metadata.storage.ICacheStorage;
@@ -71,4 +72,27 @@ public class MetadataCacheFactory
 
         return returnValue;
     }
+
+    /**
+     * This method creates the metadata cache using the specified cache storage. A reload reads the
+     * different types of objects at the same time over connections of the given factory.
+     *
+     * @param   id                 The ID for this cache repository.
+     * @param   connection         The SAP connection that should be used to access SAP.
+     * @param   storage            The cache storage provider.
+     * @param   connectionFactory  The factory for the connections of a reload.
+     *
+     * @return  The metadata cache.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    public static IMetadataCache createCache(String id, ISAPConnection connection,
+                                             ICacheStorage storage,
+                                             ISAPConnectionFactory connectionFactory)
+                                      throws SAPConnectorException
+    {
+        IMetadataCache returnValue = new MetadataCache(id, storage, connection, connectionFactory);
+
+        return returnValue;
+    }
 }
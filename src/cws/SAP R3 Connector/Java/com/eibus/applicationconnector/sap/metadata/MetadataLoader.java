@@ -54,29 +54,16 @@ public abstract class MetadataLoader
      */
     private static final CordysLogger LOG = CordysLogger.getCordysLogger(MetadataLoader.class);
     /**
-     * Indicates whether or not the component metadata is already being loaded.
+     * Holds the default number of milliseconds a thread waits while another thread fetches the
+     * same metadata from SAP.
      */
-    protected static volatile boolean loadingComponentMetadata = false;
+    public static final long DEFAULT_LOAD_TIMEOUT = 600000;
     /**
-     * Indicates whether or not the BAPI metadata is already being loaded.
+     * Makes sure only one thread at a time fetches the same metadata from SAP. The timeout is
+     * taken from the system property metadata.load.timeout in milliseconds.
      */
-    protected static volatile boolean m_loadingBOMetadata = false;
-    /**
-     * Indicates whether or not the RFC metadata is already being loaded.
-     */
-    protected static volatile boolean loadingRFCMetadata = false;
-    /**
-     * Indicates whether or not the IDOC metadata is already being loaded.
-     */
-    protected static volatile boolean m_loadingIDOCMetadata = false;
-    /**
-     * Indicates whether or not the IDOC interface metadata is already being loaded.
-     */
-    protected static volatile boolean loadingIDOCInterface = false;
-    /**
-     * Indicates whether or not the RFC interface metadata is already being loaded.
-     */
-    protected static volatile boolean loadingRFCInterface = false;
+    private static final SingleFlight LOAD_FLIGHTS = new SingleFlight(Long.getLong("metadata.load.timeout",
+                                                                                   DEFAULT_LOAD_TIMEOUT));
     /**
      * Holds the name of the file in which the BAPI metadata information is cached.
      */
@@ -137,6 +124,10 @@ public abstract class MetadataLoader
      * Holds the relative path for the RFC interfaces.
      */
     protected String m_rfcInterfaceRelativePath;
+    /**
+     * Holds the parsed metadata lists of the cache directory.
+     */
+    protected MetadataStore m_store;
     /**
      * Holds the XPath metadata information.
      */
@@ -155,6 +146,7 @@ public abstract class MetadataLoader
         this.m_cacheDir = cacheDir;
         this.m_rfcInterfaceRelativePath = RFCInterfaceRelativePath;
         this.m_idocInterfaceRelativePath = IDOCInterfaceRelativePath;
+        this.m_store = MetadataStore.getInstance(cacheDir);
 
         m_xmi.addNamespaceBinding("rfc", "urn:sap-com:document:sap:rfc:functions");
         m_xmi.addNamespaceBinding("ns", SAPConnectorConstants.NS_SAP_SCHEMA);
@@ -199,8 +191,7 @@ public abstract class MetadataLoader
         String IDOCInterfaceFileName = m_idocInterfaceRelativePath + "\\" + PREFIX_IDOC_INTERFACE +
                                        idocType + ".xml";
         int cacheNode = getRequiredMetadataRoot(overwrite, "IDOC Interface", idocType,
-                                                IDOCInterfaceFileName, loadingIDOCInterface, doc,
-                                                cimType);
+                                                IDOCInterfaceFileName, doc, cimType);
         int interfaceNode = doc.createElement("IDOCInterface");
         Node.duplicateAndAppendToChildren(Node.getFirstChild(cacheNode),
                                           Node.getLastChild(cacheNode), interfaceNode);
@@ -282,21 +273,25 @@ public abstract class MetadataLoader
         {
             int componentMetadata = loadComponentMetadata(doc);
             BACUtil.deleteNode(componentMetadata);
+            m_store.invalidate(FILE_COMPONENT_METADATA);
         }
         else if (methodName.equalsIgnoreCase("LoadBOMetadata"))
         {
             int BOMetadata = loadBOMetadata(doc);
             BACUtil.deleteNode(BOMetadata);
+            m_store.invalidate(FILE_BO_METADATA);
         }
         else if (methodName.equalsIgnoreCase("LoadRFCMetadata"))
         {
             int RFCMetadata = loadRFCMetadata(doc);
             BACUtil.deleteNode(RFCMetadata);
+            m_store.invalidate(FILE_RFC_METADATA);
         }
         else if (methodName.equalsIgnoreCase("LoadIDOCMetadata"))
         {
             int IDOCMetadata = loadIDOCMetadata(doc);
             BACUtil.deleteNode(IDOCMetadata);
+            m_store.invalidate(FILE_IDOC_METADATA);
         }
         else if (methodName.equalsIgnoreCase("GetSerializedMetadataObjectForIDOC"))
         {
@@ -333,8 +328,7 @@ public abstract class MetadataLoader
         String RFCInterfaceFileName = m_rfcInterfaceRelativePath + "\\" + PREFIX_RFC_INTERFACE +
                                       rfcName + ".xml";
         int cacheNode = getRequiredMetadataRoot(overwrite, "RFC Interface", rfcName,
-                                                RFCInterfaceFileName, loadingRFCInterface, doc,
-                                                null);
+                                                RFCInterfaceFileName, doc, null);
         int interfaceNode = doc.createElement("RFCInterface");
         Node.duplicateAndAppendToChildren(Node.getFirstChild(cacheNode),
                                           Node.getLastChild(cacheNode), interfaceNode);
@@ -418,19 +412,14 @@ public abstract class MetadataLoader
                                     throws SAPConnectorException;
 
     /**
-     * This method sets the flags to false in case if the handle to a thread is lost while it is
-     * loading metadata from SAP.
-     * 
-     * @see  java.lang.Object#finalize()
+     * This method returns the group that makes sure only one thread at a time fetches the same
+     * metadata from SAP.
+     *
+     * @return  The single flight group.
      */
-    @Override protected void finalize()
+    public static SingleFlight getLoadFlights()
     {
-        loadingComponentMetadata = false;
-        m_loadingBOMetadata = false;
-        loadingRFCMetadata = false;
-        m_loadingIDOCMetadata = false;
-        loadingIDOCInterface = false;
-        loadingRFCInterface = false;
+        return LOAD_FLIGHTS;
     }
 
     /**
@@ -701,21 +690,25 @@ public abstract class MetadataLoader
                            throws SAPConnectorException
     {
         String returnValue = null;
-        int cacheNode = getRequiredMetadataRoot(overwrite, "BO Metadata", "", FILE_BO_METADATA,
-                                                m_loadingBOMetadata, doc, null);
+        MetadataStore.Snapshot metadata = acquireMetadata(overwrite, "BO Metadata",
+                                                          FILE_BO_METADATA, doc);
 
         try
         {
-            String xpath = "API_METHODS/item[@OBJTYPE=\"" + objType + "\"]/item[@METHOD=\"" +
-                           bapiName + "\"]";
+            int boItem = metadata.find(objType);
 
-            int bapiItem = XPathHelper.selectSingleNode(cacheNode, xpath, m_xmi);
+            if (boItem != 0)
+            {
+                int bapiItem = XPathHelper.selectSingleNode(boItem,
+                                                            "item[@METHOD=\"" + bapiName + "\"]",
+                                                            m_xmi);
 
-            returnValue = Node.getAttribute(bapiItem, "FUNCTION");
+                returnValue = Node.getAttribute(bapiItem, "FUNCTION");
+            }
         }
         finally
         {
-            cacheNode = BACUtil.deleteNode(cacheNode);
+            m_store.release();
         }
 
         return returnValue;
@@ -807,7 +800,6 @@ public abstract class MetadataLoader
     {
         // Load BO Metadata. Every time component metadata is fetched, BO Metadata is overwritten.
         int boMetadataNode = getRequiredMetadataRoot(true, "BO Metadata", "", FILE_BO_METADATA,
-                                                     m_loadingBOMetadata,
                                                      Node.getDocument(compRootNode), null);
 
         try
@@ -897,15 +889,14 @@ public abstract class MetadataLoader
                      throws SAPConnectorException
     {
         // Get the actual metadata (either from SAP or from the file system.
-        int cacheNode = getRequiredMetadataRoot(overwrite, "BO Metadata", "", FILE_BO_METADATA,
-                                                m_loadingBOMetadata, Node.getDocument(bapisNode),
-                                                null);
+        MetadataStore.Snapshot metadata = acquireMetadata(overwrite, "BO Metadata",
+                                                          FILE_BO_METADATA,
+                                                          Node.getDocument(bapisNode));
 
         try
         {
             // The BO tag is expected to contain OBJTYPE
-            String xpath = "API_METHODS/item[@OBJTYPE=\"" + businessObject + "\"]";
-            int boItem = XPathHelper.selectSingleNode(cacheNode, xpath, m_xmi);
+            int boItem = metadata.find(businessObject);
 
             if ((boItem == 0) && LOG.isDebugEnabled())
             {
@@ -921,7 +912,7 @@ public abstract class MetadataLoader
         }
         finally
         {
-            cacheNode = BACUtil.deleteNode(cacheNode);
+            m_store.release();
         }
 
         return true;
@@ -942,34 +933,23 @@ public abstract class MetadataLoader
     boolean getBOMetadata(int BOsNode, String fromBO, String toBO, boolean overwrite)
                    throws SAPConnectorException
     {
-        int cacheNode = getRequiredMetadataRoot(overwrite, "BO Metadata", "", FILE_BO_METADATA,
-                                                m_loadingBOMetadata, Node.getDocument(BOsNode),
-                                                null);
+        MetadataStore.Snapshot metadata = acquireMetadata(overwrite, "BO Metadata",
+                                                          FILE_BO_METADATA,
+                                                          Node.getDocument(BOsNode));
 
         try
         {
-            // If the filter is based on object name
-            int[] itemNodes = XPathHelper.selectNodes(cacheNode, "API_METHODS/item", m_xmi);
-            int noOfItemNodes = itemNodes.length;
+            // If the filter is based on object name. The names are compared case insensitive.
+            int[] itemNodes = metadata.select(fromBO, toBO, false);
 
-            for (int i = 0; i < noOfItemNodes; i++)
+            for (int i = 0; i < itemNodes.length; i++)
             {
-                String objName = Node.getAttribute(itemNodes[i], "OBJECTNAME");
-
-                // Comparison is case sensitive , as names in SAP include some special characters
-                // also.
-                int isToValueCrossed = objName.compareToIgnoreCase(toBO);
-
-                if ((objName.compareToIgnoreCase(fromBO) >= 0) && (isToValueCrossed <= 0))
-                {
-                    int duplicateItem = Node.duplicateElement(itemNodes[i]);
-                    Node.appendToChildren(duplicateItem, BOsNode);
-                }
+                Node.duplicateAndAppendToChildren(itemNodes[i], itemNodes[i], BOsNode);
             }
         }
         finally
         {
-            cacheNode = BACUtil.deleteNode(cacheNode);
+            m_store.release();
         }
 
         return true;
@@ -990,41 +970,32 @@ public abstract class MetadataLoader
     boolean getComponentMetadata(int componentsNode, String parent, int level, boolean overwrite)
                           throws SAPConnectorException
     {
-        int cacheNode = getRequiredMetadataRoot(overwrite, "Component Metadata", "",
-                                                FILE_COMPONENT_METADATA, loadingComponentMetadata,
-                                                Node.getDocument(componentsNode), null);
+        MetadataStore.Snapshot metadata = acquireMetadata(overwrite, "Component Metadata",
+                                                          FILE_COMPONENT_METADATA,
+                                                          Node.getDocument(componentsNode));
 
         try
         {
-            String itemXpath = new String("BOR_TREE");
-
-            for (int i = 1; i < level; i++)
-            {
-                itemXpath = itemXpath + "/item";
-            }
-
             if (parent.equals("000000")) // For the root component with no parent
             {
-                int parentNode = XPathHelper.selectSingleNode(cacheNode,
-                                                              itemXpath + "/item[@PARENT=\"" +
-                                                              parent + "\"]", m_xmi);
-                int duplicateItem = Node.duplicateElement(parentNode);
-                Node.appendToChildren(duplicateItem, componentsNode);
+                int parentNode = metadata.findComponent(level, "PARENT", parent);
+
+                if (parentNode != 0)
+                {
+                    Node.duplicateAndAppendToChildren(parentNode, parentNode, componentsNode);
+                }
             }
             else
             {
-                int parentNode = XPathHelper.selectSingleNode(cacheNode,
-                                                              itemXpath + "/item[@ID=\"" + parent +
-                                                              "\"]", m_xmi);
-                int aChild = Node.getFirstChild(parentNode);
+                int parentNode = metadata.findComponent(level, "ID", parent);
+                int aChild = (parentNode == 0) ? 0 : Node.getFirstChild(parentNode);
 
                 while (aChild != 0)
                 {
                     if ((Node.getAttribute(aChild, "hasBO") != null) ||
                             (Node.getAttribute(aChild, "isBO") != null))
                     {
-                        int duplicateItem = Node.duplicateElement(aChild);
-                        Node.appendToChildren(duplicateItem, componentsNode);
+                        Node.duplicateAndAppendToChildren(aChild, aChild, componentsNode);
                     }
                     aChild = Node.getNextSibling(aChild);
                 }
@@ -1032,7 +1003,7 @@ public abstract class MetadataLoader
         }
         finally
         {
-            cacheNode = BACUtil.deleteNode(cacheNode);
+            m_store.release();
         }
         return true;
     }
@@ -1054,36 +1025,24 @@ public abstract class MetadataLoader
                          throws SAPConnectorException
     {
         // Get the meta data.
-        int cacheNode = getRequiredMetadataRoot(overwrite, "IDOC Metadata", "", FILE_IDOC_METADATA,
-                                                m_loadingIDOCMetadata,
-                                                Node.getDocument(messageTypeNode), null);
+        MetadataStore.Snapshot metadata = acquireMetadata(overwrite, "IDOC Metadata",
+                                                          FILE_IDOC_METADATA,
+                                                          Node.getDocument(messageTypeNode));
 
         try
         {
-            int[] msgNodes = XPathHelper.selectNodes(cacheNode, "PT_MESSAGES/item", m_xmi);
-            int noOfMsgNodes = msgNodes.length;
+            // Comparison is case sensitive , as names in SAP include some special characters
+            // also.
+            int[] msgNodes = metadata.select(fromMsgType, toMsgType, true);
 
-            for (int i = 0; i < noOfMsgNodes; i++)
+            for (int i = 0; i < msgNodes.length; i++)
             {
-                String mesType = Node.getAttribute(msgNodes[i], "MESTYP");
-                // Comparison is case sensitive , as names in SAP include some special characters
-                // also.
-                int isToValueCrossed = mesType.compareTo(toMsgType);
-
-                if (isToValueCrossed > 0)
-                {
-                    break;
-                }
-
-                if ((mesType.compareTo(fromMsgType) >= 0) && (mesType.compareTo(toMsgType) <= 0))
-                {
-                    Node.duplicateAndAppendToChildren(msgNodes[i], msgNodes[i], messageTypeNode);
-                }
+                Node.duplicateAndAppendToChildren(msgNodes[i], msgNodes[i], messageTypeNode);
             }
         }
         finally
         {
-            cacheNode = BACUtil.deleteNode(cacheNode);
+            m_store.release();
         }
 
         return true;
@@ -1103,23 +1062,20 @@ public abstract class MetadataLoader
     boolean getIDOCTypesForMessageType(int idocsNode, String mesType, boolean overwrite)
                                 throws SAPConnectorException
     {
-        //
-        int cacheNode = getRequiredMetadataRoot(overwrite, "IDOC Metadata", "", FILE_IDOC_METADATA,
-                                                m_loadingIDOCMetadata, Node.getDocument(idocsNode),
-                                                null);
+        MetadataStore.Snapshot metadata = acquireMetadata(overwrite, "IDOC Metadata",
+                                                          FILE_IDOC_METADATA,
+                                                          Node.getDocument(idocsNode));
 
         try
         {
-            int mesTypeNode = XPathHelper.selectSingleNode(cacheNode,
-                                                           "PT_MESSAGES/item[@MESTYP=\"" + mesType +
-                                                           "\"]", m_xmi);
+            int mesTypeNode = metadata.find(mesType);
 
             Node.duplicateAndAppendToChildren(Node.getFirstChild(mesTypeNode),
                                               Node.getLastChild(mesTypeNode), idocsNode);
         }
         finally
         {
-            cacheNode = BACUtil.deleteNode(cacheNode);
+            m_store.release();
         }
 
         return true;
@@ -1140,42 +1096,58 @@ public abstract class MetadataLoader
     boolean getRFCMetadata(int rfcsNode, String fromRFC, String toRFC, boolean overwrite)
                     throws SAPConnectorException
     {
-        int cacheNode = getRequiredMetadataRoot(overwrite, "RFC Metadata", "", FILE_RFC_METADATA,
-                                                loadingRFCMetadata, Node.getDocument(rfcsNode),
-                                                null);
+        MetadataStore.Snapshot metadata = acquireMetadata(overwrite, "RFC Metadata",
+                                                          FILE_RFC_METADATA,
+                                                          Node.getDocument(rfcsNode));
 
         try
         {
-            int[] rfcNodes = XPathHelper.selectNodes(cacheNode, "FUNCTIONS/item/FUNCNAME", m_xmi);
-            int noOfRFCNodes = rfcNodes.length;
+            // Comparison is case sensitive , as names in SAP include some speical characters
+            // also.
+            int[] itemNodes = metadata.select(fromRFC, toRFC, true);
 
-            for (int i = 0; i < noOfRFCNodes; i++)
+            for (int i = 0; i < itemNodes.length; i++)
             {
-                String rfcName = Node.getData(rfcNodes[i]);
-                // Comparison is case sensitive , as names in SAP include some speical characters
-                // also.
-                int isToValueCrossed = rfcName.compareTo(toRFC);
-
-                if (isToValueCrossed > 0)
-                {
-                    break;
-                }
-
-                if ((rfcName.compareTo(fromRFC) >= 0) && (isToValueCrossed <= 0))
-                {
-                    int itemNode = Node.getParent(rfcNodes[i]);
-                    Node.duplicateAndAppendToChildren(itemNode, itemNode, rfcsNode);
-                }
+                Node.duplicateAndAppendToChildren(itemNodes[i], itemNodes[i], rfcsNode);
             }
         }
         finally
         {
-            cacheNode = BACUtil.deleteNode(cacheNode);
+            m_store.release();
         }
 
         return true;
     }
 
+    /**
+     * This method returns the parsed metadata list from the store. If overwrite is true or the
+     * file is not in the cache directory yet, the metadata is first fetched from SAP and written
+     * to the cache directory, as getRequiredMetadataRoot does. The caller must release the
+     * snapshot with m_store.release().
+     *
+     * @param   overwrite      If true, metadata is fetched afresh from SAP.
+     * @param   metadataType   The type of metadata.
+     * @param   cacheFileName  The name of the file in the cache directory.
+     * @param   doc            The document to use while fetching the metadata.
+     *
+     * @return  The snapshot of the metadata.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    private MetadataStore.Snapshot acquireMetadata(boolean overwrite, String metadataType,
+                                                   String cacheFileName, Document doc)
+                                            throws SAPConnectorException
+    {
+        if (overwrite || !checkIfCacheExists(cacheFileName))
+        {
+            int cacheNode = getRequiredMetadataRoot(overwrite, metadataType, "", cacheFileName,
+                                                    doc, null);
+            BACUtil.deleteNode(cacheNode);
+        }
+
+        return m_store.acquire(cacheFileName, metadataType);
+    }
+
     /**
      * This method checks if the cache directory exists and the required metadata xml file is in the
      * cache directory.
@@ -1345,93 +1317,120 @@ public abstract class MetadataLoader
      * This method returns the root node of the required metadata. If overwrite is true, it fetches
      * the metadata afresh from SAP. Else If found in the cache directory, it loads the metadata
      * from the cache directory. else it fetches the metadata from SAP and stores it in the cache
-     * directory. While fectching metadata from SAP, it will wait if another thread is fetching the
-     * same metadata from SAP server and then checks the cache directory. parameter extension
+     * directory. Only one thread fetches the same metadata from SAP at a time; the other threads
+     * wait for it and then load the metadata from the cache directory. parameter extension
      * contains the cimType of an IDOC. In other case, it is passed as null.
      *
-     * @param   overwrite        DOCUMENTME
-     * @param   metadataType     DOCUMENTME
-     * @param   itemName         DOCUMENTME
-     * @param   cacheFileName    DOCUMENTME
-     * @param   loadingMetadata  DOCUMENTME
-     * @param   doc              DOCUMENTME
-     * @param   extension        DOCUMENTME
+     * @param   overwrite      If true, metadata is fetched afresh from SAP.
+     * @param   metadataType   The type of metadata.
+     * @param   itemName       The name of the RFC or IDOC type for interfaces.
+     * @param   cacheFileName  The name of the file in the cache directory.
+     * @param   doc            The document to use.
+     * @param   extension      The cimType of an IDOC.
      *
-     * @return  Always true.
+     * @return  The root node of the metadata.
      *
      * @throws  SAPConnectorException  In case of any exceptions
      */
     private int getRequiredMetadataRoot(boolean overwrite, String metadataType, String itemName,
-                                        String cacheFileName, boolean loadingMetadata, Document doc,
-                                        String extension)
+                                        String cacheFileName, Document doc, String extension)
                                  throws SAPConnectorException
     {
-        int cacheNode = 0;
-
-        if (overwrite)
+        if (!overwrite && checkIfCacheExists(cacheFileName))
         {
-            if (LOG.isDebugEnabled())
-            {
-                LOG.debug("Overwrite is true.");
-            }
+            return loadFromCache(metadataType, cacheFileName, doc);
+        }
 
-            cacheNode = loadMetadata(metadataType, itemName, doc, extension);
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug(overwrite ? "Overwrite is true."
+                                : (metadataType + " not found in the cache directory."));
         }
 
-        if (!checkIfCacheExists(cacheFileName))
+        SingleFlight.Flight flight = LOAD_FLIGHTS.join(m_cacheDir + "|" + cacheFileName);
+
+        if (!flight.isLeader())
         {
             if (LOG.isDebugEnabled())
             {
-                LOG.debug(metadataType + " not found in the cache directory.");
-
-                if (loadingMetadata)
-                {
-                    if (LOG.isDebugEnabled())
-                    {
-                        LOG.debug("Will wait as another thread is fetching " + metadataType +
-                                  " from SAP server.");
-                    }
-                }
+                LOG.debug("Will wait as another thread is fetching " + metadataType +
+                          " from SAP server.");
             }
 
-            // Waits till metadata is loaded
-            while (loadingMetadata)
-            {
-                try
-                {
-                    Thread.sleep(500);
-                }
-                catch (InterruptedException ie)
-                {
-                    throw new SAPConnectorException(ie,
-                                                    SAPConnectorExceptionMessages.ERROR_WAITING_FOR_OTHER_THREAD_TO_LOAD_METADATA);
-                }
-                loadingMetadata = refreshLoadingMetadataFlag(metadataType);
-            }
+            flight.await();
 
-            if (!checkIfCacheExists(cacheFileName))
-            {
-                cacheNode = loadMetadata(metadataType, itemName, doc, extension);
-            }
+            return loadFromCache(metadataType, cacheFileName, doc);
         }
-        else
+
+        int returnValue = 0;
+        Throwable failure = null;
+
+        try
         {
-            if (LOG.isDebugEnabled())
+            // Another thread may have written the file before this one became the leader.
+            if (overwrite || !checkIfCacheExists(cacheFileName))
             {
-                LOG.debug("Loading " + metadataType + " from cache directory.");
+                returnValue = loadMetadata(metadataType, itemName, doc, extension);
+                m_store.invalidate(cacheFileName);
             }
+        }
+        catch (SAPConnectorException e)
+        {
+            failure = e;
+            throw e;
+        }
+        catch (RuntimeException e)
+        {
+            failure = e;
+            throw e;
+        }
+        catch (Error e)
+        {
+            // Otherwise the waiting threads would take the failed fetch for a success.
+            failure = e;
+            throw e;
+        }
+        finally
+        {
+            flight.done(failure);
+        }
 
-            try
-            {
-                cacheNode = doc.load(m_cacheDir + "\\" + cacheFileName);
-            }
-            catch (XMLException xe)
-            {
-                throw new SAPConnectorException(SAPConnectorExceptionMessages.ERROR_LOADING_METADATA_CACHE,
-                                                metadataType, m_cacheDir);
-            }
+        if (returnValue == 0)
+        {
+            returnValue = loadFromCache(metadataType, cacheFileName, doc);
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method loads the metadata from the cache directory.
+     *
+     * @param   metadataType   The type of metadata.
+     * @param   cacheFileName  The name of the file in the cache directory.
+     * @param   doc            The document to use.
+     *
+     * @return  The root node of the metadata.
+     *
+     * @throws  SAPConnectorException  In case the file could not be loaded.
+     */
+    private int loadFromCache(String metadataType, String cacheFileName, Document doc)
+                       throws SAPConnectorException
+    {
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Loading " + metadataType + " from cache directory.");
+        }
+
+        try
+        {
+            return doc.load(m_cacheDir + "\\" + cacheFileName);
+        }
+        catch (XMLException xe)
+        {
+            throw new SAPConnectorException(SAPConnectorExceptionMessages.ERROR_LOADING_METADATA_CACHE,
+                                            metadataType, m_cacheDir);
         }
-        return cacheNode;
     }
 
     /**
@@ -1477,40 +1476,4 @@ public abstract class MetadataLoader
             return loadIDOCInterface(itemName, extension, doc);
         }
     }
-
-    /**
-     * This method refreshes the loadingMetadata flag. Returns the current value of the flag based
-     * on the meatadta type being loaded.
-     *
-     * @param   metadataType  DOCUMENTME
-     *
-     * @return  DOCUMENTME
-     */
-    private boolean refreshLoadingMetadataFlag(String metadataType)
-    {
-        if (metadataType.equalsIgnoreCase("Component Metadata"))
-        {
-            return loadingComponentMetadata;
-        }
-        else if (metadataType.equalsIgnoreCase("BO Metadata"))
-        {
-            return m_loadingBOMetadata;
-        }
-        else if (metadataType.equalsIgnoreCase("RFC Metadata"))
-        {
-            return loadingRFCMetadata;
-        }
-        else if (metadataType.equalsIgnoreCase("IDOC Metadata"))
-        {
-            return m_loadingIDOCMetadata;
-        }
-        else if (metadataType.equalsIgnoreCase("RFC Interface"))
-        {
-            return loadingRFCInterface;
-        }
-        else // if(metadataType.equalsIgnoreCase("IDOC Interface"))
-        {
-            return loadingIDOCInterface;
-        }
-    }
 }
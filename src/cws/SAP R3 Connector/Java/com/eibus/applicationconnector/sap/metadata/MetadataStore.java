@@ -0,0 +1,646 @@
+/**
+ * Copyright 2005 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.metadata;
+
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.util.logger.CordysLogger;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Node;
+import com.eibus.xml.nom.XMLException;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * This class keeps the metadata list files of a cache directory (BOMetadata.xml,
+ * RFCMetadata.xml, IDOCMetadata.xml and ComponentMetadata.xml) parsed in memory, together with
+ * indexes on the names that the metadata browser asks for. A file is parsed the first time it is
+ * needed and again only when its modification time or size changes, so browsing the metadata no
+ * longer parses the whole file for every request.
+ *
+ * <p>Readers get a snapshot with acquire() and must give it back with release(). While a snapshot
+ * is held its nodes are not changed or deleted. The nodes belong to the document of the store, so
+ * callers copy them into their own document with Node.duplicateAndAppendToChildren.</p>
+ *
+ * @author  pgussow
+ */
+public final class MetadataStore
+{
+    /**
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(MetadataStore.class);
+    /**
+     * Holds the stores per cache directory.
+     */
+    private static final Map<String, MetadataStore> STORES = new HashMap<String, MetadataStore>();
+    /**
+     * Holds the cache directory.
+     */
+    private final String m_cacheDir;
+    /**
+     * Holds the document in which the files are parsed.
+     */
+    private final Document m_doc = new Document();
+    /**
+     * Guards the snapshots. Readers hold the read lock while they use the nodes.
+     */
+    private final ReentrantReadWriteLock m_lock = new ReentrantReadWriteLock();
+    /**
+     * Holds the parsed files per file name.
+     */
+    private final Map<String, Snapshot> m_snapshots = new HashMap<String, Snapshot>();
+
+    /**
+     * Creates a new MetadataStore object.
+     *
+     * @param  cacheDir  The cache directory.
+     */
+    private MetadataStore(String cacheDir)
+    {
+        m_cacheDir = cacheDir;
+    }
+
+    /**
+     * This method returns the store for the given cache directory.
+     *
+     * @param   cacheDir  The cache directory.
+     *
+     * @return  The store.
+     */
+    public static synchronized MetadataStore getInstance(String cacheDir)
+    {
+        MetadataStore store = STORES.get(cacheDir);
+
+        if (store == null)
+        {
+            store = new MetadataStore(cacheDir);
+            STORES.put(cacheDir, store);
+        }
+
+        return store;
+    }
+
+    /**
+     * This method returns the snapshot of the given file. The file is parsed if it was not parsed
+     * yet or if it changed on disk. The caller must call release() when it is done with the
+     * snapshot.
+     *
+     * @param   fileName      The name of the file in the cache directory.
+     * @param   metadataType  The type of metadata, used in the error message.
+     *
+     * @return  The snapshot.
+     *
+     * @throws  SAPConnectorException  In case the file could not be parsed.
+     */
+    public Snapshot acquire(String fileName, String metadataType)
+                     throws SAPConnectorException
+    {
+        File file = new File(m_cacheDir, fileName);
+
+        m_lock.readLock().lock();
+
+        Snapshot snapshot = m_snapshots.get(fileName);
+
+        if ((snapshot != null) && snapshot.isCurrent(file))
+        {
+            return snapshot;
+        }
+
+        m_lock.readLock().unlock();
+        m_lock.writeLock().lock();
+
+        try
+        {
+            // Another thread may have parsed the file in the meantime.
+            snapshot = m_snapshots.get(fileName);
+
+            if ((snapshot == null) || !snapshot.isCurrent(file))
+            {
+                snapshot = load(file, metadataType);
+
+                Snapshot old = m_snapshots.put(fileName, snapshot);
+
+                if (old != null)
+                {
+                    BACUtil.deleteNode(old.m_root);
+                }
+            }
+
+            // Downgrade to the read lock so the snapshot cannot be replaced while it is used.
+            m_lock.readLock().lock();
+        }
+        finally
+        {
+            m_lock.writeLock().unlock();
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * This method removes all parsed files from memory.
+     */
+    public void clear()
+    {
+        m_lock.writeLock().lock();
+
+        try
+        {
+            for (Snapshot snapshot : m_snapshots.values())
+            {
+                BACUtil.deleteNode(snapshot.m_root);
+            }
+            m_snapshots.clear();
+        }
+        finally
+        {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method removes the given file from memory, so the next acquire() parses it again. It
+     * is called after the file has been written.
+     *
+     * @param  fileName  The name of the file in the cache directory.
+     */
+    public void invalidate(String fileName)
+    {
+        m_lock.writeLock().lock();
+
+        try
+        {
+            Snapshot old = m_snapshots.remove(fileName);
+
+            if (old != null)
+            {
+                BACUtil.deleteNode(old.m_root);
+            }
+        }
+        finally
+        {
+            m_lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method gives back a snapshot obtained with acquire().
+     */
+    public void release()
+    {
+        m_lock.readLock().unlock();
+    }
+
+    /**
+     * This method adds all items below the given node to the index of the components. The key is
+     * the level of the item in the tree, the attribute and its value.
+     *
+     * @param  snapshot  The snapshot to fill.
+     * @param  parent    The parent of the items.
+     * @param  level     The level of the items.
+     */
+    private static void indexComponents(Snapshot snapshot, int parent, int level)
+    {
+        for (int item = Node.getFirstChild(parent); item != 0;
+                 item = Node.getNextSibling(item))
+        {
+            if (!"item".equals(Node.getLocalName(item)))
+            {
+                continue;
+            }
+
+            snapshot.index(Snapshot.createComponentKey(level, "ID", Node.getAttribute(item, "ID")),
+                           item);
+            snapshot.index(Snapshot.createComponentKey(level, "PARENT",
+                                                       Node.getAttribute(item, "PARENT")), item);
+            indexComponents(snapshot, item, level + 1);
+        }
+    }
+
+    /**
+     * This method parses the file and builds the indexes that belong to it.
+     *
+     * @param   file          The file.
+     * @param   metadataType  The type of metadata.
+     *
+     * @return  The snapshot.
+     *
+     * @throws  SAPConnectorException  In case the file could not be parsed.
+     */
+    private Snapshot load(File file, String metadataType)
+                   throws SAPConnectorException
+    {
+        // Read the file properties first, a write that happens while parsing is picked up later.
+        long lastModified = file.lastModified();
+        long length = file.length();
+        long start = System.currentTimeMillis();
+        int root;
+
+        try
+        {
+            root = m_doc.load(file.getPath());
+        }
+        catch (XMLException xe)
+        {
+            throw new SAPConnectorException(xe,
+                                            SAPConnectorExceptionMessages.ERROR_LOADING_METADATA_CACHE,
+                                            metadataType, m_cacheDir);
+        }
+
+        Snapshot snapshot = new Snapshot(root, lastModified, length);
+        String fileName = file.getName();
+
+        if (MetadataLoader.FILE_BO_METADATA.equals(fileName))
+        {
+            int[] items = children(Node.getElement(root, "API_METHODS"));
+            String[] names = new String[items.length];
+
+            for (int i = 0; i < items.length; i++)
+            {
+                names[i] = Node.getAttribute(items[i], "OBJECTNAME", "");
+                snapshot.index(Node.getAttribute(items[i], "OBJTYPE"), items[i]);
+            }
+            snapshot.setItems(items, names, true);
+        }
+        else if (MetadataLoader.FILE_IDOC_METADATA.equals(fileName))
+        {
+            int[] items = children(Node.getElement(root, "PT_MESSAGES"));
+            String[] names = new String[items.length];
+
+            for (int i = 0; i < items.length; i++)
+            {
+                names[i] = Node.getAttribute(items[i], "MESTYP", "");
+                snapshot.index(names[i], items[i]);
+            }
+            snapshot.setItems(items, names, false);
+        }
+        else if (MetadataLoader.FILE_RFC_METADATA.equals(fileName))
+        {
+            int[] items = children(Node.getElement(root, "FUNCTIONS"));
+            String[] names = new String[items.length];
+
+            for (int i = 0; i < items.length; i++)
+            {
+                names[i] = Node.getDataElement(items[i], "FUNCNAME", "");
+            }
+            snapshot.setItems(items, names, false);
+        }
+        else if (MetadataLoader.FILE_COMPONENT_METADATA.equals(fileName))
+        {
+            int borTree = Node.getElement(root, "BOR_TREE");
+
+            if (borTree != 0)
+            {
+                indexComponents(snapshot, borTree, 1);
+            }
+        }
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Loaded " + metadataType + " from " + file.getPath() + " in " +
+                      (System.currentTimeMillis() - start) + " ms.");
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * This method returns the item children of the given node in document order.
+     *
+     * @param   parent  The parent node. May be 0.
+     *
+     * @return  The item nodes.
+     */
+    private static int[] children(int parent)
+    {
+        List<Integer> items = new ArrayList<Integer>();
+
+        if (parent != 0)
+        {
+            for (int item = Node.getFirstChild(parent); item != 0;
+                     item = Node.getNextSibling(item))
+            {
+                if ("item".equals(Node.getLocalName(item)))
+                {
+                    items.add(item);
+                }
+            }
+        }
+
+        int[] returnValue = new int[items.size()];
+
+        for (int i = 0; i < returnValue.length; i++)
+        {
+            returnValue[i] = items.get(i);
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * Holds one parsed metadata file and its indexes.
+     */
+    public static final class Snapshot
+    {
+        /**
+         * Holds the item nodes per key. The first item with a key wins, like an XPath lookup.
+         */
+        private final Map<String, Integer> m_index = new HashMap<String, Integer>();
+        /**
+         * Indicates whether the names are compared case insensitive.
+         */
+        private boolean m_ignoreCase;
+        /**
+         * Holds the item nodes of the list in document order.
+         */
+        private int[] m_items = new int[0];
+        /**
+         * Holds the modification time of the file when it was parsed.
+         */
+        private final long m_lastModified;
+        /**
+         * Holds the size of the file when it was parsed.
+         */
+        private final long m_length;
+        /**
+         * Holds the names of the items of the list.
+         */
+        private String[] m_names = new String[0];
+        /**
+         * Holds the root node of the file.
+         */
+        private final int m_root;
+        /**
+         * Indicates whether the names are in ascending order, so a range can be found with a
+         * binary search.
+         */
+        private boolean m_sorted;
+
+        /**
+         * Creates a new Snapshot object.
+         *
+         * @param  root          The root node.
+         * @param  lastModified  The modification time of the file.
+         * @param  length        The size of the file.
+         */
+        Snapshot(int root, long lastModified, long length)
+        {
+            m_root = root;
+            m_lastModified = lastModified;
+            m_length = length;
+        }
+
+        /**
+         * This method returns the item with the given key.
+         *
+         * @param   key  The key (OBJTYPE for BOs, MESTYP for IDOCs).
+         *
+         * @return  The item node or 0 if there is no such item.
+         */
+        public int find(String key)
+        {
+            Integer item = m_index.get(key);
+
+            return (item == null) ? 0 : item.intValue();
+        }
+
+        /**
+         * This method returns the component item on the given level of the BOR tree.
+         *
+         * @param   level      The level of the item. The children of BOR_TREE are on level 1.
+         * @param   attribute  The attribute to match (ID or PARENT).
+         * @param   value      The value of the attribute.
+         *
+         * @return  The item node or 0 if there is no such item.
+         */
+        public int findComponent(int level, String attribute, String value)
+        {
+            return find(createComponentKey(level, attribute, value));
+        }
+
+        /**
+         * This method returns the root node of the file.
+         *
+         * @return  The root node.
+         */
+        public int getRoot()
+        {
+            return m_root;
+        }
+
+        /**
+         * This method returns the items of the list whose name is between from and to. If
+         * stopAfterTo is set the list is expected to be sorted and the scan stops at the first
+         * name after to, like the metadata loader always did.
+         *
+         * @param   from         The lowest name.
+         * @param   to           The highest name.
+         * @param   stopAfterTo  Whether the scan stops at the first name after to.
+         *
+         * @return  The matching item nodes in document order.
+         */
+        public int[] select(String from, String to, boolean stopAfterTo)
+        {
+            int first = 0;
+            int last = m_names.length;
+
+            if (m_sorted)
+            {
+                first = lowerBound(from);
+                last = Math.max(first, upperBound(to));
+            }
+
+            List<Integer> matches = new ArrayList<Integer>();
+
+            for (int i = first; i < last; i++)
+            {
+                int toValue = compare(m_names[i], to);
+
+                if (stopAfterTo && (toValue > 0))
+                {
+                    break;
+                }
+
+                if ((compare(m_names[i], from) >= 0) && (toValue <= 0))
+                {
+                    matches.add(m_items[i]);
+                }
+            }
+
+            int[] returnValue = new int[matches.size()];
+
+            for (int i = 0; i < returnValue.length; i++)
+            {
+                returnValue[i] = matches.get(i);
+            }
+
+            return returnValue;
+        }
+
+        /**
+         * This method returns the number of items in the list.
+         *
+         * @return  The number of items.
+         */
+        public int size()
+        {
+            return m_items.length;
+        }
+
+        /**
+         * This method creates the key of a component item.
+         *
+         * @param   level      The level of the item.
+         * @param   attribute  The attribute.
+         * @param   value      The value of the attribute.
+         *
+         * @return  The key.
+         */
+        static String createComponentKey(int level, String attribute, String value)
+        {
+            return level + "\u0000" + attribute + "\u0000" + value;
+        }
+
+        /**
+         * This method adds an item to the index if its key is not there yet.
+         *
+         * @param  key   The key.
+         * @param  item  The item node.
+         */
+        void index(String key, int item)
+        {
+            if ((key != null) && !m_index.containsKey(key))
+            {
+                m_index.put(key, item);
+            }
+        }
+
+        /**
+         * This method checks whether the file is still the one that was parsed.
+         *
+         * @param   file  The file.
+         *
+         * @return  true if the file did not change.
+         */
+        boolean isCurrent(File file)
+        {
+            return (file.lastModified() == m_lastModified) && (file.length() == m_length);
+        }
+
+        /**
+         * This method sets the list of items.
+         *
+         * @param  items       The item nodes in document order.
+         * @param  names       The names of the items.
+         * @param  ignoreCase  Whether the names are compared case insensitive.
+         */
+        void setItems(int[] items, String[] names, boolean ignoreCase)
+        {
+            m_items = items;
+            m_names = names;
+            m_ignoreCase = ignoreCase;
+            m_sorted = true;
+
+            for (int i = 1; (i < names.length) && m_sorted; i++)
+            {
+                m_sorted = compare(names[i - 1], names[i]) <= 0;
+            }
+        }
+
+        /**
+         * This method compares two names.
+         *
+         * @param   name1  The first name.
+         * @param   name2  The second name.
+         *
+         * @return  The result of the comparison.
+         */
+        private int compare(String name1, String name2)
+        {
+            return m_ignoreCase ? name1.compareToIgnoreCase(name2) : name1.compareTo(name2);
+        }
+
+        /**
+         * This method returns the index of the first name that is not lower than the given name.
+         *
+         * @param   name  The name.
+         *
+         * @return  The index.
+         */
+        private int lowerBound(String name)
+        {
+            int low = 0;
+            int high = m_names.length;
+
+            while (low < high)
+            {
+                int middle = (low + high) >>> 1;
+
+                if (compare(m_names[middle], name) < 0)
+                {
+                    low = middle + 1;
+                }
+                else
+                {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+
+        /**
+         * This method returns the index of the first name that is higher than the given name.
+         *
+         * @param   name  The name.
+         *
+         * @return  The index.
+         */
+        private int upperBound(String name)
+        {
+            int low = 0;
+            int high = m_names.length;
+
+            while (low < high)
+            {
+                int middle = (low + high) >>> 1;
+
+                if (compare(m_names[middle], name) <= 0)
+                {
+                    low = middle + 1;
+                }
+                else
+                {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+    }
+}
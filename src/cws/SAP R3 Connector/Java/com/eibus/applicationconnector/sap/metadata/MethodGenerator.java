@@ -114,6 +114,10 @@ public abstract class MethodGenerator
      * Holds the name of the business object (in case of.
      */
     private String m_businessObjectMesType;
+    /**
+     * Holds the cache for the generated WSDL. May be null.
+     */
+    private GeneratedMethodCache m_cache;
     /**
      * Holds the name of the interface that will be generated.
      */
@@ -282,7 +286,9 @@ public abstract class MethodGenerator
                                               throws SAPConnectorException;
 
     /**
-     * This method handles the actual generation.
+     * This method handles the actual generation. If a cache is set and it holds the WSDL for the
+     * same request and the same metadata, the schema and the WSDL are not generated again. The
+     * realizations only depend on the request, so they are always created.
      *
      * @throws  SAPConnectorException  In case of any exceptions
      */
@@ -293,6 +299,10 @@ public abstract class MethodGenerator
         int xmlWSDL = Node.createElementWithParentNS("wsdl", null, m_response);
         int xmlRealizations = Node.createElementWithParentNS("realizations", null, m_response);
 
+        // Check whether the WSDL was generated before.
+        String cacheKey = createCacheKey();
+        String finalWSDL = (cacheKey == null) ? null : m_cache.get(cacheKey);
+
         // Create the base WSDL creator.
         WSDLCreator wsdl = new WSDLCreator(fixMethodName(m_interfaceName), m_namespace,
                                            "com.eibus.web.soap.Gateway.wcp");
@@ -328,7 +338,11 @@ public abstract class MethodGenerator
                                                    xmlRealization);
 
                     // Add the interface to the method.
-                    generateInterface(methodName, operation.getSAPName(), wsdl, xs, false, null);
+                    if (finalWSDL == null)
+                    {
+                        generateInterface(methodName, operation.getSAPName(), wsdl, xs, false,
+                                          null);
+                    }
                     break;
 
                 case IDOC:
@@ -337,8 +351,11 @@ public abstract class MethodGenerator
                                                xmlRealization,operation.getSAPName());
 
                     // Add the interface to the method. The iDoc type is the operation                    
-                    generateInterface4IDOC(methodName, operation.getSAPName(), wsdl, xs, true,
-                                      operation.getCIMType());
+                    if (finalWSDL == null)
+                    {
+                        generateInterface4IDOC(methodName, operation.getSAPName(), wsdl, xs,
+                                               true, operation.getCIMType());
+                    }
                     if(Util.isSet( operation.getCIMType()))
                     {
                     	methodName = operation.getCIMType();
@@ -351,31 +368,15 @@ public abstract class MethodGenerator
             Node.setAttribute(xmlRealization, "operation", methodName);
         }
 
-        // Now we can add the WSDL to the response.
-        XSDDumper xdDumper = new XSDDumper();
-        xdDumper.declareNamespace("xsd", XMLConstants.W3C_XML_SCHEMA_NS_URI);
-        xdDumper.declareNamespace("tns", m_namespace);
-
-        Element schema = xdDumper.convert(xs);
-        schema.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns:tns", m_namespace);
-
-        // Make sure that the elements are qualified.
-        schema.setAttribute("attributeFormDefault", "unqualified");
-        schema.setAttribute("elementFormDefault", "qualified");
-
-        // Attach the schema to the WSDL.
-        wsdl.setSchema(schema);
-
-        // Generate the WSDL.
-        String finalWSDL = null;
-
-        try
+        // Now we can generate the WSDL.
+        if (finalWSDL == null)
         {
-            finalWSDL = wsdl.createWSDL();
-        }
-        catch (Exception e)
-        {
-            throw new SAPConnectorException(e, SAPConnectorExceptionMessages.ERROR_GENERATING_WSDL);
+            finalWSDL = createWSDL(wsdl, xs);
+
+            if (cacheKey != null)
+            {
+                m_cache.put(cacheKey, finalWSDL);
+            }
         }
 
         // Attach the WSDL to the response.
@@ -401,6 +402,37 @@ public abstract class MethodGenerator
         return m_namespace;
     }
 
+    /**
+     * This method sets the cache for the generated WSDL.
+     *
+     * @param  cache  The cache for the generated WSDL. null disables the cache.
+     */
+    public void setCache(GeneratedMethodCache cache)
+    {
+        m_cache = cache;
+    }
+
+    /**
+     * This method appends the metadata of the given SAP item to the fingerprint of the request.
+     * The fingerprint must change whenever the generated schema would change. The default
+     * implementation does not support fingerprints, so the WSDL is not cached.
+     *
+     * @param   fingerprint  The fingerprint to append to.
+     * @param   type         The type of the SAP item.
+     * @param   sapItemName  The name of the SAP item.
+     * @param   extension    The extension. Only used for IDOCs.
+     *
+     * @return  true if the metadata was appended. false if the WSDL must not be cached.
+     *
+     * @throws  SAPConnectorException  In case the metadata could not be read.
+     */
+    protected boolean appendFingerprint(StringBuilder fingerprint, ESAPObjectType type,
+                                        String sapItemName, String extension)
+                                 throws SAPConnectorException
+    {
+        return false;
+    }
+
     /**
      * This method creates an attribute node with the given name.
      *
@@ -737,6 +769,81 @@ public abstract class MethodGenerator
         }
     }
 
+    /**
+     * This method creates the key of the request in the cache. The fingerprint contains the
+     * request details and the metadata of all operations.
+     *
+     * @return  The key, or null if the WSDL must not be cached.
+     *
+     * @throws  SAPConnectorException  In case the metadata could not be read.
+     */
+    private String createCacheKey()
+                           throws SAPConnectorException
+    {
+        if (m_cache == null)
+        {
+            return null;
+        }
+
+        StringBuilder fingerprint = new StringBuilder(1024);
+        fingerprint.append(getClass().getName()).append('|').append(m_type).append('|');
+        fingerprint.append(m_interfaceName).append('|').append(m_namespace).append('|');
+        fingerprint.append(m_businessObjectMesType);
+
+        for (OperationDetail operation : m_operations)
+        {
+            fingerprint.append('\n').append(operation.getSAPName()).append('|');
+            fingerprint.append(operation.getWebServiceName()).append('|');
+            fingerprint.append(operation.getCIMType()).append('\n');
+
+            if (!appendFingerprint(fingerprint, m_type, operation.getSAPName(),
+                                       operation.getCIMType()))
+            {
+                return null;
+            }
+        }
+
+        return GeneratedMethodCache.createKey(fingerprint.toString());
+    }
+
+    /**
+     * This method converts the schema and creates the WSDL.
+     *
+     * @param   wsdl  The WSDL creator with the methods.
+     * @param   xs    The schema of the methods.
+     *
+     * @return  The WSDL.
+     *
+     * @throws  SAPConnectorException  In case the WSDL could not be generated.
+     */
+    private String createWSDL(WSDLCreator wsdl, XSDSchema xs)
+                       throws SAPConnectorException
+    {
+        XSDDumper xdDumper = new XSDDumper();
+        xdDumper.declareNamespace("xsd", XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        xdDumper.declareNamespace("tns", m_namespace);
+
+        Element schema = xdDumper.convert(xs);
+        schema.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "xmlns:tns", m_namespace);
+
+        // Make sure that the elements are qualified.
+        schema.setAttribute("attributeFormDefault", "unqualified");
+        schema.setAttribute("elementFormDefault", "qualified");
+
+        // Attach the schema to the WSDL.
+        wsdl.setSchema(schema);
+
+        // Generate the WSDL.
+        try
+        {
+            return wsdl.createWSDL();
+        }
+        catch (Exception e)
+        {
+            throw new SAPConnectorException(e, SAPConnectorExceptionMessages.ERROR_GENERATING_WSDL);
+        }
+    }
+
     /**
      * This method generates the methods based on the RFM used (can be either a BAPI of an RFC).
      *
@@ -0,0 +1,217 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.metadata;
+
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class makes sure that the same metadata is fetched from SAP only once at a time. The first
+ * thread that joins a key becomes the leader and does the fetch. Every other thread that joins
+ * the key while the fetch runs waits for the same flight and gets its outcome: it returns when the
+ * leader succeeded and fails with the error of the leader otherwise.
+ *
+ * <p>A waiting thread can give up by being interrupted or when the timeout passes. This does not
+ * affect the leader. When the flight is done the key is free again, so a failed fetch is retried
+ * by the next caller.</p>
+ *
+ * @author  pgussow
+ */
+public class SingleFlight
+{
+    /**
+     * Holds the flights per key.
+     */
+    private final ConcurrentMap<String, Flight> m_flights = new ConcurrentHashMap<String, Flight>();
+    /**
+     * Holds the number of fetches.
+     */
+    private final AtomicLong m_fetches = new AtomicLong();
+    /**
+     * Holds the number of threads that waited for the fetch of another thread.
+     */
+    private final AtomicLong m_joins = new AtomicLong();
+    /**
+     * Holds the number of milliseconds a thread waits for the fetch of another thread.
+     */
+    private final long m_timeout;
+
+    /**
+     * Creates a new SingleFlight object.
+     *
+     * @param  timeout  The number of milliseconds a thread waits for the fetch of another thread.
+     */
+    public SingleFlight(long timeout)
+    {
+        m_timeout = timeout;
+    }
+
+    /**
+     * This method returns the number of fetches.
+     *
+     * @return  The number of fetches.
+     */
+    public long getFetches()
+    {
+        return m_fetches.get();
+    }
+
+    /**
+     * This method returns the number of threads that waited for the fetch of another thread.
+     *
+     * @return  The number of joins.
+     */
+    public long getJoins()
+    {
+        return m_joins.get();
+    }
+
+    /**
+     * This method joins the flight of the given key. If there is none, a new flight is started and
+     * the caller is its leader. The leader must call done() when the fetch is finished.
+     *
+     * @param   key  The key of the metadata.
+     *
+     * @return  The flight.
+     */
+    public Flight join(String key)
+    {
+        Flight returnValue = new Flight(key);
+        Flight existing = m_flights.putIfAbsent(key, returnValue);
+
+        if (existing != null)
+        {
+            m_joins.incrementAndGet();
+            return existing;
+        }
+
+        returnValue.m_leader = Thread.currentThread();
+        m_fetches.incrementAndGet();
+
+        return returnValue;
+    }
+
+    /**
+     * @see  java.lang.Object#toString()
+     */
+    @Override public String toString()
+    {
+        return "Metadata fetches: " + m_fetches.get() + ", joins: " + m_joins.get() +
+               ", in flight: " + m_flights.size();
+    }
+
+    /**
+     * Holds one fetch of metadata.
+     */
+    public class Flight
+    {
+        /**
+         * Is released when the fetch is done.
+         */
+        private final CountDownLatch m_done = new CountDownLatch(1);
+        /**
+         * Holds the error of the fetch.
+         */
+        private volatile Throwable m_failure;
+        /**
+         * Holds the key of the metadata.
+         */
+        private final String m_key;
+        /**
+         * Holds the thread that does the fetch.
+         */
+        private Thread m_leader;
+
+        /**
+         * Creates a new Flight object.
+         *
+         * @param  key  The key of the metadata.
+         */
+        Flight(String key)
+        {
+            m_key = key;
+        }
+
+        /**
+         * This method waits until the leader is done. It returns when the fetch succeeded. An
+         * Error of the fetch, like an OutOfMemoryError, is thrown as it is.
+         *
+         * @throws  SAPConnectorException  In case the fetch failed, the timeout passed or the
+         *                                 thread was interrupted.
+         */
+        public void await()
+                   throws SAPConnectorException
+        {
+            try
+            {
+                if (!m_done.await(m_timeout, TimeUnit.MILLISECONDS))
+                {
+                    throw new SAPConnectorException(SAPConnectorExceptionMessages.TIMEOUT_WAITING_FOR_METADATA_LOAD,
+                                                    m_key, m_timeout);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new SAPConnectorException(e,
+                                                SAPConnectorExceptionMessages.ERROR_WAITING_FOR_OTHER_THREAD_TO_LOAD_METADATA);
+            }
+
+            if (m_failure instanceof Error)
+            {
+                throw (Error) m_failure;
+            }
+
+            if (m_failure != null)
+            {
+                throw new SAPConnectorException(m_failure,
+                                                SAPConnectorExceptionMessages.METADATA_LOAD_FAILED_IN_OTHER_THREAD,
+                                                m_key);
+            }
+        }
+
+        /**
+         * This method ends the flight and releases the waiting threads. Only the leader calls
+         * this method.
+         *
+         * @param  failure  The error of the fetch, or null if it succeeded.
+         */
+        public void done(Throwable failure)
+        {
+            m_failure = failure;
+            m_flights.remove(m_key, this);
+            m_done.countDown();
+        }
+
+        /**
+         * This method returns whether the current thread does the fetch.
+         *
+         * @return  true if the current thread is the leader.
+         */
+        public boolean isLeader()
+        {
+            return m_leader == Thread.currentThread();
+        }
+    }
+}
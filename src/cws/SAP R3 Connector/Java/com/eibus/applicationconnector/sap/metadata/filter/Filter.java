@@ -31,7 +31,10 @@ import com.eibus.xml.xpath.XPathMetaInfo;
 import java.util.regex.Pattern;
 
 /**
- * This class holds the details for a filter.
+ * This class holds the details for a filter. The filter is compiled once when its type or value
+ * is set. EQUALS, STARTS_WITH and CONTAINS filters whose value does not contain regular
+ * expression characters are matched with plain case insensitive string compares. All other
+ * filters use a precompiled pattern.
  *
  * @author  pgussow
  */
@@ -54,6 +57,14 @@ class Filter
      * Holds the name of the tag 'filter'.
      */
     private static final String TAG_ROOT = "filter";
+    /**
+     * Holds the characters that have a special meaning in a regular expression.
+     */
+    private static final String REGEX_CHARACTERS = "\\^$.|?*+()[]{}";
+    /**
+     * Holds the compiled filter. It is replaced when the type or value changes.
+     */
+    private volatile CompiledFilter m_compiled;
     /**
      * Holds the name of the field for the filter.
      */
@@ -110,6 +121,8 @@ class Filter
         }
 
         m_fieldName = XPathHelper.getStringValue(node, "ns:" + TAG_FIELD_NAME, xmi, "");
+
+        compile();
     }
 
     /**
@@ -141,29 +154,12 @@ class Filter
      */
     @Override public boolean match(String source)
     {
-        String regex = null;
-
-        switch (m_type)
+        if (source == null)
         {
-            case CONTAINS:
-                regex = ".*" + m_value + ".*";
-                break;
-
-            case STARTS_WITH:
-                regex = "^" + m_value + ".+";
-                break;
-
-            case EQUALS:
-                regex = "^" + m_value + "$";
-
-            default:
-                regex = m_value;
-                break;
+            return false;
         }
 
-        Pattern pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
-
-        return pattern.matcher(source).matches();
+        return getCompiled().match(source);
     }
 
     /**
@@ -180,6 +176,7 @@ class Filter
     public void setType(EFilterType type)
     {
         m_type = type;
+        m_compiled = null;
     }
 
     /**
@@ -188,6 +185,7 @@ class Filter
     public void setValue(String value)
     {
         m_value = value;
+        m_compiled = null;
     }
 
     /**
@@ -217,4 +215,159 @@ class Filter
             Node.createElementWithParentNS(TAG_FIELD_NAME, m_fieldName, parent);
         }
     }
+
+    /**
+     * This method compiles the filter for the current type and value.
+     */
+    void compile()
+    {
+        m_compiled = new CompiledFilter(m_type, m_value);
+    }
+
+    /**
+     * This method returns the compiled filter. If the type or value was changed since the last
+     * compile, the filter is compiled again.
+     *
+     * @return  The compiled filter.
+     */
+    private CompiledFilter getCompiled()
+    {
+        CompiledFilter returnValue = m_compiled;
+
+        if (returnValue == null)
+        {
+            returnValue = new CompiledFilter(m_type, m_value);
+            m_compiled = returnValue;
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * Holds the compiled form of a filter. The literal compares give the same result as the
+     * patterns the filter types stand for: CONTAINS is .*value.*, STARTS_WITH is ^value.+ (so at
+     * least one character must follow the value) and EQUALS is ^value$.
+     */
+    private static final class CompiledFilter
+    {
+        /**
+         * Holds the value to compare with if no pattern is needed.
+         */
+        private final String m_literal;
+        /**
+         * Holds the pattern if the value is a regular expression.
+         */
+        private final Pattern m_pattern;
+        /**
+         * Holds the filter type.
+         */
+        private final EFilterType m_type;
+
+        /**
+         * Creates a new CompiledFilter object.
+         *
+         * @param  type   The filter type.
+         * @param  value  The value for the filter.
+         */
+        CompiledFilter(EFilterType type, String value)
+        {
+            m_type = (type == null) ? EFilterType.REGEX : type;
+
+            if (value == null)
+            {
+                value = "";
+            }
+
+            if ((m_type != EFilterType.REGEX) && !containsRegexCharacters(value))
+            {
+                m_literal = value;
+                m_pattern = null;
+            }
+            else
+            {
+                String regex;
+
+                switch (m_type)
+                {
+                    case CONTAINS:
+                        regex = ".*" + value + ".*";
+                        break;
+
+                    case STARTS_WITH:
+                        regex = "^" + value + ".+";
+                        break;
+
+                    case EQUALS:
+                        regex = "^" + value + "$";
+                        break;
+
+                    default:
+                        regex = value;
+                        break;
+                }
+
+                m_literal = null;
+                m_pattern = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
+            }
+        }
+
+        /**
+         * This method returns whether or not the given value matches the filter.
+         *
+         * @param   source  The string to check.
+         *
+         * @return  Whether or not the given value matches the filter.
+         */
+        boolean match(String source)
+        {
+            if (m_pattern != null)
+            {
+                return m_pattern.matcher(source).matches();
+            }
+
+            int length = m_literal.length();
+
+            switch (m_type)
+            {
+                case EQUALS:
+                    return source.equalsIgnoreCase(m_literal);
+
+                case STARTS_WITH:
+                    return (source.length() > length) &&
+                           source.regionMatches(true, 0, m_literal, 0, length);
+
+                default:
+
+                    for (int i = source.length() - length; i >= 0; i--)
+                    {
+                        if (source.regionMatches(true, i, m_literal, 0, length))
+                        {
+                            return true;
+                        }
+                    }
+                    return false;
+            }
+        }
+
+        /**
+         * This method returns whether the value contains characters that have a special meaning
+         * in a regular expression.
+         *
+         * @param   value  The value to check.
+         *
+         * @return  true if the value has to be matched with a pattern.
+         */
+        private static boolean containsRegexCharacters(String value)
+        {
+            for (int i = 0; i < value.length(); i++)
+            {
+                if (REGEX_CHARACTERS.indexOf(value.charAt(i)) >= 0)
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
 }
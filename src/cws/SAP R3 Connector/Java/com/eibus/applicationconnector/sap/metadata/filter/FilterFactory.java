@@ -41,6 +41,7 @@ public class FilterFactory
 
         returnValue.setType(EFilterType.CONTAINS);
         returnValue.setValue(value);
+        returnValue.compile();
 
         return returnValue;
     }
@@ -58,6 +59,7 @@ public class FilterFactory
 
         returnValue.setType(EFilterType.EQUALS);
         returnValue.setValue(value);
+        returnValue.compile();
 
         return returnValue;
     }
@@ -78,6 +80,7 @@ public class FilterFactory
         returnValue.setFieldName(fieldName);
         returnValue.setType(type);
         returnValue.setValue(value);
+        returnValue.compile();
 
         return returnValue;
     }
@@ -95,6 +98,7 @@ public class FilterFactory
 
         returnValue.setType(EFilterType.REGEX);
         returnValue.setValue(value);
+        returnValue.compile();
 
         return returnValue;
     }
@@ -112,6 +116,7 @@ public class FilterFactory
 
         returnValue.setType(EFilterType.STARTS_WITH);
         returnValue.setValue(value);
+        returnValue.compile();
 
         return returnValue;
     }
@@ -0,0 +1,847 @@
+/**
+ * Copyright 2005 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.metadata.storage;
+
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+import com.eibus.applicationconnector.sap.metadata.ESAPObjectType;
+import com.eibus.applicationconnector.sap.metadata.IMetadataCache;
+import com.eibus.applicationconnector.sap.metadata.types.IBAPIMetadata;
+import com.eibus.applicationconnector.sap.metadata.types.IIDOCMetadata;
+import com.eibus.applicationconnector.sap.metadata.types.IRFCMetadata;
+import com.eibus.applicationconnector.sap.metadata.types.ITypeContainer;
+import com.eibus.applicationconnector.sap.metadata.types.ITypeMetadata;
+import com.eibus.applicationconnector.sap.metadata.types.SAPMetadataFactory;
+import com.eibus.applicationconnector.sap.soap.ClearCache;
+
+import com.eibus.util.logger.CordysLogger;
+
+import com.eibus.xml.nom.Document;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class persists the metadata cache in a compact binary format. There is one file per object
+ * type (bapis.bin, rfcs.bin and idocs.bin) next to the XML files of the file system storage.
+ *
+ * <p>A file has the following layout. All numbers are big endian ints.</p>
+ *
+ * <pre>
+ * header:  magic, version, object type, entry count, string count, index offset,
+ *          string table offset
+ * entries: per entry the value, display name and description (string numbers), the number of
+ *          items and per item the fields of its type (string numbers)
+ * index:   per entry the offset of the entry
+ * strings: per string the offset of its data, followed by the data (length + UTF-8 bytes)
+ * </pre>
+ *
+ * <p>Every distinct string is stored once. loadCache memory-maps the files and only reads the
+ * value, display name and description of each entry. The items of an entry are decoded the first
+ * time they are needed.</p>
+ *
+ * <p>If the binary files are missing or have another version, the cache is loaded from the XML
+ * files of the file system storage and written in the binary format.</p>
+ *
+ * @author  pgussow
+ */
+class BinaryFileStorage
+    implements ICacheStorage
+{
+    /**
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(BinaryFileStorage.class);
+    /**
+     * Identifies a binary metadata file.
+     */
+    private static final int MAGIC = 0x53415043;
+    /**
+     * Holds the version of the file format.
+     */
+    private static final int VERSION = 1;
+    /**
+     * Holds the size of the header in bytes.
+     */
+    private static final int HEADER_SIZE = 7 * 4;
+    /**
+     * Holds the string number that stands for null.
+     */
+    private static final int NULL_STRING = -1;
+    /**
+     * Holds the current organization.
+     */
+    private String m_organization;
+    /**
+     * Holds the root folder to use.
+     */
+    private File m_rootFolder;
+
+    /**
+     * Creates a new BinaryFileStorage object.
+     *
+     * @param  organization  The current organization.
+     */
+    public BinaryFileStorage(String organization)
+    {
+        m_organization = organization;
+
+        m_rootFolder = new File(ClearCache.getLocal_cacheDirectory());
+
+        if (!m_rootFolder.exists())
+        {
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Creating local cache folder: " + m_rootFolder.getAbsolutePath());
+            }
+            m_rootFolder.mkdirs();
+        }
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.metadata.storage.ICacheStorage#loadCache(java.lang.String,
+     *       com.eibus.applicationconnector.sap.metadata.IMetadataCache)
+     */
+    @Override public void loadCache(String id, IMetadataCache cache)
+                             throws SAPConnectorException
+    {
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Loading binary cache with ID " + id);
+        }
+
+        File reposRoot = new File(m_rootFolder, id);
+        MappedFile[] files = new MappedFile[ESAPObjectType.values().length];
+        boolean complete = reposRoot.exists();
+
+        for (ESAPObjectType type : ESAPObjectType.values())
+        {
+            if (complete)
+            {
+                files[type.ordinal()] = open(getFile(reposRoot, type), type);
+                complete = files[type.ordinal()] != null;
+            }
+        }
+
+        if (complete)
+        {
+            for (MappedFile file : files)
+            {
+                file.fillCache(cache);
+            }
+        }
+        else
+        {
+            migrate(id, cache);
+        }
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.metadata.storage.ICacheStorage#persistCache(com.eibus.applicationconnector.sap.metadata.IMetadataCache)
+     */
+    @Override public void persistCache(IMetadataCache cache)
+                                throws SAPConnectorException
+    {
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Persisting binary cache with ID " + cache.getID());
+        }
+
+        File reposRoot = new File(m_rootFolder, cache.getID());
+
+        if (!reposRoot.exists())
+        {
+            reposRoot.mkdirs();
+        }
+
+        write(getFile(reposRoot, ESAPObjectType.BAPI), ESAPObjectType.BAPI, cache.getAllBAPIs());
+        write(getFile(reposRoot, ESAPObjectType.RFC), ESAPObjectType.RFC, cache.getAllRFCs());
+        write(getFile(reposRoot, ESAPObjectType.IDOC), ESAPObjectType.IDOC, cache.getAllIDOCs());
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.metadata.storage.ICacheStorage#persistCache(com.eibus.applicationconnector.sap.metadata.IMetadataCache,
+     *       com.eibus.applicationconnector.sap.metadata.ESAPObjectType)
+     */
+    @Override public void persistCache(IMetadataCache cache, ESAPObjectType type)
+                                throws SAPConnectorException
+    {
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Persisting the binary " + type + " objects of cache with ID " + cache.getID());
+        }
+
+        File reposRoot = new File(m_rootFolder, cache.getID());
+
+        if (!reposRoot.exists())
+        {
+            reposRoot.mkdirs();
+        }
+
+        write(getFile(reposRoot, type), type, FileSystemStorage.getAllObjects(cache, type));
+    }
+
+    /**
+     * This method returns the number of fields that is stored per item.
+     *
+     * @param   type  The type of object.
+     *
+     * @return  The number of fields.
+     */
+    static int getFieldCount(ESAPObjectType type)
+    {
+        switch (type)
+        {
+            case BAPI:
+                return 9;
+
+            case RFC:
+                return 7;
+
+            default:
+                return 5;
+        }
+    }
+
+    /**
+     * This method creates an item from the values of its fields.
+     *
+     * @param   type    The type of object.
+     * @param   fields  The values of the fields.
+     *
+     * @return  The item.
+     */
+    static ITypeMetadata createItem(ESAPObjectType type, String[] fields)
+    {
+        ITypeMetadata returnValue = SAPMetadataFactory.createObject(type);
+
+        returnValue.setValue(fields[0]);
+        returnValue.setDisplayName(fields[1]);
+
+        switch (type)
+        {
+            case BAPI:
+
+                IBAPIMetadata bapi = (IBAPIMetadata) returnValue;
+                bapi.setMethod(fields[2]);
+                bapi.setMethodName(fields[3]);
+                bapi.setDescription(fields[4]);
+                bapi.setShortText(fields[5]);
+                bapi.setRFCFuntion(fields[6]);
+                bapi.setClassVerb(fields[7]);
+                bapi.setAPIType(fields[8]);
+                break;
+
+            case RFC:
+
+                IRFCMetadata rfc = (IRFCMetadata) returnValue;
+                rfc.setRFCFunction(fields[2]);
+                rfc.setGroupName(fields[3]);
+                rfc.setApplication(fields[4]);
+                rfc.setHost(fields[5]);
+                rfc.setShortText(fields[6]);
+                break;
+
+            default:
+
+                IIDOCMetadata idoc = (IIDOCMetadata) returnValue;
+                idoc.setType(fields[2]);
+                idoc.setCIMType(fields[3]);
+                idoc.setReleased(fields[4]);
+                break;
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method returns the binary file for the given object type.
+     *
+     * @param   reposRoot  The root folder of the cache.
+     * @param   type       The type of object.
+     *
+     * @return  The file.
+     */
+    private static File getFile(File reposRoot, ESAPObjectType type)
+    {
+        return new File(reposRoot, type.name().toLowerCase() + "s.bin");
+    }
+
+    /**
+     * This method adds a string to the string table.
+     *
+     * @param   strings  The string table.
+     * @param   value    The string.
+     *
+     * @return  The number of the string.
+     */
+    private static int intern(Map<String, Integer> strings, String value)
+    {
+        if (value == null)
+        {
+            return NULL_STRING;
+        }
+
+        Integer number = strings.get(value);
+
+        if (number == null)
+        {
+            number = strings.size();
+            strings.put(value, number);
+        }
+
+        return number;
+    }
+
+    /**
+     * This method loads the cache from the XML files and writes it in the binary format.
+     *
+     * @param   id     The ID for the cache to load.
+     * @param   cache  The cache to fill.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    private void migrate(String id, IMetadataCache cache)
+                  throws SAPConnectorException
+    {
+        if (!new File(new File(m_rootFolder, id), "bapis.xml").exists())
+        {
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("No cache files are found. This means an empty cache will not be filled.");
+            }
+            return;
+        }
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Migrating the XML cache with ID " + id + " to the binary format.");
+        }
+
+        new FileSystemStorage(m_organization).loadCache(id, cache);
+
+        persistCache(cache);
+    }
+
+    /**
+     * This method maps the given file and checks its header.
+     *
+     * @param   file  The file.
+     * @param   type  The expected type of object.
+     *
+     * @return  The mapped file or null if the file does not exist or has another format.
+     *
+     * @throws  SAPConnectorException  In case the file could not be read.
+     */
+    private MappedFile open(File file, ESAPObjectType type)
+                     throws SAPConnectorException
+    {
+        if (!file.isFile() || (file.length() < HEADER_SIZE))
+        {
+            return null;
+        }
+
+        MappedByteBuffer buffer;
+
+        try
+        {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+            try
+            {
+                // The mapping stays valid after the channel is closed.
+                buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+            }
+            finally
+            {
+                raf.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.ERROR_LOADING_METADATA_FILE,
+                                            file.getAbsolutePath());
+        }
+
+        if ((buffer.getInt(0) != MAGIC) || (buffer.getInt(4) != VERSION) ||
+                (buffer.getInt(8) != type.ordinal()))
+        {
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("File " + file.getAbsolutePath() +
+                          " has an unknown format or version. It will be rebuilt.");
+            }
+            return null;
+        }
+
+        return new MappedFile(buffer, type);
+    }
+
+    /**
+     * This method writes the containers to a binary file. The file is first written under a
+     * temporary name, so a failure does not leave a half written file.
+     *
+     * @param   file        The file to write.
+     * @param   type        The type of objects.
+     * @param   allObjects  The objects to write.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    private void write(File file, ESAPObjectType type, Map<String, ITypeContainer> allObjects)
+                throws SAPConnectorException
+    {
+        File tempFile = new File(file.getPath() + ".tmp");
+
+        try
+        {
+            Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+            int[] index = new int[allObjects.size()];
+            ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+            DataOutputStream entries = new DataOutputStream(entryBytes);
+            int entry = 0;
+
+            for (ITypeContainer container : allObjects.values())
+            {
+                index[entry++] = HEADER_SIZE + entries.size();
+
+                entries.writeInt(intern(strings, container.getValue()));
+                entries.writeInt(intern(strings, container.getDisplayName()));
+                entries.writeInt(intern(strings, container.getDescription()));
+
+                Map<String, ITypeMetadata> items = container.getItems();
+                entries.writeInt(items.size());
+
+                for (ITypeMetadata item : items.values())
+                {
+                    for (String field : SAPMetadataFactory.getFields(type, item))
+                    {
+                        entries.writeInt(intern(strings, field));
+                    }
+                }
+            }
+            entries.flush();
+
+            int indexOffset = HEADER_SIZE + entries.size();
+            int stringTableOffset = indexOffset + (4 * index.length);
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+
+            try
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(type.ordinal());
+                out.writeInt(index.length);
+                out.writeInt(strings.size());
+                out.writeInt(indexOffset);
+                out.writeInt(stringTableOffset);
+
+                entryBytes.writeTo(out);
+
+                for (int offset : index)
+                {
+                    out.writeInt(offset);
+                }
+
+                // The offsets of the strings, followed by the data.
+                byte[][] data = new byte[strings.size()][];
+                int offset = stringTableOffset + (4 * data.length);
+                int number = 0;
+
+                for (String value : strings.keySet())
+                {
+                    data[number++] = value.getBytes("UTF-8");
+                }
+
+                for (byte[] bytes : data)
+                {
+                    out.writeInt(offset);
+                    offset += 4 + bytes.length;
+                }
+
+                for (byte[] bytes : data)
+                {
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            finally
+            {
+                out.close();
+            }
+
+            // A mapped file cannot always be replaced directly, so delete it first if needed.
+            if (!tempFile.renameTo(file) && !(file.delete() && tempFile.renameTo(file)))
+            {
+                throw new IOException("Could not replace " + file.getAbsolutePath());
+            }
+        }
+        catch (IOException e)
+        {
+            tempFile.delete();
+
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.ERROR_WRITING_CACHE_FILE,
+                                            file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Container whose items are decoded from the mapped file the first time they are needed. The
+     * value, display name and description are read when the file is loaded, because the cache and
+     * the searches use them for every entry.
+     */
+    private static class LazyContainer
+        implements ITypeContainer
+    {
+        /**
+         * Holds the decoded container.
+         */
+        private ITypeContainer m_container;
+        /**
+         * Holds the description.
+         */
+        private String m_description;
+        /**
+         * Holds the display name.
+         */
+        private String m_displayName;
+        /**
+         * Holds the file the entry is in.
+         */
+        private final MappedFile m_file;
+        /**
+         * Holds the offset of the items of the entry.
+         */
+        private final int m_itemsOffset;
+        /**
+         * Holds the type. It is the type of the file unless it was changed.
+         */
+        private ESAPObjectType m_type;
+        /**
+         * Holds the value.
+         */
+        private String m_value;
+
+        /**
+         * Creates a new LazyContainer object.
+         *
+         * @param  file    The file the entry is in.
+         * @param  offset  The offset of the entry.
+         */
+        LazyContainer(MappedFile file, int offset)
+        {
+            m_file = file;
+            m_value = file.getString(file.m_buffer.getInt(offset));
+            m_displayName = file.getString(file.m_buffer.getInt(offset + 4));
+            m_description = file.getString(file.m_buffer.getInt(offset + 8));
+            m_itemsOffset = offset + 12;
+            m_type = file.m_type;
+        }
+
+        /**
+         * @see  ITypeContainer#addType(ITypeMetadata)
+         */
+        @Override public void addType(ITypeMetadata type)
+        {
+            getContainer().addType(type);
+        }
+
+        /**
+         * @see  ITypeContainer#copy()
+         */
+        @Override public ITypeContainer copy()
+        {
+            return getContainer().copy();
+        }
+
+        /**
+         * @see  ITypeContainer#getDescription()
+         */
+        @Override public String getDescription()
+        {
+            return m_description;
+        }
+
+        /**
+         * @see  ITypeContainer#getDisplayName()
+         */
+        @Override public String getDisplayName()
+        {
+            return m_displayName;
+        }
+
+        /**
+         * @see  ITypeContainer#getItems()
+         */
+        @Override public Map<String, ITypeMetadata> getItems()
+        {
+            return getContainer().getItems();
+        }
+
+        /**
+         * @see  ITypeContainer#getType()
+         */
+        @Override public ESAPObjectType getType()
+        {
+            return m_type;
+        }
+
+        /**
+         * @see  ITypeContainer#getValue()
+         */
+        @Override public String getValue()
+        {
+            return m_value;
+        }
+
+        /**
+         * @see  ITypeContainer#setDescription(String)
+         */
+        @Override public void setDescription(String description)
+        {
+            getContainer().setDescription(description);
+            m_description = description;
+        }
+
+        /**
+         * @see  ITypeContainer#setDisplayName(String)
+         */
+        @Override public void setDisplayName(String displayName)
+        {
+            getContainer().setDisplayName(displayName);
+            m_displayName = displayName;
+        }
+
+        /**
+         * The entry is decoded first, because its items are stored in the layout of the type of the
+         * file.
+         *
+         * @see  ITypeContainer#setType(ESAPObjectType)
+         */
+        @Override public void setType(ESAPObjectType type)
+        {
+            getContainer().setType(type);
+            m_type = type;
+        }
+
+        /**
+         * @see  ITypeContainer#setValue(String)
+         */
+        @Override public void setValue(String value)
+        {
+            getContainer().setValue(value);
+            m_value = value;
+        }
+
+        /**
+         * @see  java.lang.Object#toString()
+         */
+        @Override public String toString()
+        {
+            return m_value + "(" + m_displayName + ")";
+        }
+
+        /**
+         * @see  ITypeContainer#toXML(int)
+         */
+        @Override public void toXML(int parent)
+        {
+            getContainer().toXML(parent);
+        }
+
+        /**
+         * @see  ITypeContainer#toXML(Document)
+         */
+        @Override public int toXML(Document doc)
+        {
+            return getContainer().toXML(doc);
+        }
+
+        /**
+         * This method decodes the entry if that was not done yet.
+         *
+         * @return  The decoded container.
+         */
+        private synchronized ITypeContainer getContainer()
+        {
+            if (m_container == null)
+            {
+                ESAPObjectType type = m_file.m_type;
+                ITypeContainer container = SAPMetadataFactory.createContainer(type);
+
+                container.setValue(m_value);
+                container.setDisplayName(m_displayName);
+                container.setDescription(m_description);
+
+                int fieldCount = getFieldCount(type);
+                int itemCount = m_file.m_buffer.getInt(m_itemsOffset);
+                int offset = m_itemsOffset + 4;
+
+                for (int i = 0; i < itemCount; i++)
+                {
+                    String[] fields = new String[fieldCount];
+
+                    for (int field = 0; field < fieldCount; field++, offset += 4)
+                    {
+                        fields[field] = m_file.getString(m_file.m_buffer.getInt(offset));
+                    }
+
+                    container.addType(createItem(type, fields));
+                }
+
+                m_container = container;
+            }
+
+            return m_container;
+        }
+    }
+
+    /**
+     * Holds a mapped binary file and the strings that were decoded from it.
+     */
+    private static class MappedFile
+    {
+        /**
+         * Holds the mapped file.
+         */
+        private final ByteBuffer m_buffer;
+        /**
+         * Holds the decoded strings. A string is decoded the first time it is used.
+         */
+        private final String[] m_strings;
+        /**
+         * Holds the offset of the string table.
+         */
+        private final int m_stringTableOffset;
+        /**
+         * Holds the type of the objects in the file.
+         */
+        private final ESAPObjectType m_type;
+
+        /**
+         * Creates a new MappedFile object.
+         *
+         * @param  buffer  The mapped file.
+         * @param  type    The type of the objects in the file.
+         */
+        MappedFile(ByteBuffer buffer, ESAPObjectType type)
+        {
+            m_buffer = buffer;
+            m_type = type;
+            m_strings = new String[buffer.getInt(16)];
+            m_stringTableOffset = buffer.getInt(24);
+        }
+
+        /**
+         * This method adds all entries of the file to the cache.
+         *
+         * @param  cache  The cache to fill.
+         */
+        void fillCache(IMetadataCache cache)
+        {
+            int entryCount = m_buffer.getInt(12);
+            int indexOffset = m_buffer.getInt(20);
+
+            for (int i = 0; i < entryCount; i++)
+            {
+                ITypeContainer container = new LazyContainer(this, m_buffer.getInt(indexOffset +
+                                                                                   (4 * i)));
+
+                switch (m_type)
+                {
+                    case BAPI:
+                        cache.addBAPI(container);
+                        break;
+
+                    case IDOC:
+                        cache.addIDOC(container);
+                        break;
+
+                    case RFC:
+                        cache.addRFC(container);
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Loaded " + entryCount + " " + m_type + " entries with " +
+                          m_strings.length + " strings.");
+            }
+        }
+
+        /**
+         * This method returns the string with the given number.
+         *
+         * @param   number  The number of the string.
+         *
+         * @return  The string.
+         */
+        String getString(int number)
+        {
+            if (number == NULL_STRING)
+            {
+                return null;
+            }
+
+            String returnValue = m_strings[number];
+
+            if (returnValue == null)
+            {
+                // Strings are immutable, so decoding one twice in parallel does no harm.
+                ByteBuffer data = m_buffer.duplicate();
+                data.position(m_buffer.getInt(m_stringTableOffset + (4 * number)));
+
+                byte[] bytes = new byte[data.getInt()];
+                data.get(bytes);
+
+                try
+                {
+                    returnValue = new String(bytes, "UTF-8");
+                }
+                catch (UnsupportedEncodingException e)
+                {
+                    // UTF-8 is always supported.
+                    throw new IllegalStateException(e);
+                }
+
+                m_strings[number] = returnValue;
+            }
+
+            return returnValue;
+        }
+    }
+}
@@ -18,6 +18,7 @@
  package com.eibus.applicationconnector.sap.metadata.storage;
 
 import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
 
 /**
  * This factory can create a storage provider for persisting the metadata cache.
@@ -26,6 +27,42 @@ import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
  */
 public class CacheStorageFactory
 {
+    /**
+     * Identifies the storage that keeps the cache in XML files.
+     */
+    public static final String STORAGE_XML = "xml";
+    /**
+     * Identifies the storage that keeps the cache in binary files.
+     */
+    public static final String STORAGE_BINARY = "binary";
+
+    /**
+     * This method returns the cache storage of the given type.
+     *
+     * @param   type          The type of storage (xml or binary).
+     * @param   organization  The current organization.
+     *
+     * @return  The cache storage.
+     *
+     * @throws  SAPConnectorException  In case the type is unknown.
+     */
+    public static ICacheStorage createCacheStorage(String type, String organization)
+                                            throws SAPConnectorException
+    {
+        if ((type == null) || (type.length() == 0) || STORAGE_XML.equalsIgnoreCase(type))
+        {
+            return createDefaultCacheStorage(organization);
+        }
+
+        if (STORAGE_BINARY.equalsIgnoreCase(type))
+        {
+            return new BinaryFileStorage(organization);
+        }
+
+        throw new SAPConnectorException(SAPConnectorExceptionMessages.UNKNOWN_CACHE_STORAGE_TYPE,
+                                        type);
+    }
+
     /**
      * This method returns the default (File System based) cache store.
      *
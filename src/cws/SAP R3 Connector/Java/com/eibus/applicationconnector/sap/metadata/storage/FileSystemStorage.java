@@ -137,6 +137,28 @@ class FileSystemStorage
         persistCache(reposRoot, cache);
     }
 
+    /**
+     * @see  com.eibus.applicationconnector.sap.metadata.storage.ICacheStorage#persistCache(com.eibus.applicationconnector.sap.metadata.IMetadataCache,
+     *       com.eibus.applicationconnector.sap.metadata.ESAPObjectType)
+     */
+    @Override public void persistCache(IMetadataCache cache, ESAPObjectType type)
+                                throws SAPConnectorException
+    {
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Persisting the " + type + " objects of cache with ID " + cache.getID());
+        }
+
+        File reposRoot = new File(m_rootFolder, cache.getID());
+
+        if (!reposRoot.exists())
+        {
+            reposRoot.mkdirs();
+        }
+
+        persistSAPMetadata(reposRoot, type, getAllObjects(cache, type));
+    }
+
     /**
      * This method sets the current organization.
      *
@@ -171,6 +193,29 @@ class FileSystemStorage
         loadComponentStructure(new File(reposRoot, "component"), cache);
     }
 
+    /**
+     * This method returns the objects of the given type from the cache.
+     *
+     * @param   cache  The cache.
+     * @param   type   The type of objects.
+     *
+     * @return  The objects of the given type.
+     */
+    static Map<String, ITypeContainer> getAllObjects(IMetadataCache cache, ESAPObjectType type)
+    {
+        switch (type)
+        {
+            case BAPI:
+                return cache.getAllBAPIs();
+
+            case IDOC:
+                return cache.getAllIDOCs();
+
+            default:
+                return cache.getAllRFCs();
+        }
+    }
+
     /**
      * DOCUMENTME.
      *
@@ -18,6 +18,7 @@
  package com.eibus.applicationconnector.sap.metadata.storage;
 
 import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.metadata.ESAPObjectType;
 import com.eibus.applicationconnector.sap.metadata.IMetadataCache;
 
 /**
@@ -47,4 +48,16 @@ public interface ICacheStorage
      */
     void persistCache(IMetadataCache cache)
                throws SAPConnectorException;
+
+    /**
+     * This method will store only the objects of the given type. It is used after a reload that
+     * changed only some of the types.
+     *
+     * @param   cache  The cache to persist.
+     * @param   type   The type of objects to store.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    void persistCache(IMetadataCache cache, ESAPObjectType type)
+               throws SAPConnectorException;
 }
@@ -22,6 +22,10 @@ import com.eibus.applicationconnector.sap.metadata.ESAPObjectType;
 
 import com.eibus.xml.xpath.XPathMetaInfo;
 
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+
 /**
  * This factory can create objects of different types.
  *
@@ -45,6 +49,113 @@ public class SAPMetadataFactory
         return returnValue;
     }
 
+    /**
+     * This method creates a new empty object of the given type.
+     *
+     * @param   type  The type of object.
+     *
+     * @return  The created object.
+     */
+    public static ITypeMetadata createObject(ESAPObjectType type)
+    {
+        switch (type)
+        {
+            case BAPI:
+                return new BAPIMetadataImpl();
+
+            case IDOC:
+                return new IDOCMetadataImpl();
+
+            case RFC:
+                return new RFCMetadataImpl();
+        }
+
+        return null;
+    }
+
+    /**
+     * This method returns the values of the fields of an item in the order they are stored.
+     *
+     * @param   type  The type of object.
+     * @param   item  The item.
+     *
+     * @return  The values of the fields.
+     */
+    public static String[] getFields(ESAPObjectType type, ITypeMetadata item)
+    {
+        switch (type)
+        {
+            case BAPI:
+
+                IBAPIMetadata bapi = (IBAPIMetadata) item;
+                return new String[]
+                       {
+                           bapi.getValue(), bapi.getDisplayName(), bapi.getMethod(),
+                           bapi.getMethodName(), bapi.getDescription(), bapi.getShortText(),
+                           bapi.getRFCFuntion(), bapi.getClassVerb(), bapi.getAPIType()
+                       };
+
+            case RFC:
+
+                IRFCMetadata rfc = (IRFCMetadata) item;
+                return new String[]
+                       {
+                           rfc.getValue(), rfc.getDisplayName(), rfc.getRFCFunction(),
+                           rfc.getGroupName(), rfc.getApplication(), rfc.getHost(),
+                           rfc.getShortText()
+                       };
+
+            default:
+
+                IIDOCMetadata idoc = (IIDOCMetadata) item;
+                return new String[]
+                       {
+                           idoc.getValue(), idoc.getDisplayName(), idoc.getType(),
+                           idoc.getCIMType(), idoc.getReleased()
+                       };
+        }
+    }
+
+    /**
+     * This method returns whether the given containers have the same content: the same value,
+     * display name and description, and the same items with the same fields in the same order.
+     *
+     * @param   first   The first container.
+     * @param   second  The second container.
+     *
+     * @return  true if the containers have the same content.
+     */
+    public static boolean isEqual(ITypeContainer first, ITypeContainer second)
+    {
+        if ((first.getType() != second.getType()) || !isEqual(first.getValue(), second.getValue()) ||
+                !isEqual(first.getDisplayName(), second.getDisplayName()) ||
+                !isEqual(first.getDescription(), second.getDescription()))
+        {
+            return false;
+        }
+
+        Map<String, ITypeMetadata> firstItems = first.getItems();
+        Map<String, ITypeMetadata> secondItems = second.getItems();
+
+        if (firstItems.size() != secondItems.size())
+        {
+            return false;
+        }
+
+        Iterator<ITypeMetadata> secondIterator = secondItems.values().iterator();
+
+        for (ITypeMetadata item : firstItems.values())
+        {
+            if (!Arrays.equals(getFields(first.getType(), item),
+                                   getFields(second.getType(), secondIterator.next())))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     /**
      * This method will parse the container from XML. It automatically detects which type of objects
      * are in the container.
@@ -188,4 +299,17 @@ public class SAPMetadataFactory
 
         return returnValue;
     }
+
+    /**
+     * This method compares two strings that may be null.
+     *
+     * @param   first   The first string.
+     * @param   second  The second string.
+     *
+     * @return  true if both are null or equal.
+     */
+    private static boolean isEqual(String first, String second)
+    {
+        return (first == null) ? (second == null) : first.equals(second);
+    }
 }
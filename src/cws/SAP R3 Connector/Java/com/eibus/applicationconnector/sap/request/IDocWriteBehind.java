@@ -0,0 +1,931 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.request;
+
+import com.eibus.applicationconnector.sap.SAPConnectorConstants;
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.util.logger.CordysLogger;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Node;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * This class stores IDocs in the IDoc table in the background. The tuples of the IDocs are
+ * buffered and sent as one Update request per batchSize tuples, when the buffer holds a full batch
+ * or when the flush interval has passed. The caller of saveIDOCInDataBase does not wait for the
+ * database.
+ *
+ * <p>The buffer holds at most bufferSize tuples. When it is full, the tuples are appended to a
+ * spool file. As long as the spool file is not empty, new tuples are spooled as well, so the
+ * tuples are stored in the order they were added. The spool file starts with the position of the
+ * first tuple that is not stored yet. It is written after each stored batch, so a spool file that
+ * is left over when the connector stopped or crashed is sent from that position when the
+ * connector starts again. At most the one batch that was on its way is sent twice.</p>
+ *
+ * <p>If the database cannot be reached, the batch is sent again after the flush interval, which
+ * doubles after each failure up to MAX_BACKOFF times. A batch that failed MAX_ATTEMPTS times is
+ * appended to the dead letter file (the spool file with the extension .failed) and an error is
+ * logged. The dead letter file has the format of the spool file, so its tuples can be sent again
+ * by renaming it to the spool file while the connector is stopped. close() sends all tuples that
+ * are still buffered or spooled and writes the tuples it could not send to the spool file.</p>
+ *
+ * @author  pgussow
+ */
+public class IDocWriteBehind
+{
+    /**
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(IDocWriteBehind.class);
+    /**
+     * Holds the size of the header of the spool file, which holds the position of the first tuple
+     * that is not stored yet.
+     */
+    private static final int HEADER_SIZE = 8;
+    /**
+     * Holds the number of times a batch is sent before it is moved to the dead letter file.
+     */
+    private static final int MAX_ATTEMPTS = 10;
+    /**
+     * Holds the maximum factor by which the flush interval grows after failed flushes.
+     */
+    private static final int MAX_BACKOFF = 32;
+    /**
+     * Holds the maximum number of tuples per Update request.
+     */
+    private final int m_batchSize;
+    /**
+     * Holds the tuples in the order they were added.
+     */
+    private final LinkedList<String> m_buffer = new LinkedList<String>();
+    /**
+     * Holds the maximum number of tuples in the buffer.
+     */
+    private final int m_bufferSize;
+    /**
+     * Indicates whether the writer is closed.
+     */
+    private boolean m_closed;
+    /**
+     * Holds the configuration of the connector.
+     */
+    private final ISAPConfiguration m_config;
+    /**
+     * Holds the file the batches that failed too often are written to.
+     */
+    private final File m_deadLetterFile;
+    /**
+     * Holds the document the requests are created in.
+     */
+    private Document m_doc;
+    /**
+     * Holds the number of milliseconds a tuple may wait.
+     */
+    private final long m_flushInterval;
+    /**
+     * Holds the thread that sends the tuples.
+     */
+    private Thread m_flusher;
+    /**
+     * Holds the sender of the Update requests.
+     */
+    private OLEDBRequestSender m_oleDBRequestSender;
+    /**
+     * Holds the batch that could not be stored. It is sent again before the other tuples.
+     */
+    private volatile Batch m_retry;
+    /**
+     * Holds the spool file, if it is open.
+     */
+    private RandomAccessFile m_spool;
+    /**
+     * Holds the position of the first tuple in the spool file that is not stored yet.
+     */
+    private long m_spoolAcknowledged;
+    /**
+     * Holds the number of tuples in the spool file that are not sent yet.
+     */
+    private int m_spooled;
+    /**
+     * Holds the spool file.
+     */
+    private final File m_spoolFile;
+    /**
+     * Holds the position of the next tuple to read from the spool file.
+     */
+    private long m_spoolPosition;
+
+    /**
+     * Creates a new IDocWriteBehind object. The tuples of a spool file that is left over and that
+     * are not stored yet are sent first.
+     *
+     * @param   config         The configuration of the connector.
+     * @param   batchSize      The maximum number of tuples per Update request.
+     * @param   bufferSize     The maximum number of tuples in memory.
+     * @param   flushInterval  The number of milliseconds a tuple may wait.
+     * @param   spoolFile      The file the tuples are spooled to when the buffer is full.
+     *
+     * @throws  SAPConnectorException  In case the spool file cannot be opened.
+     */
+    public IDocWriteBehind(ISAPConfiguration config, int batchSize, int bufferSize,
+                           long flushInterval, File spoolFile)
+                    throws SAPConnectorException
+    {
+        m_config = config;
+        m_batchSize = Math.max(1, batchSize);
+        m_bufferSize = Math.max(m_batchSize, bufferSize);
+        m_flushInterval = Math.max(1, flushInterval);
+        m_spoolFile = spoolFile;
+        m_deadLetterFile = new File(spoolFile.getPath() + ".failed");
+
+        if (m_spoolFile.exists())
+        {
+            openSpool();
+            countSpooled();
+
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Found " + m_spooled + " spooled IDOC tuples in " +
+                          m_spoolFile.getAbsolutePath());
+            }
+
+            if (m_spooled > 0)
+            {
+                startFlusher();
+            }
+        }
+    }
+
+    /**
+     * This method adds the tuple of an IDoc. The tuple is copied, so the caller can delete it. When
+     * the writer is closed, the tuple is stored right away, or spooled if that fails.
+     *
+     * @param   tupleNode  The tuple.
+     *
+     * @throws  SAPConnectorException  In case the tuple cannot be spooled.
+     */
+    public void add(int tupleNode)
+             throws SAPConnectorException
+    {
+        String tuple = Node.writeToString(tupleNode, false);
+        boolean closed;
+
+        synchronized (m_buffer)
+        {
+            if ((m_spooled > 0) || (m_buffer.size() >= m_bufferSize))
+            {
+                spool(tuple);
+            }
+            else
+            {
+                m_buffer.add(tuple);
+            }
+
+            closed = m_closed;
+
+            if (!closed)
+            {
+                startFlusher();
+
+                if (getPending() >= m_batchSize)
+                {
+                    m_buffer.notifyAll();
+                }
+            }
+        }
+
+        if (closed)
+        {
+            // There is no flusher anymore.
+            storeOrSpool();
+        }
+    }
+
+    /**
+     * This method stops the background thread and sends the tuples that are still buffered or
+     * spooled.
+     */
+    public void close()
+    {
+        Thread flusher;
+
+        synchronized (m_buffer)
+        {
+            m_closed = true;
+            flusher = m_flusher;
+            m_flusher = null;
+            m_buffer.notifyAll();
+        }
+
+        if (flusher != null)
+        {
+            try
+            {
+                flusher.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        storeOrSpool();
+    }
+
+    /**
+     * This method sends all tuples that are buffered or spooled.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    public synchronized void flush()
+                            throws SAPConnectorException
+    {
+        Batch batch;
+
+        while ((batch = takeBatch()) != null)
+        {
+            send(batch);
+        }
+    }
+
+    /**
+     * This method returns the number of tuples that are not sent yet.
+     *
+     * @return  The number of buffered and spooled tuples.
+     */
+    public int getPending()
+    {
+        synchronized (m_buffer)
+        {
+            Batch retry = m_retry;
+
+            return m_buffer.size() + m_spooled + ((retry == null) ? 0 : retry.m_tuples.size());
+        }
+    }
+
+    /**
+     * This method creates the sender of the Update requests.
+     *
+     * @return  The sender for the IDoc table.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    protected OLEDBRequestSender createOLEDBRequestSender()
+                                                   throws SAPConnectorException
+    {
+        return new OLEDBRequestSender(SAPConnectorConstants.IDOC_TABLE_NAME,
+                                      m_config.getOrganization());
+    }
+
+    /**
+     * This method writes the position of the first tuple that is not stored yet to the spool file
+     * after a batch is stored. The spool file is closed and deleted when all its tuples are
+     * stored.
+     *
+     * @param   batch  The stored batch.
+     *
+     * @throws  SAPConnectorException  In case the position cannot be written.
+     */
+    private void acknowledge(Batch batch)
+                      throws SAPConnectorException
+    {
+        synchronized (m_buffer)
+        {
+            if ((batch.m_spoolPosition < 0) || (m_spool == null))
+            {
+                return;
+            }
+
+            try
+            {
+                m_spool.seek(0);
+                m_spool.writeLong(batch.m_spoolPosition);
+                m_spoolAcknowledged = batch.m_spoolPosition;
+            }
+            catch (IOException e)
+            {
+                throw new SAPConnectorException(e,
+                                                SAPConnectorExceptionMessages.ERROR_WRITING_IDOC_SPOOL,
+                                                m_spoolFile.getAbsolutePath());
+            }
+
+            if (m_spooled == 0)
+            {
+                closeSpool();
+            }
+        }
+    }
+
+    /**
+     * This method closes the spool file and deletes it if all its tuples are stored. The caller
+     * must hold the lock on the buffer.
+     */
+    private void closeSpool()
+    {
+        if (m_spool == null)
+        {
+            return;
+        }
+
+        try
+        {
+            m_spool.close();
+        }
+        catch (IOException e)
+        {
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Error closing " + m_spoolFile.getAbsolutePath(), e);
+            }
+        }
+        m_spool = null;
+
+        if ((m_spooled == 0) && (m_spoolAcknowledged == m_spoolPosition))
+        {
+            m_spoolFile.delete();
+            m_spoolAcknowledged = 0;
+            m_spoolPosition = 0;
+        }
+    }
+
+    /**
+     * This method counts the tuples in a spool file that is left over, starting at the first tuple
+     * that is not stored yet. A tuple that was only partly written is dropped.
+     *
+     * @throws  SAPConnectorException  In case the spool file cannot be read.
+     */
+    private void countSpooled()
+                       throws SAPConnectorException
+    {
+        try
+        {
+            long position = m_spoolPosition;
+            long length = m_spool.length();
+
+            while ((position + 4) <= length)
+            {
+                m_spool.seek(position);
+
+                int size = m_spool.readInt();
+                long next = position + 4 + size;
+
+                if ((size < 0) || (next > length))
+                {
+                    break;
+                }
+                position = next;
+                m_spooled++;
+            }
+
+            m_spool.setLength(position);
+        }
+        catch (IOException e)
+        {
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.ERROR_READING_IDOC_SPOOL,
+                                            m_spoolFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * This method appends a batch that failed too often to the dead letter file.
+     *
+     * @param   batch  The batch.
+     *
+     * @throws  SAPConnectorException  In case the dead letter file cannot be written.
+     */
+    private void deadLetter(Batch batch)
+                     throws SAPConnectorException
+    {
+        try
+        {
+            RandomAccessFile deadLetter = openSpoolFile(m_deadLetterFile);
+
+            try
+            {
+                deadLetter.seek(deadLetter.length());
+
+                for (String tuple : batch.m_tuples)
+                {
+                    writeTuple(deadLetter, tuple);
+                }
+            }
+            finally
+            {
+                deadLetter.close();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.ERROR_WRITING_IDOC_SPOOL,
+                                            m_deadLetterFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * This method opens the spool file and reads the position of the first tuple that is not
+     * stored yet.
+     *
+     * @throws  SAPConnectorException  In case the spool file cannot be opened.
+     */
+    private void openSpool()
+                    throws SAPConnectorException
+    {
+        try
+        {
+            m_spool = openSpoolFile(m_spoolFile);
+            m_spool.seek(0);
+
+            long position = m_spool.readLong();
+
+            if ((position < HEADER_SIZE) || (position > m_spool.length()))
+            {
+                // A damaged header: send all tuples again rather than losing them.
+                position = HEADER_SIZE;
+            }
+            m_spoolAcknowledged = position;
+            m_spoolPosition = position;
+        }
+        catch (IOException e)
+        {
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.ERROR_WRITING_IDOC_SPOOL,
+                                            m_spoolFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * This method opens a file in the format of the spool file. The header is written if the
+     * file is new.
+     *
+     * @param   file  The file.
+     *
+     * @return  The opened file.
+     *
+     * @throws  IOException  In case the file cannot be opened.
+     */
+    private RandomAccessFile openSpoolFile(File file)
+                                    throws IOException
+    {
+        if (file.getParentFile() != null)
+        {
+            file.getParentFile().mkdirs();
+        }
+
+        RandomAccessFile returnValue = new RandomAccessFile(file, "rw");
+
+        if (returnValue.length() < HEADER_SIZE)
+        {
+            returnValue.setLength(0);
+            returnValue.writeLong(HEADER_SIZE);
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method writes the tuples that are not stored to a new spool file: the batch that
+     * failed, the buffer and the spooled tuples that were not read yet, in that order. The new
+     * file replaces the spool file.
+     *
+     * @throws  SAPConnectorException  In case the spool file cannot be written.
+     */
+    private synchronized void rewriteSpool()
+                                    throws SAPConnectorException
+    {
+        synchronized (m_buffer)
+        {
+            File tempFile = new File(m_spoolFile.getPath() + ".tmp");
+            int spooled = 0;
+
+            try
+            {
+                tempFile.delete();
+
+                RandomAccessFile out = openSpoolFile(tempFile);
+
+                try
+                {
+                    if (m_retry != null)
+                    {
+                        for (String tuple : m_retry.m_tuples)
+                        {
+                            writeTuple(out, tuple);
+                            spooled++;
+                        }
+                    }
+
+                    for (String tuple : m_buffer)
+                    {
+                        writeTuple(out, tuple);
+                        spooled++;
+                    }
+
+                    if (m_spool != null)
+                    {
+                        byte[] bytes = new byte[8192];
+                        int read;
+
+                        m_spool.seek(m_spoolPosition);
+
+                        while ((read = m_spool.read(bytes)) > 0)
+                        {
+                            out.write(bytes, 0, read);
+                        }
+                        spooled += m_spooled;
+                    }
+                }
+                finally
+                {
+                    out.close();
+                }
+            }
+            catch (IOException e)
+            {
+                tempFile.delete();
+
+                throw new SAPConnectorException(e,
+                                                SAPConnectorExceptionMessages.ERROR_WRITING_IDOC_SPOOL,
+                                                m_spoolFile.getAbsolutePath());
+            }
+
+            m_retry = null;
+            m_buffer.clear();
+            m_spooled = 0;
+            m_spoolAcknowledged = 0;
+            m_spoolPosition = 0;
+
+            if (m_spool != null)
+            {
+                try
+                {
+                    m_spool.close();
+                }
+                catch (IOException e)
+                {
+                    if (LOG.isDebugEnabled())
+                    {
+                        LOG.debug("Error closing " + m_spoolFile.getAbsolutePath(), e);
+                    }
+                }
+                m_spool = null;
+            }
+
+            if (spooled == 0)
+            {
+                tempFile.delete();
+                m_spoolFile.delete();
+                return;
+            }
+
+            // On Windows the target of a rename must not exist.
+            if (!tempFile.renameTo(m_spoolFile) &&
+                    (!m_spoolFile.delete() || !tempFile.renameTo(m_spoolFile)))
+            {
+                throw new SAPConnectorException(SAPConnectorExceptionMessages.ERROR_WRITING_IDOC_SPOOL,
+                                                m_spoolFile.getAbsolutePath());
+            }
+            m_spooled = spooled;
+        }
+    }
+
+    /**
+     * This method sends one batch of tuples as one Update request. If the request fails, the batch
+     * is kept to be sent again. A batch that failed MAX_ATTEMPTS times is moved to the dead letter
+     * file.
+     *
+     * @param   batch  The tuples.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    private void send(Batch batch)
+               throws SAPConnectorException
+    {
+        if (m_doc == null)
+        {
+            m_doc = new Document();
+        }
+
+        int[] tuples = new int[batch.m_tuples.size()];
+
+        m_retry = batch;
+
+        try
+        {
+            if (m_oleDBRequestSender == null)
+            {
+                m_oleDBRequestSender = createOLEDBRequestSender();
+            }
+
+            for (int i = 0; i < tuples.length; i++)
+            {
+                try
+                {
+                    tuples[i] = m_doc.parseString(batch.m_tuples.get(i));
+                }
+                catch (Exception xe)
+                {
+                    throw new SAPConnectorException(xe,
+                                                    SAPConnectorExceptionMessages.ERROR_PARSING_IDOC,
+                                                    batch.m_tuples.get(i));
+                }
+            }
+
+            m_oleDBRequestSender.sendOleDBUpdateRequest(tuples, m_doc);
+
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Stored " + tuples.length + " IDOCs in the database.");
+            }
+        }
+        catch (SAPConnectorException e)
+        {
+            if (++batch.m_attempts < MAX_ATTEMPTS)
+            {
+                throw e;
+            }
+
+            LOG.error("Could not store " + tuples.length + " IDOCs after " + MAX_ATTEMPTS +
+                      " attempts, they are moved to " + m_deadLetterFile.getAbsolutePath() + ": " +
+                      e.getLocalizedMessage());
+            deadLetter(batch);
+        }
+        finally
+        {
+            for (int tuple : tuples)
+            {
+                BACUtil.deleteNode(tuple);
+            }
+        }
+
+        m_retry = null;
+        acknowledge(batch);
+    }
+
+    /**
+     * This method appends a tuple to the spool file. The caller must hold the lock on the buffer.
+     *
+     * @param   tuple  The tuple.
+     *
+     * @throws  SAPConnectorException  In case the tuple cannot be written.
+     */
+    private void spool(String tuple)
+                throws SAPConnectorException
+    {
+        if (m_spool == null)
+        {
+            openSpool();
+        }
+
+        try
+        {
+            m_spool.seek(m_spool.length());
+            writeTuple(m_spool, tuple);
+            m_spooled++;
+        }
+        catch (IOException e)
+        {
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.ERROR_WRITING_IDOC_SPOOL,
+                                            m_spoolFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * This method starts the background thread if it is not running. The caller must hold the
+     * lock on the buffer.
+     */
+    private void startFlusher()
+    {
+        if (m_flusher == null)
+        {
+            m_flusher = new Flusher();
+            m_flusher.start();
+        }
+    }
+
+    /**
+     * This method sends the tuples that are buffered or spooled after the writer is closed. The
+     * tuples that cannot be sent are written to the spool file for the next start.
+     */
+    private void storeOrSpool()
+    {
+        try
+        {
+            flush();
+        }
+        catch (SAPConnectorException e)
+        {
+            LOG.error("Could not store the buffered IDOCs, " + getPending() +
+                      " IDOCs are left in " + m_spoolFile.getAbsolutePath() + ": " +
+                      e.getLocalizedMessage());
+
+            // Keep them for the next start.
+            try
+            {
+                rewriteSpool();
+            }
+            catch (SAPConnectorException se)
+            {
+                LOG.error("Could not spool the buffered IDOCs: " + se.getLocalizedMessage());
+            }
+        }
+
+        synchronized (m_buffer)
+        {
+            closeSpool();
+        }
+    }
+
+    /**
+     * This method takes the next batch of tuples: first the batch that could not be stored, then
+     * the tuples from the buffer and then from the spool file.
+     *
+     * @return  The batch, or null if nothing is pending.
+     *
+     * @throws  SAPConnectorException  In case the spool file cannot be read.
+     */
+    private Batch takeBatch()
+                     throws SAPConnectorException
+    {
+        if (m_retry != null)
+        {
+            return m_retry;
+        }
+
+        Batch returnValue = new Batch(m_batchSize);
+
+        synchronized (m_buffer)
+        {
+            while (!m_buffer.isEmpty() && (returnValue.m_tuples.size() < m_batchSize))
+            {
+                returnValue.m_tuples.add(m_buffer.removeFirst());
+            }
+
+            try
+            {
+                while ((m_spooled > 0) && (m_spool != null) &&
+                           (returnValue.m_tuples.size() < m_batchSize))
+                {
+                    m_spool.seek(m_spoolPosition);
+
+                    byte[] bytes = new byte[m_spool.readInt()];
+                    m_spool.readFully(bytes);
+
+                    returnValue.m_tuples.add(new String(bytes, "UTF-8"));
+                    m_spoolPosition = m_spool.getFilePointer();
+                    returnValue.m_spoolPosition = m_spoolPosition;
+                    m_spooled--;
+                }
+            }
+            catch (IOException e)
+            {
+                throw new SAPConnectorException(e,
+                                                SAPConnectorExceptionMessages.ERROR_READING_IDOC_SPOOL,
+                                                m_spoolFile.getAbsolutePath());
+            }
+        }
+
+        return returnValue.m_tuples.isEmpty() ? null : returnValue;
+    }
+
+    /**
+     * This method writes a tuple at the current position of a file in the format of the spool
+     * file.
+     *
+     * @param   file   The file.
+     * @param   tuple  The tuple.
+     *
+     * @throws  IOException  In case the tuple cannot be written.
+     */
+    private static void writeTuple(RandomAccessFile file, String tuple)
+                            throws IOException
+    {
+        byte[] bytes = tuple.getBytes("UTF-8");
+
+        file.writeInt(bytes.length);
+        file.write(bytes);
+    }
+
+    /**
+     * Holds a batch of tuples that is sent as one Update request.
+     */
+    private static class Batch
+    {
+        /**
+         * Holds the number of times the batch could not be stored.
+         */
+        private int m_attempts;
+        /**
+         * Holds the position in the spool file after the last spooled tuple of the batch, or -1
+         * if the batch holds no spooled tuples.
+         */
+        private long m_spoolPosition = -1;
+        /**
+         * Holds the tuples.
+         */
+        private final List<String> m_tuples;
+
+        /**
+         * Creates a new Batch object.
+         *
+         * @param  batchSize  The maximum number of tuples.
+         */
+        Batch(int batchSize)
+        {
+            m_tuples = new ArrayList<String>(batchSize);
+        }
+    }
+
+    /**
+     * Thread that sends the tuples when a batch is full or when the flush interval has passed.
+     */
+    private class Flusher extends Thread
+    {
+        /**
+         * Creates a new Flusher object.
+         */
+        Flusher()
+        {
+            super("IDocWriteBehind");
+            setDaemon(true);
+        }
+
+        /**
+         * @see  java.lang.Thread#run()
+         */
+        @Override public void run()
+        {
+            int backoff = 1;
+
+            while (true)
+            {
+                synchronized (m_buffer)
+                {
+                    long deadline = System.currentTimeMillis() + (m_flushInterval * backoff);
+                    long remaining;
+
+                    // After a failed flush the thread waits the whole interval, even if a batch is
+                    // full.
+                    while (!m_closed && ((backoff > 1) || (getPending() < m_batchSize)) &&
+                               ((remaining = deadline - System.currentTimeMillis()) > 0))
+                    {
+                        try
+                        {
+                            m_buffer.wait(remaining);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            return;
+                        }
+                    }
+
+                    if (m_closed)
+                    {
+                        return;
+                    }
+                }
+
+                try
+                {
+                    flush();
+                    backoff = 1;
+                }
+                catch (SAPConnectorException e)
+                {
+                    backoff = Math.min(backoff * 2, MAX_BACKOFF);
+
+                    LOG.error("Could not store the buffered IDOCs: " + e.getLocalizedMessage());
+                }
+            }
+        }
+    }
+}
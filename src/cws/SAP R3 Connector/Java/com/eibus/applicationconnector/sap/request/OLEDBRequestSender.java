@@ -19,13 +19,16 @@
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.Future;
 
 import com.cordys.coe.util.xml.NamespaceDefinitions;
 import com.eibus.applicationconnector.sap.SAPConnectorConstants;
 import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
 import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
 import com.eibus.applicationconnector.sap.util.BACUtil;
+import com.eibus.applicationconnector.sap.util.ISOAPResponseHandler;
 import com.eibus.applicationconnector.sap.util.LDAPInterface;
+import com.eibus.applicationconnector.sap.util.SOAPDispatcher;
 import com.eibus.util.logger.CordysLogger;
 import com.eibus.util.logger.Severity;
 import com.eibus.xml.nom.Document;
@@ -68,6 +71,11 @@ public class OLEDBRequestSender
      * Holds the LDAP interface to use..
      */
     private LDAPInterface m_ldapInterface;
+    /**
+     * Holds the writer that stores the IDOCs in the background. If null saveIDOCInDataBase waits
+     * for the database.
+     */
+    private IDocWriteBehind m_writeBehind;
     /**
      * The namespace mappings.
      */
@@ -115,6 +123,21 @@ public class OLEDBRequestSender
         m_xmi.addNamespaceBinding("ns", SAPConnectorConstants.NS_SAP_IDOC_DB);
     }
 
+    /**
+     * Constructor for subclasses that do not send their requests through the directory. The
+     * methods that send requests must be overridden.
+     *
+     * @param  tableName  Name of the database table in which IDOCs are stored.
+     */
+    protected OLEDBRequestSender(String tableName)
+    {
+        this.tableName = tableName;
+
+        m_xmi = new XPathMetaInfo();
+        m_xmi.addNamespaceBinding("SOAP", NamespaceDefinitions.XMLNS_SOAP_1_1);
+        m_xmi.addNamespaceBinding("ns", SAPConnectorConstants.NS_SAP_IDOC_DB);
+    }
+
     /**
      * This method frmaes a tuple for the idoc to be inserted in the database.
      *
@@ -179,8 +202,7 @@ public class OLEDBRequestSender
         Date createdDate = idoc.getCreationDate();
         Date createdTime = idoc.getCreationTime();
         // To make it compatible with OLEDB connector.
-        String creationDateTime = DATE_FORMAT.format(createdDate) + "T" +
-                                  TIME_FORMAT.format(createdTime);
+        String creationDateTime = formatCreationDateTime(createdDate, createdTime);
         params[3] = creationDateTime;
         params[4] = idoc.getMessageType(); // Message type
         params[5] = idoc.getIDocType(); // IDOC type
@@ -329,8 +351,7 @@ public class OLEDBRequestSender
         String creationDateTime ="";
         try
         {
-        creationDateTime = DATE_FORMAT.format(createdDate) + "T" +
-                                  TIME_FORMAT.format(createdTime);
+        creationDateTime = formatCreationDateTime(createdDate, createdTime);
         params[3] = creationDateTime; // This line throws exception
         }
       catch (Exception notHandlerYet) 
@@ -379,11 +400,21 @@ public class OLEDBRequestSender
         int[] parametersForUpdateMethod = new int[1];
         parametersForUpdateMethod[0] = frameInsertXMLRequest(params, doc);
 
-        int responseNode = m_ldapInterface.executeMethod(METHOD_UPDATE,
-                                                         SAPConnectorConstants.NS_SAP_IDOC_DB,
-                                                         parametersForUpdateMethod, doc, m_xmi);
-        BACUtil.deleteNode(parametersForUpdateMethod[0]);
-        BACUtil.deleteNode(responseNode);
+        try
+        {
+            if (m_writeBehind != null)
+            {
+                m_writeBehind.add(parametersForUpdateMethod[0]);
+            }
+            else
+            {
+                sendOleDBUpdateRequest(parametersForUpdateMethod, doc);
+            }
+        }
+        finally
+        {
+            BACUtil.deleteNode(parametersForUpdateMethod[0]);
+        }
     }
 
     /**
@@ -423,9 +454,7 @@ public class OLEDBRequestSender
         int[] param_method = new int[1];
         param_method[0] = idocXMLNode;
 
-        XPathMetaInfo xmi = new XPathMetaInfo();
-        xmi.addNamespaceBinding("ns", namespace);
-        xmi.addNamespaceBinding("SOAP", NamespaceDefinitions.XMLNS_SOAP_1_1);
+        XPathMetaInfo xmi = createResponseXMI(namespace);
 
         if ((soapNodeDN == null) || soapNodeDN.equals(""))
         {
@@ -441,6 +470,44 @@ public class OLEDBRequestSender
         BACUtil.deleteNode(responseNode);
     }
 
+    /**
+     * This method sends the idoc XML to the specified method attached to a specified SOAP node
+     * through the dispatcher. It returns without waiting for the response. The idoc XML is copied
+     * before the method returns, and the response node from the future must be deleted by the
+     * caller.
+     *
+     * @param   soapNodeDN   The DN of the SOAP node. If null or empty the SOAP node is looked up.
+     * @param   methodName   The name of the method.
+     * @param   namespace    The namespace of the method.
+     * @param   idocXMLNode  The IDoc XML.
+     * @param   dispatcher   The dispatcher to send the request with.
+     * @param   handler      The handler to call when the response arrives. May be null.
+     *
+     * @return  The future for the MethodResponse node.
+     *
+     * @throws  SAPConnectorException  In case the request could not be handed to the dispatcher.
+     */
+    public Future<Integer> sendRequestToSOAPNode(String soapNodeDN, String methodName,
+                                                 String namespace, int idocXMLNode,
+                                                 SOAPDispatcher dispatcher,
+                                                 ISOAPResponseHandler handler)
+                                          throws SAPConnectorException
+    {
+        return dispatcher.executeMethod(m_ldapInterface, methodName, namespace, soapNodeDN,
+                                        new int[] { idocXMLNode },
+                                        createResponseXMI(namespace), handler);
+    }
+
+    /**
+     * This method sets the writer that stores the IDOCs of saveIDOCInDataBase in the background.
+     *
+     * @param  writeBehind  The writer. If null the IDOCs are stored right away.
+     */
+    public void setWriteBehind(IDocWriteBehind writeBehind)
+    {
+        m_writeBehind = writeBehind;
+    }
+
     /**
      * This method updates the DestinationStatus of an IDOC with the given number in the IDOCTable.
      *
@@ -486,6 +553,62 @@ public class OLEDBRequestSender
         return true;
     }
 
+    /**
+     * This method replaces the temporary number of an outbound IDOC, which is its transaction ID,
+     * with the number SAP gave it.
+     *
+     * @param   tid         The transaction ID the IDOC was stored with.
+     * @param   idocNumber  The IDOC number.
+     * @param   soapNodeDN  SOAPNodeDn of the service group
+     * @param   doc         The document to use.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    public void updateIDOCNumber(String tid, String idocNumber, String soapNodeDN, Document doc)
+                          throws SAPConnectorException
+    {
+        int[] param_method = new int[1];
+        int tupleNode = doc.createElement("tuple");
+        int oldNode = doc.createElement("old", tupleNode);
+        int old_tableNode = doc.createElement(tableName, oldNode);
+        doc.createTextElement(IDOCTABLE_IDOCNUM_TAG, getSixteenCharIDOCNum(tid), old_tableNode);
+        doc.createTextElement(IDOCTABLE_SOAPNODEDN_TAG, soapNodeDN, old_tableNode);
+
+        int newNode = doc.createElement("new", tupleNode);
+        int new_tableNode = doc.createElement(tableName, newNode);
+        doc.createTextElement(IDOCTABLE_IDOCNUM_TAG, getSixteenCharIDOCNum(idocNumber),
+                              new_tableNode);
+        param_method[0] = tupleNode;
+
+        int responseNode = m_ldapInterface.executeMethod(METHOD_UPDATE,
+                                                         SAPConnectorConstants.NS_SAP_IDOC_DB,
+                                                         param_method, doc, m_xmi);
+        Node.delete(tupleNode);
+        Node.delete(responseNode);
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Number of the IDOC with transaction ID " + tid + " is updated to " +
+                      idocNumber + " in IDOCTable.");
+        }
+    }
+
+    /**
+     * This method creates the namespace prefix mappings to read the response of a method.
+     *
+     * @param   namespace  The namespace of the method.
+     *
+     * @return  The namespace prefix mappings.
+     */
+    private XPathMetaInfo createResponseXMI(String namespace)
+    {
+        XPathMetaInfo returnValue = new XPathMetaInfo();
+        returnValue.addNamespaceBinding("ns", namespace);
+        returnValue.addNamespaceBinding("SOAP", NamespaceDefinitions.XMLNS_SOAP_1_1);
+
+        return returnValue;
+    }
+
     /**
      * This method just frames the new tuple to be sent in the update request to store the IDOC in
      * the database. All the request parameters are passed as Strings in an array in the specific
@@ -577,6 +700,23 @@ public class OLEDBRequestSender
         return tupleNode;
     }
 
+    /**
+     * This method formats the creation date and time of an IDOC. The formats are shared and
+     * SimpleDateFormat is not thread safe, so the IDOC listeners and pipeline workers take turns.
+     *
+     * @param   createdDate  The creation date.
+     * @param   createdTime  The creation time.
+     *
+     * @return  The date and time in the format of the OLEDB connector.
+     */
+    private static String formatCreationDateTime(Date createdDate, Date createdTime)
+    {
+        synchronized (DATE_FORMAT)
+        {
+            return DATE_FORMAT.format(createdDate) + "T" + TIME_FORMAT.format(createdTime);
+        }
+    }
+
     /**
      * IDOC Number is of length 16 in SAP. If the IDOC number being stored is of length less than
      * 16, then this method appends 0's at the beginning of the string to make it a string of length
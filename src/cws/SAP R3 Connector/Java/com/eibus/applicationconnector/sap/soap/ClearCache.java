@@ -21,6 +21,8 @@ import com.eibus.applicationconnector.sap.SAPConnectorConstants;
 import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
 import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
 import com.eibus.applicationconnector.sap.metadata.IMetadataCache;
+import com.eibus.applicationconnector.sap.metadata.MetadataStore;
+import com.eibus.applicationconnector.sap.soap.impl.MethodImplementationCache;
 import com.eibus.soap.BodyBlock;
 import com.eibus.util.system.EIBProperties;
 import java.io.File;
@@ -65,13 +67,25 @@ public class ClearCache extends BaseMethod{
         try {
             String cachedir;
             File m_rootFolder = new File(getLocal_cacheDirectory());
+            IMetadataCache cache = getConfiguration().getMetadataCache();
             
-            deleteFile(m_rootFolder.getAbsolutePath());
+            // The metadata cache is kept, because the reload only replaces what changed in SAP.
+            File[] aFiles = m_rootFolder.listFiles();
+            if (aFiles != null) {
+                for (File oFileCur : aFiles) {
+                    if (!oFileCur.getName().equals(cache.getID())) {
+                        deleteFile(oFileCur.getAbsolutePath());
+                    }
+                }
+            }
             cachedir = config.getCacheDirectory() + "\\" + config.getIDOCCacheRoot();
             deleteFile(cachedir);
             cachedir = config.getCacheDirectory() + "\\" + config.getRFCCacheRoot();
             deleteFile(cachedir);
-            IMetadataCache cache = getConfiguration().getMetadataCache();
+            config.getFunctionTemplateCache().clear();
+            config.getGeneratedMethodCache().clear();
+            MethodImplementationCache.clear();
+            MetadataStore.getInstance(config.getCacheDirectory()).clear();
             cache.reloadAllData();
         } catch (SAPConnectorException ex) {
             Logger.getLogger(ClearCache.class.getName()).log(Level.SEVERE, null, ex);
@@ -17,6 +17,15 @@
  */
  package com.eibus.applicationconnector.sap.soap;
 
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+
+import com.eibus.soap.BodyBlock;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+
 /**
  * This enum identifies the different methods that can be executed.
  *
@@ -33,6 +42,10 @@ public enum EDynamicAction
      * Holds the implementation class for the method.
      */
     private Class<? extends BaseMethod> m_cImplClass;
+    /**
+     * Holds the constructor of the implementation class. It is looked up on first use.
+     */
+    private volatile Constructor<? extends BaseMethod> m_constructor;
 
     /**
      * Constructor. Creates the action definition.
@@ -44,6 +57,61 @@ public enum EDynamicAction
         m_cImplClass = cImplClass;
     }
 
+    /**
+     * This method creates the implementation of the action for the given request.
+     *
+     * @param   request   The request bodyblock.
+     * @param   response  The response bodyblock.
+     * @param   config    The configuration of the connector.
+     *
+     * @return  The implementation of the action.
+     *
+     * @throws  SAPConnectorException  In case the implementation could not be created.
+     */
+    public BaseMethod createMethod(BodyBlock request, BodyBlock response, ISAPConfiguration config)
+                            throws SAPConnectorException
+    {
+        try
+        {
+            return getConstructor().newInstance(request, response, config);
+        }
+        catch (InvocationTargetException e)
+        {
+            throw new SAPConnectorException(e.getCause(),
+                                            SAPConnectorExceptionMessages.ERROR_CREATING_ACTION_IMPLEMENTATION,
+                                            m_cImplClass.getName(), name());
+        }
+        catch (Exception e)
+        {
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.ERROR_CREATING_ACTION_IMPLEMENTATION,
+                                            m_cImplClass.getName(), name());
+        }
+    }
+
+    /**
+     * This method gets the constructor (request, response, configuration) of the implementation
+     * class. The constructor is looked up once and then reused.
+     *
+     * @return  The constructor of the implementation class.
+     *
+     * @throws  NoSuchMethodException  In case the implementation class has no such constructor.
+     */
+    public Constructor<? extends BaseMethod> getConstructor()
+                                                     throws NoSuchMethodException
+    {
+        Constructor<? extends BaseMethod> returnValue = m_constructor;
+
+        if (returnValue == null)
+        {
+            returnValue = m_cImplClass.getConstructor(BodyBlock.class, BodyBlock.class,
+                                                      ISAPConfiguration.class);
+            m_constructor = returnValue;
+        }
+
+        return returnValue;
+    }
+
     /**
      * This method gets the implementation class to use.
      *
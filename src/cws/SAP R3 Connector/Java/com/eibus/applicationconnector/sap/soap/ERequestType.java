@@ -0,0 +1,175 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.soap;
+
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.connection.ISAPRequestHandler;
+import com.eibus.applicationconnector.sap.connection.jco.SAPJCoRequestHandler;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.soap.impl.MethodImplementationCache;
+
+import com.eibus.soap.BodyBlock;
+
+/**
+ * This enum identifies the method types that are handled by the connector and how their requests
+ * are handled.
+ *
+ * @author  pgussow
+ */
+public enum ERequestType
+    implements IRequestDispatch
+{
+    /**
+     * The SAP BAPI execution method.
+     */
+    SAPBAPI("SAPBAPI")
+    {
+        public boolean dispatch(ISAPRequestHandler handler, BodyBlock request,
+                                BodyBlock response, ISAPConfiguration config)
+                         throws SAPConnectorException
+        {
+            return handler.handleBAPIRequest(request, response);
+        }
+    },
+    /**
+     * The SAP RFC execution method.
+     */
+    SAPRFC("SAPRFC")
+    {
+        public boolean dispatch(ISAPRequestHandler handler, BodyBlock request,
+                                BodyBlock response, ISAPConfiguration config)
+                         throws SAPConnectorException
+        {
+            return handler.handleRFCReqeust(request, response);
+        }
+    },
+    /**
+     * The SAP IDOC execution method.
+     */
+    SAPIDOC("SAPIDOC")
+    {
+        public boolean dispatch(ISAPRequestHandler handler, BodyBlock request,
+                                BodyBlock response, ISAPConfiguration config)
+                         throws SAPConnectorException
+        {
+            return handler.handleIDOCRequest(request, response);
+        }
+    },
+    /**
+     * The methods which use the tuple format.
+     */
+    SAP_TUPLE("SAPTuple")
+    {
+        public boolean dispatch(ISAPRequestHandler handler, BodyBlock request,
+                                BodyBlock response, ISAPConfiguration config)
+                         throws SAPConnectorException
+        {
+            return handler.handleTupleRequest(request, response);
+        }
+    },
+    /**
+     * The SAP metadata methods.
+     */
+    SAP_METADATA("SAPMetadata")
+    {
+        public boolean dispatch(ISAPRequestHandler handler, BodyBlock request,
+                                BodyBlock response, ISAPConfiguration config)
+                         throws SAPConnectorException
+        {
+            return handler.handleMetaDataRequest(request, response);
+        }
+    },
+    /**
+     * The SAP publishing/creation of methods.
+     */
+    SAP_PUBLISH("SAPPublish")
+    {
+        public boolean dispatch(ISAPRequestHandler handler, BodyBlock request,
+                                BodyBlock response, ISAPConfiguration config)
+                         throws SAPConnectorException
+        {
+            return handler.handleMethodPublishRequest(request, response);
+        }
+    },
+    /**
+     * The SAP utility methodset.
+     */
+    SAP_UTIL("SAPUtil")
+    {
+        public boolean dispatch(ISAPRequestHandler handler, BodyBlock request,
+                                BodyBlock response, ISAPConfiguration config)
+                         throws SAPConnectorException
+        {
+            return handler.handleUtilRequest(request, response);
+        }
+    },
+    /**
+     * The SAP XBP execution method.
+     */
+    SAP_XBP("SAPXBP")
+    {
+        public boolean dispatch(ISAPRequestHandler handler, BodyBlock request,
+                                BodyBlock response, ISAPConfiguration config)
+                         throws SAPConnectorException
+        {
+            return ((SAPJCoRequestHandler) handler).handleXBPReqeust(request, response);
+        }
+    },
+    /**
+     * The SAP connector new style. The action in the implementation determines the method.
+     */
+    SAP_CONNECTOR("SAP_CONNECTOR")
+    {
+        public boolean dispatch(ISAPRequestHandler handler, BodyBlock request,
+                                BodyBlock response, ISAPConfiguration config)
+                         throws SAPConnectorException
+        {
+            EDynamicAction action = MethodImplementationCache.getImplementation(request)
+                                                             .getAction();
+
+            action.createMethod(request, response, config).execute();
+
+            return true;
+        }
+    };
+
+    /**
+     * Holds the type as it is in the method definition.
+     */
+    private String m_type;
+
+    /**
+     * Constructor. Creates the request type.
+     *
+     * @param  type  The type as it is in the method definition.
+     */
+    ERequestType(String type)
+    {
+        m_type = type;
+    }
+
+    /**
+     * This method gets the type as it is in the method definition.
+     *
+     * @return  The type as it is in the method definition.
+     */
+    public String getType()
+    {
+        return m_type;
+    }
+}
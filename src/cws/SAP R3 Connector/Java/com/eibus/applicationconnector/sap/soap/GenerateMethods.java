@@ -54,6 +54,7 @@ public class GenerateMethods extends BaseMethod
         MethodGenerator mg = new JCoMethodGenerator(getRequest(), getResponse(),
                                                     getConfiguration().getRepository(),
                                                     getConfiguration().getIDOCRepository());
+        mg.setCache(getConfiguration().getGeneratedMethodCache());
 
         // Do the actual generation.
         mg.execute();
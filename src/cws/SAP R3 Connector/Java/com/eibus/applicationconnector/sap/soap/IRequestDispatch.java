@@ -0,0 +1,49 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.soap;
+
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.connection.ISAPRequestHandler;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+
+import com.eibus.soap.BodyBlock;
+
+/**
+ * This interface describes the handling of the requests of one method type. Implementations are
+ * registered for their type in the RequestDispatcher.
+ *
+ * @author  pgussow
+ */
+public interface IRequestDispatch
+{
+    /**
+     * This method handles the given request.
+     *
+     * @param   handler   The request handler of the transaction.
+     * @param   request   The request bodyblock.
+     * @param   response  The response bodyblock.
+     * @param   config    The configuration of the connector.
+     *
+     * @return  false if the response is sent asynchronously, otherwise true.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions.
+     */
+    boolean dispatch(ISAPRequestHandler handler, BodyBlock request, BodyBlock response,
+                     ISAPConfiguration config)
+              throws SAPConnectorException;
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.soap;
+
+import com.eibus.util.logger.CordysLogger;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class holds the handling per method type. The types of ERequestType are registered by
+ * default; other types can be added with register(), so a new type does not require changes to
+ * SAPTransaction.
+ *
+ * <p>Types are matched ignoring case. The handling of a type as it is in the method definitions
+ * is resolved once and then found with a single lookup.</p>
+ *
+ * @author  pgussow
+ */
+public class RequestDispatcher
+{
+    /**
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(RequestDispatcher.class);
+    /**
+     * Holds the registered handling per upper case type.
+     */
+    private static final ConcurrentMap<String, IRequestDispatch> s_registered = new ConcurrentHashMap<String, IRequestDispatch>();
+    /**
+     * Holds the resolved handling per type as it is in the method definitions.
+     */
+    private static final ConcurrentMap<String, IRequestDispatch> s_resolved = new ConcurrentHashMap<String, IRequestDispatch>();
+
+    static
+    {
+        for (ERequestType type : ERequestType.values())
+        {
+            register(type.getType(), type);
+        }
+    }
+
+    /**
+     * Creates a new RequestDispatcher object.
+     */
+    private RequestDispatcher()
+    {
+    }
+
+    /**
+     * This method returns whether a handling is registered for the given type.
+     *
+     * @param   type  The type of the method.
+     *
+     * @return  Whether or not the type can be processed.
+     */
+    public static boolean canProcess(String type)
+    {
+        return getDispatch(type) != null;
+    }
+
+    /**
+     * This method returns the handling of the given type.
+     *
+     * @param   type  The type of the method.
+     *
+     * @return  The handling, or null if the type is not registered.
+     */
+    public static IRequestDispatch getDispatch(String type)
+    {
+        if (type == null)
+        {
+            return null;
+        }
+
+        IRequestDispatch returnValue = s_resolved.get(type);
+
+        if (returnValue == null)
+        {
+            returnValue = s_registered.get(type.toUpperCase(Locale.ENGLISH));
+
+            if (returnValue != null)
+            {
+                s_resolved.put(type, returnValue);
+            }
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method registers the handling of the given type. An existing handling of the type is
+     * replaced.
+     *
+     * @param  type      The type of the method.
+     * @param  dispatch  The handling of the requests.
+     */
+    public static void register(String type, IRequestDispatch dispatch)
+    {
+        s_registered.put(type.toUpperCase(Locale.ENGLISH), dispatch);
+        s_resolved.clear();
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Registered handling of type " + type + ": " + dispatch);
+        }
+    }
+}
@@ -17,10 +17,13 @@
  */
  package com.eibus.applicationconnector.sap.soap.impl;
 
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
 import com.eibus.applicationconnector.sap.soap.EDynamicAction;
 
 /**
- * This method describes the parsed implementation of methods.
+ * This interface describes the parsed implementation of a method. The implementation XML is parsed
+ * once when the method is first called, so the values can be used for every request without
+ * reading the XML again.
  *
  * @author  pgussow
  */
@@ -30,13 +33,67 @@ public interface IMethodImplementation
      * This method gets the dynamic action for this method implementation.
      *
      * @return  The dynamic action for this method implementation.
+     *
+     * @throws  SAPConnectorException  In case the implementation has no action or the action is
+     *                                 invalid.
+     */
+    EDynamicAction getAction()
+                      throws SAPConnectorException;
+
+    /**
+     * This method gets the CIM type of the IDOC.
+     *
+     * @return  The CIM type of the IDOC, or an empty string if it is not set.
+     */
+    String getCIMType();
+
+    /**
+     * This method gets the IDOC type. If the implementation has no IDOCType the method name is
+     * returned, as for methods that were generated by old versions of the connector.
+     *
+     * @return  The IDOC type.
+     */
+    String getIDOCType();
+
+    /**
+     * This method gets the implementation XML the descriptor was parsed from.
+     *
+     * @return  The implementation node of the method definition.
+     */
+    int getImplementationNode();
+
+    /**
+     * This method gets the message type of the IDOC.
+     *
+     * @return  The message type of the IDOC, or an empty string if it is not set.
+     */
+    String getMESType();
+
+    /**
+     * This method gets the name of the remote function module.
+     *
+     * @return  The name of the RFM, or an empty string if it is not set.
+     */
+    String getRFMName();
+
+    /**
+     * This method gets the type of the method (SAPBAPI, SAPRFC, SAPIDOC etc).
+     *
+     * @return  The type of the method.
+     */
+    String getType();
+
+    /**
+     * This method returns whether the SAP transaction should be committed.
+     *
+     * @return  Whether or not the SAP transaction should be committed.
      */
-    EDynamicAction getAction();
+    boolean isAutoCommit();
 
     /**
-     * This method sets the dynamic action for this method implementation.
+     * This method returns whether the SAP transaction should be rolled back on abort.
      *
-     * @param  action  The dynamic action for this method implementation.
+     * @return  Whether or not the SAP transaction should be rolled back on abort.
      */
-    void setAction(EDynamicAction action);
+    boolean isAutoRollback();
 }
@@ -17,34 +17,228 @@
  */
  package com.eibus.applicationconnector.sap.soap.impl;
 
+import com.cordys.coe.util.xml.nom.XPathHelper;
+
+import com.eibus.applicationconnector.sap.SAPConnectorConstants;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
 import com.eibus.applicationconnector.sap.soap.EDynamicAction;
 
+import com.eibus.util.logger.CordysLogger;
+
+import com.eibus.xml.xpath.XPathMetaInfo;
+
 /**
- * This class holds the implementation of the parsing of a method implementation.
+ * This class holds the parsed implementation of a method. All values are read from the
+ * implementation XML in the constructor and the object can not be changed afterwards, so it can be
+ * shared by all threads.
  *
  * @author  pgussow
  */
 class MethodImplementation
     implements IMethodImplementation
 {
+    /**
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(MethodImplementation.class);
+    /**
+     * Holds the namespace mapping for the connector specific implementation.
+     */
+    private static final XPathMetaInfo XMI = new XPathMetaInfo();
+
+    static
+    {
+        XMI.addNamespaceBinding("ns", SAPConnectorConstants.NS_SAP_IMPLEMENTATION);
+    }
+
     /**
      * Holds the dynamic action for this method implementation.
      */
-    private EDynamicAction m_action;
+    private final EDynamicAction m_action;
+    /**
+     * Holds the action as it is in the implementation.
+     */
+    private final String m_actionName;
+    /**
+     * Holds whether the SAP transaction should be committed.
+     */
+    private final boolean m_autoCommit;
+    /**
+     * Holds whether the SAP transaction should be rolled back on abort.
+     */
+    private final boolean m_autoRollback;
+    /**
+     * Holds the CIM type of the IDOC.
+     */
+    private final String m_cimType;
+    /**
+     * Holds the IDOC type.
+     */
+    private final String m_idocType;
+    /**
+     * Holds the implementation node that was parsed.
+     */
+    private final int m_implementation;
+    /**
+     * Holds the message type of the IDOC.
+     */
+    private final String m_mesType;
+    /**
+     * Holds the name of the remote function module.
+     */
+    private final String m_rfmName;
+    /**
+     * Holds the type of the method.
+     */
+    private final String m_type;
+
+    /**
+     * Creates a new MethodImplementation object.
+     *
+     * @param  type            The type of the method.
+     * @param  methodName      The name of the method.
+     * @param  implementation  The implementation node of the method.
+     */
+    MethodImplementation(String type, String methodName, int implementation)
+    {
+        m_type = type;
+        m_implementation = implementation;
+
+        m_rfmName = XPathHelper.getStringValue(implementation, "RFMName", "");
+        m_autoCommit = XPathHelper.getBooleanValue(implementation, "AutoCommit");
+        m_autoRollback = XPathHelper.getBooleanValue(implementation, "AutoRollback");
+        m_mesType = XPathHelper.getStringValue(implementation, "MESType", "");
+        m_cimType = XPathHelper.getStringValue(implementation, "CIMType", "");
+
+        String idocType = XPathHelper.getStringValue(implementation, "IDOCType", "");
+
+        if (idocType.length() == 0)
+        {
+            // Only IDOC methods have a message type.
+            if ((m_mesType.length() > 0) && LOG.isErrorEnabled())
+            {
+                LOG.error("IDOC Type information is not found in the implementation of method " +
+                          methodName + ". This could be a method generated from old isvp");
+            }
+            idocType = methodName;
+        }
+        m_idocType = idocType;
+
+        m_actionName = XPathHelper.getStringValue(implementation,
+                                                  "ns:sapconnector/ns:action/text()", XMI, "");
+
+        EDynamicAction action = null;
+
+        if (m_actionName.length() > 0)
+        {
+            try
+            {
+                action = EDynamicAction.valueOf(m_actionName.toUpperCase());
+            }
+            catch (IllegalArgumentException e)
+            {
+                // The action is invalid. This is reported when the action is requested.
+                if (LOG.isDebugEnabled())
+                {
+                    LOG.debug("Error determining the action type", e);
+                }
+            }
+        }
+        m_action = action;
+    }
 
     /**
      * @see  com.eibus.applicationconnector.sap.soap.impl.IMethodImplementation#getAction()
      */
     public EDynamicAction getAction()
+                             throws SAPConnectorException
     {
+        if (m_actionName.length() == 0)
+        {
+            throw new SAPConnectorException(SAPConnectorExceptionMessages.NO_ACTION_FOUND_IN_THE_METHOD_IMPLEMENTATION);
+        }
+
+        if (m_action == null)
+        {
+            throw new SAPConnectorException(SAPConnectorExceptionMessages.INVALID_ACTION_TYPE0,
+                                            m_actionName);
+        }
+
         return m_action;
     }
 
     /**
-     * @see  com.eibus.applicationconnector.sap.soap.impl.IMethodImplementation#setAction(com.eibus.applicationconnector.sap.soap.EDynamicAction)
+     * @see  com.eibus.applicationconnector.sap.soap.impl.IMethodImplementation#getCIMType()
      */
-    public void setAction(EDynamicAction action)
+    public String getCIMType()
     {
-        m_action = action;
+        return m_cimType;
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.soap.impl.IMethodImplementation#getIDOCType()
+     */
+    public String getIDOCType()
+    {
+        return m_idocType;
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.soap.impl.IMethodImplementation#getImplementationNode()
+     */
+    public int getImplementationNode()
+    {
+        return m_implementation;
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.soap.impl.IMethodImplementation#getMESType()
+     */
+    public String getMESType()
+    {
+        return m_mesType;
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.soap.impl.IMethodImplementation#getRFMName()
+     */
+    public String getRFMName()
+    {
+        return m_rfmName;
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.soap.impl.IMethodImplementation#getType()
+     */
+    public String getType()
+    {
+        return m_type;
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.soap.impl.IMethodImplementation#isAutoCommit()
+     */
+    public boolean isAutoCommit()
+    {
+        return m_autoCommit;
+    }
+
+    /**
+     * @see  com.eibus.applicationconnector.sap.soap.impl.IMethodImplementation#isAutoRollback()
+     */
+    public boolean isAutoRollback()
+    {
+        return m_autoRollback;
+    }
+
+    /**
+     * @see  java.lang.Object#toString()
+     */
+    @Override public String toString()
+    {
+        return "Type: " + m_type + ", RFM: " + m_rfmName + ", AutoCommit: " + m_autoCommit +
+               ", AutoRollback: " + m_autoRollback + ", MESType: " + m_mesType + ", IDOCType: " +
+               m_idocType + ", CIMType: " + m_cimType + ", action: " + m_actionName;
     }
 }
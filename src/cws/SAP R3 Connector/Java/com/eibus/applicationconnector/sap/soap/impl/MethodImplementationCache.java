@@ -17,35 +17,49 @@
  */
  package com.eibus.applicationconnector.sap.soap.impl;
 
-import com.cordys.coe.util.xml.nom.XPathHelper;
-
-import com.eibus.applicationconnector.sap.SAPConnectorConstants;
-import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
-import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
-
 import com.eibus.soap.BodyBlock;
 import com.eibus.soap.MethodDefinition;
 
-import com.eibus.xml.xpath.XPathMetaInfo;
+import com.eibus.util.logger.CordysLogger;
 
-import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
- * This cache holds the parsed implementations for a method.
+ * This cache holds the parsed implementations for a method. The implementation XML of a method
+ * definition is parsed once into an IMethodImplementation, which is then used for every request
+ * of the method.
+ *
+ * <p>The definitions are held weakly, so the entries of methods that are no longer loaded by the
+ * SOAP processor are removed. When a method is republished the SOAP processor creates a new
+ * definition or a new implementation node, both of which cause the implementation to be parsed
+ * again. The cache is also cleared when methods are published by the connector and by
+ * ClearCache.</p>
  *
  * @author  pgussow
  */
 public class MethodImplementationCache
 {
     /**
-     * DOCUMENTME.
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(MethodImplementationCache.class);
+    /**
+     * Holds the only instance of the cache.
      */
     private static MethodImplementationCache s_cache = new MethodImplementationCache();
     /**
-     * DOCUMENTME.
+     * Holds the number of requests that used a parsed implementation.
      */
-    private Map<MethodDefinition, IMethodImplementation> m_implementations = new LinkedHashMap<MethodDefinition, IMethodImplementation>();
+    private long m_hits;
+    /**
+     * Holds the parsed implementations per method definition.
+     */
+    private Map<Object, IMethodImplementation> m_implementations = new WeakHashMap<Object, IMethodImplementation>();
+    /**
+     * Holds the number of times an implementation was parsed.
+     */
+    private long m_misses;
 
     /**
      * Creates a new MethodImplementationCache object.
@@ -55,44 +69,102 @@ public class MethodImplementationCache
     }
 
     /**
-     * DOCUMENTME.
+     * This method removes all parsed implementations. It is called when methods are
+     * (re)published.
+     */
+    public static void clear()
+    {
+        synchronized (s_cache)
+        {
+            s_cache.m_implementations.clear();
+        }
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Method implementation cache cleared");
+        }
+    }
+
+    /**
+     * This method returns the parsed implementation of the method of the given request.
      *
-     * @param   bbRequest  DOCUMENTME
+     * @param   bbRequest  The request that was received.
      *
-     * @return  DOCUMENTME
+     * @return  The parsed implementation.
      */
     public static IMethodImplementation getImplementation(BodyBlock bbRequest)
     {
-        return null;
+        return getImplementation(bbRequest.getMethodDefinition());
     }
 
     /**
-     * This method gets the desired action from the method's implementation.
+     * This method returns the parsed implementation of the given method definition.
      *
-     * @param   bbRequest  The request that was received.
+     * @param   definition  The method definition.
+     *
+     * @return  The parsed implementation.
+     */
+    public static IMethodImplementation getImplementation(MethodDefinition definition)
+    {
+        return getImplementation(definition, definition.getType(), definition.getMethodName(),
+                                 definition.getImplementation());
+    }
+
+    /**
+     * This method returns the parsed implementation for the given definition. If it is not cached
+     * or the implementation node changed, the implementation is parsed.
      *
-     * @return  The action in the implementation.
+     * @param   definition      The object that identifies the method, normally the
+     *                          MethodDefinition.
+     * @param   type            The type of the method.
+     * @param   methodName      The name of the method.
+     * @param   implementation  The implementation node of the method.
      *
-     * @throws  SAPConnectorException  EmailIOException In case the action was not found.
+     * @return  The parsed implementation.
      */
-    private static String getActionFromImplementation(BodyBlock bbRequest)
-                                               throws SAPConnectorException
+    public static IMethodImplementation getImplementation(Object definition, String type,
+                                                          String methodName, int implementation)
     {
-        String sAction;
+        synchronized (s_cache)
+        {
+            IMethodImplementation returnValue = s_cache.m_implementations.get(definition);
 
-        int iImplNode = bbRequest.getMethodDefinition().getImplementation();
+            if ((returnValue != null) && (returnValue.getImplementationNode() == implementation))
+            {
+                s_cache.m_hits++;
+                return returnValue;
+            }
+        }
 
-        XPathMetaInfo xmi = new XPathMetaInfo();
-        xmi.addNamespaceBinding("ns", SAPConnectorConstants.NS_SAP_IMPLEMENTATION);
+        // Parse outside the lock. If two threads parse the same method, both get the same values.
+        IMethodImplementation returnValue = new MethodImplementation(type, methodName,
+                                                                     implementation);
 
-        sAction = XPathHelper.getStringValue(iImplNode, "ns:sapconnector/ns:action/text()", xmi,
-                                             "");
+        synchronized (s_cache)
+        {
+            s_cache.m_misses++;
+            s_cache.m_implementations.put(definition, returnValue);
+        }
 
-        if (sAction.length() == 0)
+        if (LOG.isDebugEnabled())
         {
-            throw new SAPConnectorException(SAPConnectorExceptionMessages.NO_ACTION_FOUND_IN_THE_METHOD_IMPLEMENTATION);
+            LOG.debug("Parsed implementation of method " + methodName + ": " + returnValue);
         }
 
-        return sAction;
+        return returnValue;
+    }
+
+    /**
+     * This method returns the statistics of the cache.
+     *
+     * @return  The statistics of the cache.
+     */
+    public static String getStatistics()
+    {
+        synchronized (s_cache)
+        {
+            return "Size: " + s_cache.m_implementations.size() + ", hits: " + s_cache.m_hits +
+                   ", misses: " + s_cache.m_misses;
+        }
     }
 }
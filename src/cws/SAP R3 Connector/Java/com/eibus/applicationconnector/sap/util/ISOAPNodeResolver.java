@@ -0,0 +1,43 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.util;
+
+import com.novell.ldap.LDAPException;
+
+/**
+ * This interface looks up the SOAP node that implements a method. It is implemented with the LDAP
+ * directory by LDAPInterface.
+ *
+ * @author  pgussow
+ */
+public interface ISOAPNodeResolver
+{
+    /**
+     * This method looks up the SOAP node that implements the given method.
+     *
+     * @param   organization  The DN of the organization.
+     * @param   namespace     The namespace of the method.
+     * @param   methodName    The name of the method.
+     *
+     * @return  The DN of the SOAP node.
+     *
+     * @throws  LDAPException  In case the lookup fails.
+     */
+    String findSOAPNode(String organization, String namespace, String methodName)
+                 throws LDAPException;
+}
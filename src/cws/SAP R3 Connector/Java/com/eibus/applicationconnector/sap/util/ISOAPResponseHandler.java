@@ -0,0 +1,46 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.util;
+
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+
+/**
+ * This interface is called by the SOAPDispatcher when the response to a request arrived. The
+ * methods are called on a thread of the dispatcher, so they should return quickly.
+ *
+ * @author  pgussow
+ */
+public interface ISOAPResponseHandler
+{
+    /**
+     * This method is called when the request failed or timed out.
+     *
+     * @param  methodName  The name of the method.
+     * @param  exception   The error.
+     */
+    void onError(String methodName, SAPConnectorException exception);
+
+    /**
+     * This method is called with the MethodResponse node of the request. The node belongs to the
+     * handler, unless the caller deletes it after reading it from the future.
+     *
+     * @param  methodName  The name of the method.
+     * @param  response    The MethodResponse node.
+     */
+    void onResponse(String methodName, int response);
+}
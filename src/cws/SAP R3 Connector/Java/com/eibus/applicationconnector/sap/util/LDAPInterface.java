@@ -178,12 +178,47 @@ public class LDAPInterface
                              XPathMetaInfo xmi)
                       throws SAPConnectorException
     {
+        return executeMethod(methodName, nameSpace, parameters, doc, xmi, 0);
+    }
+
+    /**
+     * This method executes given method and returns the MethodResponse node in the response SOAP
+     * Message. The SOAP node is taken from the SOAPNodeCache. If the request could not be sent to
+     * the SOAP node or it did not answer, the cached SOAP node is removed, so the next request
+     * looks it up again. A SOAP fault returned by the SOAP node keeps it in the cache.
+     *
+     * @param   methodName
+     * @param   nameSpace   of the method
+     * @param   parameters  XML nodes that are appended to the SOAP body as they are.
+     * @param   doc         : Document object to be used. For update request, it expects 1 parameter
+     *                      tuple,old and new For other methods all parameters can be sent as
+     *                      separate nodes
+     * @param   xmi         The namespace prefix mappings.
+     * @param   timeout     The number of milliseconds to wait for the response. 0 uses the
+     *                      timeout of the connector.
+     *
+     * @return  The MethodResponse node.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    public int executeMethod(String methodName, String nameSpace, int[] parameters, Document doc,
+                             XPathMetaInfo xmi, long timeout)
+                      throws SAPConnectorException
+    {
+        String organization = directory.getOrganization();
         String receiver;
 
         try
         {
-            receiver = directory.findSOAPNode(directory.getOrganization(), nameSpace, methodName);
-            return executeMethod(methodName, nameSpace, receiver, parameters, doc, xmi);
+            receiver = SOAPNodeCache.getInstance().getSOAPNode(organization, nameSpace, methodName,
+                                                               new ISOAPNodeResolver()
+                {
+                    public String findSOAPNode(String dn, String namespace, String method)
+                                        throws LDAPException
+                    {
+                        return directory.findSOAPNode(dn, namespace, method);
+                    }
+                });
         }
         catch (LDAPException le)
         {
@@ -191,6 +226,26 @@ public class LDAPInterface
                                             SAPConnectorExceptionMessages.CANNOT_FIND_SERVICE_GROUP_FOR_METHOD,
                                             methodName);
         }
+
+        try
+        {
+            return executeMethod(methodName, nameSpace, receiver, parameters, doc, xmi, timeout);
+        }
+        catch (SAPConnectorException sce)
+        {
+            if (isRoutingFailure(sce))
+            {
+                SOAPNodeCache.getInstance().invalidate(organization, nameSpace, methodName);
+
+                if (LOG.isDebugEnabled())
+                {
+                    LOG.debug("Removed SOAP node " + receiver + " of method " + methodName +
+                              " from the cache. " + SOAPNodeCache.getInstance());
+                }
+            }
+
+            throw sce;
+        }
     }
 
     /**
@@ -213,6 +268,32 @@ public class LDAPInterface
     public int executeMethod(String methodName, String nameSpace, String receiver, int[] parameters,
                              Document doc, XPathMetaInfo xmi)
                       throws SAPConnectorException
+    {
+        return executeMethod(methodName, nameSpace, receiver, parameters, doc, xmi, 0);
+    }
+
+    /**
+     * This method executes given method and returns the MethodResponse node in the response SOAP
+     * Message.
+     *
+     * @param   methodName
+     * @param   nameSpace   of the method
+     * @param   receiver    DN of the SOAP Node where the request should be sent
+     * @param   parameters  XML nodes that are appended to the SOAP body as they are.
+     * @param   doc         : Document object to be used. For update request, it expects 1 parameter
+     *                      tuple,old and new For other methods all parameters can be sent as
+     *                      separate nodes
+     * @param   xmi         The namespace prefix mappings.
+     * @param   timeout     The number of milliseconds to wait for the response. 0 uses the
+     *                      timeout of the connector.
+     *
+     * @return  The MethodResponse node.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    public int executeMethod(String methodName, String nameSpace, String receiver, int[] parameters,
+                             Document doc, XPathMetaInfo xmi, long timeout)
+                      throws SAPConnectorException
     {
         int request = 0;
         int response = 0;
@@ -235,7 +316,18 @@ public class LDAPInterface
             // Send the request
             //LOG.error("Request sent to invoke external webservice" + Node.writeToString(request, true)) ;
             int mesEnve = Node.getRoot(request);          
-            response = connector.sendAndWait(mesEnve);      
+
+            try
+            {
+                response = (timeout > 0) ? connector.sendAndWait(mesEnve, timeout)
+                                         : connector.sendAndWait(mesEnve);
+            }
+            catch (Exception e)
+            {
+                throw new SAPConnectorException(e,
+                                                SAPConnectorExceptionMessages.ERROR_SENDING_METHOD_TO_SOAP_NODE,
+                                                methodName, receiver);
+            }
             //LOG.error("Response from external webservice" + Node.writeToString(response, true)) ;
             // Check for SOAP faults.re
             checkErrorInResponse(xmi, response, request);
@@ -363,6 +455,32 @@ public class LDAPInterface
         BACUtil.deleteNode(response);
     }
 
+    /**
+     * This method returns whether a request failed because it could not be sent to the SOAP node
+     * or the SOAP node did not answer, as opposed to a SOAP fault returned by the SOAP node.
+     *
+     * @param   sce  The exception of executeMethod.
+     *
+     * @return  true if the SOAP node should be looked up again.
+     */
+    private static boolean isRoutingFailure(SAPConnectorException sce)
+    {
+        String sendingID = SAPConnectorExceptionMessages.ERROR_SENDING_METHOD_TO_SOAP_NODE
+                           .getFullyQualifiedResourceID();
+
+        for (Throwable t = sce; t != null; t = t.getCause())
+        {
+            if ((t instanceof SAPConnectorException) &&
+                    sendingID.equals(((SAPConnectorException) t).getMessageObject()
+                                     .getFullyQualifiedResourceID()))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
     /**
      * This method checks if a SOAP Fault is returned as response.
      *
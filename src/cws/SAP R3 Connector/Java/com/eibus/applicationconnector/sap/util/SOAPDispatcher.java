@@ -0,0 +1,443 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.util;
+
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+
+import com.eibus.util.logger.CordysLogger;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Node;
+import com.eibus.xml.xpath.XPathMetaInfo;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class sends SOAP requests without blocking the caller. The request is sent by
+ * LDAPInterface.executeMethod on a thread of the dispatcher and the caller gets a future for the
+ * MethodResponse node. A handler can be passed to be called when the response arrives.
+ *
+ * <p>The number of requests in flight is limited. When the limit is reached the caller blocks
+ * until a response arrives, so a slow target holds back the sender instead of queueing requests
+ * without bounds. Every request waits at most the timeout for its response.</p>
+ *
+ * <p>A NOM document must not be used by more than one thread, so every request gets its own
+ * document. The parameters are copied to it on the caller's thread, so the caller can delete them
+ * when executeMethod returns. The request is created in that document on a thread of the
+ * dispatcher, and the MethodResponse node is in that document as well.</p>
+ *
+ * @author  pgussow
+ */
+public class SOAPDispatcher
+{
+    /**
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(SOAPDispatcher.class);
+    /**
+     * Indicates whether the dispatcher is closed.
+     */
+    private volatile boolean m_closed;
+    /**
+     * Holds the number of requests that got a response.
+     */
+    private final AtomicLong m_completed = new AtomicLong();
+    /**
+     * Holds the threads that send the requests.
+     */
+    private final ExecutorService m_executor;
+    /**
+     * Holds the number of failed requests.
+     */
+    private final AtomicLong m_failed = new AtomicLong();
+    /**
+     * Holds the permits for the requests in flight.
+     */
+    private final Semaphore m_inFlight;
+    /**
+     * Holds the maximum number of requests in flight.
+     */
+    private final int m_maxInFlight;
+    /**
+     * Holds the total time of the requests in nanoseconds.
+     */
+    private final AtomicLong m_responseTime = new AtomicLong();
+    /**
+     * Holds the number of milliseconds to wait for a response.
+     */
+    private final long m_timeout;
+
+    /**
+     * Creates a new SOAPDispatcher object.
+     *
+     * @param  maxInFlight  The maximum number of requests in flight.
+     * @param  timeout      The number of milliseconds to wait for a response. 0 uses the timeout
+     *                      of the connector.
+     */
+    public SOAPDispatcher(int maxInFlight, long timeout)
+    {
+        m_maxInFlight = maxInFlight;
+        m_timeout = timeout;
+        m_inFlight = new Semaphore(maxInFlight);
+        m_executor = Executors.newFixedThreadPool(maxInFlight, new ThreadFactory()
+            {
+                private final AtomicInteger m_number = new AtomicInteger();
+
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread returnValue = new Thread(runnable,
+                                                    "SOAPDispatcher " +
+                                                    m_number.getAndIncrement());
+                    returnValue.setDaemon(true);
+
+                    return returnValue;
+                }
+            });
+    }
+
+    /**
+     * This method waits for the response of a request.
+     *
+     * @param   future      The future of the request.
+     * @param   methodName  The name of the method.
+     *
+     * @return  The MethodResponse node.
+     *
+     * @throws  SAPConnectorException  In case the request failed.
+     */
+    public static int getResponse(Future<Integer> future, String methodName)
+                           throws SAPConnectorException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.INTERRUPTED_WHILE_SENDING_REQUEST,
+                                            methodName);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof SAPConnectorException)
+            {
+                throw (SAPConnectorException) e.getCause();
+            }
+            throw new SAPConnectorException(e.getCause(),
+                                            SAPConnectorExceptionMessages.ERROR_EXECUTING_METHOD,
+                                            methodName);
+        }
+    }
+
+    /**
+     * This method stops the dispatcher. New requests are refused and the requests in flight are
+     * given time to finish.
+     */
+    public void close()
+    {
+        m_closed = true;
+        m_executor.shutdown();
+
+        try
+        {
+            m_executor.awaitTermination(30, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("SOAP dispatcher stopped. " + this);
+        }
+    }
+
+    /**
+     * This method sends the request on a thread of the dispatcher. It blocks while the maximum
+     * number of requests is in flight. The parameters are copied before the method returns.
+     *
+     * @param   ldapInterface  The interface to send the request with.
+     * @param   methodName     The name of the method.
+     * @param   nameSpace      The namespace of the method.
+     * @param   receiver       The DN of the SOAP node. If null or empty the SOAP node is looked
+     *                         up.
+     * @param   parameters     The nodes that are appended to the method.
+     * @param   xmi            The namespace prefix mappings.
+     * @param   handler        The handler to call when the response arrives. May be null.
+     *
+     * @return  The future for the MethodResponse node.
+     *
+     * @throws  SAPConnectorException  In case the dispatcher is closed, the parameters could not
+     *                                 be copied or the caller was interrupted.
+     */
+    public Future<Integer> executeMethod(final LDAPInterface ldapInterface, final String methodName,
+                                         final String nameSpace, final String receiver,
+                                         int[] parameters, final XPathMetaInfo xmi,
+                                         final ISOAPResponseHandler handler)
+                                  throws SAPConnectorException
+    {
+        if (m_closed)
+        {
+            throw new SAPConnectorException(SAPConnectorExceptionMessages.SOAP_DISPATCHER_CLOSED,
+                                            methodName);
+        }
+
+        final Document doc = new Document();
+        final int[] copies = copyParameters(parameters, doc, methodName);
+
+        try
+        {
+            m_inFlight.acquire();
+        }
+        catch (InterruptedException e)
+        {
+            deleteNodes(copies);
+            Thread.currentThread().interrupt();
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.INTERRUPTED_WHILE_SENDING_REQUEST,
+                                            methodName);
+        }
+
+        try
+        {
+            return m_executor.submit(new Callable<Integer>()
+                {
+                    public Integer call()
+                                 throws SAPConnectorException
+                    {
+                        try
+                        {
+                            return send(ldapInterface, methodName, nameSpace, receiver, copies,
+                                        doc, xmi, handler);
+                        }
+                        finally
+                        {
+                            deleteNodes(copies);
+                        }
+                    }
+                });
+        }
+        catch (RejectedExecutionException e)
+        {
+            deleteNodes(copies);
+            m_inFlight.release();
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.SOAP_DISPATCHER_CLOSED,
+                                            methodName);
+        }
+    }
+
+    /**
+     * This method returns the number of requests in flight.
+     *
+     * @return  The number of requests in flight.
+     */
+    public int getInFlight()
+    {
+        return m_maxInFlight - m_inFlight.availablePermits();
+    }
+
+    /**
+     * This method returns the maximum number of requests in flight.
+     *
+     * @return  The maximum number of requests in flight.
+     */
+    public int getMaxInFlight()
+    {
+        return m_maxInFlight;
+    }
+
+    /**
+     * @see  java.lang.Object#toString()
+     */
+    @Override public String toString()
+    {
+        long requests = m_completed.get() + m_failed.get();
+        StringBuffer sb = new StringBuffer();
+
+        sb.append("SOAP requests: ").append(m_completed.get());
+        sb.append(", failed: ").append(m_failed.get());
+        sb.append(", in flight: ").append(getInFlight());
+        sb.append(", response: ")
+          .append((requests == 0) ? 0 : (m_responseTime.get() / requests / 1000)).append(" us");
+
+        return sb.toString();
+    }
+
+    /**
+     * This method sends the request and waits for the response. It is called on a thread of the
+     * dispatcher.
+     *
+     * @param   ldapInterface  The interface to send the request with.
+     * @param   methodName     The name of the method.
+     * @param   nameSpace      The namespace of the method.
+     * @param   receiver       The DN of the SOAP node. If null or empty the SOAP node is looked
+     *                         up.
+     * @param   parameters     The nodes that are appended to the method.
+     * @param   doc            The document to create the request in.
+     * @param   xmi            The namespace prefix mappings.
+     * @param   timeout        The number of milliseconds to wait for the response.
+     *
+     * @return  The MethodResponse node.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    protected int execute(LDAPInterface ldapInterface, String methodName, String nameSpace,
+                          String receiver, int[] parameters, Document doc, XPathMetaInfo xmi,
+                          long timeout)
+                   throws SAPConnectorException
+    {
+        if ((receiver == null) || (receiver.length() == 0))
+        {
+            return ldapInterface.executeMethod(methodName, nameSpace, parameters, doc, xmi,
+                                               timeout);
+        }
+
+        return ldapInterface.executeMethod(methodName, nameSpace, receiver, parameters, doc, xmi,
+                                           timeout);
+    }
+
+    /**
+     * This method copies the parameters to the document of a request.
+     *
+     * @param   parameters  The parameters. May be null.
+     * @param   doc         The document of the request.
+     * @param   methodName  The name of the method.
+     *
+     * @return  The copies, or null if there are no parameters.
+     *
+     * @throws  SAPConnectorException  In case a parameter could not be copied.
+     */
+    private static int[] copyParameters(int[] parameters, Document doc, String methodName)
+                                 throws SAPConnectorException
+    {
+        if (parameters == null)
+        {
+            return null;
+        }
+
+        int[] returnValue = new int[parameters.length];
+
+        for (int i = 0; i < parameters.length; i++)
+        {
+            try
+            {
+                returnValue[i] = doc.parseString(Node.writeToString(parameters[i], false));
+            }
+            catch (Exception e)
+            {
+                deleteNodes(returnValue);
+                throw new SAPConnectorException(e,
+                                                SAPConnectorExceptionMessages.ERROR_EXECUTING_METHOD,
+                                                methodName);
+            }
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method deletes the copied parameters of a request.
+     *
+     * @param  nodes  The nodes. May be null.
+     */
+    private static void deleteNodes(int[] nodes)
+    {
+        if (nodes != null)
+        {
+            for (int node : nodes)
+            {
+                BACUtil.deleteNode(node);
+            }
+        }
+    }
+
+    /**
+     * This method sends the request, updates the statistics and calls the handler.
+     *
+     * @param   ldapInterface  The interface to send the request with.
+     * @param   methodName     The name of the method.
+     * @param   nameSpace      The namespace of the method.
+     * @param   receiver       The DN of the SOAP node.
+     * @param   parameters     The nodes that are appended to the method.
+     * @param   doc            The document to create the request in.
+     * @param   xmi            The namespace prefix mappings.
+     * @param   handler        The handler to call. May be null.
+     *
+     * @return  The MethodResponse node.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    private int send(LDAPInterface ldapInterface, String methodName, String nameSpace,
+                     String receiver, int[] parameters, Document doc, XPathMetaInfo xmi,
+                     ISOAPResponseHandler handler)
+              throws SAPConnectorException
+    {
+        long start = System.nanoTime();
+        int returnValue;
+
+        try
+        {
+            returnValue = execute(ldapInterface, methodName, nameSpace, receiver, parameters, doc,
+                                  xmi, m_timeout);
+        }
+        catch (Exception e)
+        {
+            SAPConnectorException sce = (e instanceof SAPConnectorException)
+                                        ? (SAPConnectorException) e
+                                        : new SAPConnectorException(e,
+                                                                    SAPConnectorExceptionMessages.ERROR_EXECUTING_METHOD,
+                                                                    methodName);
+
+            m_failed.incrementAndGet();
+            m_responseTime.addAndGet(System.nanoTime() - start);
+            m_inFlight.release();
+
+            if (handler != null)
+            {
+                handler.onError(methodName, sce);
+            }
+            throw sce;
+        }
+
+        m_completed.incrementAndGet();
+        m_responseTime.addAndGet(System.nanoTime() - start);
+        m_inFlight.release();
+
+        if (handler != null)
+        {
+            handler.onResponse(methodName, returnValue);
+        }
+
+        return returnValue;
+    }
+}
@@ -0,0 +1,284 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.util;
+
+import com.novell.ldap.LDAPException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class caches the SOAP node that implements a method, per organization, namespace and
+ * method. LDAPInterface.executeMethod looked up the SOAP node in the directory for every request,
+ * which is done for every IDoc that is stored or dispatched.
+ *
+ * <p>A SOAP node is cached for the time to live. When a request cannot be sent to a cached SOAP
+ * node or it does not answer, the entry is removed, so the next request looks it up again. Concurrent requests for a method that
+ * is not cached wait for one lookup.</p>
+ *
+ * <p>The time to live of the shared cache is set from the connector setting soapNodeCacheTTL.
+ * 0 disables the cache.</p>
+ *
+ * @author  pgussow
+ */
+public class SOAPNodeCache
+{
+    /**
+     * Holds the default time to live of an entry in milliseconds.
+     */
+    public static final long DEFAULT_TTL = 60000;
+    /**
+     * Holds the cache that is shared by all LDAPInterface objects.
+     */
+    private static final SOAPNodeCache INSTANCE = new SOAPNodeCache(DEFAULT_TTL);
+    /**
+     * Holds the entries per organization, namespace and method.
+     */
+    private final ConcurrentMap<String, Entry> m_entries = new ConcurrentHashMap<String, Entry>();
+    /**
+     * Holds the number of requests that used a cached SOAP node.
+     */
+    private final AtomicLong m_hits = new AtomicLong();
+    /**
+     * Holds the number of removed entries.
+     */
+    private final AtomicLong m_invalidations = new AtomicLong();
+    /**
+     * Holds the number of lookups in the directory.
+     */
+    private final AtomicLong m_misses = new AtomicLong();
+    /**
+     * Holds the total time of the lookups in nanoseconds.
+     */
+    private final AtomicLong m_resolveTime = new AtomicLong();
+    /**
+     * Holds the time to live of an entry in milliseconds.
+     */
+    private volatile long m_ttl;
+
+    /**
+     * Creates a new SOAPNodeCache object.
+     *
+     * @param  ttl  The time to live of an entry in milliseconds. 0 disables the cache.
+     */
+    public SOAPNodeCache(long ttl)
+    {
+        m_ttl = ttl;
+    }
+
+    /**
+     * This method returns the cache that is shared by all LDAPInterface objects.
+     *
+     * @return  The cache.
+     */
+    public static SOAPNodeCache getInstance()
+    {
+        return INSTANCE;
+    }
+
+    /**
+     * This method removes all entries.
+     */
+    public void clear()
+    {
+        m_entries.clear();
+    }
+
+    /**
+     * This method returns the number of requests that used a cached SOAP node.
+     *
+     * @return  The number of hits.
+     */
+    public long getHits()
+    {
+        return m_hits.get();
+    }
+
+    /**
+     * This method returns the number of lookups in the directory.
+     *
+     * @return  The number of misses.
+     */
+    public long getMisses()
+    {
+        return m_misses.get();
+    }
+
+    /**
+     * This method returns the total time of the lookups in the directory.
+     *
+     * @return  The time in nanoseconds.
+     */
+    public long getResolveTime()
+    {
+        return m_resolveTime.get();
+    }
+
+    /**
+     * This method returns the SOAP node that implements the given method. If it is not cached or
+     * the entry has expired, it is looked up with the resolver.
+     *
+     * @param   organization  The DN of the organization.
+     * @param   namespace     The namespace of the method.
+     * @param   methodName    The name of the method.
+     * @param   resolver      The resolver to look up the SOAP node with.
+     *
+     * @return  The DN of the SOAP node.
+     *
+     * @throws  LDAPException  In case the lookup fails.
+     */
+    public String getSOAPNode(String organization, String namespace, String methodName,
+                              ISOAPNodeResolver resolver)
+                       throws LDAPException
+    {
+        if (m_ttl <= 0)
+        {
+            return resolve(organization, namespace, methodName, resolver);
+        }
+
+        String key = getKey(organization, namespace, methodName);
+        Entry entry = m_entries.get(key);
+
+        if (entry == null)
+        {
+            Entry newEntry = new Entry();
+            entry = m_entries.putIfAbsent(key, newEntry);
+
+            if (entry == null)
+            {
+                entry = newEntry;
+            }
+        }
+
+        synchronized (entry)
+        {
+            if ((entry.m_soapNode != null) && (System.currentTimeMillis() < entry.m_expires))
+            {
+                m_hits.incrementAndGet();
+                return entry.m_soapNode;
+            }
+
+            entry.m_soapNode = resolve(organization, namespace, methodName, resolver);
+            entry.m_expires = System.currentTimeMillis() + m_ttl;
+
+            return entry.m_soapNode;
+        }
+    }
+
+    /**
+     * This method removes the entry of the given method, because a request could not be sent to
+     * its SOAP node.
+     *
+     * @param  organization  The DN of the organization.
+     * @param  namespace     The namespace of the method.
+     * @param  methodName    The name of the method.
+     */
+    public void invalidate(String organization, String namespace, String methodName)
+    {
+        if (m_entries.remove(getKey(organization, namespace, methodName)) != null)
+        {
+            m_invalidations.incrementAndGet();
+        }
+    }
+
+    /**
+     * This method sets the time to live. Entries that are cached already keep their expiry time.
+     *
+     * @param  ttl  The time to live of an entry in milliseconds. 0 disables the cache.
+     */
+    public void setTimeToLive(long ttl)
+    {
+        m_ttl = ttl;
+    }
+
+    /**
+     * @see  java.lang.Object#toString()
+     */
+    @Override public String toString()
+    {
+        long misses = m_misses.get();
+        StringBuffer sb = new StringBuffer();
+
+        sb.append("SOAP node cache hits: ").append(m_hits.get());
+        sb.append(", misses: ").append(misses);
+        sb.append(", invalidations: ").append(m_invalidations.get());
+        sb.append(", resolve: ").append((misses == 0) ? 0 : (m_resolveTime.get() / misses / 1000))
+          .append(" us");
+
+        return sb.toString();
+    }
+
+    /**
+     * This method returns the key of an entry.
+     *
+     * @param   organization  The DN of the organization.
+     * @param   namespace     The namespace of the method.
+     * @param   methodName    The name of the method.
+     *
+     * @return  The key.
+     */
+    private static String getKey(String organization, String namespace, String methodName)
+    {
+        return organization + "|" + namespace + "|" + methodName;
+    }
+
+    /**
+     * This method looks up the SOAP node and updates the counters.
+     *
+     * @param   organization  The DN of the organization.
+     * @param   namespace     The namespace of the method.
+     * @param   methodName    The name of the method.
+     * @param   resolver      The resolver.
+     *
+     * @return  The DN of the SOAP node.
+     *
+     * @throws  LDAPException  In case the lookup fails.
+     */
+    private String resolve(String organization, String namespace, String methodName,
+                           ISOAPNodeResolver resolver)
+                    throws LDAPException
+    {
+        long start = System.nanoTime();
+
+        try
+        {
+            return resolver.findSOAPNode(organization, namespace, methodName);
+        }
+        finally
+        {
+            m_misses.incrementAndGet();
+            m_resolveTime.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Holds the cached SOAP node of a method.
+     */
+    private static class Entry
+    {
+        /**
+         * Holds the time the entry expires.
+         */
+        private long m_expires;
+        /**
+         * Holds the DN of the SOAP node. null if it is not looked up yet.
+         */
+        private String m_soapNode;
+    }
+}
@@ -0,0 +1,221 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.util;
+
+/**
+ * This class removes the characters that are not allowed in XML 1.0 from strings and character
+ * arrays. The allowed characters are #x9, #xA, #xD, #x20-#xD7FF, #xE000-#xFFFD and
+ * #x10000-#x10FFFF. The last range is represented in Java by a surrogate pair, so a pair is kept
+ * and a surrogate that is not part of a pair is removed.
+ *
+ * <p>The input is scanned first. When it is clean, which is the normal case for data from SAP,
+ * nothing is copied and a string is returned as is. Otherwise the runs of valid characters
+ * between the invalid ones are moved with System.arraycopy instead of appending every character.
+ * This makes the filter cheap enough to apply to every field of a response.</p>
+ *
+ * @author  pgussow
+ */
+public final class XMLCharacterFilter
+{
+    /**
+     * Utility class, no instances.
+     */
+    private XMLCharacterFilter()
+    {
+    }
+
+    /**
+     * This method returns the index of the first character in the given string that is not
+     * allowed in XML.
+     *
+     * @param   in  The string to check.
+     *
+     * @return  The index of the first invalid character or -1 if all characters are valid.
+     */
+    public static int indexOfInvalid(String in)
+    {
+        int length = in.length();
+
+        for (int i = 0; i < length; i++)
+        {
+            char current = in.charAt(i);
+
+            if (isValidChar(current))
+            {
+                continue;
+            }
+
+            if (Character.isHighSurrogate(current) && ((i + 1) < length) &&
+                    Character.isLowSurrogate(in.charAt(i + 1)))
+            {
+                i++;
+                continue;
+            }
+
+            return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * This method returns the index of the first character in the given range of the array that
+     * is not allowed in XML.
+     *
+     * @param   chars   The characters to check.
+     * @param   offset  The index of the first character.
+     * @param   length  The number of characters.
+     *
+     * @return  The index in the array of the first invalid character or -1 if all characters are
+     *          valid.
+     */
+    public static int indexOfInvalid(char[] chars, int offset, int length)
+    {
+        return findInvalid(chars, offset, offset + length);
+    }
+
+    /**
+     * This method returns the given string without the characters that are not allowed in XML.
+     * If the string is clean it is returned as is. For null an empty string is returned.
+     *
+     * @param   in  The string to filter.
+     *
+     * @return  The filtered string.
+     */
+    public static String strip(String in)
+    {
+        if (in == null)
+        {
+            return "";
+        }
+
+        int invalid = indexOfInvalid(in);
+
+        if (invalid < 0)
+        {
+            return in;
+        }
+
+        char[] chars = in.toCharArray();
+        int length = compact(chars, invalid, chars.length);
+
+        return new String(chars, 0, length);
+    }
+
+    /**
+     * This method removes the characters that are not allowed in XML from the given range of the
+     * array. The remaining characters are moved to the start of the range.
+     *
+     * @param   chars   The characters to filter.
+     * @param   offset  The index of the first character.
+     * @param   length  The number of characters.
+     *
+     * @return  The number of characters that remain.
+     */
+    public static int strip(char[] chars, int offset, int length)
+    {
+        int end = offset + length;
+        int invalid = findInvalid(chars, offset, end);
+
+        if (invalid < 0)
+        {
+            return length;
+        }
+
+        return compact(chars, invalid, end) - offset;
+    }
+
+    /**
+     * This method removes the invalid characters from the array, starting at the first invalid
+     * character. The runs of valid characters are moved in one copy each.
+     *
+     * @param   chars    The characters to filter.
+     * @param   invalid  The index of the first invalid character.
+     * @param   end      The index after the last character.
+     *
+     * @return  The index after the last remaining character.
+     */
+    private static int compact(char[] chars, int invalid, int end)
+    {
+        int returnValue = invalid;
+        int start = invalid + 1;
+
+        while (start < end)
+        {
+            int next = findInvalid(chars, start, end);
+            int runEnd = (next < 0) ? end : next;
+
+            System.arraycopy(chars, start, chars, returnValue, runEnd - start);
+            returnValue += runEnd - start;
+            start = runEnd + 1;
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method returns the index of the first invalid character in the given range.
+     *
+     * @param   chars  The characters to check.
+     * @param   start  The index of the first character.
+     * @param   end    The index after the last character.
+     *
+     * @return  The index of the first invalid character or -1 if all characters are valid.
+     */
+    private static int findInvalid(char[] chars, int start, int end)
+    {
+        for (int i = start; i < end; i++)
+        {
+            char current = chars[i];
+
+            if (isValidChar(current))
+            {
+                continue;
+            }
+
+            if (Character.isHighSurrogate(current) && ((i + 1) < end) &&
+                    Character.isLowSurrogate(chars[i + 1]))
+            {
+                i++;
+                continue;
+            }
+
+            return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * This method returns whether the given character is allowed in XML on its own. Surrogates
+     * are not, they are only allowed as a pair.
+     *
+     * @param   current  The character to check.
+     *
+     * @return  true if the character is allowed.
+     */
+    private static boolean isValidChar(char current)
+    {
+        if (current >= 0x20)
+        {
+            return (current <= 0xD7FF) || ((current >= 0xE000) && (current <= 0xFFFD));
+        }
+
+        return (current == 0x9) || (current == 0xA) || (current == 0xD);
+    }
+}
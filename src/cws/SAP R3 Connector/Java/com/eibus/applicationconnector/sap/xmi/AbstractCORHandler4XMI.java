@@ -102,7 +102,7 @@ abstract public class AbstractCORHandler4XMI implements ICORHandler {
 	protected int sendRequest(int request, String rfmName) throws SAPConnectorException
 	{
 		try{
-		   SAPJCoRequestSender requestSender = new SAPJCoRequestSender(this.getProcessorConfiguration()) ;
+		   SAPJCoRequestSender requestSender = this.getSessionContext().getRequestSender(this.getProcessorConfiguration()) ;
 		   if(logger.isDebugEnabled())
 		   {
 			   logger.debug("XMI/XBP request sent to RFCRequestSender"+ Node.writeToString(request, true)) ;
@@ -2,6 +2,10 @@ package com.eibus.applicationconnector.sap.xmi;
 
 import com.eibus.xml.nom.Node;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 /** This is a utility class to parse XMICall response
  * @author Vamsi Mohan Jayanti
  *
@@ -57,6 +61,15 @@ public class XMICallResponse
 	public static String TAG_FIELD = "FIELD";
 	public static String TAG_SYSTEM = "SYSTEM";
 	
+	/**
+	 * The message class of the XMI interface.
+	 */
+	public static final String XMI_MESSAGE_CLASS = "XM";
+	/**
+	 * The numbers of the XMI messages that report that the session is not logged on (anymore).
+	 */
+	private static final Set<String> SESSION_LOST_NUMBERS = new HashSet<String>(Arrays.asList("028"));
+	
 //	public static XMICallResponse parseResponse(int rfcCallResponseNode)
 //	{
 //		return new XMICallResponse(rfcCallResponseNode) ;
@@ -100,4 +113,22 @@ public class XMICallResponse
 		return false ;
 	}
 
+	/**
+	 * Returns whether the call failed because the XMI session is not logged on, for example because
+	 * SAP ended it after a restart. Business errors of the call return false.
+	 * @param rfcCallResponse
+	 * @return
+	 */
+	public static boolean isSessionLost(int rfcCallResponse)
+	{
+		if(!hasException(rfcCallResponse))
+		{
+			return false ;
+		}
+		int returnNode = Node.getElement(rfcCallResponse, "RETURN");
+		String id = Node.getDataElement(returnNode, TAG_ID, "") ;
+		String number = Node.getDataElement(returnNode, TAG_NUMBER, "") ;
+		return XMI_MESSAGE_CLASS.equalsIgnoreCase(id) && SESSION_LOST_NUMBERS.contains(number) ;
+	}
+
 }
@@ -2,6 +2,7 @@ package com.eibus.applicationconnector.sap.xmi;
 
 import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
 import com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnection;
+import com.eibus.applicationconnector.sap.connection.jco.SAPJCoRequestSender;
 import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
 import com.eibus.applicationconnector.sap.util.BACUtil;
 import com.eibus.xml.nom.Document;
@@ -21,10 +22,12 @@ public class XMISessionContext implements ICORContext
 	int logOffErrorResponse = 0 ;
 	int xmlSessionId ;
 	boolean hasLoggedIn = false;
+	boolean reused = false;
 	String externalUserId ;
 	String extcompany;
 	String extProduct;
 	SAPJCoConnection stateFullConnection;
+	SAPJCoRequestSender requestSender;
 	public int getGetESBRequestNode() {
 		return esbRequestNode;
 	}
@@ -45,6 +48,29 @@ public class XMISessionContext implements ICORContext
 	public void setSessionConnection(SAPJCoConnection stateFullConnection) {
 		this.stateFullConnection = stateFullConnection;
 	}
+	/**
+	 * Returns the sender for the XMI calls. It is created once per session instead of per call.
+	 * @param m_config
+	 * @return
+	 */
+	public SAPJCoRequestSender getRequestSender(ISAPConfiguration m_config) {
+		if (requestSender == null)
+			requestSender = new SAPJCoRequestSender(m_config) ;
+		return requestSender;
+	}
+	public void setRequestSender(SAPJCoRequestSender requestSender) {
+		this.requestSender = requestSender;
+	}
+	/**
+	 * Returns whether the session was logged on by an earlier request and reused by the XMISessionManager.
+	 * @return
+	 */
+	public boolean isReused() {
+		return reused;
+	}
+	public void setReused(boolean reused) {
+		this.reused = reused;
+	}
 	public Document getNomDocument() {
 		return nomDocument;
 	}
@@ -0,0 +1,309 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.eibus.applicationconnector.sap.xmi;
+
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnection;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+
+import com.eibus.util.logger.CordysLogger;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * This class keeps the XMI sessions logged on between requests. An XMI session belongs to the
+ * RFC connection it was logged on with, so the sessions are kept per pooled connection. A
+ * request that gets a connection with a logged on session skips BAPI_XMI_LOGON and does not log
+ * off afterwards, so a status query costs one RFC instead of three.
+ *
+ * <p>A session that has not been used for the idle timeout is logged off and on again the next
+ * time its connection is used. Sessions of connections that are closed end with the connection
+ * and are removed when the connection is garbage collected. An idle timeout of 0 disables the
+ * reuse: every request logs on and off, as before.</p>
+ *
+ * @author  pgussow
+ */
+public class XMISessionManager
+{
+    /**
+     * Holds the logger to use.
+     */
+    private static final CordysLogger LOG = CordysLogger.getCordysLogger(XMISessionManager.class);
+    /**
+     * Holds the number of milliseconds a session may be idle.
+     */
+    private final long m_idleTimeout;
+    /**
+     * Holds the logged on sessions per connection.
+     */
+    private final Map<SAPJCoConnection, Session> m_sessions = new WeakHashMap<SAPJCoConnection,
+                                                                                  Session>();
+
+    /**
+     * Creates a new XMISessionManager object.
+     *
+     * @param  idleTimeout  The number of milliseconds a session may be idle. 0 disables the reuse
+     *                      of sessions.
+     */
+    public XMISessionManager(long idleTimeout)
+    {
+        m_idleTimeout = idleTimeout;
+    }
+
+    /**
+     * This method returns the number of milliseconds a session may be idle.
+     *
+     * @return  The idle timeout. 0 means sessions are not reused.
+     */
+    public long getIdleTimeout()
+    {
+        return m_idleTimeout;
+    }
+
+    /**
+     * This method removes the session of the given connection. It is not logged off.
+     *
+     * @param  connection  The connection.
+     */
+    public void invalidate(SAPJCoConnection connection)
+    {
+        synchronized (m_sessions)
+        {
+            m_sessions.remove(connection);
+        }
+    }
+
+    /**
+     * This method makes sure the connection of the context has a logged on XMI session. If the
+     * connection still has a session that is not idle for too long, it is reused and the context
+     * is marked as reused.
+     *
+     * @param   context  The session context with the connection and the logon details.
+     * @param   config   The configuration of the connector.
+     *
+     * @return  true if the session is logged on. If false the error is available from
+     *          context.getLogInErrorResponse().
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    public boolean logOn(XMISessionContext context, ISAPConfiguration config)
+                  throws SAPConnectorException
+    {
+        SAPJCoConnection connection = context.getSessionConnection();
+        Session session;
+
+        synchronized (m_sessions)
+        {
+            session = m_sessions.remove(connection);
+        }
+
+        if (session != null)
+        {
+            if (session.matches(context) &&
+                    ((System.currentTimeMillis() - session.m_lastUsed) < m_idleTimeout))
+            {
+                if (LOG.isDebugEnabled())
+                {
+                    LOG.debug("Reusing the XMI session of user " + context.getExternalUserId());
+                }
+
+                context.hasLoggedIn = true;
+                context.setReused(true);
+
+                synchronized (m_sessions)
+                {
+                    m_sessions.put(connection, session);
+                }
+                return true;
+            }
+
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("XMI session of user " + session.m_externalUserId +
+                          " expired. Logging off.");
+            }
+
+            // A failed logoff does not matter, because a new logon replaces the session.
+            context.performLogOff(config);
+        }
+
+        return createSession(context, config);
+    }
+
+    /**
+     * This method logs on again after a call on a reused session failed, because SAP ends XMI
+     * sessions on its own, for example when it is restarted. The old session is logged off first,
+     * so it is not left open in SAP when it still exists there.
+     *
+     * @param   context  The session context.
+     * @param   config   The configuration of the connector.
+     *
+     * @return  true if the session is logged on again.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    public boolean reLogOn(XMISessionContext context, ISAPConfiguration config)
+                    throws SAPConnectorException
+    {
+        if (LOG.isDebugEnabled())
+        {
+            LOG.debug("Logging on again for user " + context.getExternalUserId());
+        }
+
+        try
+        {
+            context.performLogOff(config);
+        }
+        catch (SAPConnectorException e)
+        {
+            // The session is most likely gone already, which is why the call failed.
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("Logging off the old XMI session failed: " + e.getMessage());
+            }
+        }
+
+        invalidate(context.getSessionConnection());
+
+        return createSession(context, config);
+    }
+
+    /**
+     * This method is called when the request is done with the session. If sessions are reused
+     * the session stays logged on, otherwise it is logged off.
+     *
+     * @param   context  The session context.
+     * @param   config   The configuration of the connector.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    public void release(XMISessionContext context, ISAPConfiguration config)
+                 throws SAPConnectorException
+    {
+        if (m_idleTimeout <= 0)
+        {
+            context.performLogOff(config);
+            return;
+        }
+
+        synchronized (m_sessions)
+        {
+            Session session = m_sessions.get(context.getSessionConnection());
+
+            if (session != null)
+            {
+                session.m_lastUsed = System.currentTimeMillis();
+            }
+        }
+    }
+
+    /**
+     * This method logs on and registers the new session.
+     *
+     * @param   context  The session context.
+     * @param   config   The configuration of the connector.
+     *
+     * @return  true if the logon was successful.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    private boolean createSession(XMISessionContext context, ISAPConfiguration config)
+                           throws SAPConnectorException
+    {
+        context.setReused(false);
+
+        if (!context.performLogIn(config))
+        {
+            return false;
+        }
+
+        if (m_idleTimeout > 0)
+        {
+            synchronized (m_sessions)
+            {
+                m_sessions.put(context.getSessionConnection(), new Session(context));
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Holds the details of a logged on session.
+     */
+    private static class Session
+    {
+        /**
+         * Holds the external company the session was logged on with.
+         */
+        private final String m_extCompany;
+        /**
+         * Holds the external product the session was logged on with.
+         */
+        private final String m_extProduct;
+        /**
+         * Holds the external user the session was logged on for.
+         */
+        private final String m_externalUserId;
+        /**
+         * Holds the time the session was last used.
+         */
+        private long m_lastUsed;
+
+        /**
+         * Creates a new Session object.
+         *
+         * @param  context  The context that was logged on.
+         */
+        Session(XMISessionContext context)
+        {
+            m_extCompany = context.getExtcompany();
+            m_extProduct = context.getExtProduct();
+            m_externalUserId = context.getExternalUserId();
+            m_lastUsed = System.currentTimeMillis();
+        }
+
+        /**
+         * This method returns whether the session was logged on with the details of the context.
+         *
+         * @param   context  The context.
+         *
+         * @return  true if the session can be used for the context.
+         */
+        boolean matches(XMISessionContext context)
+        {
+            return equals(m_extCompany, context.getExtcompany()) &&
+                   equals(m_extProduct, context.getExtProduct()) &&
+                   equals(m_externalUserId, context.getExternalUserId());
+        }
+
+        /**
+         * This method compares two strings that can be null.
+         *
+         * @param   s1  The first string.
+         * @param   s2  The second string.
+         *
+         * @return  true if both are null or equal.
+         */
+        private static boolean equals(String s1, String s2)
+        {
+            return (s1 == null) ? (s2 == null) : s1.equals(s2);
+        }
+    }
+}
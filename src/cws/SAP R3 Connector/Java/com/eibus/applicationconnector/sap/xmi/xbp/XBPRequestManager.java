@@ -5,6 +5,8 @@ import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
 import com.eibus.applicationconnector.sap.util.BACUtil;
 import com.eibus.applicationconnector.sap.xmi.AbstractCORHandler4XMI;
 import com.eibus.applicationconnector.sap.xmi.XMICallResponse;
+import com.eibus.applicationconnector.sap.xmi.XMISessionManager;
+import com.eibus.util.logger.CordysLogger;
 import com.eibus.xml.nom.Node;
 
 /**
@@ -15,6 +17,8 @@ public class XBPRequestManager
 {
 	XBPSessionContext session ;
 	 private ISAPConfiguration m_config;
+	 private XMISessionManager sessionManager;
+	CordysLogger logger = CordysLogger.getCordysLogger(com.eibus.applicationconnector.sap.xmi.xbp.XBPRequestManager.class);
 	public XBPSessionContext getSession() {
 		if(session == null)
 			session = new XBPSessionContext() ;
@@ -31,14 +35,32 @@ public class XBPRequestManager
 		this.m_config = m_config;
 	}
 	
+	/**
+	 * Returns the manager that keeps the XMI sessions logged on. If the configuration has none,
+	 * every request logs on and off.
+	 * @return
+	 */
+	public XMISessionManager getSessionManager() {
+		if(sessionManager == null)
+		{
+			sessionManager = getM_config().getXMISessionManager();
+			if(sessionManager == null)
+				sessionManager = new XMISessionManager(0) ;
+		}
+		return sessionManager;
+	}
+	public void setSessionManager(XMISessionManager sessionManager) {
+		this.sessionManager = sessionManager;
+	}
+	
 	/**
 	 * This method is the routing hop for all XBP calls
 	 * Does the following in the order:
 	 * 1. Based on the method name it picks the correct handler.
 	 * 2. Validates the request.
-	 * 3. Does XMI login
+	 * 3. Does XMI login, or reuses the session that is still logged on for the connection
 	 * 4. Does request execution.
-	 * 5. Does XMI Logoff
+	 * 5. Releases the session. It is only logged off if sessions are not reused.
 	 * @param request
 	 * @param response
 	 * @param methodImplementation
@@ -50,75 +72,115 @@ public class XBPRequestManager
 		String methodName = Node.getLocalName(request);	
 		if(AbstractCORHandler4XMI.METHOD_NAME_RUN_JOB.equalsIgnoreCase(methodName))
 		{
-			XBPRunJobHandler jobHandler = new XBPRunJobHandler(this.getSession(), this.getM_config(),null) ;
+			final XBPRunJobHandler jobHandler = new XBPRunJobHandler(this.getSession(), this.getM_config(),null) ;
 			if(jobHandler.validateRequest(request))
 			{
-				if(!this.session.performLogIn(getM_config()))
+				if(!getSessionManager().logOn(this.session, getM_config()))
 				{
 					return this.session.getGetESBResponseNode() ;
 				}
-				int runJobResponse = jobHandler.runJob(request);
-				this.session.performLogOff(getM_config());				
-				return runJobResponse ;
-				
+				// Starting a job is not retried: SAP may have started it already.
+				final int jobRequest = request ;
+				try
+				{
+					return execute(new XBPCall() {
+						public int execute() throws SAPConnectorException {
+							return jobHandler.runJob(jobRequest);
+						}
+					}, false);
+				}
+				finally
+				{
+					getSessionManager().release(this.session, getM_config());
+				}
 			}
 		}else if(AbstractCORHandler4XMI.METHOD_NAME_COPY_AND_RUN_JOB.equalsIgnoreCase(methodName))
 		{
 			
 			
-			XBPCopyJobHandler copyJobHandler = new XBPCopyJobHandler(this.getSession(), this.getM_config(),null) ;
+			final XBPCopyJobHandler copyJobHandler = new XBPCopyJobHandler(this.getSession(), this.getM_config(),null) ;
 			
 			if(copyJobHandler.validateRequest(request) )
 			{
-				if(!this.session.performLogIn(getM_config()))
+				if(!getSessionManager().logOn(this.session, getM_config()))
 				{
 					return this.session.getGetESBResponseNode() ;
 				}
 				
-				int copyJobResponse = copyJobHandler.copyJob(request);			
-				if(XMICallResponse.hasException(copyJobResponse))
+				try
 				{
-					this.session.performLogOff(getM_config());
-					return copyJobResponse ;
-				}				
-				String newJobId = copyJobHandler.getResponseJobId(copyJobResponse);
-				BACUtil.deleteNode(copyJobResponse);
-				XBPRunJobHandler runJobHandler = new XBPRunJobHandler(this.getSession(), this.getM_config(),null) ;
-				
-				int runJobResponse = runJobHandler.runFromCopiedJob(newJobId, request,XBPRunJobHandler.isDeferredExecutionAllowed(request)) ;
-				Node.setDataElement(response,"JOBINSTANCEID", newJobId);
-				
-				this.session.performLogOff(getM_config());				
-				return runJobResponse ;
-				
+					// Neither the copy nor the run is retried, because both change the jobs in SAP.
+					final int copyRequest = request ;
+					int copyJobResponse = execute(new XBPCall() {
+						public int execute() throws SAPConnectorException {
+							return copyJobHandler.copyJob(copyRequest);
+						}
+					}, false);
+					if(XMICallResponse.hasException(copyJobResponse))
+					{
+						return copyJobResponse ;
+					}				
+					String newJobId = copyJobHandler.getResponseJobId(copyJobResponse);
+					BACUtil.deleteNode(copyJobResponse);
+					XBPRunJobHandler runJobHandler = new XBPRunJobHandler(this.getSession(), this.getM_config(),null) ;
+					
+					int runJobResponse = runJobHandler.runFromCopiedJob(newJobId, request,XBPRunJobHandler.isDeferredExecutionAllowed(request)) ;
+					Node.setDataElement(response,"JOBINSTANCEID", newJobId);
+					
+					return runJobResponse ;
+				}
+				finally
+				{
+					getSessionManager().release(this.session, getM_config());
+				}
 			}
 			
 		}else if(AbstractCORHandler4XMI.METHOD_NAME_GET_JOBSTATUS.equalsIgnoreCase(methodName))
 		{
-			XBPJobStatusHandler jobHandler = new XBPJobStatusHandler(this.getSession(), this.getM_config(),null) ;
+			final XBPJobStatusHandler jobHandler = new XBPJobStatusHandler(this.getSession(), this.getM_config(),null) ;
 			if(jobHandler.validateRequest(request))
 			{
-				if(!this.session.performLogIn(getM_config()))
+				if(!getSessionManager().logOn(this.session, getM_config()))
 				{
 					return this.session.getGetESBResponseNode() ;
 				}
-				int runJobResponse = jobHandler.getJobStatus(request);
-				this.session.performLogOff(getM_config());				
-				return runJobResponse ;
+				final int statusRequest = request ;
+				try
+				{
+					return execute(new XBPCall() {
+						public int execute() throws SAPConnectorException {
+							return jobHandler.getJobStatus(statusRequest);
+						}
+					}, true);
+				}
+				finally
+				{
+					getSessionManager().release(this.session, getM_config());
+				}
 			}
 			
 		}else if(AbstractCORHandler4XMI.METHOD_NAME_GET_JOBLOGS.equalsIgnoreCase(methodName))
 		{
-			XBPJobLogHandler jobHandler = new XBPJobLogHandler(this.getSession(), this.getM_config(),null) ;
+			final XBPJobLogHandler jobHandler = new XBPJobLogHandler(this.getSession(), this.getM_config(),null) ;
 			if(jobHandler.validateRequest(request))
 			{
-				if(!this.session.performLogIn(getM_config()))
+				if(!getSessionManager().logOn(this.session, getM_config()))
 				{
 					return this.session.getGetESBResponseNode() ;
 				}
-				int runJobResponse = jobHandler.getJobLogs(request);
-				this.session.performLogOff(getM_config());				
-				return runJobResponse ;
+				final int logRequest = request ;
+				try
+				{
+					return execute(new XBPCall() {
+						public int execute() throws SAPConnectorException {
+							return jobHandler.getJobLogs(logRequest);
+						}
+					}, true);
+				}
+				finally
+				{
+					getSessionManager().release(this.session, getM_config());
+				}
 			}
 			
 		}
@@ -139,4 +201,41 @@ public class XBPRequestManager
 	
 	}	
 
+	/**
+	 * Executes the XBP call. SAP reports a session that it ended itself (e.g. after a restart) as an
+	 * ordinary error, so when a reused session returns one of the XMI errors for a missing logon the
+	 * call is retried once after a new logon. Other errors, errors on a session that was just logged
+	 * on and errors of calls that must not run twice are returned as is.
+	 * @param call
+	 * @param idempotent Whether the call may be executed again.
+	 * @return
+	 * @throws SAPConnectorException
+	 */
+	private int execute(XBPCall call, boolean idempotent) throws SAPConnectorException
+	{
+		int response = call.execute();
+		if(idempotent && this.session.isReused() && XMICallResponse.isSessionLost(response))
+		{
+			if (logger.isDebugEnabled())
+			{
+				logger.debug("XBP call failed on a reused XMI session. Retrying after a new logon.");
+			}
+			if(!getSessionManager().reLogOn(this.session, getM_config()))
+			{
+				return response ;
+			}
+			BACUtil.deleteNode(response);
+			response = call.execute();
+		}
+		return response ;
+	}
+	
+	/**
+	 * A call that is executed within the XMI session.
+	 */
+	private interface XBPCall
+	{
+		int execute() throws SAPConnectorException;
+	}
+
 }
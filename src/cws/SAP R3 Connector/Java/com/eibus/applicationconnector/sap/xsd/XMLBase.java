@@ -37,7 +37,7 @@ public class XMLBase
 	// Log messages identifier (usually name of the class)
 	private String logname = null;
 	// The cumulative log, filled by debug() calls
-	private String log = new String();
+	private StringBuilder log = new StringBuilder();
 	// Namespace (String) to prefix (String) mapping
 	private HashMap<String, String> global_namespaces;
 	// Prefix (String) to namespace (String) reverse mapping
@@ -79,7 +79,7 @@ public class XMLBase
 
 	protected void debug(String s)
 	{
-		this.log += "<<" + this.logname + ">>: " + s + "\n";
+		this.log.append("<<").append(this.logname).append(">>: ").append(s).append("\n");
 	}
 
 	private void initDebug(String logname)
@@ -97,7 +97,7 @@ public class XMLBase
 	 */
 	public String getDebug()
 	{
-		return this.log;
+		return this.log.toString();
 	}
 
 	protected String textvalueTr(Node node, String preferred)
@@ -13,6 +13,8 @@ package com.eibus.applicationconnector.sap.xsd;
 
 import java.util.*;
 
+import javax.xml.namespace.*;
+
 /**
  * \brief Class describing an XML Schema tree.
  *
@@ -41,6 +43,10 @@ public class XSDSchema extends XSDSequence
 	private String tns;
 	// Top-level XSDTypes
 	private ArrayList<XSDType> types;
+	// Top-level XSDTypes by qualified name, the first definition wins
+	private HashMap<QName, XSDType> typesbyname;
+	// Top-level XSDTypes by local name, the first definition wins
+	private HashMap<String, XSDType> typesbylocalname;
 	// Top-level XSDSequences describing element and attribute groups
 	private ArrayList<XSDSequence> groups;
 	// Top-level Strings as URLs to not-yet-included include files
@@ -63,6 +69,8 @@ public class XSDSchema extends XSDSequence
 
 		this.tns = null;
 		this.types = new ArrayList<XSDType>();
+		this.typesbyname = new HashMap<QName, XSDType>();
+		this.typesbylocalname = new HashMap<String, XSDType>();
 		this.groups = new ArrayList<XSDSequence>();
 		this.includes = new ArrayList<String>();
 		this.imports = new ArrayList<String>();
@@ -108,19 +116,68 @@ public class XSDSchema extends XSDSequence
 	 * Adds a single top-level type definition.
 	 *
 	 * The type might be simple or complex.
+	 * Named types are also registered for \ref findType and
+	 * \ref findTypeByLocalName, so the name must be set before
+	 * the type is added.
 	 *
 	 * @param xsdtype Type to be added to the schema
 	 */
 	public void addType(XSDType xsdtype)
 	{
 		this.types.add(xsdtype);
+
+		QName name = xsdtype.getName();
+		if(name != null)
+		{
+			if(!this.typesbyname.containsKey(name))
+			{
+				this.typesbyname.put(name, xsdtype);
+			}
+			if(!this.typesbylocalname.containsKey(name.getLocalPart()))
+			{
+				this.typesbylocalname.put(name.getLocalPart(), xsdtype);
+			}
+		}
+	}
+
+	/**
+	 * Returns the top-level type with the given name.
+	 *
+	 * If several types have the same name, the one that was
+	 * added first is returned, like a scan of \ref getTypes would.
+	 * The lookup takes constant time.
+	 *
+	 * @param name Fully-qualified name of the type
+	 *
+	 * @return Type with the given name, or \b null if there is none
+	 */
+	public XSDType findType(QName name)
+	{
+		return this.typesbyname.get(name);
+	}
+
+	/**
+	 * Returns the top-level type with the given local name.
+	 *
+	 * The namespace of the type is ignored. If several types have
+	 * the same local name, the one that was added first is returned.
+	 *
+	 * @param localname Local part of the name of the type
+	 *
+	 * @return Type with the given local name, or \b null if there is none
+	 */
+	public XSDType findTypeByLocalName(String localname)
+	{
+		return this.typesbylocalname.get(localname);
 	}
 
 	/**
 	 * Returns all top-level type definitions.
 	 *
 	 * All types previously added with \ref addType
-	 * are returned here as a list.
+	 * are returned here as a list, in the order they were added.
+	 * The list must not be modified directly, because the lookups
+	 * of \ref findType would not see the change.
 	 *
 	 * @return List of \ref XSDType objects
 	 */
@@ -429,7 +429,7 @@ public class XSDTransformer extends XMLBase
 			{
 				if(xsdtype.getName().getNamespaceURI() != ns_xsd)
 				{
-					if(findType(xsdschema.getTypes(), xsdtype.getName()) != null)
+					if(findType(xsdschema, xsdtype.getName()) != null)
 					{
 						xsdpartial.addType(xsdtype);
 					}
@@ -572,7 +572,7 @@ public class XSDTransformer extends XMLBase
 			XSDType xsdtype = alltypes.get(i);
 			if(xsdtype.getBaseRef() != null)
 			{
-				XSDType xsdref = findType(types, xsdtype.getBaseRef());
+				XSDType xsdref = findType(xsdschema, xsdtype.getBaseRef());
 				if(xsdref != null)
 				{
 					xsdtype.setBaseType(xsdref);
@@ -588,7 +588,7 @@ public class XSDTransformer extends XMLBase
 			for(int j = 0; j < memberrefs.size(); j++)
 			{
 				QName memberref = (QName)memberrefs.get(j);
-				XSDType xsdref = findType(types, memberref);
+				XSDType xsdref = findType(xsdschema, memberref);
 				if(xsdref != null)
 				{
 					xsdtype.addMemberType(xsdref);
@@ -606,7 +606,7 @@ public class XSDTransformer extends XMLBase
 			XSDElement xsdelement = allelements.get(i);
 			if(xsdelement.getTypeRef() != null)
 			{
-				XSDType xsdref = findType(types, xsdelement.getTypeRef());
+				XSDType xsdref = findType(xsdschema, xsdelement.getTypeRef());
 				if(xsdref != null)
 				{
 					xsdelement.setType(xsdref);
@@ -624,7 +624,7 @@ public class XSDTransformer extends XMLBase
 			XSDAttribute xsdattribute = allattributes.get(i);
 			if(xsdattribute.getTypeRef() != null)
 			{
-				XSDType xsdref = findType(types, xsdattribute.getTypeRef());
+				XSDType xsdref = findType(xsdschema, xsdattribute.getTypeRef());
 				if(xsdref != null)
 				{
 					xsdattribute.setType(xsdref);
@@ -746,7 +746,8 @@ public class XSDTransformer extends XMLBase
 
 	// Returns the type object for a XSD type reference string
 	// For built-in types, creates type object ad-hoc!
-	private XSDType findType(ArrayList types, QName ref)
+	// Uses the type registry of the schema instead of scanning its types
+	private XSDType findType(XSDSchema xsdschema, QName ref)
 	{
 		// Built-in types from the XSD specification
 		String ns_xsd = XSDCommon.NAMESPACE_XSD;
@@ -764,14 +765,11 @@ public class XSDTransformer extends XMLBase
 
 			// Look in derived list, might be non-public utility types
 			// FIXME: this will be normal for most types once bootstrapping works
-			for(int j = 0; j < types.size(); j++)
+			XSDType reftype = xsdschema.findType(ref);
+			if(reftype != null)
 			{
-				XSDType reftype = (XSDType)types.get(j);
-				if(ref.equals(reftype.getName()))
-				{
-					debug("+ type (built-in/non-public) " + ref);
-					return reftype;
-				}
+				debug("+ type (built-in/non-public) " + ref);
+				return reftype;
 			}
 
 			debug("Error: type (built-in) " + ref + " not found");
@@ -779,14 +777,11 @@ public class XSDTransformer extends XMLBase
 		}
 
 		// Derived types listed in the schema
-		for(int j = 0; j < types.size(); j++)
+		XSDType reftype = xsdschema.findType(ref);
+		if(reftype != null)
 		{
-			XSDType reftype = (XSDType)types.get(j);
-			if(ref.equals(reftype.getName()))
-			{
-				debug("+ type " + ref);
-				return reftype;
-			}
+			debug("+ type " + ref);
+			return reftype;
 		}
 
 		debug("Error: type " + ref + " not found");
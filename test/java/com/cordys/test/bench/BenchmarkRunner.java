@@ -0,0 +1,359 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs benchmarks and writes the results as JSON. Every benchmark is first run for a number of
+ * warmup operations, so the JIT has compiled the code paths, and then for a number of measured
+ * operations. Each measured operation is timed separately, so the percentiles show the outliers
+ * that an average hides.
+ *
+ * <p>When a baseline result file is given, the throughput of every benchmark is compared with it
+ * and benchmarks that became slower than the allowed tolerance are reported as regressions.</p>
+ *
+ * @author  pgussow
+ */
+public class BenchmarkRunner
+{
+    /**
+     * Holds the pattern to read a result from a result file.
+     */
+    private static final Pattern PATTERN_RESULT = Pattern.compile("\"name\"\\s*:\\s*\"([^\"]*)\"[^}]*" +
+                                                                  "\"opsPerSecond\"\\s*:\\s*([0-9.Ee+-]+)");
+    /**
+     * Holds the number of measured operations.
+     */
+    private final int m_iterations;
+    /**
+     * Holds the results in the order the benchmarks were run.
+     */
+    private final List<Result> m_results = new ArrayList<Result>();
+    /**
+     * Holds the allowed decrease of the throughput as a fraction of the baseline.
+     */
+    private final double m_tolerance;
+    /**
+     * Holds the number of warmup operations.
+     */
+    private final int m_warmup;
+
+    /**
+     * Creates a new BenchmarkRunner object.
+     *
+     * @param  warmup      The number of warmup operations.
+     * @param  iterations  The number of measured operations.
+     * @param  tolerance   The allowed decrease of the throughput compared to the baseline, as a
+     *                     fraction. 0.1 means 10%.
+     */
+    public BenchmarkRunner(int warmup, int iterations, double tolerance)
+    {
+        m_warmup = warmup;
+        m_iterations = iterations;
+        m_tolerance = tolerance;
+    }
+
+    /**
+     * This method reads the throughput per benchmark from a result file.
+     *
+     * @param   file  The result file.
+     *
+     * @return  The operations per second per benchmark name.
+     *
+     * @throws  IOException  In case the file could not be read.
+     */
+    public static Map<String, Double> readResults(File file)
+                                           throws IOException
+    {
+        StringBuilder json = new StringBuilder();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+
+        try
+        {
+            String line;
+
+            while ((line = reader.readLine()) != null)
+            {
+                json.append(line);
+            }
+        }
+        finally
+        {
+            reader.close();
+        }
+
+        Map<String, Double> returnValue = new LinkedHashMap<String, Double>();
+        Matcher matcher = PATTERN_RESULT.matcher(json);
+
+        while (matcher.find())
+        {
+            returnValue.put(matcher.group(1), Double.valueOf(matcher.group(2)));
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method compares the results with the baseline and prints the differences.
+     *
+     * @param   baseline  The baseline result file.
+     *
+     * @return  The names of the benchmarks that regressed.
+     *
+     * @throws  IOException  In case the baseline could not be read.
+     */
+    public List<String> compare(File baseline)
+                         throws IOException
+    {
+        List<String> returnValue = new ArrayList<String>();
+        Map<String, Double> previous = readResults(baseline);
+
+        for (Result result : m_results)
+        {
+            Double before = previous.get(result.m_name);
+
+            if (before == null)
+            {
+                System.out.println(result.m_name + ": not in the baseline");
+                continue;
+            }
+
+            double change = (result.getOpsPerSecond() - before.doubleValue()) /
+                            before.doubleValue();
+            boolean regression = change < -m_tolerance;
+
+            System.out.println(String.format(Locale.US, "%s: %.1f ops/s, baseline %.1f ops/s (%+.1f%%)%s",
+                                             result.m_name, result.getOpsPerSecond(),
+                                             before.doubleValue(), change * 100,
+                                             regression ? " REGRESSION" : ""));
+
+            if (regression)
+            {
+                returnValue.add(result.m_name);
+            }
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method runs the benchmark and records the result. If the setup fails the benchmark is
+     * skipped.
+     *
+     * @param   benchmark  The benchmark to run.
+     *
+     * @throws  Exception  In case an operation fails.
+     */
+    public void run(IBenchmark benchmark)
+             throws Exception
+    {
+        try
+        {
+            benchmark.setUp();
+        }
+        catch (UnsupportedOperationException e)
+        {
+            System.out.println(benchmark.getName() + ": skipped, " + e.getMessage());
+            return;
+        }
+
+        try
+        {
+            for (int i = 0; i < m_warmup; i++)
+            {
+                benchmark.run();
+            }
+
+            long[] times = new long[m_iterations];
+            long start = System.nanoTime();
+
+            for (int i = 0; i < m_iterations; i++)
+            {
+                long operationStart = System.nanoTime();
+                benchmark.run();
+                times[i] = System.nanoTime() - operationStart;
+            }
+
+            Result result = new Result(benchmark.getName(), times, System.nanoTime() - start);
+            m_results.add(result);
+
+            System.out.println(result);
+        }
+        finally
+        {
+            benchmark.tearDown();
+        }
+    }
+
+    /**
+     * This method writes the results as JSON.
+     *
+     * @param   file  The file to write.
+     *
+     * @throws  IOException  In case the file could not be written.
+     */
+    public void write(File file)
+               throws IOException
+    {
+        PrintWriter out = new PrintWriter(new FileWriter(file));
+
+        try
+        {
+            out.println("{");
+            out.println("  \"warmup\": " + m_warmup + ",");
+            out.println("  \"iterations\": " + m_iterations + ",");
+            out.println("  \"java\": \"" + System.getProperty("java.version") + "\",");
+            out.println("  \"results\": [");
+
+            for (int i = 0; i < m_results.size(); i++)
+            {
+                out.print("    " + m_results.get(i).toJSON());
+                out.println((i < (m_results.size() - 1)) ? "," : "");
+            }
+
+            out.println("  ]");
+            out.println("}");
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Holds the measurements of one benchmark.
+     */
+    private static class Result
+    {
+        /**
+         * Holds the name of the benchmark.
+         */
+        private final String m_name;
+        /**
+         * Holds the sorted operation times in nanoseconds.
+         */
+        private final long[] m_times;
+        /**
+         * Holds the total time in nanoseconds.
+         */
+        private final long m_total;
+
+        /**
+         * Creates a new Result object.
+         *
+         * @param  name   The name of the benchmark.
+         * @param  times  The operation times in nanoseconds.
+         * @param  total  The total time in nanoseconds.
+         */
+        Result(String name, long[] times, long total)
+        {
+            m_name = name;
+            m_times = times;
+            m_total = total;
+
+            Arrays.sort(m_times);
+        }
+
+        /**
+         * This method returns the number of operations per second.
+         *
+         * @return  The throughput.
+         */
+        public double getOpsPerSecond()
+        {
+            return (m_times.length * 1000000000.0) / Math.max(1, m_total);
+        }
+
+        /**
+         * This method returns the results as a JSON object.
+         *
+         * @return  The JSON object.
+         */
+        public String toJSON()
+        {
+            return String.format(Locale.US,
+                                 "{\"name\": \"%s\", \"operations\": %d, \"opsPerSecond\": %.3f, " +
+                                 "\"meanMicros\": %.3f, \"p50Micros\": %.3f, \"p90Micros\": %.3f, " +
+                                 "\"p99Micros\": %.3f, \"maxMicros\": %.3f}", m_name,
+                                 m_times.length, getOpsPerSecond(), getMean(), percentile(0.5),
+                                 percentile(0.9), percentile(0.99), percentile(1));
+        }
+
+        /**
+         * @see  java.lang.Object#toString()
+         */
+        @Override public String toString()
+        {
+            return String.format(Locale.US,
+                                 "%s: %.1f ops/s, mean %.1f us, p50 %.1f us, p90 %.1f us, p99 %.1f us",
+                                 m_name, getOpsPerSecond(), getMean(), percentile(0.5),
+                                 percentile(0.9), percentile(0.99));
+        }
+
+        /**
+         * This method returns the mean operation time.
+         *
+         * @return  The mean in microseconds.
+         */
+        private double getMean()
+        {
+            double sum = 0;
+
+            for (long time : m_times)
+            {
+                sum += time;
+            }
+
+            return sum / Math.max(1, m_times.length) / 1000;
+        }
+
+        /**
+         * This method returns the operation time at the given percentile.
+         *
+         * @param   fraction  The percentile as a fraction.
+         *
+         * @return  The time in microseconds.
+         */
+        private double percentile(double fraction)
+        {
+            if (m_times.length == 0)
+            {
+                return 0;
+            }
+
+            int index = (int) Math.ceil(fraction * m_times.length) - 1;
+
+            return m_times[Math.max(0, Math.min(index, m_times.length - 1))] / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.bench;
+
+/**
+ * A benchmark that is run by the BenchmarkRunner.
+ *
+ * @author  pgussow
+ */
+public interface IBenchmark
+{
+    /**
+     * This method returns the name under which the results are reported.
+     *
+     * @return  The name of the benchmark.
+     */
+    String getName();
+
+    /**
+     * This method executes one operation. Only this method is measured.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    void run()
+      throws Exception;
+
+    /**
+     * This method prepares the benchmark. It is called once before the warmup.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    void setUp()
+        throws Exception;
+
+    /**
+     * This method cleans up the benchmark. It is called once after the measurement.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    void tearDown()
+           throws Exception;
+}
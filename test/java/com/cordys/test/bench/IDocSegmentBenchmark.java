@@ -0,0 +1,346 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.bench;
+
+import com.eibus.applicationconnector.sap.connection.jco.IDocSegmentBuilder;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.util.logger.config.LoggerConfigurator;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Find;
+import com.eibus.xml.nom.Node;
+
+import com.sap.mw.idoc.IDoc;
+import com.sap.mw.idoc.jco.JCoIDoc;
+
+import java.io.File;
+
+/**
+ * Benchmark for filling the segments of an outbound IDoc. An IDoc of the recording is grown to
+ * 10, 1,000 and 50,000 segments by repeating its first segment, and the segments are then added
+ * both the old way, where every segment element is written to a string and parsed by
+ * IDoc.Segment.fromXML(), and with the IDocSegmentBuilder. Before the timing the documents of
+ * both ways are compared.
+ *
+ * <p>Usage: IDocSegmentBenchmark [recording folder]. The recording needs the IDoc repository and
+ * at least one IDoc, see LocalSAPSystem.</p>
+ *
+ * @author  pgussow
+ */
+public class IDocSegmentBenchmark
+{
+    /**
+     * Holds the name of the control record in the requests.
+     */
+    private static final String CONTROL_RECORD = "EDI_DC40";
+    /**
+     * Holds the number of segments of the IDocs that are measured.
+     */
+    private static final int[] SEGMENTS = { 10, 1000, 50000 };
+    /**
+     * Holds the number of segments that is filled per measurement of a size.
+     */
+    private static final int SEGMENTS_PER_MEASUREMENT = 500000;
+    /**
+     * Holds the NOM document.
+     */
+    private Document m_doc = new Document();
+    /**
+     * Holds the IDoc type.
+     */
+    private String m_idocType;
+    /**
+     * Holds the IDoc repository.
+     */
+    private IDoc.Repository m_repository;
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        IDocSegmentBenchmark isb = new IDocSegmentBenchmark();
+
+        try
+        {
+            LoggerConfigurator.initLogger("./test/Log4jConfiguration.xml");
+
+            LocalSAPSystem local = new LocalSAPSystem(new File((saArguments.length > 0)
+                                                                ? saArguments[0]
+                                                                : "./test/java/com/cordys/test/bench/recording"),
+                                                      0);
+            File[] idocFiles = local.getRecordedFiles(LocalSAPSystem.FOLDER_IDOCS);
+
+            if ((local.getIDOCRepository() == null) || (idocFiles.length == 0))
+            {
+                throw new Exception("The recording contains no IDocs");
+            }
+
+            isb.m_repository = local.getIDOCRepository();
+            isb.m_idocType = idocFiles[0].getName().replaceFirst("\\.xml$", "");
+
+            int request = isb.m_doc.load(idocFiles[0].getPath());
+
+            try
+            {
+                for (int segments : SEGMENTS)
+                {
+                    isb.measure(Node.getFirstChildElement(request), segments);
+                }
+            }
+            finally
+            {
+                BACUtil.deleteNode(request);
+            }
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This method adds the segments the way it was done before the IDocSegmentBuilder: the IDoc
+     * element is copied and every segment element is serialized and parsed by fromXML.
+     *
+     * @param  root      The root segment.
+     * @param  idocNode  The IDoc element.
+     */
+    private static void addSegmentsWithXML(IDoc.Segment root, int idocNode)
+    {
+        int copy = Node.duplicate(idocNode);
+
+        try
+        {
+            addSegmentsWithXML(root, root.getSegmentMetaData(), copy);
+        }
+        finally
+        {
+            BACUtil.deleteNode(copy);
+        }
+    }
+
+    /**
+     * This method adds the child segments of the given segment with fromXML.
+     *
+     * @param  parentSegment          The segment to add the children to.
+     * @param  parentSegmentMetadata  The metadata of the segment.
+     * @param  correspondingNode      The element of the segment.
+     */
+    private static void addSegmentsWithXML(IDoc.Segment parentSegment,
+                                           IDoc.SegmentMetaData parentSegmentMetadata,
+                                           int correspondingNode)
+    {
+        for (int i = 0; i < parentSegmentMetadata.getNumChildren(); i++)
+        {
+            IDoc.SegmentMetaData childSegmentMetadata = parentSegmentMetadata.getChild(i);
+            String childSegmentType = childSegmentMetadata.getType();
+            int[] segmentNodes = Find.match(correspondingNode,
+                                            "<" + Node.getName(correspondingNode) + "><" +
+                                            childSegmentType + ">");
+
+            for (int segmentNode : segmentNodes)
+            {
+                JCoIDoc.JCoSegment childSegment = (JCoIDoc.JCoSegment) parentSegment.addChild(childSegmentType);
+                addSegmentsWithXML(childSegment, childSegmentMetadata, segmentNode);
+                childSegment.fromXML(Node.writeToString(segmentNode, false));
+                BACUtil.deleteNode(segmentNode);
+            }
+        }
+    }
+
+    /**
+     * This method returns the number of segment elements in the given segment element, including
+     * the element itself.
+     *
+     * @param   metaData  The metadata of the segment.
+     * @param   node      The segment element.
+     *
+     * @return  The number of segments.
+     */
+    private static int countSegments(IDoc.SegmentMetaData metaData, int node)
+    {
+        int returnValue = 1;
+
+        for (int i = 0; i < metaData.getNumChildren(); i++)
+        {
+            IDoc.SegmentMetaData childMetaData = metaData.getChild(i);
+
+            for (int child = Node.getFirstElement(node); child != 0;
+                     child = Node.getNextElement(child))
+            {
+                if (Node.getLocalName(child).equals(childMetaData.getType()))
+                {
+                    returnValue += countSegments(childMetaData, child);
+                }
+            }
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method creates an empty IDoc of the recorded type.
+     *
+     * @return  The IDoc.
+     */
+    private JCoIDoc.JCoDocument createDocument()
+    {
+        return (JCoIDoc.JCoDocument) JCoIDoc.createDocument(m_repository, m_idocType);
+    }
+
+    /**
+     * This method creates an IDoc element with at least the given number of segments by repeating
+     * the first segment of the recorded IDoc.
+     *
+     * @param   idocNode  The recorded IDoc element.
+     * @param   segments  The minimum number of segments.
+     *
+     * @return  The IDoc element.
+     *
+     * @throws  Exception  In case the recorded IDoc has no segments.
+     */
+    private int createRequest(int idocNode, int segments)
+                       throws Exception
+    {
+        IDoc.SegmentMetaData rootMetaData = createDocument().getRootSegment().getSegmentMetaData();
+        int returnValue = m_doc.createElement(Node.getName(idocNode));
+
+        Node.duplicateAndAppendToChildren(Node.getElement(idocNode, CONTROL_RECORD),
+                                          Node.getElement(idocNode, CONTROL_RECORD), returnValue);
+
+        for (int i = 0; i < rootMetaData.getNumChildren(); i++)
+        {
+            IDoc.SegmentMetaData metaData = rootMetaData.getChild(i);
+            int segmentNode = Node.getElement(idocNode, metaData.getType());
+
+            if (segmentNode != 0)
+            {
+                int perCopy = countSegments(metaData, segmentNode);
+
+                for (int count = 0; count < segments; count += perCopy)
+                {
+                    Node.duplicateAndAppendToChildren(segmentNode, segmentNode, returnValue);
+                }
+
+                return returnValue;
+            }
+        }
+
+        BACUtil.deleteNode(returnValue);
+        throw new Exception("The recorded IDoc of type " + m_idocType + " has no segments");
+    }
+
+    /**
+     * This method fills an IDoc of the given size both ways, checks that the results are the same
+     * and prints the time per IDoc and per segment.
+     *
+     * @param   idocNode  The recorded IDoc element.
+     * @param   segments  The number of segments.
+     *
+     * @throws  Exception  In case the results differ.
+     */
+    private void measure(int idocNode, int segments)
+                  throws Exception
+    {
+        int request = createRequest(idocNode, segments);
+
+        try
+        {
+            JCoIDoc.JCoDocument expected = createDocument();
+            JCoIDoc.JCoDocument actual = createDocument();
+
+            addSegmentsWithXML(expected.getRootSegment(), request);
+            IDocSegmentBuilder.addSegments(actual.getRootSegment(), request);
+
+            if (!expected.toXML().equals(actual.toXML()))
+            {
+                throw new Exception("The segments of the builder differ from the fromXML segments for " +
+                                    segments + " segments");
+            }
+
+            int iterations = Math.max(3, SEGMENTS_PER_MEASUREMENT / segments);
+
+            for (int pass = 0; pass < 2; pass++)
+            {
+                boolean measured = pass == 1;
+                long xml = time(request, false, measured ? iterations : (iterations / 5) + 1);
+                long direct = time(request, true, measured ? iterations : (iterations / 5) + 1);
+
+                if (measured)
+                {
+                    print("idocsegments.xml", segments, iterations, xml);
+                    print("idocsegments.builder", segments, iterations, direct);
+                }
+            }
+        }
+        finally
+        {
+            BACUtil.deleteNode(request);
+        }
+    }
+
+    /**
+     * This method prints the result of a measurement.
+     *
+     * @param  name        The name of the measurement.
+     * @param  segments    The number of segments per IDoc.
+     * @param  iterations  The number of IDocs that were filled.
+     * @param  nanos       The elapsed time in nanoseconds.
+     */
+    private void print(String name, int segments, int iterations, long nanos)
+    {
+        System.out.println(name + "." + segments + ": " + iterations + " IDocs, " +
+                           ((nanos / iterations) / 1000) + " us per IDoc, " +
+                           (nanos / ((long) iterations * segments)) + " ns per segment");
+    }
+
+    /**
+     * This method fills the given number of IDocs and returns the elapsed time.
+     *
+     * @param   request     The IDoc element.
+     * @param   builder     Whether the IDocSegmentBuilder is used.
+     * @param   iterations  The number of IDocs to fill.
+     *
+     * @return  The elapsed time in nanoseconds.
+     */
+    private long time(int request, boolean builder, int iterations)
+    {
+        long start = System.nanoTime();
+
+        for (int i = 0; i < iterations; i++)
+        {
+            JCoIDoc.JCoDocument idoc = createDocument();
+
+            if (builder)
+            {
+                IDocSegmentBuilder.addSegments(idoc.getRootSegment(), request);
+            }
+            else
+            {
+                addSegmentsWithXML(idoc.getRootSegment(), request);
+            }
+        }
+
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,770 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.bench;
+
+import com.eibus.applicationconnector.sap.SAPConnectorConstants;
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.connection.jco.FunctionTemplateCache;
+import com.eibus.applicationconnector.sap.connection.jco.IDocNumberResolver;
+import com.eibus.applicationconnector.sap.connection.jco.JCoNOMMarshaller;
+import com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnection;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.idoc.IDocDispatcher;
+import com.eibus.applicationconnector.sap.idoc.IDocPipeline;
+import com.eibus.applicationconnector.sap.idoc.IDocStatistics;
+import com.eibus.applicationconnector.sap.idoc.SAPIDocServer;
+import com.eibus.applicationconnector.sap.request.OLEDBRequestSender;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+import com.eibus.applicationconnector.sap.xmi.XMISessionManager;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Node;
+
+import com.sap.mw.idoc.IDoc;
+import com.sap.mw.idoc.jco.JCoIDoc;
+import com.sap.mw.jco.IFunctionTemplate;
+import com.sap.mw.jco.IRepository;
+import com.sap.mw.jco.JCO;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for a SAP system. It serves function templates and canned responses that
+ * were recorded once from a real system with RecordSAPSystem, so the connector code can be
+ * measured without a SAP system, gateway or database. Every call to SAP or to the database waits
+ * the configured latency.
+ *
+ * <p>A recording folder contains:</p>
+ *
+ * <ul>
+ *   <li>templates.ser: the function templates, stored with Java serialization.</li>
+ *   <li>idocrepository.ser: the IDoc repository with the metadata of the recorded IDoc types.
+ *     It is optional; without it the IDoc benchmarks are skipped.</li>
+ *   <li>requests/&lt;RFC&gt;.xml: the requests that were sent to SAP.</li>
+ *   <li>responses/&lt;RFC&gt;.xml: the responses SAP returned for them.</li>
+ *   <li>idocs/&lt;IDOCTYPE&gt;.xml: IDocs in the XML format of the connector.</li>
+ * </ul>
+ *
+ * <p>The native JCo libraries must be on the library path, because the JCo classes load them.
+ * No connection is ever opened.</p>
+ *
+ * @author  pgussow
+ */
+public class LocalSAPSystem
+{
+    /**
+     * Holds the name of the file with the function templates.
+     */
+    public static final String FILE_TEMPLATES = "templates.ser";
+    /**
+     * Holds the name of the file with the IDoc repository.
+     */
+    public static final String FILE_IDOC_REPOSITORY = "idocrepository.ser";
+    /**
+     * Holds the DN of the SOAP node the IDocs are dispatched to.
+     */
+    public static final String TARGET_SOAP_NODE = "cn=Local IDoc Target,cn=soap nodes," +
+                                                   "o=system,cn=cordys,cn=local";
+    /**
+     * Holds the name of the folder with the requests.
+     */
+    public static final String FOLDER_REQUESTS = "requests";
+    /**
+     * Holds the name of the folder with the responses.
+     */
+    public static final String FOLDER_RESPONSES = "responses";
+    /**
+     * Holds the name of the folder with the IDocs.
+     */
+    public static final String FOLDER_IDOCS = "idocs";
+    /**
+     * Holds the number of calls that were made to SAP or the database.
+     */
+    private final AtomicLong m_calls = new AtomicLong();
+    /**
+     * Holds the document with the canned responses.
+     */
+    private final Document m_doc = new Document();
+    /**
+     * Holds the IDoc repository, if it was recorded.
+     */
+    private IDoc.Repository m_idocRepository;
+    /**
+     * Holds the latency of a call in milliseconds.
+     */
+    private final long m_latency;
+    /**
+     * Holds the recording folder.
+     */
+    private final File m_folder;
+    /**
+     * Holds the repository that serves the recorded templates.
+     */
+    private final IRepository m_repository;
+    /**
+     * Holds the number of milliseconds an XMI session may be idle.
+     */
+    private static final long XMI_SESSION_TIMEOUT = 300000;
+    /**
+     * Holds the canned response per RFC.
+     */
+    private final Map<String, Integer> m_responses = new HashMap<String, Integer>();
+    /**
+     * Holds the recorded function templates per RFC.
+     */
+    private final Map<String, IFunctionTemplate> m_templates;
+    /**
+     * Holds the last transaction ID that was handed out.
+     */
+    private final AtomicLong m_tid = new AtomicLong();
+
+    /**
+     * Creates a new LocalSAPSystem object.
+     *
+     * @param   folder   The recording folder.
+     * @param   latency  The latency of a call in milliseconds.
+     *
+     * @throws  Exception  In case the recording could not be read.
+     */
+    @SuppressWarnings("unchecked")
+    public LocalSAPSystem(File folder, long latency)
+                   throws Exception
+    {
+        m_folder = folder;
+        m_latency = latency;
+        m_templates = (Map<String, IFunctionTemplate>) readObject(new File(folder, FILE_TEMPLATES));
+
+        File idocRepository = new File(folder, FILE_IDOC_REPOSITORY);
+
+        if (idocRepository.exists())
+        {
+            m_idocRepository = (IDoc.Repository) readObject(idocRepository);
+        }
+
+        File[] responses = new File(folder, FOLDER_RESPONSES).listFiles();
+
+        if (responses != null)
+        {
+            for (File response : responses)
+            {
+                String rfcName = response.getName().replaceFirst("\\.xml$", "");
+                m_responses.put(rfcName, m_doc.load(response.getPath()));
+            }
+        }
+
+        m_repository = (IRepository) Proxy.newProxyInstance(IRepository.class.getClassLoader(),
+                                                            new Class[] { IRepository.class },
+                                                            new InvocationHandler()
+            {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    if (method.getName().equals("getFunctionTemplate"))
+                    {
+                        return getFunctionTemplate((String) args[0]);
+                    }
+                    else if (method.getName().equals("getName"))
+                    {
+                        return "LOCAL";
+                    }
+                    else if (method.getName().equals("removeFunctionTemplateFromCache"))
+                    {
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    /**
+     * This method writes an object with Java serialization.
+     *
+     * @param   file    The file to write.
+     * @param   object  The object to write.
+     *
+     * @throws  IOException  In case of any exceptions
+     */
+    public static void writeObject(File file, Object object)
+                            throws IOException
+    {
+        ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
+
+        try
+        {
+            out.writeObject(object);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * This method reads an object that was written with Java serialization.
+     *
+     * @param   file  The file to read.
+     *
+     * @return  The object.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private static Object readObject(File file)
+                              throws Exception
+    {
+        ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
+
+        try
+        {
+            return in.readObject();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * This method creates a configuration that uses the local system. Methods that are not
+     * needed offline return empty values.
+     *
+     * @return  The configuration.
+     */
+    public ISAPConfiguration createConfiguration()
+    {
+        final FunctionTemplateCache templateCache = new FunctionTemplateCache(m_repository, 500,
+                                                                              0);
+        final XMISessionManager sessionManager = new XMISessionManager(XMI_SESSION_TIMEOUT);
+        // The resolver needs the configuration itself, so it is created on first use.
+        final IDocNumberResolver[] numberResolver = new IDocNumberResolver[1];
+
+        return (ISAPConfiguration) Proxy.newProxyInstance(ISAPConfiguration.class.getClassLoader(),
+                                                          new Class[] { ISAPConfiguration.class },
+                                                          new InvocationHandler()
+            {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    String name = method.getName();
+
+                    if (name.equals("getRepository"))
+                    {
+                        return m_repository;
+                    }
+                    else if (name.equals("getIDOCRepository"))
+                    {
+                        return m_idocRepository;
+                    }
+                    else if (name.equals("getFunctionTemplateCache"))
+                    {
+                        return templateCache;
+                    }
+                    else if (name.equals("getXMISessionManager"))
+                    {
+                        return sessionManager;
+                    }
+                    else if (name.equals("getIDocNumberResolver"))
+                    {
+                        synchronized (numberResolver)
+                        {
+                            if (numberResolver[0] == null)
+                            {
+                                numberResolver[0] = new IDocNumberResolver((ISAPConfiguration) proxy,
+                                                                           false, 100, 1000);
+                            }
+                            return numberResolver[0];
+                        }
+                    }
+                    else if (name.equals("getServiceGroup"))
+                    {
+                        return "cn=SAP Group,cn=soap nodes,o=system,cn=cordys,cn=local";
+                    }
+                    else if (name.equals("getOrganization"))
+                    {
+                        return "o=system,cn=cordys,cn=local";
+                    }
+
+                    Class<?> returnType = method.getReturnType();
+
+                    if (returnType == String.class)
+                    {
+                        return "";
+                    }
+                    else if (returnType == boolean.class)
+                    {
+                        return Boolean.FALSE;
+                    }
+                    else if (returnType == int.class)
+                    {
+                        return 0;
+                    }
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * This method creates a connection to the local system.
+     *
+     * @param   config  The configuration.
+     *
+     * @return  The connection.
+     */
+    public SAPJCoConnection createConnection(ISAPConfiguration config)
+    {
+        return new LocalConnection(config);
+    }
+
+    /**
+     * This method creates an IDoc listener that stores and dispatches the IDocs in the local
+     * system. It is never started; IDocs are handed to it with LocalIDocServer.receive.
+     *
+     * @param   config    The configuration.
+     * @param   pipeline  The pipeline to process the IDocs with. If null the IDocs are processed
+     *                    by the calling thread.
+     *
+     * @return  The IDoc listener.
+     *
+     * @throws  SAPConnectorException  In case of any exceptions
+     */
+    public LocalIDocServer createIDocServer(ISAPConfiguration config, IDocPipeline pipeline)
+                                     throws SAPConnectorException
+    {
+        return new LocalIDocServer(config, pipeline);
+    }
+
+    /**
+     * This method creates a pipeline whose workers dispatch the IDocs in the local system.
+     *
+     * @param   config     The configuration.
+     * @param   workers    The number of worker threads.
+     * @param   queueSize  The capacity of the queue of each worker.
+     *
+     * @return  The pipeline. It still has to be started.
+     */
+    public IDocPipeline createIDocPipeline(final ISAPConfiguration config, int workers,
+                                           int queueSize)
+    {
+        return new IDocPipeline(config, workers, queueSize)
+            {
+                @Override protected IDocDispatcher createDispatcher()
+                {
+                    return new LocalDispatcher(config, createOLEDBRequestSender(), new Document(),
+                                               getStatistics());
+                }
+            };
+    }
+
+    /**
+     * This method creates a sender that stores IDocs in the local system instead of the database.
+     *
+     * @return  The sender.
+     */
+    public OLEDBRequestSender createOLEDBRequestSender()
+    {
+        return new LocalDatabase();
+    }
+
+    /**
+     * This method returns the number of calls that were made to SAP or the database.
+     *
+     * @return  The number of calls.
+     */
+    public long getCalls()
+    {
+        return m_calls.get();
+    }
+
+    /**
+     * This method returns the recorded function template.
+     *
+     * @param   rfcName  The name of the RFC.
+     *
+     * @return  The function template.
+     */
+    public IFunctionTemplate getFunctionTemplate(String rfcName)
+    {
+        IFunctionTemplate returnValue = m_templates.get(rfcName);
+
+        if (returnValue == null)
+        {
+            throw new IllegalArgumentException("No template recorded for " + rfcName);
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method returns the recorded IDoc repository.
+     *
+     * @return  The IDoc repository or null if it was not recorded.
+     */
+    public IDoc.Repository getIDOCRepository()
+    {
+        return m_idocRepository;
+    }
+
+    /**
+     * This method returns the files in a folder of the recording.
+     *
+     * @param   name  The name of the folder.
+     *
+     * @return  The files. If the folder does not exist an empty array is returned.
+     */
+    public File[] getRecordedFiles(String name)
+    {
+        File[] returnValue = new File(m_folder, name).listFiles();
+
+        return (returnValue == null) ? new File[0] : returnValue;
+    }
+
+    /**
+     * This method returns the repository that serves the recorded templates.
+     *
+     * @return  The repository.
+     */
+    public IRepository getRepository()
+    {
+        return m_repository;
+    }
+
+    /**
+     * This method replaces the canned response of an RFC.
+     *
+     * @param  rfcName   The name of the RFC.
+     * @param  response  The response. If 0 the RFC returns an empty response.
+     */
+    public void setResponse(String rfcName, int response)
+    {
+        if (response == 0)
+        {
+            m_responses.remove(rfcName);
+        }
+        else
+        {
+            m_responses.put(rfcName, response);
+        }
+    }
+
+    /**
+     * This method simulates the time a call to SAP or the database takes.
+     */
+    void call()
+    {
+        m_calls.incrementAndGet();
+
+        if (m_latency > 0)
+        {
+            try
+            {
+                Thread.sleep(m_latency);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * This method fills the record with the canned response of the RFC.
+     *
+     * @param  rfcName  The name of the RFC.
+     * @param  record   The record to fill.
+     */
+    private void fillResponse(String rfcName, JCO.Record record)
+    {
+        Integer response = m_responses.get(rfcName);
+
+        if (response != null)
+        {
+            JCoNOMMarshaller.fillRecord(record, response.intValue());
+        }
+    }
+
+    /**
+     * IDoc listener that receives the IDocs without a gateway.
+     */
+    public class LocalIDocServer extends SAPIDocServer
+    {
+        /**
+         * Creates a new LocalIDocServer object.
+         *
+         * @param   config    The configuration.
+         * @param   pipeline  The pipeline to process the IDocs with.
+         *
+         * @throws  SAPConnectorException  In case of any exceptions
+         */
+        LocalIDocServer(ISAPConfiguration config, IDocPipeline pipeline)
+                 throws SAPConnectorException
+        {
+            super("local", "local", "local", m_repository, m_idocRepository, config, pipeline);
+        }
+
+        /**
+         * This method handles one transactional call with IDocs, as the JCo server does.
+         *
+         * @param   idocList  The IDocs.
+         * @param   tid       The transaction ID.
+         *
+         * @throws  Exception  In case of any exceptions
+         */
+        public void receive(IDoc.DocumentList idocList, String tid)
+                     throws Exception
+        {
+            if (onCheckTID(tid))
+            {
+                handleRequest(idocList);
+                onCommit(tid);
+                onConfirmTID(tid);
+            }
+        }
+
+        /**
+         * @see  SAPIDocServer#createDispatcher(ISAPConfiguration, OLEDBRequestSender, Document,
+         *       IDocStatistics)
+         */
+        @Override protected IDocDispatcher createDispatcher(ISAPConfiguration configuration,
+                                                            OLEDBRequestSender oleDBRequestSender,
+                                                            Document document,
+                                                            IDocStatistics statistics)
+        {
+            return new LocalDispatcher(configuration, oleDBRequestSender, document, statistics);
+        }
+
+        /**
+         * @see  SAPIDocServer#createOLEDBRequestSender(ISAPConfiguration)
+         */
+        @Override protected OLEDBRequestSender createOLEDBRequestSender(
+                                                            ISAPConfiguration configuration)
+        {
+            return LocalSAPSystem.this.createOLEDBRequestSender();
+        }
+    }
+
+    /**
+     * Connection that executes the functions against the recording.
+     */
+    private class LocalConnection extends SAPJCoConnection
+    {
+        /**
+         * Creates a new LocalConnection object.
+         *
+         * @param  config  The configuration.
+         */
+        LocalConnection(ISAPConfiguration config)
+        {
+            super(config, "local", "local");
+        }
+
+        /**
+         * @see  com.sap.mw.jco.JCO$Client#confirmTID(java.lang.String)
+         */
+        @Override public void confirmTID(String tid)
+        {
+            call();
+        }
+
+        /**
+         * @see  com.sap.mw.jco.JCO$Client#connect()
+         */
+        @Override public void connect()
+        {
+        }
+
+        /**
+         * @see  com.sap.mw.jco.JCO$Client#createTID()
+         */
+        @Override public String createTID()
+        {
+            call();
+
+            String tid = "0000000000000000000000" + m_tid.incrementAndGet();
+            return tid.substring(tid.length() - 24);
+        }
+
+        /**
+         * @see  com.sap.mw.jco.JCO$Client#disconnect()
+         */
+        @Override public void disconnect()
+        {
+        }
+
+        /**
+         * @see  com.sap.mw.jco.JCO$Client#execute(com.sap.mw.jco.JCO$Function)
+         */
+        @Override public void execute(JCO.Function function)
+        {
+            call();
+
+            fillResponse(function.getName(), function.getExportParameterList());
+            fillResponse(function.getName(), function.getTableParameterList());
+        }
+
+        /**
+         * A transactional call does not return anything, as in SAP.
+         *
+         * @see  com.sap.mw.jco.JCO$Client#execute(com.sap.mw.jco.JCO$Function, java.lang.String)
+         */
+        @Override public void execute(JCO.Function function, String tid)
+        {
+            call();
+        }
+
+        /**
+         * @see  com.sap.mw.jco.JCO$Client#execute(com.sap.mw.jco.JCO$Request)
+         */
+        @Override public JCO.Response execute(JCO.Request request)
+        {
+            call();
+
+            JCO.Response returnValue = getFunctionTemplate(request.getName()).getResponse();
+            fillResponse(request.getName(), returnValue);
+
+            return returnValue;
+        }
+
+        /**
+         * @see  com.sap.mw.jco.JCO$Client#isAlive()
+         */
+        @Override public boolean isAlive()
+        {
+            return true;
+        }
+    }
+
+    /**
+     * Dispatcher that sends every IDoc to the same target instead of using the target mappings.
+     */
+    private class LocalDispatcher extends IDocDispatcher
+    {
+        /**
+         * Creates a new LocalDispatcher object.
+         *
+         * @param  config              The configuration.
+         * @param  oleDBRequestSender  The sender for the database and SOAP requests.
+         * @param  doc                 The document to create the nodes in.
+         * @param  statistics          The statistics to update.
+         */
+        LocalDispatcher(ISAPConfiguration config, OLEDBRequestSender oleDBRequestSender,
+                        Document doc, IDocStatistics statistics)
+        {
+            super(config, oleDBRequestSender, doc, statistics);
+        }
+
+        /**
+         * @see  IDocDispatcher#findTarget(String, String, String)
+         */
+        @Override protected String[] findTarget(String mesType, String idocType,
+                                                String receiverLS)
+        {
+            return new String[] { TARGET_SOAP_NODE, mesType, "http://local/" + idocType };
+        }
+    }
+
+    /**
+     * Sender that frames the database requests like the real one, but does not send them.
+     */
+    private class LocalDatabase extends OLEDBRequestSender
+    {
+        /**
+         * Creates a new LocalDatabase object.
+         */
+        LocalDatabase()
+        {
+            super(SAPConnectorConstants.IDOC_TABLE_NAME);
+        }
+
+        /**
+         * No IDoc has been received before, so the response never contains a tuple.
+         *
+         * @see  OLEDBRequestSender#getTid(String, Document)
+         */
+        @Override public int getTid(String tid, Document doc)
+        {
+            call();
+            return doc.createElementNS("GetTidResponse", null, "",
+                                       SAPConnectorConstants.NS_SAP_IDOC_DB, 0);
+        }
+
+        /**
+         * @see  OLEDBRequestSender#saveIDOCInDataBase(JCoIDoc.JCoDocument, int, String, String,
+         *       String, String, String, Document)
+         */
+        @Override public void saveIDOCInDataBase(JCoIDoc.JCoDocument idoc, int idocXMLNode,
+                                                 String tid, String localStatus,
+                                                 String errorText, String targetSystem,
+                                                 String soapNodeDN, Document doc)
+                                          throws SAPConnectorException
+        {
+            int tuple = frameIDOCInsertTuple(idoc, idocXMLNode, tid, localStatus, errorText,
+                                             targetSystem, soapNodeDN, doc);
+            call();
+            BACUtil.deleteNode(tuple);
+        }
+
+        /**
+         * @see  OLEDBRequestSender#sendOleDBUpdateRequest(int[], Document)
+         */
+        @Override public void sendOleDBUpdateRequest(int[] params_updateMetod, Document doc)
+        {
+            call();
+        }
+
+        /**
+         * @see  OLEDBRequestSender#sendRequestToSOAPNode(String, String, String, int, Document)
+         */
+        @Override public void sendRequestToSOAPNode(String soapNodeDN, String methodName,
+                                                    String namespace, int idocXMLNode,
+                                                    Document doc)
+        {
+            // Serialize the IDoc, as the SOAP call would.
+            Node.writeToString(idocXMLNode, false);
+            call();
+        }
+
+        /**
+         * @see  OLEDBRequestSender#updateIDOCNumber(String, String, String, Document)
+         */
+        @Override public void updateIDOCNumber(String tid, String idocNumber, String soapNodeDN,
+                                               Document doc)
+        {
+            call();
+        }
+
+        /**
+         * @see  OLEDBRequestSender#updateIDOCStatus(String, String, String, Document)
+         */
+        @Override public boolean updateIDOCStatus(String idocNumber, String soapNodeDN,
+                                                  String idocStatus, Document doc)
+        {
+            call();
+            return true;
+        }
+    }
+}
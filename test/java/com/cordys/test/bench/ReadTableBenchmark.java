@@ -0,0 +1,338 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.bench;
+
+import com.eibus.applicationconnector.sap.connection.jco.TableReader;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Node;
+
+/**
+ * Benchmark for reading a large table with RFC_READ_TABLE. The stand-in RFC_READ_TABLE returns
+ * rows in the layout of EDIDC with a delimiter, so no SAP system is needed.
+ *
+ * <p>The table is read twice: once the old way, where the whole table is returned in one
+ * response and every WA is split with a regular expression by BACUtil.formatRFC_READ_TABLEResponse,
+ * and once with the TableReader, which fetches pages and decodes the rows with the field offsets.
+ * Before that, the results of both ways are compared for a small table.</p>
+ *
+ * <p>Usage: ReadTableBenchmark [rows] [page size]. The defaults are 1,000,000 rows and pages of
+ * 10,000 rows.</p>
+ *
+ * @author  pgussow
+ */
+public class ReadTableBenchmark
+{
+    /**
+     * Holds the delimiter between the fields.
+     */
+    private static final String DELIMITER = "|";
+    /**
+     * Holds the name of the table.
+     */
+    private static final String TABLE = "EDIDC";
+    /**
+     * Holds the names of the fields.
+     */
+    private static final String[] FIELD_NAMES = { "DOCNUM", "STATUS", "DIRECT", "MESTYP", "CREDAT" };
+    /**
+     * Holds the lengths of the fields.
+     */
+    private static final int[] FIELD_LENGTHS = { 16, 2, 1, 30, 8 };
+    /**
+     * Holds the document to use.
+     */
+    private Document m_doc = new Document();
+    /**
+     * Holds the number of pages that were fetched.
+     */
+    private int m_pages;
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        ReadTableBenchmark rb = new ReadTableBenchmark();
+
+        try
+        {
+            int rows = (saArguments.length > 0) ? Integer.parseInt(saArguments[0]) : 1000000;
+            int pageSize = (saArguments.length > 1) ? Integer.parseInt(saArguments[1]) : 10000;
+
+            rb.verify(1000, 64);
+
+            rb.measure("regex", rows, pageSize, false);
+            rb.measure("paged", rows, pageSize, true);
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This method returns the columns of the table, with the offsets RFC_READ_TABLE returns when
+     * a delimiter is used.
+     *
+     * @return  The columns.
+     */
+    private static TableReader.Column[] createColumns()
+    {
+        TableReader.Column[] returnValue = new TableReader.Column[FIELD_NAMES.length];
+        int offset = 0;
+
+        for (int i = 0; i < FIELD_NAMES.length; i++)
+        {
+            returnValue[i] = new TableReader.Column(FIELD_NAMES[i], offset, FIELD_LENGTHS[i], "C",
+                                                    FIELD_NAMES[i]);
+            offset += FIELD_LENGTHS[i] + DELIMITER.length();
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method returns the WA of the given row. JCo removes the trailing blanks.
+     *
+     * @param   row  The number of the row.
+     *
+     * @return  The WA.
+     */
+    private static String createRow(int row)
+    {
+        String[] values = new String[]
+                          {
+                              String.valueOf(1000000000000000L + row), ((row % 7) == 0) ? "51" : "53",
+                              ((row % 2) == 0) ? "1" : "2", "ORDERS" + (row % 13), "20091" +
+                              (100 + (row % 230))
+                          };
+        StringBuilder returnValue = new StringBuilder(64);
+
+        for (int i = 0; i < values.length; i++)
+        {
+            if (i > 0)
+            {
+                returnValue.append(DELIMITER);
+            }
+            returnValue.append(values[i]);
+
+            for (int j = values[i].length(); j < FIELD_LENGTHS[i]; j++)
+            {
+                returnValue.append(' ');
+            }
+        }
+
+        int end = returnValue.length();
+
+        while ((end > 0) && (returnValue.charAt(end - 1) == ' '))
+        {
+            end--;
+        }
+
+        return returnValue.substring(0, end);
+    }
+
+    /**
+     * This method creates the RFC_READ_TABLE request.
+     *
+     * @param   rows  The number of rows to read.
+     *
+     * @return  The request.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private int createRequest(int rows)
+                       throws Exception
+    {
+        StringBuilder request = new StringBuilder("<RFC_READ_TABLE><QUERY_TABLE>" + TABLE +
+                                                  "</QUERY_TABLE><DELIMITER>" + DELIMITER +
+                                                  "</DELIMITER><ROWCOUNT>" + rows +
+                                                  "</ROWCOUNT><OPTIONS><item><TEXT>DIRECT = '1'" +
+                                                  "</TEXT></item></OPTIONS><FIELDS>");
+
+        for (String name : FIELD_NAMES)
+        {
+            request.append("<item><FIELDNAME>").append(name).append("</FIELDNAME></item>");
+        }
+        request.append("</FIELDS></RFC_READ_TABLE>");
+
+        return m_doc.parseString(request.toString());
+    }
+
+    /**
+     * This method reads the table the way it was done before the TableReader: the whole table in
+     * one response, which is then formatted.
+     *
+     * @param   request   The request.
+     * @param   response  The response node.
+     * @param   rows      The number of rows in the table.
+     */
+    private void readAtOnce(int request, int response, int rows)
+    {
+        int data = m_doc.createElement("DATA", response);
+
+        for (int i = 0; i < rows; i++)
+        {
+            int item = m_doc.createElement("item", data);
+            m_doc.createTextElement("WA", createRow(i), item);
+        }
+
+        int fields = m_doc.createElement("FIELDS", response);
+
+        for (TableReader.Column column : createColumns())
+        {
+            m_doc.createTextElement("FIELDNAME", column.getName(),
+                                    m_doc.createElement("item", fields));
+        }
+
+        BACUtil.formatRFC_READ_TABLEResponse(request, response);
+    }
+
+    /**
+     * This method reads the table with the TableReader.
+     *
+     * @param   request   The request.
+     * @param   response  The response node.
+     * @param   rows      The number of rows in the table.
+     * @param   pageSize  The number of rows per page.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void readPaged(int request, int response, final int rows, int pageSize)
+                    throws Exception
+    {
+        m_pages = 0;
+
+        TableReader reader = new TableReader(pageSize)
+        {
+            @Override protected Page fetchPage(int requestNode, int rowSkips, int rowCount)
+            {
+                m_pages++;
+
+                int size = Math.max(0, Math.min(rows - rowSkips, (rowCount > 0) ? rowCount : rows));
+                String[] page = new String[size];
+
+                for (int i = 0; i < size; i++)
+                {
+                    page[i] = createRow(rowSkips + i);
+                }
+
+                return new Page(createColumns(), page, size);
+            }
+        };
+
+        reader.read(request, response);
+    }
+
+    /**
+     * This method reads the table and prints the time and the memory that was used.
+     *
+     * @param   name      The name of the run.
+     * @param   rows      The number of rows in the table.
+     * @param   pageSize  The number of rows per page.
+     * @param   paged     Whether the TableReader is used.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void measure(String name, int rows, int pageSize, boolean paged)
+                  throws Exception
+    {
+        int request = createRequest(rows);
+        int response = m_doc.createElement("RFC_READ_TABLE.Response");
+        Runtime runtime = Runtime.getRuntime();
+
+        System.gc();
+
+        long usedBefore = runtime.totalMemory() - runtime.freeMemory();
+        long start = System.currentTimeMillis();
+
+        try
+        {
+            if (paged)
+            {
+                readPaged(request, response, rows, pageSize);
+            }
+            else
+            {
+                readAtOnce(request, response, rows);
+            }
+
+            long time = System.currentTimeMillis() - start;
+            long used = runtime.totalMemory() - runtime.freeMemory() - usedBefore;
+
+            System.out.println("readtable." + name + ": " + rows + " rows in " + time + " ms (" +
+                               ((rows * 1000L) / Math.max(1, time)) + " rows/s), heap growth " +
+                               (used / (1024 * 1024)) + " MB" +
+                               (paged ? (", " + m_pages + " pages") : ""));
+        }
+        finally
+        {
+            BACUtil.deleteNode(response);
+            BACUtil.deleteNode(request);
+        }
+    }
+
+    /**
+     * This method checks that both ways return the same rows.
+     *
+     * @param   rows      The number of rows in the table.
+     * @param   pageSize  The number of rows per page.
+     *
+     * @throws  Exception  In case the results differ.
+     */
+    private void verify(int rows, int pageSize)
+                 throws Exception
+    {
+        int request = createRequest(rows);
+        int expected = m_doc.createElement("RFC_READ_TABLE.Response");
+        int actual = m_doc.createElement("RFC_READ_TABLE.Response");
+
+        try
+        {
+            readAtOnce(request, expected, rows);
+            readPaged(request, actual, rows, pageSize);
+
+            String expectedData = Node.writeToString(Node.getElement(expected, "DATA"), false);
+            String actualData = Node.writeToString(Node.getElement(actual, "DATA"), false);
+
+            if (!expectedData.equals(actualData))
+            {
+                throw new Exception("The paged rows differ from the formatted rows");
+            }
+
+            if (m_pages != ((rows / pageSize) + 1))
+            {
+                throw new Exception("Expected " + ((rows / pageSize) + 1) + " pages, got " +
+                                    m_pages);
+            }
+
+            System.out.println("Verified " + rows + " rows in " + m_pages + " pages");
+        }
+        finally
+        {
+            BACUtil.deleteNode(expected);
+            BACUtil.deleteNode(actual);
+            BACUtil.deleteNode(request);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.bench;
+
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.config.SAPConfigurationFactory;
+import com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnection;
+import com.eibus.applicationconnector.sap.connection.jco.SAPJCoRequestSender;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.util.logger.config.LoggerConfigurator;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Node;
+
+import com.sap.mw.idoc.IDoc;
+import com.sap.mw.idoc.jco.JCoIDoc;
+import com.sap.mw.jco.IFunctionTemplate;
+import com.sap.mw.jco.IRepository;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records the data the LocalSAPSystem needs from a real SAP system. The recording folder must
+ * contain the requests to record in requests/&lt;RFC&gt;.xml; every request is sent to SAP and the
+ * response is written to responses/&lt;RFC&gt;.xml. The templates of these RFCs and of the
+ * functions the connector calls itself for IDocs and XBP are written to templates.ser. When
+ * IDocs are present in idocs/&lt;IDOCTYPE&gt;.xml the IDoc repository is written as well,
+ * provided the JCo version in use can serialize it.
+ *
+ * <p>Usage: RecordSAPSystem &lt;recording folder&gt;. The connection details are read from the
+ * sapr3config.xml of the tests.</p>
+ *
+ * @author  pgussow
+ */
+public class RecordSAPSystem
+{
+    /**
+     * Holds the functions the connector calls itself when sending IDocs and for XBP requests.
+     */
+    private static final String[] INTERNAL_FUNCTIONS = new String[]
+                                                       {
+                                                           "IDOC_INBOUND_ASYNCHRONOUS",
+                                                           "RFC_READ_TABLE", "BAPI_XMI_LOGON",
+                                                           "BAPI_XMI_LOGOFF",
+                                                           "BAPI_XBP_JOB_STATUS_GET"
+                                                       };
+    /**
+     * Holds the configuration.
+     */
+    private ISAPConfiguration m_config;
+    /**
+     * Holds the NOM document.
+     */
+    private Document m_doc;
+    /**
+     * Holds the recording folder.
+     */
+    private File m_folder;
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        RecordSAPSystem rs = new RecordSAPSystem();
+
+        try
+        {
+            rs.setup(new File((saArguments.length > 0) ? saArguments[0]
+                                                        : "./test/java/com/cordys/test/bench/recording"));
+
+            rs.createConnection();
+
+            rs.record();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            if (rs.m_config != null)
+            {
+                try
+                {
+                    rs.m_config.getJCoConnectionManager().closeAllConnections();
+                }
+                catch (SAPConnectorException e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Initialize the logger.
+     *
+     * @param  folder  The recording folder.
+     */
+    public void setup(File folder)
+    {
+        LoggerConfigurator.initLogger("./test/Log4jConfiguration.xml");
+        System.setProperty("java.library.path",
+                           "./docs/internal/sapdlls" + File.pathSeparator +
+                           System.getProperty("java.library.path"));
+
+        m_doc = new Document();
+        m_folder = folder;
+    }
+
+    /**
+     * This method loads the configuration.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void createConnection()
+                           throws Exception
+    {
+        int node = m_doc.load(".\\test\\java\\com\\cordys\\test\\xmi\\sapr3config.xml");
+
+        try
+        {
+            m_config = SAPConfigurationFactory.createSAPConfiguration(node,
+                                                                      "o=system,cn=cordys,cn=main,o=gussow.com",
+                                                                      "cn=SAP Group,cn=soap nodes,o=system,cn=cordys,cn=main,o=gussow.com");
+        }
+        finally
+        {
+            BACUtil.deleteNode(node);
+        }
+    }
+
+    /**
+     * Sends the recorded requests to SAP and writes the responses, templates and IDoc repository.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void record()
+                 throws Exception
+    {
+        IRepository repository = m_config.getRepository();
+        Map<String, IFunctionTemplate> templates = new HashMap<String, IFunctionTemplate>();
+
+        for (String rfcName : INTERNAL_FUNCTIONS)
+        {
+            templates.put(rfcName, repository.getFunctionTemplate(rfcName));
+        }
+
+        File responses = new File(m_folder, LocalSAPSystem.FOLDER_RESPONSES);
+        responses.mkdirs();
+
+        SAPJCoRequestSender sender = new SAPJCoRequestSender(m_config);
+        SAPJCoConnection client = m_config.getJCoConnectionManager().getUserConnection(m_config,
+                                                                                       m_config
+                                                                                       .getUserID(),
+                                                                                       m_config
+                                                                                       .getPassword());
+
+        try
+        {
+            File[] requests = new File(m_folder, LocalSAPSystem.FOLDER_REQUESTS).listFiles();
+
+            for (File request : (requests == null) ? new File[0] : requests)
+            {
+                String rfcName = request.getName().replaceFirst("\\.xml$", "");
+                templates.put(rfcName, repository.getFunctionTemplate(rfcName));
+
+                int requestNode = m_doc.load(request.getPath());
+                int responseNode = 0;
+
+                try
+                {
+                    responseNode = sender.sendRFCRequest(requestNode, client, rfcName);
+                    write(new File(responses, request.getName()),
+                          Node.writeToString(responseNode, true));
+                }
+                finally
+                {
+                    BACUtil.deleteNode(requestNode);
+                    BACUtil.deleteNode(responseNode);
+                }
+
+                System.out.println("Recorded " + rfcName);
+            }
+        }
+        finally
+        {
+            m_config.getJCoConnectionManager().putUserConnection(client);
+        }
+
+        LocalSAPSystem.writeObject(new File(m_folder, LocalSAPSystem.FILE_TEMPLATES), templates);
+
+        recordIDOCRepository();
+    }
+
+    /**
+     * Loads the metadata of the recorded IDoc types and writes the IDoc repository.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void recordIDOCRepository()
+                               throws Exception
+    {
+        File[] idocs = new File(m_folder, LocalSAPSystem.FOLDER_IDOCS).listFiles();
+
+        if ((idocs == null) || (idocs.length == 0))
+        {
+            return;
+        }
+
+        IDoc.Repository idocRepository = m_config.getIDOCRepository();
+
+        for (File idoc : idocs)
+        {
+            // Creating a document loads the metadata of the type into the repository.
+            JCoIDoc.createDocument(idocRepository, idoc.getName().replaceFirst("\\.xml$", ""));
+        }
+
+        if (idocRepository instanceof Serializable)
+        {
+            LocalSAPSystem.writeObject(new File(m_folder, LocalSAPSystem.FILE_IDOC_REPOSITORY),
+                                       idocRepository);
+            System.out.println("Recorded the IDoc repository");
+        }
+        else
+        {
+            System.out.println("The IDoc repository cannot be serialized. The IDoc benchmarks will be skipped.");
+        }
+    }
+
+    /**
+     * This method writes the XML to a file.
+     *
+     * @param   file  The file to write.
+     * @param   xml   The XML to write.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void write(File file, String xml)
+                throws Exception
+    {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+        try
+        {
+            out.write(xml);
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+}
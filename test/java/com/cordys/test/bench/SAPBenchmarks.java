@@ -0,0 +1,1438 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.bench;
+
+import com.cordys.coe.util.xml.dom.XMLHelper;
+import com.cordys.coe.util.xml.nom.XPathHelper;
+
+import com.eibus.applicationconnector.sap.SAPConnectorConstants;
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.connection.ISAPConnection;
+import com.eibus.applicationconnector.sap.connection.jco.JCoMethodGenerator;
+import com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnection;
+import com.eibus.applicationconnector.sap.connection.jco.SAPJCoRequestSender;
+import com.eibus.applicationconnector.sap.idoc.IDocPipeline;
+import com.eibus.applicationconnector.sap.metadata.ESAPObjectType;
+import com.eibus.applicationconnector.sap.metadata.GeneratedMethodCache;
+import com.eibus.applicationconnector.sap.metadata.IMetadataCache;
+import com.eibus.applicationconnector.sap.metadata.MetadataCacheFactory;
+import com.eibus.applicationconnector.sap.metadata.MethodGenerator;
+import com.eibus.applicationconnector.sap.metadata.filter.EFilterType;
+import com.eibus.applicationconnector.sap.metadata.filter.FilterFactory;
+import com.eibus.applicationconnector.sap.metadata.filter.IFilter;
+import com.eibus.applicationconnector.sap.metadata.storage.ICacheStorage;
+import com.eibus.applicationconnector.sap.metadata.types.IRFCMetadata;
+import com.eibus.applicationconnector.sap.metadata.types.ITypeContainer;
+import com.eibus.applicationconnector.sap.metadata.types.SAPMetadataFactory;
+import com.eibus.applicationconnector.sap.request.OLEDBRequestSender;
+import com.eibus.applicationconnector.sap.soap.EDynamicAction;
+import com.eibus.applicationconnector.sap.soap.ERequestType;
+import com.eibus.applicationconnector.sap.soap.IRequestDispatch;
+import com.eibus.applicationconnector.sap.soap.RequestDispatcher;
+import com.eibus.applicationconnector.sap.soap.impl.IMethodImplementation;
+import com.eibus.applicationconnector.sap.soap.impl.MethodImplementationCache;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+import com.eibus.applicationconnector.sap.xsd.XSDParser;
+import com.eibus.applicationconnector.sap.xsd.XSDSchema;
+
+import com.eibus.soap.BodyBlock;
+
+import com.eibus.util.logger.config.LoggerConfigurator;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Node;
+import com.eibus.xml.xpath.XPathMetaInfo;
+
+import com.sap.mw.idoc.IDoc;
+import com.sap.mw.idoc.jco.JCoIDoc;
+import com.sap.mw.jco.IRepository;
+import com.sap.mw.jco.JCO;
+
+import java.io.File;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.w3c.dom.Element;
+
+/**
+ * Runs the benchmarks of the connector against a LocalSAPSystem, so they can be run offline and
+ * repeated on every change. The results are written as JSON and can be compared with the results
+ * of an earlier run.
+ *
+ * <p>Usage: SAPBenchmarks &lt;recording folder&gt; [latency in ms] [result file] [baseline file].
+ * The number of operations can be set with the system properties bench.warmup and
+ * bench.iterations. The run fails when a benchmark is more than 10% slower than the baseline.</p>
+ *
+ * @author  pgussow
+ */
+public class SAPBenchmarks
+{
+    /**
+     * Holds the number of methods that are regenerated.
+     */
+    private static final int GENERATED_METHODS = 500;
+    /**
+     * Holds the number of IDocs in one call to the IDoc listener.
+     */
+    private static final int IDOCS_PER_CALL = 10;
+    /**
+     * Holds the number of method implementations that are dispatched.
+     */
+    private static final int IMPLEMENTATIONS = 300;
+    /**
+     * Holds the number of entries in the metadata cache that is searched.
+     */
+    private static final int METADATA_ENTRIES = 20000;
+    /**
+     * Holds the number of structures of the synthetic RFC.
+     */
+    private static final int SCHEMA_STRUCTURES = 2000;
+    /**
+     * Holds the name of the synthetic RFC.
+     */
+    private static final String SYNTHETIC_RFC = "Z_SYNTHETIC_SCHEMA";
+    /**
+     * Holds the allowed decrease of the throughput compared to the baseline.
+     */
+    private static final double TOLERANCE = 0.1;
+    /**
+     * Holds the configuration of the local system.
+     */
+    private ISAPConfiguration m_config;
+    /**
+     * Holds the connection to the local system.
+     */
+    private SAPJCoConnection m_connection;
+    /**
+     * Holds the NOM document.
+     */
+    private Document m_doc;
+    /**
+     * Holds the local SAP system.
+     */
+    private LocalSAPSystem m_local;
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        SAPBenchmarks sb = new SAPBenchmarks();
+
+        try
+        {
+            sb.setup(new File((saArguments.length > 0) ? saArguments[0]
+                                                        : "./test/java/com/cordys/test/bench/recording"),
+                     (saArguments.length > 1) ? Long.parseLong(saArguments[1]) : 0);
+
+            BenchmarkRunner runner = new BenchmarkRunner(Integer.getInteger("bench.warmup", 500),
+                                                         Integer.getInteger("bench.iterations",
+                                                                            2000), TOLERANCE);
+
+            sb.runAll(runner);
+
+            File results = new File((saArguments.length > 2) ? saArguments[2]
+                                                              : "benchmark-results.json");
+            runner.write(results);
+            System.out.println("Results written to " + results.getAbsolutePath());
+
+            if (saArguments.length > 3)
+            {
+                List<String> regressions = runner.compare(new File(saArguments[3]));
+
+                if (!regressions.isEmpty())
+                {
+                    System.out.println("Regressions: " + regressions);
+                    System.exit(1);
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Initialize the logger and the local system.
+     *
+     * @param   folder   The recording folder.
+     * @param   latency  The latency of a call to SAP or the database in milliseconds.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    public void setup(File folder, long latency)
+               throws Exception
+    {
+        LoggerConfigurator.initLogger("./test/Log4jConfiguration.xml");
+        System.setProperty("java.library.path",
+                           "./docs/internal/sapdlls" + File.pathSeparator +
+                           System.getProperty("java.library.path"));
+
+        m_doc = new Document();
+        m_local = new LocalSAPSystem(folder, latency);
+        m_config = m_local.createConfiguration();
+        m_connection = m_local.createConnection(m_config);
+    }
+
+    /**
+     * This method returns the name of a recorded file without the extension.
+     *
+     * @param   file  The file.
+     *
+     * @return  The name.
+     */
+    private static String getBaseName(File file)
+    {
+        return file.getName().replaceFirst("\\.xml$", "");
+    }
+
+    /**
+     * Runs all benchmarks.
+     *
+     * @param   runner  The runner.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void runAll(BenchmarkRunner runner)
+                 throws Exception
+    {
+        runner.run(new SendRFCBenchmark());
+        runner.run(new SendIDOCBenchmark());
+        runner.run(new IDocServerBenchmark("idocserver.handleRequest", 0));
+        runner.run(new IDocServerBenchmark("idocserver.handleRequest.pipeline", 4));
+        runner.run(new MetadataSearchBenchmark());
+        runner.run(new MethodGeneratorBenchmark());
+        runner.run(new SchemaGeneratorBenchmark());
+        runner.run(new SchemaParserBenchmark());
+        runner.run(new GeneratedMethodBenchmark("methodgenerator.generate.cold", false));
+        runner.run(new GeneratedMethodBenchmark("methodgenerator.generate.warm", true));
+        runner.run(new MethodImplementationBenchmark("dispatch.implementation.xpath", false));
+        runner.run(new MethodImplementationBenchmark("dispatch.implementation.cached", true));
+        runner.run(new RequestDispatchBenchmark("dispatch.type.chain", false));
+        runner.run(new RequestDispatchBenchmark("dispatch.type.registry", true));
+    }
+
+    /**
+     * Regenerates the methods of synthetic RFCs one at a time. Cold clears the cache before every
+     * generation, warm finds the WSDL of every method in the cache.
+     */
+    private class GeneratedMethodBenchmark
+        implements IBenchmark
+    {
+        /**
+         * Holds the cache for the generated WSDL.
+         */
+        private GeneratedMethodCache m_cache;
+        /**
+         * Holds the folder of the cache.
+         */
+        private File m_folder;
+        /**
+         * Holds the number of generated methods.
+         */
+        private int m_generated;
+        /**
+         * Holds the name of the benchmark.
+         */
+        private final String m_name;
+        /**
+         * Holds the repository with the synthetic RFCs.
+         */
+        private SyntheticRepository m_repository;
+        /**
+         * Holds the GenerateMethods request per RFC.
+         */
+        private final int[] m_requests = new int[GENERATED_METHODS];
+        /**
+         * Indicates whether the cache is filled before the run.
+         */
+        private final boolean m_warm;
+
+        /**
+         * Creates a new GeneratedMethodBenchmark object.
+         *
+         * @param  name  The name of the benchmark.
+         * @param  warm  Whether the cache is filled before the run.
+         */
+        GeneratedMethodBenchmark(String name, boolean warm)
+        {
+            m_name = name;
+            m_warm = warm;
+        }
+
+        /**
+         * @see  IBenchmark#getName()
+         */
+        public String getName()
+        {
+            return m_name;
+        }
+
+        /**
+         * @see  IBenchmark#run()
+         */
+        public void run()
+                 throws Exception
+        {
+            if (!m_warm)
+            {
+                m_cache.clear();
+            }
+
+            generate(m_requests[m_generated++ % GENERATED_METHODS]);
+        }
+
+        /**
+         * @see  IBenchmark#setUp()
+         */
+        public void setUp()
+                   throws Exception
+        {
+            m_repository = new SyntheticRepository("Generated");
+
+            for (int i = 0; i < GENERATED_METHODS; i++)
+            {
+                String rfcName = "Z_GENERATED_" + i;
+                JCO.MetaData function = new JCO.MetaData(rfcName);
+
+                for (int j = 0; j < 20; j++)
+                {
+                    JCO.MetaData structure = new JCO.MetaData("ZSTRUCT" + i + "_" + j);
+                    structure.addInfo("KEY", JCO.TYPE_CHAR, 10, 0, 0);
+                    structure.addInfo("NAME", JCO.TYPE_CHAR, 40, 10, 0);
+                    structure.addInfo("AMOUNT", JCO.TYPE_INT, 4, 50, 0);
+                    m_repository.addStructureDefinitionToCache(structure);
+
+                    function.addInfo("IMPORT" + j, JCO.TYPE_STRUCTURE, structure.getTabLength(),
+                                     0, 0, JCO.IMPORT_PARAMETER, structure);
+                    function.addInfo("TABLE" + j, JCO.TYPE_TABLE, structure.getTabLength(), 0, 0,
+                                     0, structure);
+                }
+                function.addInfo("RETURN", JCO.TYPE_CHAR, 220, 0, 0, JCO.EXPORT_PARAMETER, null);
+                m_repository.addFunctionInterfaceToCache(function);
+
+                m_requests[i] = m_doc.parseString("<GenerateMethods xmlns=\"" +
+                                                  SAPConnectorConstants.NS_SAP_SCHEMA +
+                                                  "\"><type>RFC</type><interfacename>" + rfcName +
+                                                  "</interfacename><namespace>http://benchmark" +
+                                                  "</namespace><operations><operation>" + rfcName +
+                                                  "</operation></operations></GenerateMethods>");
+            }
+
+            m_folder = File.createTempFile("generated", "");
+            m_folder.delete();
+            m_cache = new GeneratedMethodCache(m_folder, GENERATED_METHODS);
+
+            if (m_warm)
+            {
+                for (int request : m_requests)
+                {
+                    generate(request);
+                }
+            }
+        }
+
+        /**
+         * @see  IBenchmark#tearDown()
+         */
+        public void tearDown()
+        {
+            if (m_cache != null)
+            {
+                System.out.println(m_name + ": " + m_cache);
+                m_cache.clear();
+                m_folder.delete();
+            }
+
+            for (int request : m_requests)
+            {
+                BACUtil.deleteNode(request);
+            }
+        }
+
+        /**
+         * This method generates the methods of the given request.
+         *
+         * @param   request  The GenerateMethods request.
+         *
+         * @throws  Exception  In case of any exceptions
+         */
+        private void generate(int request)
+                       throws Exception
+        {
+            int response = m_doc.createElementNS("GenerateMethodsResponse", null, null,
+                                                 SAPConnectorConstants.NS_SAP_SCHEMA, 0);
+
+            try
+            {
+                MethodGenerator generator = new JCoMethodGenerator(request, response,
+                                                                   m_repository,
+                                                                   (IDoc.Repository) null);
+                generator.setCache(m_cache);
+                generator.execute();
+            }
+            finally
+            {
+                BACUtil.deleteNode(response);
+            }
+        }
+    }
+
+    /**
+     * Delivers IDocs to the IDoc listener, with or without a pipeline.
+     */
+    private class IDocServerBenchmark
+        implements IBenchmark
+    {
+        /**
+         * Holds the IDocs of one call.
+         */
+        private IDoc.DocumentList m_idocList;
+        /**
+         * Holds the name of the benchmark.
+         */
+        private final String m_name;
+        /**
+         * Holds the pipeline, if any.
+         */
+        private IDocPipeline m_pipeline;
+        /**
+         * Holds the listener.
+         */
+        private LocalSAPSystem.LocalIDocServer m_server;
+        /**
+         * Holds the number of the last call.
+         */
+        private int m_tid;
+        /**
+         * Holds the number of pipeline workers. 0 means no pipeline.
+         */
+        private final int m_workers;
+
+        /**
+         * Creates a new IDocServerBenchmark object.
+         *
+         * @param  name     The name of the benchmark.
+         * @param  workers  The number of pipeline workers. 0 means no pipeline.
+         */
+        IDocServerBenchmark(String name, int workers)
+        {
+            m_name = name;
+            m_workers = workers;
+        }
+
+        /**
+         * @see  IBenchmark#getName()
+         */
+        public String getName()
+        {
+            return m_name;
+        }
+
+        /**
+         * @see  IBenchmark#run()
+         */
+        public void run()
+                 throws Exception
+        {
+            m_server.receive(m_idocList, "TID" + (++m_tid));
+        }
+
+        /**
+         * The IDocs only contain a control record, because the IDoc library offers no way to
+         * build a filled document from the recording without the private conversion of the
+         * request sender.
+         *
+         * @see  IBenchmark#setUp()
+         */
+        public void setUp()
+                   throws Exception
+        {
+            File[] idocFiles = m_local.getRecordedFiles(LocalSAPSystem.FOLDER_IDOCS);
+
+            if ((m_local.getIDOCRepository() == null) || (idocFiles.length == 0))
+            {
+                throw new UnsupportedOperationException("no IDocs recorded");
+            }
+
+            final List<IDoc.Document> idocs = new ArrayList<IDoc.Document>();
+
+            for (int i = 0; i < IDOCS_PER_CALL; i++)
+            {
+                String idocType = getBaseName(idocFiles[i % idocFiles.length]);
+                IDoc.Document idoc = JCoIDoc.createDocument(m_local.getIDOCRepository(),
+                                                            idocType);
+                idoc.setMessageType(idocType);
+                idoc.setIDocNumber(String.valueOf(1000000000000000L + i));
+                idocs.add(idoc);
+            }
+
+            m_idocList = (IDoc.DocumentList) Proxy.newProxyInstance(IDoc.DocumentList.class
+                                                                    .getClassLoader(),
+                                                                    new Class[]
+                                                                    {
+                                                                        IDoc.DocumentList.class
+                                                                    }, new InvocationHandler()
+                {
+                    public Object invoke(Object proxy, Method method, Object[] args)
+                    {
+                        if (method.getName().equals("getNumDocuments"))
+                        {
+                            return idocs.size();
+                        }
+                        else if (method.getName().equals("get"))
+                        {
+                            return idocs.get(((Integer) args[0]).intValue());
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+
+            if (m_workers > 0)
+            {
+                m_pipeline = m_local.createIDocPipeline(m_config, m_workers, 100);
+                m_pipeline.start();
+            }
+
+            m_server = m_local.createIDocServer(m_config, m_pipeline);
+        }
+
+        /**
+         * @see  IBenchmark#tearDown()
+         */
+        public void tearDown()
+        {
+            if (m_pipeline != null)
+            {
+                m_pipeline.stop();
+            }
+        }
+    }
+
+    /**
+     * Searches a metadata cache with RFCs.
+     */
+    private class MetadataSearchBenchmark
+        implements IBenchmark
+    {
+        /**
+         * Holds the cache to search.
+         */
+        private IMetadataCache m_cache;
+        /**
+         * Holds the filters that are used in turn.
+         */
+        private IFilter[] m_filters;
+        /**
+         * Holds the number of searches.
+         */
+        private int m_searches;
+
+        /**
+         * @see  IBenchmark#getName()
+         */
+        public String getName()
+        {
+            return "metadatacache.search";
+        }
+
+        /**
+         * @see  IBenchmark#run()
+         */
+        public void run()
+                 throws Exception
+        {
+            IFilter filter = m_filters[m_searches++ % m_filters.length];
+
+            m_cache.searchRFC(false, filter, null, null);
+        }
+
+        /**
+         * @see  IBenchmark#setUp()
+         */
+        public void setUp()
+                   throws Exception
+        {
+            final List<ITypeContainer> rfcs = new ArrayList<ITypeContainer>(METADATA_ENTRIES);
+
+            for (int i = 0; i < METADATA_ENTRIES; i++)
+            {
+                String name = "Z_RFC_" + String.valueOf(100000 + i).substring(1);
+                ITypeContainer container = SAPMetadataFactory.createContainer(ESAPObjectType.RFC);
+                container.setValue(name);
+                container.setDisplayName(name);
+
+                IRFCMetadata rfc = (IRFCMetadata) SAPMetadataFactory.createObject(ESAPObjectType.RFC);
+                rfc.setValue(name);
+                rfc.setGroupName("GROUP" + (i % 100));
+                rfc.setShortText("Function " + i);
+                container.addType(rfc);
+
+                rfcs.add(container);
+            }
+
+            ISAPConnection connection = new ISAPConnection()
+            {
+                public List<ITypeContainer> getAllBAPIs()
+                {
+                    return Collections.emptyList();
+                }
+
+                public List<ITypeContainer> getAllIDOCs()
+                {
+                    return Collections.emptyList();
+                }
+
+                public List<ITypeContainer> getAllRFCs()
+                {
+                    return rfcs;
+                }
+            };
+
+            ICacheStorage storage = new ICacheStorage()
+            {
+                public void loadCache(String id, IMetadataCache cache)
+                {
+                }
+
+                public void persistCache(IMetadataCache cache)
+                {
+                }
+
+                public void persistCache(IMetadataCache cache, ESAPObjectType type)
+                {
+                }
+            };
+
+            m_cache = MetadataCacheFactory.createCache("bench", connection, storage);
+            m_filters = new IFilter[]
+                        {
+                            FilterFactory.createFilter(EFilterType.STARTS_WITH, "Z_RFC_12",
+                                                       "function"),
+                            FilterFactory.createFilter(EFilterType.CONTAINS, "RFC_0999",
+                                                       "function"),
+                            FilterFactory.createFilter(EFilterType.REGEX, "Z_RFC_1.*7",
+                                                       "function"),
+                        };
+        }
+
+        /**
+         * @see  IBenchmark#tearDown()
+         */
+        public void tearDown()
+        {
+        }
+    }
+
+    /**
+     * Generates the methods for the recorded RFCs.
+     */
+    private class MethodGeneratorBenchmark
+        implements IBenchmark
+    {
+        /**
+         * Holds the GenerateMethods request.
+         */
+        private int m_request;
+
+        /**
+         * @see  IBenchmark#getName()
+         */
+        public String getName()
+        {
+            return "methodgenerator.execute";
+        }
+
+        /**
+         * @see  IBenchmark#run()
+         */
+        public void run()
+                 throws Exception
+        {
+            int response = m_doc.createElementNS("GenerateMethodsResponse", null, null,
+                                                 SAPConnectorConstants.NS_SAP_SCHEMA, 0);
+
+            try
+            {
+                new JCoMethodGenerator(m_request, response, m_local.getRepository(),
+                                       m_local.getIDOCRepository()).execute();
+            }
+            finally
+            {
+                BACUtil.deleteNode(response);
+            }
+        }
+
+        /**
+         * @see  IBenchmark#setUp()
+         */
+        public void setUp()
+                   throws Exception
+        {
+            File[] responses = m_local.getRecordedFiles(LocalSAPSystem.FOLDER_RESPONSES);
+
+            if (responses.length == 0)
+            {
+                throw new UnsupportedOperationException("no RFCs recorded");
+            }
+
+            StringBuilder request = new StringBuilder();
+            request.append("<GenerateMethods xmlns=\"").append(SAPConnectorConstants.NS_SAP_SCHEMA)
+                   .append("\"><type>RFC</type><interfacename>Benchmark</interfacename>")
+                   .append("<namespace>http://benchmark</namespace><operations>");
+
+            for (File response : responses)
+            {
+                String rfcName = getBaseName(response);
+                request.append("<operation servicename=\"").append(rfcName).append("\">")
+                       .append(rfcName).append("</operation>");
+            }
+            request.append("</operations></GenerateMethods>");
+
+            m_request = m_doc.parseString(request.toString());
+        }
+
+        /**
+         * @see  IBenchmark#tearDown()
+         */
+        public void tearDown()
+        {
+            BACUtil.deleteNode(m_request);
+        }
+    }
+
+    /**
+     * Reads the implementation of a method the way a request is dispatched, for a mix of RFC, IDOC
+     * and SAP_CONNECTOR methods. Without the cache the implementation XML is read with XPath for
+     * every request, with the cache the parsed implementation is used.
+     */
+    private class MethodImplementationBenchmark
+        implements IBenchmark
+    {
+        /**
+         * Indicates whether the implementation cache is used.
+         */
+        private final boolean m_cached;
+        /**
+         * Holds the definition per method, standing in for the MethodDefinition.
+         */
+        private final Object[] m_definitions = new Object[IMPLEMENTATIONS];
+        /**
+         * Holds the number of dispatched requests.
+         */
+        private int m_dispatched;
+        /**
+         * Holds the implementation node per method.
+         */
+        private final int[] m_implementations = new int[IMPLEMENTATIONS];
+        /**
+         * Holds the name of the benchmark.
+         */
+        private final String m_name;
+        /**
+         * Holds the namespace mapping for the connector specific implementation.
+         */
+        private XPathMetaInfo m_xmi;
+
+        /**
+         * Creates a new MethodImplementationBenchmark object.
+         *
+         * @param  name    The name of the benchmark.
+         * @param  cached  Whether the implementation cache is used.
+         */
+        MethodImplementationBenchmark(String name, boolean cached)
+        {
+            m_name = name;
+            m_cached = cached;
+        }
+
+        /**
+         * @see  IBenchmark#getName()
+         */
+        public String getName()
+        {
+            return m_name;
+        }
+
+        /**
+         * @see  IBenchmark#run()
+         */
+        public void run()
+                 throws Exception
+        {
+            int index = m_dispatched++ % IMPLEMENTATIONS;
+            int node = m_implementations[index];
+
+            if (m_cached)
+            {
+                IMethodImplementation implementation = MethodImplementationCache.getImplementation(m_definitions[index],
+                                                                                                   getType(index),
+                                                                                                   "Method" +
+                                                                                                   index,
+                                                                                                   node);
+
+                switch (index % 3)
+                {
+                    case 0:
+                        check(implementation.getRFMName().length() > 0);
+                        check(implementation.isAutoCommit() != implementation.isAutoRollback());
+                        break;
+
+                    case 1:
+                        check(implementation.getMESType().length() > 0);
+                        check(implementation.getIDOCType().length() > 0);
+                        check(implementation.getCIMType().length() > 0);
+                        break;
+
+                    default:
+                        check(implementation.getAction() == EDynamicAction.EXECUTE_RFC);
+                }
+            }
+            else
+            {
+                switch (index % 3)
+                {
+                    case 0:
+                        check(XPathHelper.getStringValue(node, "RFMName", "").length() > 0);
+                        check(XPathHelper.getBooleanValue(node, "AutoCommit") !=
+                              XPathHelper.getBooleanValue(node, "AutoRollback"));
+                        break;
+
+                    case 1:
+                        check(XPathHelper.getStringValue(node, "MESType", "").length() > 0);
+                        check(XPathHelper.getStringValue(node, "IDOCType", "").length() > 0);
+                        check(XPathHelper.getStringValue(node, "CIMType", "").length() > 0);
+                        break;
+
+                    default:
+                        String action = XPathHelper.getStringValue(node,
+                                                                   "ns:sapconnector/ns:action/text()",
+                                                                   m_xmi, "");
+                        check(EDynamicAction.valueOf(action.toUpperCase()) ==
+                              EDynamicAction.EXECUTE_RFC);
+                }
+            }
+        }
+
+        /**
+         * @see  IBenchmark#setUp()
+         */
+        public void setUp()
+                   throws Exception
+        {
+            m_xmi = new XPathMetaInfo();
+            m_xmi.addNamespaceBinding("ns", SAPConnectorConstants.NS_SAP_IMPLEMENTATION);
+
+            for (int i = 0; i < IMPLEMENTATIONS; i++)
+            {
+                String xml;
+
+                switch (i % 3)
+                {
+                    case 0:
+                        xml = "<implementation type=\"SAPRFC\"><RFMName>Z_FUNCTION_" + i +
+                              "</RFMName><AutoCommit>" + ((i % 2) == 0) +
+                              "</AutoCommit><AutoRollback>" + ((i % 2) != 0) +
+                              "</AutoRollback></implementation>";
+                        break;
+
+                    case 1:
+                        xml = "<implementation type=\"SAPIDOC\"><MESType>ZMESTYPE" + i +
+                              "</MESType><IDOCType>ZIDOC" + i + "</IDOCType><CIMType>ZCIM" + i +
+                              "</CIMType></implementation>";
+                        break;
+
+                    default:
+                        xml = "<implementation type=\"SAP_CONNECTOR\"><sapconnector xmlns=\"" +
+                              SAPConnectorConstants.NS_SAP_IMPLEMENTATION +
+                              "\"><action>ExecuteRFC</action></sapconnector></implementation>";
+                }
+
+                m_implementations[i] = m_doc.parseString(xml);
+                m_definitions[i] = new Object();
+            }
+        }
+
+        /**
+         * @see  IBenchmark#tearDown()
+         */
+        public void tearDown()
+        {
+            if (m_cached)
+            {
+                System.out.println(m_name + ": " + MethodImplementationCache.getStatistics());
+                MethodImplementationCache.clear();
+            }
+
+            for (int implementation : m_implementations)
+            {
+                BACUtil.deleteNode(implementation);
+            }
+        }
+
+        /**
+         * This method fails when the dispatched value is not the expected one.
+         *
+         * @param  expected  Whether the value is the expected one.
+         */
+        private void check(boolean expected)
+        {
+            if (!expected)
+            {
+                throw new IllegalStateException("Unexpected implementation value");
+            }
+        }
+
+        /**
+         * This method returns the type of the given method.
+         *
+         * @param   index  The index of the method.
+         *
+         * @return  The type.
+         */
+        private String getType(int index)
+        {
+            switch (index % 3)
+            {
+                case 0:
+                    return "SAPRFC";
+
+                case 1:
+                    return "SAPIDOC";
+
+                default:
+                    return "SAP_CONNECTOR";
+            }
+        }
+    }
+
+    /**
+     * Resolves the handling of requests of all method types, with the action constructor for
+     * SAP_CONNECTOR methods. Without the registry the type is matched against the chain of types
+     * and the constructor is looked up for every request, with the registry both are resolved
+     * once.
+     */
+    private class RequestDispatchBenchmark
+        implements IBenchmark
+    {
+        /**
+         * Holds the number of dispatched requests.
+         */
+        private int m_dispatched;
+        /**
+         * Holds the name of the benchmark.
+         */
+        private final String m_name;
+        /**
+         * Indicates whether the registry is used.
+         */
+        private final boolean m_registry;
+        /**
+         * Holds the type of every request, as it is in the method definitions.
+         */
+        private final String[] m_types = new String[]
+                                         {
+                                             "SAPBAPI", "SAPRFC", "SAPIDOC", "SAPTuple",
+                                             "SAPMetadata", "SAPPublish", "SAPUtil", "SAPXBP",
+                                             "SAP_CONNECTOR"
+                                         };
+
+        /**
+         * Creates a new RequestDispatchBenchmark object.
+         *
+         * @param  name      The name of the benchmark.
+         * @param  registry  Whether the registry is used.
+         */
+        RequestDispatchBenchmark(String name, boolean registry)
+        {
+            m_name = name;
+            m_registry = registry;
+        }
+
+        /**
+         * @see  IBenchmark#getName()
+         */
+        public String getName()
+        {
+            return m_name;
+        }
+
+        /**
+         * @see  IBenchmark#run()
+         */
+        public void run()
+                 throws Exception
+        {
+            String type = m_types[m_dispatched++ % m_types.length];
+            Object handling;
+
+            if (m_registry)
+            {
+                IRequestDispatch dispatch = RequestDispatcher.getDispatch(type);
+                handling = dispatch;
+
+                if (dispatch == ERequestType.SAP_CONNECTOR)
+                {
+                    handling = EDynamicAction.EXECUTE_RFC.getConstructor();
+                }
+            }
+            else
+            {
+                handling = resolveChain(type);
+            }
+
+            if (handling == null)
+            {
+                throw new IllegalStateException("No handling for type " + type);
+            }
+        }
+
+        /**
+         * @see  IBenchmark#setUp()
+         */
+        public void setUp()
+        {
+        }
+
+        /**
+         * @see  IBenchmark#tearDown()
+         */
+        public void tearDown()
+        {
+        }
+
+        /**
+         * This method resolves the handling the way SAPTransaction did before the registry.
+         *
+         * @param   type  The type of the method.
+         *
+         * @return  The handling.
+         *
+         * @throws  Exception  In case of any exceptions
+         */
+        private Object resolveChain(String type)
+                             throws Exception
+        {
+            if (type.equalsIgnoreCase("SAPBAPI"))
+            {
+                return ERequestType.SAPBAPI;
+            }
+            else if (type.equalsIgnoreCase("SAPRFC"))
+            {
+                return ERequestType.SAPRFC;
+            }
+            else if (type.equalsIgnoreCase("SAPIDOC"))
+            {
+                return ERequestType.SAPIDOC;
+            }
+            else if (type.equalsIgnoreCase("SAPTuple"))
+            {
+                return ERequestType.SAP_TUPLE;
+            }
+            else if (type.equalsIgnoreCase("SAPMetadata"))
+            {
+                return ERequestType.SAP_METADATA;
+            }
+            else if (type.equalsIgnoreCase("SAPPublish"))
+            {
+                return ERequestType.SAP_PUBLISH;
+            }
+            else if (type.equalsIgnoreCase("SAPUtil"))
+            {
+                return ERequestType.SAP_UTIL;
+            }
+            else if (type.equalsIgnoreCase("SAPXBP"))
+            {
+                return ERequestType.SAP_XBP;
+            }
+            else if (type.equalsIgnoreCase("SAP_CONNECTOR"))
+            {
+                EDynamicAction action = EDynamicAction.valueOf("ExecuteRFC".toUpperCase());
+
+                return action.getImplementationClass().getConstructor(BodyBlock.class,
+                                                                      BodyBlock.class,
+                                                                      ISAPConfiguration.class);
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Generates the schema of a synthetic RFC with many structure and table parameters. Every
+     * third table uses the type of a structure, so the generator must find the existing types.
+     */
+    private class SchemaGeneratorBenchmark
+        implements IBenchmark
+    {
+        /**
+         * Holds the generator.
+         */
+        private JCoMethodGenerator m_generator;
+        /**
+         * Holds the GenerateMethods request.
+         */
+        private int m_request;
+
+        /**
+         * @see  IBenchmark#getName()
+         */
+        public String getName()
+        {
+            return "methodgenerator.schema";
+        }
+
+        /**
+         * @see  IBenchmark#run()
+         */
+        public void run()
+                 throws Exception
+        {
+            m_generator.createOperationSchemaForRFC(new XSDSchema(), SYNTHETIC_RFC,
+                                                    SYNTHETIC_RFC, SYNTHETIC_RFC + "Response");
+        }
+
+        /**
+         * @see  IBenchmark#setUp()
+         */
+        public void setUp()
+                   throws Exception
+        {
+            SyntheticRepository repository = new SyntheticRepository("Synthetic");
+            JCO.MetaData function = new JCO.MetaData(SYNTHETIC_RFC);
+            JCO.MetaData[] structures = new JCO.MetaData[SCHEMA_STRUCTURES];
+
+            for (int i = 0; i < SCHEMA_STRUCTURES; i++)
+            {
+                structures[i] = new JCO.MetaData("ZSTRUCT" + i);
+                structures[i].addInfo("KEY", JCO.TYPE_CHAR, 10, 0, 0);
+                structures[i].addInfo("NAME", JCO.TYPE_CHAR, 40, 10, 0);
+                structures[i].addInfo("AMOUNT", JCO.TYPE_INT, 4, 50, 0);
+                repository.addStructureDefinitionToCache(structures[i]);
+
+                function.addInfo("IMPORT" + i, JCO.TYPE_STRUCTURE, structures[i].getTabLength(),
+                                 0, 0, JCO.IMPORT_PARAMETER, structures[i]);
+            }
+
+            for (int i = 0; i < SCHEMA_STRUCTURES; i++)
+            {
+                JCO.MetaData structure = ((i % 3) == 0) ? structures[i]
+                                                        : new JCO.MetaData("ZTABLE" + i);
+
+                if (structure != structures[i])
+                {
+                    structure.addInfo("KEY", JCO.TYPE_CHAR, 10, 0, 0);
+                    structure.addInfo("LINE", JCO.TYPE_CHAR, 72, 10, 0);
+                    repository.addStructureDefinitionToCache(structure);
+                }
+
+                function.addInfo("TABLE" + i, JCO.TYPE_TABLE, structure.getTabLength(), 0, 0, 0,
+                                 structure);
+            }
+            repository.addFunctionInterfaceToCache(function);
+
+            m_request = m_doc.parseString("<GenerateMethods xmlns=\"" +
+                                          SAPConnectorConstants.NS_SAP_SCHEMA +
+                                          "\"><type>RFC</type><interfacename>Benchmark" +
+                                          "</interfacename><namespace>http://benchmark" +
+                                          "</namespace><operations><operation>" + SYNTHETIC_RFC +
+                                          "</operation></operations></GenerateMethods>");
+            m_generator = new JCoMethodGenerator(m_request, 0, repository,
+                                                 (IDoc.Repository) null);
+        }
+
+        /**
+         * @see  IBenchmark#tearDown()
+         */
+        public void tearDown()
+        {
+            BACUtil.deleteNode(m_request);
+        }
+    }
+
+    /**
+     * Parses a synthetic schema with many named types in merged mode. Every element refers to a
+     * named type that the parser looks up and copies into the element.
+     */
+    private class SchemaParserBenchmark
+        implements IBenchmark
+    {
+        /**
+         * Holds the schema to parse.
+         */
+        private Element m_schema;
+
+        /**
+         * @see  IBenchmark#getName()
+         */
+        public String getName()
+        {
+            return "xsdparser.merged";
+        }
+
+        /**
+         * @see  IBenchmark#run()
+         */
+        public void run()
+                 throws Exception
+        {
+            new XSDParser().parseSchemaElement(m_schema, XSDParser.PARSER_MERGED);
+        }
+
+        /**
+         * @see  IBenchmark#setUp()
+         */
+        public void setUp()
+                   throws Exception
+        {
+            StringBuilder schema = new StringBuilder();
+            schema.append("<schema xmlns=\"http://www.w3.org/2001/XMLSchema\" ")
+                  .append("xmlns:tns=\"http://benchmark\" targetNamespace=\"http://benchmark\">")
+                  .append("<element name=\"").append(SYNTHETIC_RFC)
+                  .append("\"><complexType><sequence>");
+
+            for (int i = 0; i < SCHEMA_STRUCTURES; i++)
+            {
+                schema.append("<element name=\"IMPORT").append(i).append("\" type=\"tns:ZSTRUCT")
+                      .append(i).append("\"/>");
+            }
+            schema.append("</sequence></complexType></element>");
+
+            for (int i = 0; i < SCHEMA_STRUCTURES; i++)
+            {
+                schema.append("<complexType name=\"ZSTRUCT").append(i).append("\"><sequence>")
+                      .append("<element name=\"KEY\" type=\"string\"/>")
+                      .append("<element name=\"NAME\" type=\"string\"/>")
+                      .append("<element name=\"AMOUNT\" type=\"int\"/>")
+                      .append("</sequence></complexType>");
+            }
+            schema.append("</schema>");
+
+            m_schema = XMLHelper.createDocumentFromXML(schema.toString()).getDocumentElement();
+        }
+
+        /**
+         * @see  IBenchmark#tearDown()
+         */
+        public void tearDown()
+        {
+        }
+    }
+
+    /**
+     * Sends the recorded IDocs.
+     */
+    private class SendIDOCBenchmark
+        implements IBenchmark
+    {
+        /**
+         * Holds the message type per IDoc.
+         */
+        private final List<String> m_messageTypes = new ArrayList<String>();
+        /**
+         * Holds the requests.
+         */
+        private final List<Integer> m_requests = new ArrayList<Integer>();
+        /**
+         * Holds the node the responses are added to.
+         */
+        private int m_response;
+        /**
+         * Holds the sender.
+         */
+        private SAPJCoRequestSender m_sender;
+        /**
+         * Holds the number of sent IDocs.
+         */
+        private int m_sent;
+        /**
+         * Holds the IDoc type per IDoc.
+         */
+        private final List<String> m_types = new ArrayList<String>();
+
+        /**
+         * @see  IBenchmark#getName()
+         */
+        public String getName()
+        {
+            return "sendIDOCRequest";
+        }
+
+        /**
+         * @see  IBenchmark#run()
+         */
+        public void run()
+                 throws Exception
+        {
+            int index = m_sent++ % m_requests.size();
+
+            m_sender.sendIDOCRequest(m_requests.get(index), m_response, m_connection,
+                                     m_types.get(index), m_messageTypes.get(index), "", "", "");
+
+            BACUtil.deleteNode(Node.getFirstChild(m_response));
+            BACUtil.deleteNode(Node.getFirstChild(m_response));
+        }
+
+        /**
+         * @see  IBenchmark#setUp()
+         */
+        public void setUp()
+                   throws Exception
+        {
+            File[] idocFiles = m_local.getRecordedFiles(LocalSAPSystem.FOLDER_IDOCS);
+
+            if ((m_local.getIDOCRepository() == null) || (idocFiles.length == 0))
+            {
+                throw new UnsupportedOperationException("no IDocs recorded");
+            }
+
+            for (File idocFile : idocFiles)
+            {
+                int request = m_doc.load(idocFile.getPath());
+                int controlRecord = Node.getElement(Node.getFirstChildElement(request), "EDI_DC40");
+
+                m_requests.add(request);
+                m_types.add(getBaseName(idocFile));
+                m_messageTypes.add(Node.getDataElement(controlRecord, "MESTYP", ""));
+            }
+
+            m_response = m_doc.createElement("response");
+            m_sender = new SAPJCoRequestSender(m_config)
+            {
+                @Override protected OLEDBRequestSender createOLEDBRequestSender()
+                {
+                    return m_local.createOLEDBRequestSender();
+                }
+            };
+        }
+
+        /**
+         * @see  IBenchmark#tearDown()
+         */
+        public void tearDown()
+        {
+            for (Integer request : m_requests)
+            {
+                BACUtil.deleteNode(request);
+            }
+            BACUtil.deleteNode(m_response);
+        }
+    }
+
+    /**
+     * Sends the recorded RFC requests.
+     */
+    private class SendRFCBenchmark
+        implements IBenchmark
+    {
+        /**
+         * Holds the requests.
+         */
+        private final List<Integer> m_requests = new ArrayList<Integer>();
+        /**
+         * Holds the RFC per request.
+         */
+        private final List<String> m_rfcNames = new ArrayList<String>();
+        /**
+         * Holds the sender.
+         */
+        private SAPJCoRequestSender m_sender;
+        /**
+         * Holds the number of sent requests.
+         */
+        private int m_sent;
+
+        /**
+         * @see  IBenchmark#getName()
+         */
+        public String getName()
+        {
+            return "sendRFCRequest";
+        }
+
+        /**
+         * @see  IBenchmark#run()
+         */
+        public void run()
+                 throws Exception
+        {
+            int index = m_sent++ % m_requests.size();
+
+            BACUtil.deleteNode(m_sender.sendRFCRequest(m_requests.get(index), m_connection,
+                                                       m_rfcNames.get(index)));
+        }
+
+        /**
+         * @see  IBenchmark#setUp()
+         */
+        public void setUp()
+                   throws Exception
+        {
+            for (File request : m_local.getRecordedFiles(LocalSAPSystem.FOLDER_REQUESTS))
+            {
+                m_requests.add(m_doc.load(request.getPath()));
+                m_rfcNames.add(getBaseName(request));
+            }
+
+            if (m_requests.isEmpty())
+            {
+                throw new UnsupportedOperationException("no RFCs recorded");
+            }
+
+            m_sender = new SAPJCoRequestSender(m_config);
+        }
+
+        /**
+         * @see  IBenchmark#tearDown()
+         */
+        public void tearDown()
+        {
+            for (Integer request : m_requests)
+            {
+                BACUtil.deleteNode(request);
+            }
+        }
+    }
+
+    /**
+     * Repository with function templates that are defined in memory instead of read from SAP.
+     */
+    private static class SyntheticRepository extends JCO.BasicRepository
+        implements IRepository
+    {
+        /**
+         * Creates a new SyntheticRepository object.
+         *
+         * @param  name  The name of the repository.
+         */
+        SyntheticRepository(String name)
+        {
+            super(name);
+        }
+    }
+}
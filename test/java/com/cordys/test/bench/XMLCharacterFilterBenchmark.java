@@ -0,0 +1,279 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.bench;
+
+import com.eibus.applicationconnector.sap.util.XMLCharacterFilter;
+
+/**
+ * Microbenchmark for removing the characters that are not allowed in XML from responses. Clean
+ * and dirty payloads of 1 K up to 50 M characters are filtered with the old implementation, which appended
+ * every character to a StringBuffer, and with the XMLCharacterFilter.
+ *
+ * <p>The payloads contain text with umlauts and characters outside the Basic Multilingual Plane.
+ * The dirty payloads also contain a control character or a lone surrogate every 1,000
+ * characters. The old implementation removed the surrogate pairs as well, so the results are
+ * only compared for payloads without them.</p>
+ *
+ * <p>Usage: XMLCharacterFilterBenchmark [max size in K characters]. The default is 51,200.</p>
+ *
+ * @author  pgussow
+ */
+public class XMLCharacterFilterBenchmark
+{
+    /**
+     * Holds the text the payloads are made of.
+     */
+    private static final String TEXT = "MATNR 000000000000004711 Gr\u00f6\u00dfe M\u00fcller " +
+                                       "\ud83d\ude00 Werk 1000\t";
+    /**
+     * Holds the number of characters that is filtered per measurement of a size.
+     */
+    private static final long CHARS_PER_MEASUREMENT = 200L * 1024 * 1024;
+    /**
+     * Holds the sizes of the payloads in KB.
+     */
+    private static final int[] SIZES = { 1, 64, 1024, 51200 };
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        try
+        {
+            int maxSize = (saArguments.length > 0) ? Integer.parseInt(saArguments[0]) : 51200;
+
+            verify();
+
+            for (int size : SIZES)
+            {
+                if (size <= maxSize)
+                {
+                    measure(size * 1024, false);
+                    measure(size * 1024, true);
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * This method creates a payload of the given number of characters.
+     *
+     * @param   size   The number of characters.
+     * @param   dirty  Whether the payload contains invalid characters.
+     * @param   pairs  Whether the payload contains surrogate pairs.
+     *
+     * @return  The payload.
+     */
+    private static String createPayload(int size, boolean dirty, boolean pairs)
+    {
+        String text = pairs ? TEXT : TEXT.replace("\ud83d\ude00", "??");
+        char[] returnValue = new char[size];
+
+        for (int i = 0; i < size; i++)
+        {
+            returnValue[i] = text.charAt(i % text.length());
+        }
+
+        // Do not cut a surrogate pair in half.
+        if ((size > 0) && Character.isHighSurrogate(returnValue[size - 1]))
+        {
+            returnValue[size - 1] = ' ';
+        }
+
+        if (dirty)
+        {
+            for (int i = 500; i < size; i += 1000)
+            {
+                returnValue[i] = ((i / 1000) % 2 == 0) ? '\u0001' : '\udc00';
+            }
+        }
+
+        return new String(returnValue);
+    }
+
+    /**
+     * This method filters the given number of payloads and prints the throughput of both
+     * implementations.
+     *
+     * @param   size   The number of characters of the payload.
+     * @param   dirty  Whether the payload contains invalid characters.
+     */
+    private static void measure(int size, boolean dirty)
+    {
+        String payload = createPayload(size, dirty, true);
+        int iterations = (int) Math.max(3, CHARS_PER_MEASUREMENT / size);
+        String name = (dirty ? "dirty." : "clean.") + (size / 1024) + "KB";
+
+        for (int pass = 0; pass < 2; pass++)
+        {
+            int count = (pass == 1) ? iterations : ((iterations / 5) + 1);
+            long length = 0;
+            long start = System.nanoTime();
+
+            for (int i = 0; i < count; i++)
+            {
+                length += stripWithStringBuffer(payload).length();
+            }
+
+            long old = System.nanoTime() - start;
+
+            start = System.nanoTime();
+
+            for (int i = 0; i < count; i++)
+            {
+                length += XMLCharacterFilter.strip(payload).length();
+            }
+
+            long filter = System.nanoTime() - start;
+
+            if (pass == 1)
+            {
+                print("xmlfilter.stringbuffer." + name, size, count, old);
+                print("xmlfilter.filter." + name, size, count, filter);
+            }
+
+            if (length == 0)
+            {
+                System.out.println("Nothing filtered");
+            }
+        }
+    }
+
+    /**
+     * This method prints the result of a measurement.
+     *
+     * @param  name        The name of the measurement.
+     * @param  size        The number of characters of the payload.
+     * @param  iterations  The number of payloads that were filtered.
+     * @param  nanos       The elapsed time in nanoseconds.
+     */
+    private static void print(String name, int size, int iterations, long nanos)
+    {
+        double mbPerSecond = (((double) size * iterations) / (1024 * 1024)) / (nanos / 1e9);
+
+        System.out.println(name + ": " + iterations + " payloads, " + ((nanos / iterations) / 1000) +
+                           " us per payload, " + Math.round(mbPerSecond) + " MB/s");
+    }
+
+    /**
+     * This is the implementation that was used before the XMLCharacterFilter.
+     *
+     * @param   in  The String whose non-valid characters we want to remove.
+     *
+     * @return  The in String, stripped of non-valid characters.
+     */
+    private static String stripWithStringBuffer(String in)
+    {
+        StringBuffer out = new StringBuffer();
+
+        if ((in == null) || ("".equals(in)))
+        {
+            return "";
+        }
+
+        for (int i = 0; i < in.length(); i++)
+        {
+            char current = in.charAt(i);
+
+            if ((current == 0x9) || (current == 0xA) || (current == 0xD) ||
+                    ((current >= 0x20) && (current <= 0xD7FF)) ||
+                    ((current >= 0xE000) && (current <= 0xFFFD)))
+            {
+                out.append(current);
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * This method checks the filter against the old implementation and checks the handling of
+     * surrogate pairs and character arrays.
+     *
+     * @throws  Exception  In case a check fails.
+     */
+    private static void verify()
+                 throws Exception
+    {
+        for (int size = 0; size < 5000; size += 7)
+        {
+            String clean = createPayload(size, false, true);
+            String dirty = createPayload(size, true, false);
+
+            if (XMLCharacterFilter.strip(clean) != clean)
+            {
+                throw new Exception("A clean payload of " + size + " characters was copied");
+            }
+
+            String expected = stripWithStringBuffer(dirty);
+
+            if (!expected.equals(XMLCharacterFilter.strip(dirty)))
+            {
+                throw new Exception("The filtered payload of " + size + " characters differs");
+            }
+
+            char[] chars = ("#" + dirty + "#").toCharArray();
+            int length = XMLCharacterFilter.strip(chars, 1, dirty.length());
+
+            if (!expected.equals(new String(chars, 1, length)))
+            {
+                throw new Exception("The filtered array of " + size + " characters differs");
+            }
+        }
+
+        check("a\ud83d\ude00b", "a\ud83d\ude00b");
+        check("a\ud83db", "ab");
+        check("a\ude00\ud83d", "a");
+        check("\ud83d\ud83d\ude00", "\ud83d\ude00");
+        check("\u0000\u0008\u000b\ufffe\uffff", "");
+        check("\t\r\n\ufffd", "\t\r\n\ufffd");
+
+        if (!"".equals(XMLCharacterFilter.strip(null)))
+        {
+            throw new Exception("null is not filtered to an empty string");
+        }
+
+        System.out.println("Verified the filter");
+    }
+
+    /**
+     * This method checks the result of the filter for the given input.
+     *
+     * @param   in        The input.
+     * @param   expected  The expected result.
+     *
+     * @throws  Exception  In case the result differs.
+     */
+    private static void check(String in, String expected)
+                       throws Exception
+    {
+        String actual = XMLCharacterFilter.strip(in);
+
+        if (!expected.equals(actual))
+        {
+            throw new Exception("Filtering " + in + " gave " + actual + " instead of " + expected);
+        }
+    }
+}
@@ -0,0 +1,531 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.connection;
+
+import com.eibus.applicationconnector.sap.connection.ISAPConnection;
+import com.eibus.applicationconnector.sap.metadata.ESAPObjectType;
+import com.eibus.applicationconnector.sap.metadata.IMetadataCache;
+import com.eibus.applicationconnector.sap.metadata.filter.IFilter;
+import com.eibus.applicationconnector.sap.metadata.storage.CacheStorageFactory;
+import com.eibus.applicationconnector.sap.metadata.storage.ICacheStorage;
+import com.eibus.applicationconnector.sap.metadata.types.IBAPIMetadata;
+import com.eibus.applicationconnector.sap.metadata.types.IIDOCMetadata;
+import com.eibus.applicationconnector.sap.metadata.types.IRFCMetadata;
+import com.eibus.applicationconnector.sap.metadata.types.ITypeContainer;
+import com.eibus.applicationconnector.sap.metadata.types.ITypeMetadata;
+import com.eibus.applicationconnector.sap.metadata.types.SAPMetadataFactory;
+import com.eibus.applicationconnector.sap.soap.ClearCache;
+
+import java.io.File;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmark for the binary metadata cache storage. Synthetic caches with 1k, 10k and 100k entries
+ * per object type are persisted as XML. The binary storage then migrates them, after which the
+ * contents of both are compared and the load times of both storages are printed.
+ *
+ * @author  pgussow
+ */
+public class TestBinaryCacheStorage
+{
+    /**
+     * Holds the cache sizes to test.
+     */
+    private static final int[] SIZES = new int[] { 1000, 10000, 100000 };
+    /**
+     * Holds the temporary cache directory.
+     */
+    private File m_cacheDir;
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        TestBinaryCacheStorage tbcs = new TestBinaryCacheStorage();
+
+        try
+        {
+            tbcs.m_cacheDir = File.createTempFile("metadatacache", "");
+            tbcs.m_cacheDir.delete();
+            tbcs.m_cacheDir.mkdirs();
+            ClearCache.setLocal_cacheDirectory(tbcs.m_cacheDir.getPath());
+
+            for (int size : SIZES)
+            {
+                tbcs.run(size);
+            }
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            ClearCache.deleteFile(tbcs.m_cacheDir.getPath());
+        }
+    }
+
+    /**
+     * Checks that the type of an entry that was not decoded yet can be changed and that its items
+     * are still read correctly afterwards.
+     *
+     * @param   container  The entry as loaded by the binary storage.
+     *
+     * @throws  Exception  In case the type was not changed or the items were lost.
+     */
+    private static void checkSetType(ITypeContainer container)
+                              throws Exception
+    {
+        container.setType(ESAPObjectType.BAPI);
+
+        if ((container.getType() != ESAPObjectType.BAPI) || (container.getItems().size() != 3))
+        {
+            throw new Exception("Changing the type of entry " + container.getValue() + " failed");
+        }
+    }
+
+    /**
+     * Compares the contents of two caches.
+     *
+     * @param   expected  The expected objects.
+     * @param   actual    The actual objects.
+     *
+     * @throws  Exception  In case the contents differ.
+     */
+    private static void compare(Map<String, ITypeContainer> expected,
+                                Map<String, ITypeContainer> actual)
+                         throws Exception
+    {
+        if (expected.size() != actual.size())
+        {
+            throw new Exception("Expected " + expected.size() + " entries, found " +
+                                actual.size());
+        }
+
+        for (ITypeContainer container : expected.values())
+        {
+            ITypeContainer other = actual.get(container.getValue());
+
+            if ((other == null) || !describe(container).equals(describe(other)))
+            {
+                throw new Exception("Entry " + container.getValue() + " differs");
+            }
+        }
+    }
+
+    /**
+     * This method creates a synthetic container.
+     *
+     * @param   type  The type of object.
+     * @param   i     The number of the entry.
+     *
+     * @return  The container.
+     */
+    private static ITypeContainer createContainer(ESAPObjectType type, int i)
+    {
+        ITypeContainer returnValue = SAPMetadataFactory.createContainer(type);
+        returnValue.setValue(type + "_" + i);
+        returnValue.setDisplayName("Object " + i);
+        returnValue.setDescription("Description of object " + (i % 100));
+
+        for (int j = 0; j < 3; j++)
+        {
+            ITypeMetadata item = SAPMetadataFactory.createObject(type);
+            item.setValue(type + "_" + i + "_" + j);
+            item.setDisplayName("Item " + j);
+
+            switch (type)
+            {
+                case BAPI:
+
+                    IBAPIMetadata bapi = (IBAPIMetadata) item;
+                    bapi.setMethod("METHOD" + j);
+                    bapi.setMethodName("Method " + j);
+                    bapi.setDescription("Method description " + j);
+                    bapi.setShortText("Short text " + i);
+                    bapi.setRFCFuntion("BAPI_" + i + "_" + j);
+                    bapi.setClassVerb((j == 0) ? "X" : "");
+                    bapi.setAPIType("I");
+                    break;
+
+                case RFC:
+
+                    IRFCMetadata rfc = (IRFCMetadata) item;
+                    rfc.setRFCFunction("Z_RFC_" + i + "_" + j);
+                    rfc.setGroupName("GROUP" + (i % 50));
+                    rfc.setApplication("S");
+                    rfc.setHost(null);
+                    rfc.setShortText("Short text " + i);
+                    break;
+
+                default:
+
+                    IIDOCMetadata idoc = (IIDOCMetadata) item;
+                    idoc.setType("IDOCTYPE" + j);
+                    idoc.setCIMType("CIM" + j);
+                    idoc.setReleased("46C");
+                    break;
+            }
+
+            returnValue.addType(item);
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method returns a description of all fields of a container.
+     *
+     * @param   container  The container.
+     *
+     * @return  The description.
+     */
+    private static String describe(ITypeContainer container)
+    {
+        StringBuffer sb = new StringBuffer();
+        sb.append(container.getValue()).append('|').append(container.getDisplayName()).append('|')
+          .append(container.getDescription()).append('|').append(container.getType());
+
+        for (ITypeMetadata item : container.getItems().values())
+        {
+            sb.append("\n").append(item.getValue()).append('|').append(item.getDisplayName());
+
+            if (item instanceof IBAPIMetadata)
+            {
+                IBAPIMetadata bapi = (IBAPIMetadata) item;
+                sb.append('|').append(bapi.getMethod()).append('|').append(bapi.getMethodName())
+                  .append('|').append(bapi.getDescription()).append('|')
+                  .append(bapi.getShortText()).append('|').append(bapi.getRFCFuntion())
+                  .append('|').append(bapi.getClassVerb()).append('|').append(bapi.getAPIType());
+            }
+            else if (item instanceof IRFCMetadata)
+            {
+                IRFCMetadata rfc = (IRFCMetadata) item;
+                sb.append('|').append(rfc.getRFCFunction()).append('|').append(rfc.getGroupName())
+                  .append('|').append(rfc.getApplication()).append('|').append(rfc.getHost())
+                  .append('|').append(rfc.getShortText());
+            }
+            else if (item instanceof IIDOCMetadata)
+            {
+                IIDOCMetadata idoc = (IIDOCMetadata) item;
+                sb.append('|').append(idoc.getType()).append('|').append(idoc.getCIMType())
+                  .append('|').append(idoc.getReleased());
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * This method loads the cache with the given storage.
+     *
+     * @param   storage  The storage.
+     * @param   id       The ID of the cache.
+     *
+     * @return  The loaded cache.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private static SimpleCache load(ICacheStorage storage, String id)
+                             throws Exception
+    {
+        SimpleCache returnValue = new SimpleCache(id);
+        storage.loadCache(id, returnValue);
+        return returnValue;
+    }
+
+    /**
+     * This method decodes all items of the cache.
+     *
+     * @param   cache  The cache.
+     *
+     * @return  The number of items.
+     */
+    private static int touchAll(IMetadataCache cache)
+    {
+        int returnValue = 0;
+
+        for (Iterator<ITypeContainer> it = cache.getAllBAPIs().values().iterator(); it.hasNext();)
+        {
+            returnValue += it.next().getItems().size();
+        }
+
+        for (Iterator<ITypeContainer> it = cache.getAllRFCs().values().iterator(); it.hasNext();)
+        {
+            returnValue += it.next().getItems().size();
+        }
+
+        for (Iterator<ITypeContainer> it = cache.getAllIDOCs().values().iterator(); it.hasNext();)
+        {
+            returnValue += it.next().getItems().size();
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * Runs the benchmark for the given size.
+     *
+     * @param   size  The number of entries per object type.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void run(int size)
+              throws Exception
+    {
+        String id = "bench" + size;
+        SimpleCache original = new SimpleCache(id);
+
+        for (int i = 0; i < size; i++)
+        {
+            original.addBAPI(createContainer(ESAPObjectType.BAPI, i));
+            original.addRFC(createContainer(ESAPObjectType.RFC, i));
+            original.addIDOC(createContainer(ESAPObjectType.IDOC, i));
+        }
+
+        ICacheStorage xml = CacheStorageFactory.createCacheStorage(CacheStorageFactory.STORAGE_XML,
+                                                                   "test");
+        ICacheStorage binary = CacheStorageFactory.createCacheStorage(CacheStorageFactory.STORAGE_BINARY,
+                                                                      "test");
+        xml.persistCache(original);
+
+        // The first binary load migrates the XML files.
+        SimpleCache migrated = load(binary, id);
+        compare(original.getAllBAPIs(), migrated.getAllBAPIs());
+        compare(original.getAllRFCs(), migrated.getAllRFCs());
+        compare(original.getAllIDOCs(), migrated.getAllIDOCs());
+
+        if (!new File(new File(m_cacheDir, id), "bapis.bin").exists())
+        {
+            throw new Exception("The XML cache was not migrated");
+        }
+
+        long start = System.nanoTime();
+        SimpleCache fromXML = load(xml, id);
+        long xmlLoad = System.nanoTime() - start;
+
+        start = System.nanoTime();
+
+        SimpleCache fromBinary = load(binary, id);
+        long binaryLoad = System.nanoTime() - start;
+
+        start = System.nanoTime();
+
+        int items = touchAll(fromBinary);
+        long binaryDecode = System.nanoTime() - start;
+
+        compare(fromXML.getAllBAPIs(), fromBinary.getAllBAPIs());
+        compare(fromXML.getAllRFCs(), fromBinary.getAllRFCs());
+        compare(fromXML.getAllIDOCs(), fromBinary.getAllIDOCs());
+
+        checkSetType(load(binary, id).getAllRFCs().values().iterator().next());
+
+        long xmlSize = 0;
+        long binarySize = 0;
+
+        for (File file : new File(m_cacheDir, id).listFiles())
+        {
+            if (file.getName().endsWith(".xml"))
+            {
+                xmlSize += file.length();
+            }
+            else if (file.getName().endsWith(".bin"))
+            {
+                binarySize += file.length();
+            }
+        }
+
+        System.out.println(size + " entries per type:");
+        System.out.println("  XML:    load " + (xmlLoad / 1000000) + " ms, " + (xmlSize / 1024) +
+                           " KB");
+        System.out.println("  Binary: load " + (binaryLoad / 1000000) + " ms, decode " + items +
+                           " items " + (binaryDecode / 1000000) + " ms, " + (binarySize / 1024) +
+                           " KB");
+    }
+
+    /**
+     * Cache that only holds the objects. It is used to load the storages without a SAP
+     * connection.
+     */
+    private static class SimpleCache
+        implements IMetadataCache
+    {
+        /**
+         * Holds all BAPIs.
+         */
+        private Map<String, ITypeContainer> m_bapis = new LinkedHashMap<String, ITypeContainer>();
+        /**
+         * Holds the ID of the cache.
+         */
+        private String m_id;
+        /**
+         * Holds all IDOCs.
+         */
+        private Map<String, ITypeContainer> m_idocs = new LinkedHashMap<String, ITypeContainer>();
+        /**
+         * Holds all RFCs.
+         */
+        private Map<String, ITypeContainer> m_rfcs = new LinkedHashMap<String, ITypeContainer>();
+
+        /**
+         * Creates a new SimpleCache object.
+         *
+         * @param  id  The ID of the cache.
+         */
+        SimpleCache(String id)
+        {
+            m_id = id;
+        }
+
+        /**
+         * @see  IMetadataCache#addBAPI(ITypeContainer)
+         */
+        public void addBAPI(ITypeContainer bapiDetails)
+        {
+            m_bapis.put(bapiDetails.getValue(), bapiDetails);
+        }
+
+        /**
+         * @see  IMetadataCache#addIDOC(ITypeContainer)
+         */
+        public void addIDOC(ITypeContainer idocDetails)
+        {
+            m_idocs.put(idocDetails.getValue(), idocDetails);
+        }
+
+        /**
+         * @see  IMetadataCache#addRFC(ITypeContainer)
+         */
+        public void addRFC(ITypeContainer rfcDetails)
+        {
+            m_rfcs.put(rfcDetails.getValue(), rfcDetails);
+        }
+
+        /**
+         * @see  IMetadataCache#getAllBAPIs()
+         */
+        public Map<String, ITypeContainer> getAllBAPIs()
+        {
+            return m_bapis;
+        }
+
+        /**
+         * @see  IMetadataCache#getAllIDOCs()
+         */
+        public Map<String, ITypeContainer> getAllIDOCs()
+        {
+            return m_idocs;
+        }
+
+        /**
+         * @see  IMetadataCache#getAllRFCs()
+         */
+        public Map<String, ITypeContainer> getAllRFCs()
+        {
+            return m_rfcs;
+        }
+
+        /**
+         * @see  IMetadataCache#getCacheStorage()
+         */
+        public ICacheStorage getCacheStorage()
+        {
+            return null;
+        }
+
+        /**
+         * @see  IMetadataCache#getID()
+         */
+        public String getID()
+        {
+            return m_id;
+        }
+
+        /**
+         * @see  IMetadataCache#getSAPConnection()
+         */
+        public ISAPConnection getSAPConnection()
+        {
+            return null;
+        }
+
+        /**
+         * @see  IMetadataCache#reloadAllData()
+         */
+        public void reloadAllData()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * @see  IMetadataCache#searchBAPI(boolean, IFilter, IFilter, IFilter)
+         */
+        public List<ITypeContainer> searchBAPI(boolean readFromSAP, IFilter object, IFilter method,
+                                               IFilter description)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * @see  IMetadataCache#searchIDOC(boolean, IFilter, IFilter, IFilter)
+         */
+        public List<ITypeContainer> searchIDOC(boolean readFromSAP, IFilter messageType,
+                                               IFilter operation, IFilter description)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * @see  IMetadataCache#searchRFC(boolean, IFilter, IFilter, IFilter)
+         */
+        public List<ITypeContainer> searchRFC(boolean readFromSAP, IFilter function, IFilter group,
+                                              IFilter description)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * @see  IMetadataCache#setCacheStorage(ICacheStorage)
+         */
+        public void setCacheStorage(ICacheStorage storage)
+        {
+        }
+
+        /**
+         * @see  IMetadataCache#setID(String)
+         */
+        public void setID(String id)
+        {
+            m_id = id;
+        }
+
+        /**
+         * @see  IMetadataCache#setSAPConnection(ISAPConnection)
+         */
+        public void setSAPConnection(ISAPConnection connection)
+        {
+        }
+    }
+}
@@ -0,0 +1,329 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+ package com.cordys.test.connection;
+
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnection;
+import com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnectionManager;
+import com.eibus.applicationconnector.sap.connection.jco.SAPJCoUserConnectionPool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Contention benchmark for the connection pools. A number of threads send requests for a set of
+ * users through the shared SAPJCoConnectionManager and through the SAPJCoUserConnectionPool. The
+ * connections are simulated: a logon and a call take a fixed time, so no SAP system is needed. For
+ * both pools the throughput and the number of logons and logoffs are reported.
+ *
+ * @author  pgussow
+ */
+public class TestConnectionPoolContention
+{
+    /**
+     * Holds the time in ms a simulated logon takes.
+     */
+    private static final int LOGON_TIME = 20;
+    /**
+     * Holds the maximum number of connections.
+     */
+    private static final int MAX_CONNECTIONS = 10;
+    /**
+     * Holds the number of requests per thread.
+     */
+    private static final int REQUESTS_PER_THREAD = 200;
+    /**
+     * Holds the time in ms a simulated call takes.
+     */
+    private static final int CALL_TIME = 2;
+    /**
+     * Holds the number of concurrent threads.
+     */
+    private static final int THREADS = 40;
+    /**
+     * Holds the number of different users.
+     */
+    private static final int USERS = 8;
+    /**
+     * Holds the number of logoffs.
+     */
+    private int m_disconnects;
+    /**
+     * Holds the number of logons.
+     */
+    private int m_connects;
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        try
+        {
+            ISAPConfiguration config = createConfiguration();
+
+            TestConnectionPoolContention shared = new TestConnectionPoolContention();
+            shared.runLoadTest("shared ", config, shared.new SimulatedManager());
+
+            TestConnectionPoolContention perUser = new TestConnectionPoolContention();
+            perUser.runLoadTest("peruser", config, perUser.new SimulatedPool());
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates a configuration that returns empty values. The simulated connections never use it
+     * to connect.
+     *
+     * @return  The configuration.
+     */
+    private static ISAPConfiguration createConfiguration()
+    {
+        return (ISAPConfiguration) Proxy.newProxyInstance(ISAPConfiguration.class.getClassLoader(),
+                                                          new Class[] { ISAPConfiguration.class },
+                                                          new InvocationHandler()
+            {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    Class<?> returnType = method.getReturnType();
+
+                    if (returnType == String.class)
+                    {
+                        return "";
+                    }
+                    else if (returnType == boolean.class)
+                    {
+                        return Boolean.FALSE;
+                    }
+                    else if (returnType == int.class)
+                    {
+                        return 0;
+                    }
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * Runs the concurrent requests against the given pool.
+     *
+     * @param   name     The name to print.
+     * @param   config   The configuration.
+     * @param   manager  The pool to test.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void runLoadTest(String name, final ISAPConfiguration config,
+                             final SAPJCoConnectionManager manager)
+                      throws Exception
+    {
+        final Exception[] failure = new Exception[1];
+        Thread[] threads = new Thread[THREADS];
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < THREADS; i++)
+        {
+            final String user = "USER" + (i % USERS);
+
+            threads[i] = new Thread(new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            for (int j = 0; j < REQUESTS_PER_THREAD; j++)
+                            {
+                                SAPJCoConnection connection = manager.getUserConnection(config,
+                                                                                        user,
+                                                                                        "secret");
+
+                                try
+                                {
+                                    if (!user.equals(connection.getUser()))
+                                    {
+                                        throw new IllegalStateException("Got connection of " +
+                                                                        connection.getUser() +
+                                                                        " for " + user);
+                                    }
+                                    Thread.sleep(CALL_TIME);
+                                }
+                                finally
+                                {
+                                    manager.putUserConnection(connection);
+                                }
+                            }
+                        }
+                        catch (Exception e)
+                        {
+                            failure[0] = e;
+                        }
+                    }
+                });
+            threads[i].start();
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        long duration = System.currentTimeMillis() - start;
+
+        if (failure[0] != null)
+        {
+            throw failure[0];
+        }
+
+        System.out.println(name + ": " + (THREADS * REQUESTS_PER_THREAD) + " requests in " +
+                           duration + " ms (" + ((THREADS * REQUESTS_PER_THREAD * 1000L) /
+                                                 Math.max(duration, 1)) + " req/s). Logons: " +
+                           m_connects + ", logoffs: " + m_disconnects);
+
+        if ((m_connects - m_disconnects) > MAX_CONNECTIONS)
+        {
+            throw new IllegalStateException("More than " + MAX_CONNECTIONS +
+                                            " connections open: " +
+                                            (m_connects - m_disconnects));
+        }
+    }
+
+    /**
+     * Connection that simulates the logon and logoff times.
+     */
+    private class SimulatedConnection extends SAPJCoConnection
+    {
+        /**
+         * Holds whether or not the connection is open.
+         */
+        private volatile boolean m_open;
+
+        /**
+         * Creates a new SimulatedConnection object.
+         *
+         * @param  config    The configuration.
+         * @param  user      The user name.
+         * @param  password  The password.
+         */
+        SimulatedConnection(ISAPConfiguration config, String user, String password)
+        {
+            super(config, user, password);
+        }
+
+        /**
+         * @see  com.sap.mw.jco.JCO$Client#connect()
+         */
+        @Override public void connect()
+        {
+            try
+            {
+                Thread.sleep(LOGON_TIME);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+
+            synchronized (TestConnectionPoolContention.this)
+            {
+                m_connects++;
+            }
+            m_open = true;
+        }
+
+        /**
+         * @see  com.sap.mw.jco.JCO$Client#disconnect()
+         */
+        @Override public void disconnect()
+        {
+            if (m_open)
+            {
+                synchronized (TestConnectionPoolContention.this)
+                {
+                    m_disconnects++;
+                }
+                m_open = false;
+            }
+        }
+
+        /**
+         * @see  com.sap.mw.jco.JCO$Client#isAlive()
+         */
+        @Override public boolean isAlive()
+        {
+            return m_open;
+        }
+    }
+
+    /**
+     * Shared connection manager with simulated connections.
+     */
+    private class SimulatedManager extends SAPJCoConnectionManager
+    {
+        /**
+         * Creates a new SimulatedManager object.
+         */
+        SimulatedManager()
+        {
+            super(MAX_CONNECTIONS);
+        }
+
+        /**
+         * @see  com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnectionManager#createNewConnection(com.eibus.applicationconnector.sap.config.ISAPConfiguration,
+         *       java.lang.String, java.lang.String)
+         */
+        @Override protected SAPJCoConnection createNewConnection(ISAPConfiguration config,
+                                                                 String user, String password)
+        {
+            SAPJCoConnection connection = new SimulatedConnection(config, user, password);
+            connection.connect();
+            return connection;
+        }
+    }
+
+    /**
+     * Per user connection pool with simulated connections.
+     */
+    private class SimulatedPool extends SAPJCoUserConnectionPool
+    {
+        /**
+         * Creates a new SimulatedPool object.
+         */
+        SimulatedPool()
+        {
+            super(MAX_CONNECTIONS, 60000, 0);
+        }
+
+        /**
+         * @see  com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnectionManager#createNewConnection(com.eibus.applicationconnector.sap.config.ISAPConfiguration,
+         *       java.lang.String, java.lang.String)
+         */
+        @Override protected SAPJCoConnection createNewConnection(ISAPConfiguration config,
+                                                                 String user, String password)
+        {
+            SAPJCoConnection connection = new SimulatedConnection(config, user, password);
+            connection.connect();
+            return connection;
+        }
+    }
+}
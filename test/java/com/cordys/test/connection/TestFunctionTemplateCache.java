@@ -0,0 +1,325 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+ package com.cordys.test.connection;
+
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.config.SAPConfigurationFactory;
+import com.eibus.applicationconnector.sap.connection.jco.FunctionTemplateCache;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.util.logger.config.LoggerConfigurator;
+
+import com.eibus.xml.nom.Document;
+
+import com.sap.mw.jco.IRepository;
+
+import java.io.File;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Load test for the function template cache. A number of threads create requests for the same
+ * set of RFCs through a cold cache whose repository counts the getFunctionTemplate calls. After
+ * the run the repository must have been called exactly once per RFC, so the concurrent misses on
+ * the same RFC were coalesced. Clearing the cache must remove every RFC from the cache of the
+ * repository. An entry that expired must be removed from the cache of the repository and read
+ * from it again.
+ *
+ * @author  pgussow
+ */
+public class TestFunctionTemplateCache
+{
+    /**
+     * Holds the RFCs that are requested.
+     */
+    private static final String[] RFC_NAMES = new String[]
+                                              {
+                                                  "RFC_READ_TABLE", "BAPI_TRANSACTION_COMMIT",
+                                                  "BAPI_TRANSACTION_ROLLBACK",
+                                                  "BAPI_COMPANYCODE_GETLIST"
+                                              };
+    /**
+     * Holds the number of concurrent threads.
+     */
+    private static final int THREADS = 20;
+    /**
+     * Holds the number of requests per thread.
+     */
+    private static final int REQUESTS_PER_THREAD = 5000;
+    /**
+     * Holds the time to live in milliseconds for the expiry test.
+     */
+    private static final long TIME_TO_LIVE = 100;
+    /**
+     * Holds the configuration.
+     */
+    private ISAPConfiguration m_config;
+    /**
+     * Holds the NOM document.
+     */
+    private Document m_doc;
+    /**
+     * Holds the repository that counts the calls to the real repository.
+     */
+    private IRepository m_repository;
+    /**
+     * Holds the number of templates removed from the cache of the repository.
+     */
+    private int m_repositoryPurges;
+    /**
+     * Holds the number of calls made to the repository.
+     */
+    private int m_repositoryCalls;
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        TestFunctionTemplateCache tm = new TestFunctionTemplateCache();
+
+        try
+        {
+            tm.setup();
+
+            // Create the configuration
+            tm.createConnection();
+
+            tm.runLoadTest();
+
+            tm.testExpiry();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            if (tm.m_config != null)
+            {
+                try
+                {
+                    tm.m_config.getJCoConnectionManager().closeAllConnections();
+                }
+                catch (SAPConnectorException e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Initialize the logger.
+     */
+    public void setup()
+    {
+        LoggerConfigurator.initLogger("./test/Log4jConfiguration.xml");
+        System.setProperty("java.library.path",
+                           "./docs/internal/sapdlls" + File.pathSeparator +
+                           System.getProperty("java.library.path"));
+
+        m_doc = new Document();
+    }
+
+    /**
+     * This method loads the configuration.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void createConnection()
+                           throws Exception
+    {
+        int node = m_doc.load(".\\test\\java\\com\\cordys\\test\\xmi\\sapr3config.xml");
+
+        try
+        {
+            m_config = SAPConfigurationFactory.createSAPConfiguration(node,
+                                                                      "o=system,cn=cordys,cn=main,o=gussow.com",
+                                                                      "cn=SAP Group,cn=soap nodes,o=system,cn=cordys,cn=main,o=gussow.com");
+        }
+        finally
+        {
+            BACUtil.deleteNode(node);
+        }
+    }
+
+    /**
+     * This method creates the repository that counts the calls to the real repository.
+     */
+    private void createCountingRepository()
+    {
+        final IRepository realRepository = m_config.getRepository();
+
+        m_repository = (IRepository) Proxy.newProxyInstance(IRepository.class
+                                                                              .getClassLoader(),
+                                                                              new Class[]
+                                                                              {
+                                                                                  IRepository.class
+                                                                              },
+                                                                              new InvocationHandler()
+            {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                              throws Throwable
+                {
+                    if ("getFunctionTemplate".equals(method.getName()))
+                    {
+                        synchronized (TestFunctionTemplateCache.this)
+                        {
+                            m_repositoryCalls++;
+                        }
+                    }
+                    else if ("removeFunctionTemplateFromCache".equals(method.getName()))
+                    {
+                        synchronized (TestFunctionTemplateCache.this)
+                        {
+                            m_repositoryPurges++;
+                        }
+                    }
+
+                    try
+                    {
+                        return method.invoke(realRepository, args);
+                    }
+                    catch (InvocationTargetException e)
+                    {
+                        throw e.getCause();
+                    }
+                }
+            });
+    }
+
+    /**
+     * Runs the concurrent requests and checks the number of repository calls.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void runLoadTest()
+                      throws Exception
+    {
+        createCountingRepository();
+
+        final FunctionTemplateCache cache = new FunctionTemplateCache(m_repository, 100, 0);
+        final Exception[] failure = new Exception[1];
+
+        Thread[] threads = new Thread[THREADS];
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < THREADS; i++)
+        {
+            threads[i] = new Thread(new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            for (int j = 0; j < REQUESTS_PER_THREAD; j++)
+                            {
+                                cache.createRequest(RFC_NAMES[j % RFC_NAMES.length]);
+                            }
+                        }
+                        catch (Exception e)
+                        {
+                            failure[0] = e;
+                        }
+                    }
+                });
+            threads[i].start();
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        long duration = System.currentTimeMillis() - start;
+
+        if (failure[0] != null)
+        {
+            throw failure[0];
+        }
+
+        System.out.println((THREADS * REQUESTS_PER_THREAD) + " requests in " + duration +
+                           " ms. Repository calls: " + m_repositoryCalls + ". Cache: " + cache);
+
+        if (m_repositoryCalls != RFC_NAMES.length)
+        {
+            throw new IllegalStateException("Expected " + RFC_NAMES.length +
+                                            " repository calls, but got " + m_repositoryCalls);
+        }
+
+        cache.clear();
+
+        if (m_repositoryPurges != RFC_NAMES.length)
+        {
+            throw new IllegalStateException("Expected " + RFC_NAMES.length +
+                                            " templates removed from the repository, but got " +
+                                            m_repositoryPurges);
+        }
+    }
+
+    /**
+     * Checks that an expired entry is removed from the cache of the repository and read from the
+     * repository again, while an entry that did not expire yet is served from the cache.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testExpiry()
+                     throws Exception
+    {
+        FunctionTemplateCache cache = new FunctionTemplateCache(m_repository, 100, TIME_TO_LIVE);
+        String rfcName = RFC_NAMES[0];
+
+        cache.createRequest(rfcName);
+
+        int calls;
+        int purges;
+
+        synchronized (this)
+        {
+            calls = m_repositoryCalls;
+            purges = m_repositoryPurges;
+        }
+
+        cache.createRequest(rfcName);
+        Thread.sleep(TIME_TO_LIVE * 2);
+        cache.createRequest(rfcName);
+
+        synchronized (this)
+        {
+            calls = m_repositoryCalls - calls;
+            purges = m_repositoryPurges - purges;
+        }
+
+        if ((calls != 1) || (purges != 1))
+        {
+            throw new IllegalStateException("Expected the expired entry to be removed from and " +
+                                            "read from the repository once, but got " + purges +
+                                            " removals and " + calls + " reads");
+        }
+
+        System.out.println("Expiry: the expired entry was read from the repository again. Cache: " +
+                           cache);
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.connection;
+
+import com.eibus.applicationconnector.sap.metadata.GeneratedMethodCache;
+
+import java.io.File;
+
+/**
+ * Test for the cache of generated WSDL. The WSDL of 500 methods is stored and read back from
+ * memory, from the cache folder by a new cache (as after a restart) and after the memory is full.
+ * A changed fingerprint must give a new key and ClearCache must remove everything.
+ *
+ * @author  pgussow
+ */
+public class TestGeneratedMethodCache
+{
+    /**
+     * Holds the number of methods.
+     */
+    private static final int METHODS = 500;
+    /**
+     * Holds the cache folder.
+     */
+    private File m_folder;
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        TestGeneratedMethodCache tc = new TestGeneratedMethodCache();
+
+        try
+        {
+            tc.setup();
+
+            tc.testKeys();
+
+            tc.testMemoryAndFiles();
+
+            tc.testClear();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            tc.tearDown();
+        }
+    }
+
+    /**
+     * Creates the cache folder.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    public void setup()
+               throws Exception
+    {
+        m_folder = File.createTempFile("generated", "");
+        m_folder.delete();
+    }
+
+    /**
+     * Removes the cache folder.
+     */
+    public void tearDown()
+    {
+        if (m_folder != null)
+        {
+            File[] files = m_folder.listFiles();
+
+            if (files != null)
+            {
+                for (File file : files)
+                {
+                    file.delete();
+                }
+            }
+            m_folder.delete();
+        }
+    }
+
+    /**
+     * This method returns the fingerprint of the given method.
+     *
+     * @param   method  The number of the method.
+     * @param   length  The length of the first field.
+     *
+     * @return  The fingerprint.
+     */
+    private static String fingerprint(int method, int length)
+    {
+        return "JCoMethodGenerator|RFC|Z_METHOD_" + method + "|http://test|null\n" + "Z_METHOD_" +
+               method + "|ZMethod" + method + "|null\n{KEY|0|" + length + "|0|false|null|Key\n}";
+    }
+
+    /**
+     * This method returns the WSDL of the given method.
+     *
+     * @param   method  The number of the method.
+     *
+     * @return  The WSDL.
+     */
+    private static String wsdl(int method)
+    {
+        return "<definitions name=\"ZMethod" + method + "\" targetNamespace=\"http://test\">" +
+               "<documentation>\u00e9\u00fc\u4e2d</documentation></definitions>";
+    }
+
+    /**
+     * Checks that ClearCache removes the WSDL from memory and from the cache folder.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testClear()
+                    throws Exception
+    {
+        GeneratedMethodCache cache = new GeneratedMethodCache(m_folder, METHODS);
+        String key = GeneratedMethodCache.createKey(fingerprint(0, 10));
+
+        cache.put(key, wsdl(0));
+        cache.clear();
+
+        if ((cache.get(key) != null) ||
+                (new GeneratedMethodCache(m_folder, METHODS).get(key) != null))
+        {
+            throw new Exception("The WSDL was not removed by clear");
+        }
+
+        File[] files = m_folder.listFiles();
+
+        if ((files != null) && (files.length > 0))
+        {
+            throw new Exception(files.length + " files left after clear");
+        }
+
+        System.out.println("Clear: " + cache);
+    }
+
+    /**
+     * Checks that the keys are stable and change with the metadata.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testKeys()
+                   throws Exception
+    {
+        String key = GeneratedMethodCache.createKey(fingerprint(1, 10));
+
+        if (!key.equals(GeneratedMethodCache.createKey(fingerprint(1, 10))))
+        {
+            throw new Exception("The key of the same fingerprint is not stable");
+        }
+
+        if (key.equals(GeneratedMethodCache.createKey(fingerprint(1, 12))))
+        {
+            throw new Exception("A changed field length did not change the key");
+        }
+
+        if (!key.matches("[0-9a-f]{40}"))
+        {
+            throw new Exception("The key can not be used as a file name: " + key);
+        }
+
+        System.out.println("Keys: " + key);
+    }
+
+    /**
+     * Checks that the WSDL is found in memory, in the cache folder after a restart and after the
+     * least recently used entries were removed from memory.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testMemoryAndFiles()
+                             throws Exception
+    {
+        GeneratedMethodCache cache = new GeneratedMethodCache(m_folder, METHODS / 10);
+        String[] keys = new String[METHODS];
+
+        for (int i = 0; i < METHODS; i++)
+        {
+            keys[i] = GeneratedMethodCache.createKey(fingerprint(i, 10));
+
+            if (cache.get(keys[i]) != null)
+            {
+                throw new Exception("Method " + i + " was found before it was generated");
+            }
+            cache.put(keys[i], wsdl(i));
+        }
+
+        // Only the last methods are in memory, the others are read from the folder.
+        for (int i = 0; i < METHODS; i++)
+        {
+            if (!wsdl(i).equals(cache.get(keys[i])))
+            {
+                throw new Exception("Method " + i + " returned the wrong WSDL");
+            }
+        }
+
+        if ((cache.getHits() != METHODS) || (cache.getMisses() != METHODS))
+        {
+            throw new Exception("Unexpected hits and misses: " + cache);
+        }
+
+        // A new cache on the same folder finds the methods of the old one.
+        GeneratedMethodCache restarted = new GeneratedMethodCache(m_folder, METHODS);
+
+        for (int i = 0; i < METHODS; i++)
+        {
+            if (!wsdl(i).equals(restarted.get(keys[i])))
+            {
+                throw new Exception("Method " + i + " was not found after a restart");
+            }
+        }
+
+        System.out.println("Memory and files: " + cache + ", after restart: " + restarted);
+    }
+}
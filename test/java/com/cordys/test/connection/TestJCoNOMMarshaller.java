@@ -0,0 +1,363 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+ package com.cordys.test.connection;
+
+import com.cordys.test.bench.LocalSAPSystem;
+
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.connection.jco.JCoNOMMarshaller;
+import com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnection;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.util.logger.config.LoggerConfigurator;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Node;
+
+import com.sap.mw.jco.JCO;
+
+import java.io.File;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Conformance test and benchmark for the direct NOM to JCo marshalling. It runs against a
+ * LocalSAPSystem, so no SAP system is needed. For every BAPI payload in the bapis folder and in the
+ * requests folder of the recording the request is filled both through fromXML() and through the
+ * JCoNOMMarshaller and the resulting requests are compared. The request is executed once and the
+ * response is converted both through toXML()/parseString() and directly, and the two NOM trees are
+ * compared. Finally both paths are timed over a number of iterations. Payloads of RFCs without a
+ * recorded template are skipped.
+ *
+ * <p>Namespaced names (e.g. /BIC/ZFIELD) are checked separately on a structure that is built in
+ * the test, because the recording does not necessarily contain them.</p>
+ *
+ * @author  pgussow
+ */
+public class TestJCoNOMMarshaller
+{
+    /**
+     * Holds the folder with the BAPI payloads.
+     */
+    private static final String CORPUS_FOLDER = ".\\test\\java\\com\\cordys\\test\\connection\\bapis";
+    /**
+     * Holds the number of iterations for the benchmark.
+     */
+    private static final int ITERATIONS = 1000;
+    /**
+     * Holds the XML of a structure with namespaced fields, as toXML() writes it.
+     */
+    private static final String NAMESPACED_XML = "<ZSTRUCT><_-BIC_-ZFIELD>VALUE</_-BIC_-ZFIELD>" +
+                                                 "<PLAIN>X</PLAIN></ZSTRUCT>";
+    /**
+     * Holds the client the requests are executed with.
+     */
+    private SAPJCoConnection m_client;
+    /**
+     * Holds the configuration.
+     */
+    private ISAPConfiguration m_config;
+    /**
+     * Holds the NOM document.
+     */
+    private Document m_doc;
+    /**
+     * Holds the local SAP system.
+     */
+    private LocalSAPSystem m_local;
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        TestJCoNOMMarshaller tm = new TestJCoNOMMarshaller();
+
+        try
+        {
+            tm.setup();
+
+            // Needs no recording
+            tm.testNamespacedFields();
+
+            tm.createLocalSystem(new File((saArguments.length > 0)
+                                          ? saArguments[0]
+                                          : "./test/java/com/cordys/test/bench/recording"));
+
+            List<File> payloads = new ArrayList<File>();
+            payloads.addAll(Arrays.asList(new File(CORPUS_FOLDER).listFiles()));
+            payloads.addAll(Arrays.asList(tm.m_local.getRecordedFiles(
+                                                                      LocalSAPSystem.FOLDER_REQUESTS)));
+
+            for (File payload : payloads)
+            {
+                if (payload.getName().endsWith(".xml"))
+                {
+                    tm.testPayload(payload);
+                }
+            }
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Initialize the logger.
+     */
+    public void setup()
+    {
+        LoggerConfigurator.initLogger("./test/Log4jConfiguration.xml");
+        System.setProperty("java.library.path",
+                           "./docs/internal/sapdlls" + File.pathSeparator +
+                           System.getProperty("java.library.path"));
+
+        m_doc = new Document();
+    }
+
+    /**
+     * This method creates the local system and the configuration and client that use it.
+     *
+     * @param   folder  The recording folder.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void createLocalSystem(File folder)
+                            throws Exception
+    {
+        m_local = new LocalSAPSystem(folder, 0);
+        m_config = m_local.createConfiguration();
+        m_client = m_local.createConnection(m_config);
+    }
+
+    /**
+     * Checks that namespaced field names are read and written with '/' escaped as '_-', like
+     * fromXML() and toXML() do.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testNamespacedFields()
+                               throws Exception
+    {
+        JCO.MetaData structureMeta = new JCO.MetaData("ZSTRUCT");
+        structureMeta.addInfo("/BIC/ZFIELD", JCO.TYPE_CHAR, 10, 0, 0);
+        structureMeta.addInfo("PLAIN", JCO.TYPE_CHAR, 10, 10, 0);
+
+        JCO.Structure structure = JCO.createStructure(structureMeta);
+        int inputNode = m_doc.parseString(NAMESPACED_XML);
+        int outputNode = 0;
+
+        try
+        {
+            JCoNOMMarshaller.fillRecord(structure, inputNode);
+
+            if (!"VALUE".equals(structure.getString("/BIC/ZFIELD")))
+            {
+                throw new IllegalStateException("Namespaced field was not filled, value: " +
+                                                structure.getString("/BIC/ZFIELD"));
+            }
+
+            outputNode = JCoNOMMarshaller.toNOM(structure, m_doc, "ZSTRUCT", false);
+
+            String output = Node.writeToString(outputNode, false);
+
+            if (!NAMESPACED_XML.equals(output))
+            {
+                throw new IllegalStateException("Namespaced fields were written as " + output);
+            }
+
+            System.out.println("Namespaced fields: conform.");
+        }
+        finally
+        {
+            BACUtil.deleteNode(inputNode);
+            BACUtil.deleteNode(outputNode);
+        }
+    }
+
+    /**
+     * This method compares both marshalling paths for the given payload and times them.
+     *
+     * @param   payload  The file with the request XML.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testPayload(File payload)
+                      throws Exception
+    {
+        int requestNode = m_doc.load(payload.getAbsolutePath());
+        int xmlResponseNode = 0;
+        int directResponseNode = 0;
+
+        try
+        {
+            String rfcName = Node.getLocalName(requestNode);
+
+            try
+            {
+                m_local.getFunctionTemplate(rfcName);
+            }
+            catch (IllegalArgumentException e)
+            {
+                System.out.println(rfcName + ": skipped, no template recorded.");
+                return;
+            }
+
+            String requestXML = Node.writeToString(requestNode, false);
+
+            // Compare the requests
+            JCO.Request xmlRequest = m_config.getRepository().getFunctionTemplate(rfcName)
+                                             .getRequest();
+            xmlRequest.fromXML(requestXML);
+
+            JCO.Request directRequest = m_config.getRepository().getFunctionTemplate(rfcName)
+                                                .getRequest();
+            JCoNOMMarshaller.fillRecord(directRequest, requestNode);
+
+            if (!xmlRequest.toXML().equals(directRequest.toXML()))
+            {
+                throw new IllegalStateException(rfcName + ": requests differ\nfromXML: " +
+                                                xmlRequest.toXML() + "\ndirect : " +
+                                                directRequest.toXML());
+            }
+
+            // Compare the responses
+            JCO.Response response = m_client.execute(directRequest);
+
+            xmlResponseNode = m_doc.parseString(response.toXML());
+            Node.setName(xmlResponseNode, rfcName + ".Response");
+            directResponseNode = JCoNOMMarshaller.toNOM(response, m_doc, rfcName + ".Response",
+                                                        false);
+
+            String xmlResponse = Node.writeToString(xmlResponseNode, false);
+            String directResponse = Node.writeToString(directResponseNode, false);
+
+            if (!xmlResponse.equals(directResponse))
+            {
+                throw new IllegalStateException(rfcName + ": responses differ\ntoXML : " +
+                                                xmlResponse + "\ndirect: " + directResponse);
+            }
+
+            // Time both paths. The execute itself is left out so only the marshalling is measured.
+            long[] xmlPath = new long[2];
+            long[] directPath = new long[2];
+
+            for (int run = 0; run < 2; run++)
+            {
+                // First run is the warm up.
+                xmlPath = timeXMLPath(rfcName, requestXML, response);
+                directPath = timeDirectPath(rfcName, requestNode, response);
+            }
+
+            System.out.println(rfcName + ": conform. " + ITERATIONS + " iterations: fromXML/toXML " +
+                               xmlPath[0] + " ms, " + (xmlPath[1] / ITERATIONS) +
+                               " bytes/call; direct " + directPath[0] + " ms, " +
+                               (directPath[1] / ITERATIONS) + " bytes/call");
+        }
+        finally
+        {
+            BACUtil.deleteNode(requestNode);
+            BACUtil.deleteNode(xmlResponseNode);
+            BACUtil.deleteNode(directResponseNode);
+        }
+    }
+
+    /**
+     * Times the direct marshalling.
+     *
+     * @param   rfcName      The name of the RFC.
+     * @param   requestNode  The request node.
+     * @param   response     The response to convert.
+     *
+     * @return  The duration in ms and the allocated bytes.
+     */
+    private long[] timeDirectPath(String rfcName, int requestNode, JCO.Response response)
+    {
+        long allocated = getAllocatedBytes();
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < ITERATIONS; i++)
+        {
+            JCO.Request request = m_config.getRepository().getFunctionTemplate(rfcName)
+                                          .getRequest();
+            JCoNOMMarshaller.fillRecord(request, requestNode);
+
+            int responseNode = JCoNOMMarshaller.toNOM(response, m_doc, rfcName + ".Response",
+                                                      false);
+            BACUtil.deleteNode(responseNode);
+        }
+
+        return new long[] { System.currentTimeMillis() - start, getAllocatedBytes() - allocated };
+    }
+
+    /**
+     * Times the fromXML / toXML marshalling.
+     *
+     * @param   rfcName     The name of the RFC.
+     * @param   requestXML  The request XML.
+     * @param   response    The response to convert.
+     *
+     * @return  The duration in ms and the allocated bytes.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private long[] timeXMLPath(String rfcName, String requestXML, JCO.Response response)
+                        throws Exception
+    {
+        long allocated = getAllocatedBytes();
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < ITERATIONS; i++)
+        {
+            JCO.Request request = m_config.getRepository().getFunctionTemplate(rfcName)
+                                          .getRequest();
+            request.fromXML(requestXML);
+
+            int responseNode = m_doc.parseString(response.toXML());
+            BACUtil.deleteNode(responseNode);
+        }
+
+        return new long[] { System.currentTimeMillis() - start, getAllocatedBytes() - allocated };
+    }
+
+    /**
+     * Returns the number of bytes allocated by the current thread, if the JVM supports it.
+     *
+     * @return  The number of allocated bytes or 0 if unknown.
+     */
+    private static long getAllocatedBytes()
+    {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+        if (bean instanceof com.sun.management.ThreadMXBean)
+        {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread
+                                                                                    .currentThread()
+                                                                                    .getId());
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,500 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.connection;
+
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+import com.eibus.applicationconnector.sap.metadata.MetadataLoader;
+import com.eibus.applicationconnector.sap.metadata.SingleFlight;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Node;
+
+import java.io.File;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Test for the single flight loading of metadata. The loader is a stand-in whose fetch from SAP
+ * waits for the latency of the RFC and counts the fetches.
+ *
+ * <p>100 threads request the interface of the same RFC at the same time, while it is not in the
+ * cache directory. There must be exactly one fetch and no thread may wait much longer than the
+ * fetch itself: the old loader polled every 500 ms. Then the fetch fails and all threads must get
+ * the error from the one fetch. Finally a waiting thread must give up when its timeout passes or
+ * when it is interrupted, without disturbing the fetch.</p>
+ *
+ * <p>Usage: TestMetadataLoader [latency in ms].</p>
+ *
+ * @author  pgussow
+ */
+public class TestMetadataLoader
+{
+    /**
+     * Holds the name of the RFC.
+     */
+    private static final String RFC_NAME = "BAPI_CUSTOMER_GETLIST";
+    /**
+     * Holds the number of threads.
+     */
+    private static final int THREADS = 100;
+    /**
+     * Holds the temporary cache directory.
+     */
+    private File m_cacheDir;
+    /**
+     * Indicates whether the fetch fails.
+     */
+    private volatile boolean m_fail;
+    /**
+     * Holds the number of fetches from SAP.
+     */
+    private AtomicInteger m_fetches = new AtomicInteger();
+    /**
+     * Holds the latency of a fetch in ms.
+     */
+    private long m_latency;
+    /**
+     * Holds the loader.
+     */
+    private MetadataLoader m_loader;
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        TestMetadataLoader tl = new TestMetadataLoader();
+
+        try
+        {
+            tl.setup((saArguments.length > 0) ? Long.parseLong(saArguments[0]) : 200);
+
+            tl.testSingleFetch();
+
+            tl.testFailure();
+
+            tl.testError();
+
+            tl.testTimeout();
+
+            tl.testInterrupt();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            tl.tearDown();
+        }
+    }
+
+    /**
+     * Creates the cache directory and the loader.
+     *
+     * @param   latency  The latency of a fetch in ms.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    public void setup(long latency)
+               throws Exception
+    {
+        m_latency = latency;
+        m_cacheDir = File.createTempFile("sapcache", "");
+        m_cacheDir.delete();
+        new File(m_cacheDir, "rfc").mkdirs();
+
+        m_loader = new MetadataLoader(m_cacheDir.getPath(), "rfc", "idoc")
+        {
+            public int getFunctionInterface(String functionName, Document doc)
+            {
+                throw new IllegalStateException("Not expected in this test");
+            }
+
+            protected int loadBOMetadata(Document doc)
+            {
+                throw new IllegalStateException("Not expected in this test");
+            }
+
+            protected int loadComponentMetadata(Document doc)
+            {
+                throw new IllegalStateException("Not expected in this test");
+            }
+
+            protected int loadIDOCInterface(String idocType, String cimType, Document doc)
+            {
+                throw new IllegalStateException("Not expected in this test");
+            }
+
+            protected int loadIDOCMetadata(Document doc)
+            {
+                throw new IllegalStateException("Not expected in this test");
+            }
+
+            protected int loadRFCInterface(String rfcName, Document doc)
+                                    throws SAPConnectorException
+            {
+                return fetch(rfcName, doc, m_cacheDir + "\\" + m_rfcInterfaceRelativePath + "\\" +
+                             PREFIX_RFC_INTERFACE + rfcName + ".xml");
+            }
+
+            protected int loadRFCMetadata(Document doc)
+            {
+                throw new IllegalStateException("Not expected in this test");
+            }
+        };
+    }
+
+    /**
+     * Removes the temporary cache directory.
+     */
+    public void tearDown()
+    {
+        if (m_cacheDir != null)
+        {
+            File rfcDir = new File(m_cacheDir, "rfc");
+
+            for (File file : rfcDir.listFiles())
+            {
+                file.delete();
+            }
+            rfcDir.delete();
+
+            for (File file : m_cacheDir.listFiles())
+            {
+                file.delete();
+            }
+            m_cacheDir.delete();
+        }
+    }
+
+    /**
+     * This method is the stand-in for the fetch from SAP. It waits for the latency, writes the
+     * interface to the cache directory and returns it.
+     *
+     * @param   rfcName   The name of the RFC.
+     * @param   doc       The document to use.
+     * @param   fileName  The name of the file to write.
+     *
+     * @return  The interface.
+     *
+     * @throws  SAPConnectorException  In case the fetch fails.
+     */
+    private int fetch(String rfcName, Document doc, String fileName)
+               throws SAPConnectorException
+    {
+        m_fetches.incrementAndGet();
+
+        try
+        {
+            Thread.sleep(m_latency);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if (m_fail)
+        {
+            throw new SAPConnectorException(SAPConnectorExceptionMessages.ERROR_EXECUTING_METHOD,
+                                            "BDL_FUNCTION_INTERFACE_GET");
+        }
+
+        int returnValue = doc.createElement("BDL_FUNCTION_INTERFACE_GET.Response");
+        doc.createTextElement("FUNCNAME", rfcName, returnValue);
+
+        try
+        {
+            Node.writeToFile(returnValue, returnValue, fileName, 0);
+        }
+        catch (Exception e)
+        {
+            BACUtil.deleteNode(returnValue);
+            throw new SAPConnectorException(e, SAPConnectorExceptionMessages.ERROR_WRITING_FILE,
+                                            fileName);
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method starts the threads at the same time and waits until all are done.
+     *
+     * @param   expectFailure  Whether the requests must fail.
+     *
+     * @return  The longest time a thread waited in ms.
+     *
+     * @throws  Exception  In case a request did not end as expected.
+     */
+    private long request(final boolean expectFailure)
+                  throws Exception
+    {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicLong maxTime = new AtomicLong();
+        final AtomicInteger wrong = new AtomicInteger();
+        Thread[] threads = new Thread[THREADS];
+
+        for (int i = 0; i < THREADS; i++)
+        {
+            threads[i] = new Thread()
+                {
+                    @Override public void run()
+                    {
+                        Document doc = new Document();
+
+                        try
+                        {
+                            start.await();
+
+                            long startTime = System.currentTimeMillis();
+                            int result = 0;
+                            boolean failed = false;
+
+                            try
+                            {
+                                result = m_loader.getRFCInterface(RFC_NAME, false, doc);
+                            }
+                            catch (SAPConnectorException e)
+                            {
+                                failed = true;
+                            }
+
+                            long time = System.currentTimeMillis() - startTime;
+                            long max;
+
+                            while ((max = maxTime.get()) < time)
+                            {
+                                maxTime.compareAndSet(max, time);
+                            }
+
+                            if ((failed != expectFailure) ||
+                                    (!failed &&
+                                         !RFC_NAME.equals(Node.getDataWithDefault(Node.getFirstChild(result),
+                                                                                  ""))))
+                            {
+                                wrong.incrementAndGet();
+                            }
+                            BACUtil.deleteNode(result);
+                        }
+                        catch (InterruptedException e)
+                        {
+                            wrong.incrementAndGet();
+                        }
+                    }
+                };
+            threads[i].start();
+        }
+
+        start.countDown();
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        if (wrong.get() > 0)
+        {
+            throw new Exception(wrong.get() + " requests did not return the expected result");
+        }
+
+        return maxTime.get();
+    }
+
+    /**
+     * Checks that an Error of the leader is thrown to the threads that waited for it, instead of
+     * them taking the fetch for a success.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testError()
+                    throws Exception
+    {
+        final SingleFlight flights = new SingleFlight(MetadataLoader.DEFAULT_LOAD_TIMEOUT);
+        final SingleFlight.Flight leader = flights.join(RFC_NAME);
+        final Error error = new OutOfMemoryError("Test");
+        final AtomicReference<Throwable> received = new AtomicReference<Throwable>();
+        Thread follower = new Thread()
+            {
+                @Override public void run()
+                {
+                    try
+                    {
+                        flights.join(RFC_NAME).await();
+                    }
+                    catch (Throwable t)
+                    {
+                        received.set(t);
+                    }
+                }
+            };
+
+        follower.start();
+        Thread.sleep(50);
+        leader.done(error);
+        follower.join();
+
+        if (received.get() != error)
+        {
+            throw new Exception("The waiting thread got " + received.get() + " instead of " +
+                                error);
+        }
+
+        System.out.println("Error: the waiting thread got " + received.get());
+    }
+
+    /**
+     * Checks that a failed fetch is reported to all threads that waited for it.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testFailure()
+                      throws Exception
+    {
+        new File(m_cacheDir, "rfc\\" + "RFCInterface_" + RFC_NAME + ".xml").delete();
+        m_fetches.set(0);
+        m_fail = true;
+
+        try
+        {
+            request(true);
+        }
+        finally
+        {
+            m_fail = false;
+        }
+
+        if (m_fetches.get() != 1)
+        {
+            throw new Exception("Expected 1 fetch for the failure, got " + m_fetches.get());
+        }
+
+        System.out.println("Failure: " + THREADS + " requests failed with 1 fetch");
+    }
+
+    /**
+     * Checks that a waiting thread gives up when it is interrupted and the fetch still finishes.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testInterrupt()
+                        throws Exception
+    {
+        final SingleFlight flights = new SingleFlight(MetadataLoader.DEFAULT_LOAD_TIMEOUT);
+        final SingleFlight.Flight leader = flights.join(RFC_NAME);
+        final AtomicInteger interrupted = new AtomicInteger();
+        Thread follower = new Thread()
+            {
+                @Override public void run()
+                {
+                    try
+                    {
+                        flights.join(RFC_NAME).await();
+                    }
+                    catch (SAPConnectorException e)
+                    {
+                        interrupted.incrementAndGet();
+                    }
+                }
+            };
+
+        follower.start();
+        Thread.sleep(50);
+        follower.interrupt();
+        follower.join();
+
+        leader.done(null);
+
+        if ((interrupted.get() != 1) || (flights.getFetches() != 1))
+        {
+            throw new Exception("The interrupted thread did not give up: " + flights);
+        }
+
+        // The key is free again, so the next thread starts a new fetch.
+        if (!flights.join(RFC_NAME).isLeader())
+        {
+            throw new Exception("The flight was not ended");
+        }
+
+        System.out.println("Interrupt: " + flights);
+    }
+
+    /**
+     * Checks that 100 simultaneous requests cause exactly one fetch.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testSingleFetch()
+                          throws Exception
+    {
+        m_fetches.set(0);
+
+        long maxTime = request(false);
+
+        if (m_fetches.get() != 1)
+        {
+            throw new Exception("Expected 1 fetch, got " + m_fetches.get());
+        }
+
+        // The old loader polled every 500 ms, so the waiting threads needed at least
+        // latency + 500 ms.
+        if (maxTime >= (m_latency + 500))
+        {
+            throw new Exception("A request waited " + maxTime + " ms for a fetch of " + m_latency +
+                                " ms");
+        }
+
+        System.out.println(THREADS + " simultaneous requests: " + m_fetches.get() +
+                           " fetch, longest wait " + maxTime + " ms for a fetch of " + m_latency +
+                           " ms. " + MetadataLoader.getLoadFlights());
+    }
+
+    /**
+     * Checks that a waiting thread gives up when its timeout passes.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testTimeout()
+                      throws Exception
+    {
+        SingleFlight flights = new SingleFlight(50);
+        SingleFlight.Flight leader = flights.join(RFC_NAME);
+        long startTime = System.currentTimeMillis();
+
+        try
+        {
+            flights.join(RFC_NAME).await();
+            throw new Exception("The waiting thread did not time out");
+        }
+        catch (SAPConnectorException e)
+        {
+            System.out.println("Timeout after " + (System.currentTimeMillis() - startTime) +
+                               " ms: " + e.getMessage());
+        }
+        finally
+        {
+            leader.done(null);
+        }
+    }
+}
@@ -0,0 +1,449 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.connection;
+
+import com.eibus.applicationconnector.sap.connection.ISAPConnection;
+import com.eibus.applicationconnector.sap.connection.ISAPConnectionFactory;
+import com.eibus.applicationconnector.sap.metadata.ESAPObjectType;
+import com.eibus.applicationconnector.sap.metadata.IMetadataCache;
+import com.eibus.applicationconnector.sap.metadata.MetadataCache;
+import com.eibus.applicationconnector.sap.metadata.storage.ICacheStorage;
+import com.eibus.applicationconnector.sap.metadata.types.ITypeContainer;
+import com.eibus.applicationconnector.sap.metadata.types.ITypeMetadata;
+import com.eibus.applicationconnector.sap.metadata.types.SAPMetadataFactory;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test for the reload of the metadata cache. The connections are stand-ins for the
+ * MetadataSAPConnection that wait for the latency of SAP and build the objects from a model of the
+ * SAP system. The storage is a stand-in that records what is persisted.
+ *
+ * <p>First the reload over one connection is compared with the reload over a connection per type,
+ * which must read the three types at the same time. Then one RFC is changed and one is added: the
+ * reload must count them, persist only the RFCs and keep the objects that did not change. While a
+ * reload reads SAP the cache must serve the old content without waiting. Finally a reload without
+ * changes in SAP must not persist anything.</p>
+ *
+ * <p>Usage: TestMetadataReload [latency in ms].</p>
+ *
+ * @author  pgussow
+ */
+public class TestMetadataReload
+{
+    /**
+     * Holds the number of entries per object type.
+     */
+    private static final int ENTRIES = 5000;
+    /**
+     * Holds the number of connections that read SAP at this moment.
+     */
+    private AtomicInteger m_active = new AtomicInteger();
+    /**
+     * Holds the latency of SAP in ms.
+     */
+    private long m_latency;
+    /**
+     * Holds the highest number of connections that read SAP at the same time.
+     */
+    private AtomicInteger m_maxActive = new AtomicInteger();
+    /**
+     * Holds the types that were persisted.
+     */
+    private List<ESAPObjectType> m_persisted = new ArrayList<ESAPObjectType>();
+    /**
+     * Holds the model of the SAP system: per type the value and text of every object.
+     */
+    private Map<ESAPObjectType, Map<String, String>> m_sap = new EnumMap<ESAPObjectType, Map<String, String>>(ESAPObjectType.class);
+    /**
+     * Holds the storage stand-in.
+     */
+    private ICacheStorage m_storage;
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        TestMetadataReload tr = new TestMetadataReload();
+
+        try
+        {
+            tr.setup((saArguments.length > 0) ? Long.parseLong(saArguments[0]) : 200);
+
+            MetadataCache cache = tr.testParallel();
+
+            tr.testIncremental(cache);
+
+            tr.testReadDuringReload(cache);
+
+            tr.testUnchanged(cache);
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates the model of the SAP system and the storage.
+     *
+     * @param  latency  The latency of SAP in ms.
+     */
+    public void setup(long latency)
+    {
+        m_latency = latency;
+
+        for (ESAPObjectType type : new ESAPObjectType[]
+                                   {
+                                       ESAPObjectType.BAPI, ESAPObjectType.RFC, ESAPObjectType.IDOC
+                                   })
+        {
+            Map<String, String> objects = new LinkedHashMap<String, String>();
+
+            for (int i = 0; i < ENTRIES; i++)
+            {
+                objects.put(type + "_" + i, "Text " + i);
+            }
+            m_sap.put(type, objects);
+        }
+
+        m_storage = new ICacheStorage()
+            {
+                public void loadCache(String id, IMetadataCache cache)
+                {
+                }
+
+                public void persistCache(IMetadataCache cache)
+                {
+                    synchronized (m_persisted)
+                    {
+                        m_persisted.add(ESAPObjectType.BAPI);
+                        m_persisted.add(ESAPObjectType.RFC);
+                        m_persisted.add(ESAPObjectType.IDOC);
+                    }
+                }
+
+                public void persistCache(IMetadataCache cache, ESAPObjectType type)
+                {
+                    synchronized (m_persisted)
+                    {
+                        m_persisted.add(type);
+                    }
+                }
+            };
+    }
+
+    /**
+     * This method creates a connection stand-in.
+     *
+     * @return  The connection.
+     */
+    private ISAPConnection createConnection()
+    {
+        return new ISAPConnection()
+            {
+                public List<ITypeContainer> getAllBAPIs()
+                {
+                    return read(ESAPObjectType.BAPI);
+                }
+
+                public List<ITypeContainer> getAllIDOCs()
+                {
+                    return read(ESAPObjectType.IDOC);
+                }
+
+                public List<ITypeContainer> getAllRFCs()
+                {
+                    return read(ESAPObjectType.RFC);
+                }
+            };
+    }
+
+    /**
+     * This method reads the objects of a type from the model. It waits for the latency and creates
+     * new objects every time, like SAP does.
+     *
+     * @param   type  The type of object.
+     *
+     * @return  The objects.
+     */
+    private List<ITypeContainer> read(ESAPObjectType type)
+    {
+        int active = m_active.incrementAndGet();
+
+        try
+        {
+            int max;
+
+            while ((max = m_maxActive.get()) < active)
+            {
+                m_maxActive.compareAndSet(max, active);
+            }
+
+            Thread.sleep(m_latency);
+
+            List<ITypeContainer> returnValue = new ArrayList<ITypeContainer>();
+
+            synchronized (m_sap)
+            {
+                for (Map.Entry<String, String> object : m_sap.get(type).entrySet())
+                {
+                    ITypeContainer container = SAPMetadataFactory.createContainer(type);
+                    container.setValue(object.getKey());
+                    container.setDisplayName(object.getKey());
+                    container.setDescription(object.getValue());
+
+                    ITypeMetadata item = SAPMetadataFactory.createObject(type);
+                    item.setValue(object.getKey());
+                    item.setDisplayName(object.getValue());
+                    container.addType(item);
+
+                    returnValue.add(container);
+                }
+            }
+
+            return returnValue;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        finally
+        {
+            m_active.decrementAndGet();
+        }
+    }
+
+    /**
+     * This method changes the model of the SAP system.
+     *
+     * @param  type   The type of object.
+     * @param  value  The value of the object.
+     * @param  text   The new text of the object.
+     */
+    private void setObject(ESAPObjectType type, String value, String text)
+    {
+        synchronized (m_sap)
+        {
+            m_sap.get(type).put(value, text);
+        }
+    }
+
+    /**
+     * Checks the counts of the last reload and the types that were persisted.
+     *
+     * @param   cache      The cache.
+     * @param   added      The expected number of added entries.
+     * @param   changed    The expected number of changed entries.
+     * @param   removed    The expected number of removed entries.
+     * @param   persisted  The types that must be persisted.
+     *
+     * @throws  Exception  In case the reload did not do what was expected.
+     */
+    private void check(MetadataCache cache, int added, int changed, int removed,
+                       ESAPObjectType... persisted)
+                throws Exception
+    {
+        if ((cache.getReloadAdded() != added) || (cache.getReloadChanged() != changed) ||
+                (cache.getReloadRemoved() != removed))
+        {
+            throw new Exception("Expected added: " + added + ", changed: " + changed +
+                                ", removed: " + removed + ". " + cache);
+        }
+
+        synchronized (m_persisted)
+        {
+            List<ESAPObjectType> expected = new ArrayList<ESAPObjectType>();
+
+            for (ESAPObjectType type : persisted)
+            {
+                expected.add(type);
+            }
+
+            if (!m_persisted.equals(expected))
+            {
+                throw new Exception("Expected " + expected + " to be persisted, got " +
+                                    m_persisted);
+            }
+            m_persisted.clear();
+        }
+    }
+
+    /**
+     * Changes one RFC and adds one. Only these must be counted and only the RFCs persisted. The
+     * objects that did not change must be kept.
+     *
+     * @param   cache  The cache.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testIncremental(MetadataCache cache)
+                          throws Exception
+    {
+        ITypeContainer unchanged = cache.getAllRFCs().get("RFC_1");
+
+        setObject(ESAPObjectType.RFC, "RFC_0", "Changed text");
+        setObject(ESAPObjectType.RFC, "RFC_NEW", "New function");
+
+        cache.reloadAllData();
+
+        check(cache, 1, 1, 0, ESAPObjectType.RFC);
+
+        Map<String, ITypeContainer> rfcs = cache.getAllRFCs();
+
+        if (!"Changed text".equals(rfcs.get("RFC_0").getDescription()) ||
+                !rfcs.containsKey("RFC_NEW") || (rfcs.get("RFC_1") != unchanged))
+        {
+            throw new Exception("The reload did not apply the changes");
+        }
+
+        System.out.println("Incremental: " + cache);
+    }
+
+    /**
+     * Creates a cache that reads over one connection and one that reads over a connection per
+     * type. The second must read the types at the same time.
+     *
+     * @return  The cache with the connection factory.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private MetadataCache testParallel()
+                                throws Exception
+    {
+        m_maxActive.set(0);
+
+        MetadataCache serial = new MetadataCache("serial", m_storage, createConnection());
+
+        check(serial, 3 * ENTRIES, 0, 0, ESAPObjectType.BAPI, ESAPObjectType.RFC,
+              ESAPObjectType.IDOC);
+        System.out.println("One connection:         " + serial + ", at most " +
+                           m_maxActive.get() + " reading");
+
+        m_maxActive.set(0);
+
+        MetadataCache returnValue = new MetadataCache("parallel", m_storage, createConnection(),
+                                                      new ISAPConnectionFactory()
+            {
+                public ISAPConnection createConnection()
+                {
+                    return TestMetadataReload.this.createConnection();
+                }
+            });
+
+        check(returnValue, 3 * ENTRIES, 0, 0, ESAPObjectType.BAPI, ESAPObjectType.RFC,
+              ESAPObjectType.IDOC);
+        System.out.println("A connection per type:  " + returnValue + ", at most " +
+                           m_maxActive.get() + " reading");
+
+        if (m_maxActive.get() != 3)
+        {
+            throw new Exception("The types were not read at the same time");
+        }
+
+        if (returnValue.getReloadTime() >= (2 * m_latency))
+        {
+            throw new Exception("The reload took " + returnValue.getReloadTime() +
+                                " ms for a latency of " + m_latency + " ms");
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * Checks that the old content is served without waiting while a reload reads SAP.
+     *
+     * @param   cache  The cache.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testReadDuringReload(final MetadataCache cache)
+                               throws Exception
+    {
+        setObject(ESAPObjectType.BAPI, "BAPI_0", "Changed text");
+
+        final Exception[] failure = new Exception[1];
+        Thread reload = new Thread()
+            {
+                @Override public void run()
+                {
+                    try
+                    {
+                        cache.reloadAllData();
+                    }
+                    catch (Exception e)
+                    {
+                        failure[0] = e;
+                    }
+                }
+            };
+
+        reload.start();
+        Thread.sleep(m_latency / 4);
+
+        long startTime = System.currentTimeMillis();
+        String text = cache.getAllBAPIs().get("BAPI_0").getDescription();
+        long time = System.currentTimeMillis() - startTime;
+
+        reload.join();
+
+        if (failure[0] != null)
+        {
+            throw failure[0];
+        }
+
+        if (!"Text 0".equals(text) || (time >= (m_latency / 2)))
+        {
+            throw new Exception("The read during the reload returned '" + text + "' after " +
+                                time + " ms");
+        }
+
+        if (!"Changed text".equals(cache.getAllBAPIs().get("BAPI_0").getDescription()))
+        {
+            throw new Exception("The new content was not swapped in");
+        }
+
+        check(cache, 0, 1, 0, ESAPObjectType.BAPI);
+        System.out.println("Read during reload: " + time + " ms. " + cache);
+    }
+
+    /**
+     * Checks that a reload without changes does not persist anything.
+     *
+     * @param   cache  The cache.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testUnchanged(MetadataCache cache)
+                        throws Exception
+    {
+        cache.reloadAllData();
+
+        check(cache, 0, 0, 0);
+        System.out.println("Unchanged: " + cache);
+    }
+}
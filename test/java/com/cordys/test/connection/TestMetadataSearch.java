@@ -0,0 +1,484 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.connection;
+
+import com.eibus.applicationconnector.sap.connection.ISAPConnection;
+import com.eibus.applicationconnector.sap.metadata.ESAPObjectType;
+import com.eibus.applicationconnector.sap.metadata.IMetadataCache;
+import com.eibus.applicationconnector.sap.metadata.MetadataCacheFactory;
+import com.eibus.applicationconnector.sap.metadata.filter.EFilterType;
+import com.eibus.applicationconnector.sap.metadata.filter.FilterFactory;
+import com.eibus.applicationconnector.sap.metadata.filter.IFilter;
+import com.eibus.applicationconnector.sap.metadata.storage.ICacheStorage;
+import com.eibus.applicationconnector.sap.metadata.types.IBAPIMetadata;
+import com.eibus.applicationconnector.sap.metadata.types.IIDOCMetadata;
+import com.eibus.applicationconnector.sap.metadata.types.IRFCMetadata;
+import com.eibus.applicationconnector.sap.metadata.types.ITypeContainer;
+import com.eibus.applicationconnector.sap.metadata.types.ITypeMetadata;
+import com.eibus.applicationconnector.sap.metadata.types.SAPMetadataFactory;
+
+import com.eibus.xml.nom.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmark for the metadata search that SearchObject executes. A cache with 50k BAPIs, RFCs and
+ * IDOCs is searched with a set of filters, once with filters that build and compile a regular
+ * expression for every match (the way the filters used to work) and once with the filters of the
+ * FilterFactory. Both must find the same objects, after which both are timed.
+ *
+ * @author  pgussow
+ */
+public class TestMetadataSearch
+{
+    /**
+     * Holds the number of entries per object type.
+     */
+    private static final int ENTRIES = 50000;
+    /**
+     * Holds the number of times the searches are repeated.
+     */
+    private static final int ROUNDS = 5;
+    /**
+     * Holds the searches: object type, field, filter type and value.
+     */
+    private static final String[][] SEARCHES = new String[][]
+                                               {
+                                                   { "BAPI", "object", "CONTAINS", "ject 123" },
+                                                   { "BAPI", "object", "STARTS_WITH", "Object 4" },
+                                                   { "BAPI", "method", "EQUALS", "getdetail" },
+                                                   { "BAPI", "description", "CONTAINS", "order" },
+                                                   { "BAPI", "object", "REGEX", "Object 1.*7" },
+                                                   { "RFC", "function", "STARTS_WITH", "Z_RFC_49" },
+                                                   { "RFC", "group", "EQUALS", "GROUP7" },
+                                                   { "IDOC", "messageType", "CONTAINS", "MT0001" },
+                                                   { "IDOC", "operation", "EQUALS", "IT02" },
+                                               };
+    /**
+     * Holds the cache to search.
+     */
+    private IMetadataCache m_cache;
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        TestMetadataSearch tms = new TestMetadataSearch();
+
+        try
+        {
+            tms.createCache();
+            tms.compare();
+            tms.benchmark();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * This method returns a description of the search result.
+     *
+     * @param   result  The search result.
+     *
+     * @return  The description.
+     */
+    private static String describe(List<ITypeContainer> result)
+    {
+        StringBuffer sb = new StringBuffer();
+
+        for (ITypeContainer container : result)
+        {
+            sb.append(container.getValue()).append(':');
+
+            for (ITypeMetadata item : container.getItems().values())
+            {
+                sb.append(item.getValue()).append(',');
+            }
+            sb.append('\n');
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * This method creates a synthetic container.
+     *
+     * @param   type  The type of object.
+     * @param   i     The number of the entry.
+     *
+     * @return  The container.
+     */
+    private static ITypeContainer createContainer(ESAPObjectType type, int i)
+    {
+        String id = String.valueOf(100000 + i).substring(1);
+        ITypeContainer returnValue = SAPMetadataFactory.createContainer(type);
+
+        switch (type)
+        {
+            case BAPI:
+                returnValue.setValue("BUS" + id);
+                returnValue.setDisplayName("Object " + i);
+                break;
+
+            case RFC:
+                returnValue.setValue("Z_RFC_" + id);
+                returnValue.setDisplayName("Z_RFC_" + id);
+                break;
+
+            default:
+                returnValue.setValue("MT" + id);
+                returnValue.setDisplayName("MT" + id);
+                returnValue.setDescription("Message type " + id);
+                break;
+        }
+
+        for (int j = 0; j < 2; j++)
+        {
+            ITypeMetadata item = SAPMetadataFactory.createObject(type);
+
+            switch (type)
+            {
+                case BAPI:
+
+                    IBAPIMetadata bapi = (IBAPIMetadata) item;
+                    bapi.setValue("BUS" + id + ((j == 0) ? ".GETDETAIL" : ".CREATE"));
+                    bapi.setMethodName((j == 0) ? "GetDetail" : "Create");
+                    bapi.setDescription(((i % 10) == 0) ? "Create sales order" : "Read object");
+                    break;
+
+                case RFC:
+
+                    IRFCMetadata rfc = (IRFCMetadata) item;
+                    rfc.setValue("Z_RFC_" + id);
+                    rfc.setGroupName("GROUP" + (i % 100));
+                    rfc.setShortText("Function " + id);
+                    break;
+
+                default:
+
+                    IIDOCMetadata idoc = (IIDOCMetadata) item;
+                    idoc.setValue("IT0" + (j + 1));
+                    idoc.setType("IT0" + (j + 1));
+                    idoc.setCIMType("");
+                    break;
+            }
+
+            returnValue.addType(item);
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * This method creates the synthetic list of objects.
+     *
+     * @param   type  The type of object.
+     *
+     * @return  The objects.
+     */
+    private static List<ITypeContainer> createList(ESAPObjectType type)
+    {
+        List<ITypeContainer> returnValue = new ArrayList<ITypeContainer>(ENTRIES);
+
+        for (int i = 0; i < ENTRIES; i++)
+        {
+            returnValue.add(createContainer(type, i));
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * Runs the searches with both kinds of filters and prints the timings.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void benchmark()
+                    throws Exception
+    {
+        long start = System.nanoTime();
+
+        for (int i = 0; i < ROUNDS; i++)
+        {
+            for (String[] search : SEARCHES)
+            {
+                search(search, true);
+            }
+        }
+
+        long legacy = System.nanoTime() - start;
+        start = System.nanoTime();
+
+        for (int i = 0; i < ROUNDS; i++)
+        {
+            for (String[] search : SEARCHES)
+            {
+                search(search, false);
+            }
+        }
+
+        long compiled = System.nanoTime() - start;
+
+        System.out.println("Regex per match: " + (legacy / 1000000) + " ms for " +
+                           (ROUNDS * SEARCHES.length) + " searches over " + ENTRIES +
+                           " entries");
+        System.out.println("Compiled:        " + (compiled / 1000000) + " ms for " +
+                           (ROUNDS * SEARCHES.length) + " searches over " + ENTRIES +
+                           " entries");
+    }
+
+    /**
+     * Compares the results of both kinds of filters.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void compare()
+                  throws Exception
+    {
+        for (String[] search : SEARCHES)
+        {
+            String legacy = describe(search(search, true));
+            String compiled = describe(search(search, false));
+
+            if (!legacy.equals(compiled))
+            {
+                throw new Exception("Different result for " + search[1] + " " + search[2] + " " +
+                                    search[3]);
+            }
+
+            if (legacy.length() == 0)
+            {
+                throw new Exception("No result for " + search[1] + " " + search[2] + " " +
+                                    search[3]);
+            }
+        }
+
+        System.out.println("Both kinds of filters find the same objects.");
+    }
+
+    /**
+     * Creates the cache. The connection returns the synthetic objects when the cache is filled.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void createCache()
+                      throws Exception
+    {
+        final List<ITypeContainer> bapis = createList(ESAPObjectType.BAPI);
+        final List<ITypeContainer> rfcs = createList(ESAPObjectType.RFC);
+        final List<ITypeContainer> idocs = createList(ESAPObjectType.IDOC);
+
+        ISAPConnection connection = new ISAPConnection()
+        {
+            public List<ITypeContainer> getAllBAPIs()
+            {
+                return bapis;
+            }
+
+            public List<ITypeContainer> getAllIDOCs()
+            {
+                return idocs;
+            }
+
+            public List<ITypeContainer> getAllRFCs()
+            {
+                return rfcs;
+            }
+        };
+
+        ICacheStorage storage = new ICacheStorage()
+        {
+            public void loadCache(String id, IMetadataCache cache)
+            {
+            }
+
+            public void persistCache(IMetadataCache cache)
+            {
+            }
+
+            public void persistCache(IMetadataCache cache, ESAPObjectType type)
+            {
+            }
+        };
+
+        m_cache = MetadataCacheFactory.createCache("search", connection, storage);
+    }
+
+    /**
+     * Executes a search.
+     *
+     * @param   search  The search definition.
+     * @param   legacy  Whether to use the filters that compile a pattern for every match.
+     *
+     * @return  The found objects.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private List<ITypeContainer> search(String[] search, boolean legacy)
+                                 throws Exception
+    {
+        EFilterType type = EFilterType.valueOf(search[2]);
+        IFilter filter = legacy ? new LegacyFilter(type, search[3])
+                                : FilterFactory.createFilter(type, search[3], search[1]);
+        String field = search[1];
+
+        switch (ESAPObjectType.valueOf(search[0]))
+        {
+            case BAPI:
+                return m_cache.searchBAPI(false, field.equals("object") ? filter : null,
+                                          field.equals("method") ? filter : null,
+                                          field.equals("description") ? filter : null);
+
+            case RFC:
+                return m_cache.searchRFC(false, field.equals("function") ? filter : null,
+                                         field.equals("group") ? filter : null,
+                                         field.equals("description") ? filter : null);
+
+            default:
+                return m_cache.searchIDOC(false, field.equals("messageType") ? filter : null,
+                                          field.equals("operation") ? filter : null,
+                                          field.equals("description") ? filter : null);
+        }
+    }
+
+    /**
+     * Filter that builds and compiles the regular expression for every match.
+     */
+    private static class LegacyFilter
+        implements IFilter
+    {
+        /**
+         * Holds the filter type.
+         */
+        private EFilterType m_type;
+        /**
+         * Holds the value for the filter.
+         */
+        private String m_value;
+
+        /**
+         * Creates a new LegacyFilter object.
+         *
+         * @param  type   The filter type.
+         * @param  value  The value for the filter.
+         */
+        LegacyFilter(EFilterType type, String value)
+        {
+            m_type = type;
+            m_value = value;
+        }
+
+        /**
+         * @see  IFilter#getFieldName()
+         */
+        public String getFieldName()
+        {
+            return null;
+        }
+
+        /**
+         * @see  IFilter#getType()
+         */
+        public EFilterType getType()
+        {
+            return m_type;
+        }
+
+        /**
+         * @see  IFilter#getValue()
+         */
+        public String getValue()
+        {
+            return m_value;
+        }
+
+        /**
+         * @see  IFilter#match(String)
+         */
+        public boolean match(String source)
+        {
+            String regex = null;
+
+            switch (m_type)
+            {
+                case CONTAINS:
+                    regex = ".*" + m_value + ".*";
+                    break;
+
+                case STARTS_WITH:
+                    regex = "^" + m_value + ".+";
+                    break;
+
+                case EQUALS:
+                    regex = "^" + m_value + "$";
+                    break;
+
+                default:
+                    regex = m_value;
+                    break;
+            }
+
+            return Pattern.compile(regex, Pattern.CASE_INSENSITIVE).matcher(source).matches();
+        }
+
+        /**
+         * @see  IFilter#setFieldName(String)
+         */
+        public void setFieldName(String fieldName)
+        {
+        }
+
+        /**
+         * @see  IFilter#setType(EFilterType)
+         */
+        public void setType(EFilterType type)
+        {
+            m_type = type;
+        }
+
+        /**
+         * @see  IFilter#setValue(String)
+         */
+        public void setValue(String value)
+        {
+            m_value = value;
+        }
+
+        /**
+         * @see  IFilter#toXML(int)
+         */
+        public void toXML(int parent)
+        {
+        }
+
+        /**
+         * @see  IFilter#toXML(Document)
+         */
+        public int toXML(Document doc)
+        {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,506 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.connection;
+
+import com.cordys.coe.util.xml.nom.XPathHelper;
+
+import com.eibus.applicationconnector.sap.SAPConnectorConstants;
+import com.eibus.applicationconnector.sap.metadata.MetadataLoader;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Node;
+
+import java.io.File;
+
+/**
+ * Benchmark for the metadata browser. Synthetic BO, RFC, IDOC and component metadata files are
+ * written to a temporary cache directory. A browsing session (components, business objects,
+ * BAPIs, RFCs, message types and IDOC types) is then replayed twice: once the way the loader used
+ * to work, loading the cache file and running XPath for every request, and once through the
+ * loader with its indexed metadata store. Both must return the same XML, after which both are
+ * timed.
+ *
+ * @author  pgussow
+ */
+public class TestMetadataStore
+{
+    /**
+     * Holds the number of items per metadata file.
+     */
+    private static final int ITEMS = 2000;
+    /**
+     * Holds the number of times the session is replayed.
+     */
+    private static final int SESSIONS = 20;
+    /**
+     * Holds the temporary cache directory.
+     */
+    private File m_cacheDir;
+    /**
+     * Holds the NOM document.
+     */
+    private Document m_doc = new Document();
+    /**
+     * Holds the loader that uses the metadata store.
+     */
+    private MetadataLoader m_loader;
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        TestMetadataStore tm = new TestMetadataStore();
+
+        try
+        {
+            tm.createCache();
+            tm.compare();
+            tm.benchmark();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            tm.deleteCache();
+        }
+    }
+
+    /**
+     * Runs the session with both implementations and prints the timings.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void benchmark()
+                    throws Exception
+    {
+        long start = System.nanoTime();
+
+        for (int i = 0; i < SESSIONS; i++)
+        {
+            replay(true, i);
+        }
+
+        long legacy = System.nanoTime() - start;
+        start = System.nanoTime();
+
+        for (int i = 0; i < SESSIONS; i++)
+        {
+            replay(false, i);
+        }
+
+        long indexed = System.nanoTime() - start;
+
+        System.out.println("Legacy:  " + (legacy / 1000000) + " ms for " + SESSIONS +
+                           " sessions");
+        System.out.println("Indexed: " + (indexed / 1000000) + " ms for " + SESSIONS +
+                           " sessions");
+    }
+
+    /**
+     * Compares the output of both implementations for every step of the session.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void compare()
+                  throws Exception
+    {
+        String[][] steps = getSteps(7);
+
+        for (int i = 0; i < steps.length; i++)
+        {
+            String legacy = run(true, steps[i]);
+            String indexed = run(false, steps[i]);
+
+            if (!legacy.equals(indexed))
+            {
+                throw new Exception("Different result for " + steps[i][0] + ":\n" + legacy +
+                                    "\n" + indexed);
+            }
+        }
+
+        System.out.println("Both implementations return the same metadata.");
+    }
+
+    /**
+     * Writes the synthetic metadata files and creates the loader.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void createCache()
+                      throws Exception
+    {
+        m_cacheDir = File.createTempFile("metadata", "");
+        m_cacheDir.delete();
+        m_cacheDir.mkdirs();
+
+        StringBuffer bo = new StringBuffer("<BOMetadata><API_METHODS>");
+        StringBuffer rfc = new StringBuffer("<RFCMetadata><FUNCTIONS>");
+        StringBuffer idoc = new StringBuffer("<IDOCMetadata><PT_MESSAGES>");
+        StringBuffer comp = new StringBuffer("<ComponentMetadata><BOR_TREE><item ID=\"000001\" PARENT=\"000000\" hasBO=\"X\">");
+
+        for (int i = 0; i < ITEMS; i++)
+        {
+            String id = format(i);
+
+            bo.append("<item OBJTYPE=\"BUS").append(id).append("\" OBJECTNAME=\"BusObj")
+              .append(id).append("\"><item METHOD=\"GETDETAIL\" FUNCTION=\"BAPI_").append(id)
+              .append("_GETDETAIL\"/><item METHOD=\"CREATE\" FUNCTION=\"BAPI_").append(id)
+              .append("_CREATE\"/></item>");
+            rfc.append("<item><FUNCNAME>Z_RFC_").append(id).append("</FUNCNAME><STEXT>RFC ")
+               .append(id).append("</STEXT></item>");
+            idoc.append("<item MESTYP=\"MT").append(id).append("\"><item IDOCTYP=\"IT").append(id)
+                .append("01\"/><item IDOCTYP=\"IT").append(id).append("02\"/></item>");
+            comp.append("<item ID=\"1").append(id).append("\" PARENT=\"000001\"")
+                .append(((i % 3) == 0) ? " isBO=\"X\"" : "").append("><item ID=\"2").append(id)
+                .append("\" PARENT=\"1").append(id).append("\" isBO=\"X\"/></item>");
+        }
+
+        write("BOMetadata.xml", bo.append("</API_METHODS></BOMetadata>"));
+        write("RFCMetadata.xml", rfc.append("</FUNCTIONS></RFCMetadata>"));
+        write("IDOCMetadata.xml", idoc.append("</PT_MESSAGES></IDOCMetadata>"));
+        write("ComponentMetadata.xml", comp.append("</item></BOR_TREE></ComponentMetadata>"));
+
+        m_loader = new MetadataLoader(m_cacheDir.getPath(), "rfc", "idoc")
+        {
+            public int getFunctionInterface(String functionName, Document doc)
+            {
+                throw new IllegalStateException("Not expected in this test");
+            }
+
+            protected int loadBOMetadata(Document doc)
+            {
+                throw new IllegalStateException("Not expected in this test");
+            }
+
+            protected int loadComponentMetadata(Document doc)
+            {
+                throw new IllegalStateException("Not expected in this test");
+            }
+
+            protected int loadIDOCInterface(String idocType, String cimType, Document doc)
+            {
+                throw new IllegalStateException("Not expected in this test");
+            }
+
+            protected int loadIDOCMetadata(Document doc)
+            {
+                throw new IllegalStateException("Not expected in this test");
+            }
+
+            protected int loadRFCInterface(String rfcName, Document doc)
+            {
+                throw new IllegalStateException("Not expected in this test");
+            }
+
+            protected int loadRFCMetadata(Document doc)
+            {
+                throw new IllegalStateException("Not expected in this test");
+            }
+        };
+    }
+
+    /**
+     * Removes the temporary cache directory.
+     */
+    private void deleteCache()
+    {
+        if (m_cacheDir != null)
+        {
+            for (File file : m_cacheDir.listFiles())
+            {
+                file.delete();
+            }
+            m_cacheDir.delete();
+        }
+    }
+
+    /**
+     * Formats a number with four digits.
+     *
+     * @param   i  The number.
+     *
+     * @return  The formatted number.
+     */
+    private static String format(int i)
+    {
+        return String.valueOf(10000 + i).substring(1);
+    }
+
+    /**
+     * Returns the steps of a browsing session. Each step holds the method name followed by the
+     * parameter names and values.
+     *
+     * @param   seed  Selects the objects that are browsed.
+     *
+     * @return  The steps.
+     */
+    private static String[][] getSteps(int seed)
+    {
+        String id = format((seed * 97) % ITEMS);
+        String to = format(((seed * 97) % ITEMS) + 25);
+
+        return new String[][]
+               {
+                   { "GetComponents", "parent", "000000", "level", "1" },
+                   { "GetComponents", "parent", "000001", "level", "1" },
+                   { "GetComponents", "parent", "1" + id, "level", "2" },
+                   { "GetBOs", "fromBO", "BusObj" + id, "toBO", "BusObj" + to },
+                   { "GetBAPIs", "BO", "BUS" + id },
+                   { "GetRFCs", "fromRFC", "Z_RFC_" + id, "toRFC", "Z_RFC_" + to },
+                   { "GetIDOCMessageTypes", "fromMSGTYPE", "MT" + id, "toMSGTYPE", "MT" + to },
+                   { "GetIDOCTypesForMesType", "MESTYPE", "MT" + id },
+               };
+    }
+
+    /**
+     * Replays one browsing session.
+     *
+     * @param   legacy  Whether the old implementation is used.
+     * @param   seed    Selects the objects that are browsed.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void replay(boolean legacy, int seed)
+                 throws Exception
+    {
+        String[][] steps = getSteps(seed);
+
+        for (int i = 0; i < steps.length; i++)
+        {
+            run(legacy, steps[i]);
+        }
+    }
+
+    /**
+     * Executes one step of the session.
+     *
+     * @param   legacy  Whether the old implementation is used.
+     * @param   step    The step.
+     *
+     * @return  The returned metadata as string.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private String run(boolean legacy, String[] step)
+                throws Exception
+    {
+        int request = m_doc.createElementNS(step[0], null, "", SAPConnectorConstants.NS_SAP_SCHEMA,
+                                            0);
+        int response = m_doc.createElement(step[0] + "Response");
+
+        try
+        {
+            Node.createElementWithParentNS("overwrite", "false", request);
+
+            for (int i = 1; i < step.length; i += 2)
+            {
+                Node.createElementWithParentNS(step[i], step[i + 1], request);
+            }
+
+            if (legacy)
+            {
+                runLegacy(step, response);
+            }
+            else
+            {
+                m_loader.getMetadata(request, response);
+            }
+
+            // tuple/old/<list>
+            int list = Node.getFirstChild(Node.getFirstChild(Node.getFirstChild(response)));
+            StringBuffer sb = new StringBuffer();
+
+            for (int child = Node.getFirstChild(list); child != 0;
+                     child = Node.getNextSibling(child))
+            {
+                sb.append(Node.writeToString(child, false));
+            }
+
+            return sb.toString();
+        }
+        finally
+        {
+            BACUtil.deleteNode(request);
+            BACUtil.deleteNode(response);
+        }
+    }
+
+    /**
+     * Executes one step the way the loader did before the metadata store: the cache file is
+     * loaded and searched with XPath for every request.
+     *
+     * @param   step      The step.
+     * @param   response  The response node.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void runLegacy(String[] step, int response)
+                    throws Exception
+    {
+        String method = step[0];
+        int tuple = Node.createElementWithParentNS("tuple", null, response);
+        int old = Node.createElementWithParentNS("old", null, tuple);
+        int list = Node.createElementWithParentNS("list", null, old);
+        String file = method.equals("GetComponents")
+                      ? "ComponentMetadata.xml"
+                      : (method.equals("GetRFCs")
+                         ? "RFCMetadata.xml"
+                         : (method.startsWith("GetIDOC") ? "IDOCMetadata.xml" : "BOMetadata.xml"));
+        int cacheNode = m_doc.load(new File(m_cacheDir, file).getPath());
+
+        try
+        {
+            if (method.equals("GetComponents"))
+            {
+                String itemXpath = "BOR_TREE";
+
+                for (int i = 1; i < Integer.parseInt(step[4]); i++)
+                {
+                    itemXpath = itemXpath + "/item";
+                }
+
+                if (step[2].equals("000000"))
+                {
+                    int parentNode = XPathHelper.selectSingleNode(cacheNode,
+                                                                  itemXpath +
+                                                                  "/item[@PARENT=\"000000\"]");
+                    Node.appendToChildren(Node.duplicateElement(parentNode), list);
+                }
+                else
+                {
+                    int parentNode = XPathHelper.selectSingleNode(cacheNode,
+                                                                  itemXpath + "/item[@ID=\"" +
+                                                                  step[2] + "\"]");
+
+                    for (int child = Node.getFirstChild(parentNode); child != 0;
+                             child = Node.getNextSibling(child))
+                    {
+                        if ((Node.getAttribute(child, "hasBO") != null) ||
+                                (Node.getAttribute(child, "isBO") != null))
+                        {
+                            Node.appendToChildren(Node.duplicateElement(child), list);
+                        }
+                    }
+                }
+            }
+            else if (method.equals("GetBOs"))
+            {
+                int[] items = XPathHelper.selectNodes(cacheNode, "API_METHODS/item");
+
+                for (int i = 0; i < items.length; i++)
+                {
+                    String name = Node.getAttribute(items[i], "OBJECTNAME");
+
+                    if ((name.compareToIgnoreCase(step[2]) >= 0) &&
+                            (name.compareToIgnoreCase(step[4]) <= 0))
+                    {
+                        Node.appendToChildren(Node.duplicateElement(items[i]), list);
+                    }
+                }
+            }
+            else if (method.equals("GetBAPIs"))
+            {
+                int boItem = XPathHelper.selectSingleNode(cacheNode,
+                                                          "API_METHODS/item[@OBJTYPE=\"" +
+                                                          step[2] + "\"]");
+                Node.duplicateAndAppendToChildren(Node.getFirstChild(boItem),
+                                                  Node.getLastChild(boItem), list);
+            }
+            else if (method.equals("GetRFCs"))
+            {
+                int[] names = XPathHelper.selectNodes(cacheNode, "FUNCTIONS/item/FUNCNAME");
+
+                for (int i = 0; i < names.length; i++)
+                {
+                    String name = Node.getData(names[i]);
+
+                    if (name.compareTo(step[4]) > 0)
+                    {
+                        break;
+                    }
+
+                    if (name.compareTo(step[2]) >= 0)
+                    {
+                        int item = Node.getParent(names[i]);
+                        Node.duplicateAndAppendToChildren(item, item, list);
+                    }
+                }
+            }
+            else if (method.equals("GetIDOCMessageTypes"))
+            {
+                int[] items = XPathHelper.selectNodes(cacheNode, "PT_MESSAGES/item");
+
+                for (int i = 0; i < items.length; i++)
+                {
+                    String name = Node.getAttribute(items[i], "MESTYP");
+
+                    if (name.compareTo(step[4]) > 0)
+                    {
+                        break;
+                    }
+
+                    if (name.compareTo(step[2]) >= 0)
+                    {
+                        Node.duplicateAndAppendToChildren(items[i], items[i], list);
+                    }
+                }
+            }
+            else
+            {
+                int item = XPathHelper.selectSingleNode(cacheNode,
+                                                        "PT_MESSAGES/item[@MESTYP=\"" + step[2] +
+                                                        "\"]");
+                Node.duplicateAndAppendToChildren(Node.getFirstChild(item), Node.getLastChild(item),
+                                                  list);
+            }
+        }
+        finally
+        {
+            BACUtil.deleteNode(cacheNode);
+        }
+    }
+
+    /**
+     * Writes a metadata file to the cache directory.
+     *
+     * @param   fileName  The name of the file.
+     * @param   xml       The XML to write.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void write(String fileName, StringBuffer xml)
+                throws Exception
+    {
+        int node = m_doc.parseString(xml.toString());
+
+        try
+        {
+            Node.writeToFile(node, node, new File(m_cacheDir, fileName).getPath(), 0);
+        }
+        finally
+        {
+            BACUtil.deleteNode(node);
+        }
+    }
+}
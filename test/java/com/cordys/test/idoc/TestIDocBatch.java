@@ -0,0 +1,291 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.idoc;
+
+import com.cordys.test.bench.LocalSAPSystem;
+
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnection;
+import com.eibus.applicationconnector.sap.connection.jco.SAPJCoRequestSender;
+import com.eibus.applicationconnector.sap.request.OLEDBRequestSender;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.util.logger.config.LoggerConfigurator;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Find;
+import com.eibus.xml.nom.Node;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Throughput test for the batch IDoc API. The same 1,000 IDocs are sent to a LocalSAPSystem once
+ * one by one with sendIDOCRequest and once with sendIDOCBatch. The recorded IDoc types are mixed
+ * in the request, so the batch request has to group them per type. For both runs the number of
+ * calls to SAP and the database and the IDocs per second are printed.
+ *
+ * <p>Usage: TestIDocBatch [recording folder] [latency in ms]. The recording must contain the IDoc
+ * repository and IDocs in idocs/&lt;IDOCTYPE&gt;.xml, see RecordSAPSystem.</p>
+ *
+ * @author  pgussow
+ */
+public class TestIDocBatch
+{
+    /**
+     * Holds the number of IDocs per transmission.
+     */
+    private static final int BATCH_SIZE = 100;
+    /**
+     * Holds the number of IDocs that are sent.
+     */
+    private static final int IDOCS = 1000;
+    /**
+     * Holds the configuration of the local system.
+     */
+    private ISAPConfiguration m_config;
+    /**
+     * Holds the connection the IDocs are sent on.
+     */
+    private SAPJCoConnection m_connection;
+    /**
+     * Holds the NOM document.
+     */
+    private Document m_doc;
+    /**
+     * Holds the local SAP system.
+     */
+    private LocalSAPSystem m_local;
+    /**
+     * Holds the message type per IDoc.
+     */
+    private List<String> m_messageTypes = new ArrayList<String>();
+    /**
+     * Holds the request per IDoc.
+     */
+    private List<Integer> m_requests = new ArrayList<Integer>();
+    /**
+     * Holds the sender.
+     */
+    private SAPJCoRequestSender m_sender;
+    /**
+     * Holds the IDoc type per IDoc.
+     */
+    private List<String> m_types = new ArrayList<String>();
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        TestIDocBatch tb = new TestIDocBatch();
+
+        try
+        {
+            tb.setup(new File((saArguments.length > 0) ? saArguments[0]
+                                                        : "./test/java/com/cordys/test/bench/recording"),
+                     (saArguments.length > 1) ? Long.parseLong(saArguments[1]) : 2);
+
+            tb.loadIDocs();
+
+            tb.testSingle();
+
+            tb.testBatch();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            tb.tearDown();
+        }
+    }
+
+    /**
+     * Initialize the logger and the local system.
+     *
+     * @param   folder   The recording folder.
+     * @param   latency  The latency of a call to the local system in ms.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    public void setup(File folder, long latency)
+               throws Exception
+    {
+        LoggerConfigurator.initLogger("./test/Log4jConfiguration.xml");
+        System.setProperty("java.library.path",
+                           "./docs/internal/sapdlls" + File.pathSeparator +
+                           System.getProperty("java.library.path"));
+
+        m_doc = new Document();
+        m_local = new LocalSAPSystem(folder, latency);
+        m_config = m_local.createConfiguration();
+        m_connection = m_local.createConnection(m_config);
+        m_sender = new SAPJCoRequestSender(m_config)
+        {
+            @Override protected OLEDBRequestSender createOLEDBRequestSender()
+            {
+                return m_local.createOLEDBRequestSender();
+            }
+        };
+    }
+
+    /**
+     * Deletes the requests.
+     */
+    public void tearDown()
+    {
+        for (Integer request : m_requests)
+        {
+            BACUtil.deleteNode(request);
+        }
+    }
+
+    /**
+     * Loads the recorded IDocs.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void loadIDocs()
+                    throws Exception
+    {
+        File[] idocFiles = m_local.getRecordedFiles(LocalSAPSystem.FOLDER_IDOCS);
+
+        if ((m_local.getIDOCRepository() == null) || (idocFiles.length == 0))
+        {
+            throw new Exception("No IDocs recorded");
+        }
+
+        for (File idocFile : idocFiles)
+        {
+            int request = m_doc.load(idocFile.getPath());
+            int controlRecord = Node.getElement(Node.getFirstChildElement(request), "EDI_DC40");
+
+            m_requests.add(request);
+            m_types.add(idocFile.getName().replaceFirst("\\.xml$", ""));
+            m_messageTypes.add(Node.getDataElement(controlRecord, "MESTYP", ""));
+        }
+    }
+
+    /**
+     * This method prints the result of a run.
+     *
+     * @param  name   The name of the run.
+     * @param  calls  The number of calls to SAP and the database.
+     * @param  time   The time in ns.
+     */
+    private void print(String name, long calls, long time)
+    {
+        System.out.println(name + ": " + IDOCS + " IDocs in " + (time / 1000000) + " ms, " +
+                           ((IDOCS * 1000000000L) / Math.max(1, time)) + " IDocs/s, " + calls +
+                           " calls");
+    }
+
+    /**
+     * Sends the IDocs with one batch request and checks the result of every IDoc.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testBatch()
+                    throws Exception
+    {
+        int request = m_doc.createElement("SendIDOCBatch");
+        int documents = m_doc.createElement("Documents", request);
+        int response = m_doc.createElement("SendIDOCBatchResponse");
+
+        try
+        {
+            for (int i = 0; i < IDOCS; i++)
+            {
+                int index = i % m_requests.size();
+                int document = m_doc.createElement("Document", documents);
+                Node.setAttribute(document, "IDOCType", m_types.get(index));
+                Node.setAttribute(document, "MESType", m_messageTypes.get(index));
+                Node.appendToChildren(Node.duplicate(Node.getFirstChildElement(m_requests.get(index))),
+                                      document);
+            }
+
+            long start = m_local.getCalls();
+            long startTime = System.nanoTime();
+
+            m_sender.sendIDOCBatch(request, response, m_connection, BATCH_SIZE);
+
+            print("Batch", m_local.getCalls() - start, System.nanoTime() - startTime);
+
+            int[] results = Find.match(response, "<SendIDOCBatchResponse><Documents><Document>");
+
+            if (results.length != IDOCS)
+            {
+                throw new Exception("Expected " + IDOCS + " results, got " + results.length);
+            }
+
+            for (int result : results)
+            {
+                if (!"Dispatched".equals(Node.getDataElement(result, "Status", "")))
+                {
+                    throw new Exception("IDoc not dispatched: " + Node.writeToString(result, false));
+                }
+            }
+        }
+        finally
+        {
+            BACUtil.deleteNode(request);
+            BACUtil.deleteNode(response);
+        }
+    }
+
+    /**
+     * Sends the IDocs one by one.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testSingle()
+                     throws Exception
+    {
+        int response = m_doc.createElement("response");
+
+        try
+        {
+            long start = m_local.getCalls();
+            long startTime = System.nanoTime();
+
+            for (int i = 0; i < IDOCS; i++)
+            {
+                int index = i % m_requests.size();
+
+                m_sender.sendIDOCRequest(m_requests.get(index), response, m_connection,
+                                         m_types.get(index), m_messageTypes.get(index), "", "",
+                                         "");
+
+                BACUtil.deleteNode(Node.getFirstChild(response));
+                BACUtil.deleteNode(Node.getFirstChild(response));
+            }
+
+            print("Single", m_local.getCalls() - start, System.nanoTime() - startTime);
+        }
+        finally
+        {
+            BACUtil.deleteNode(response);
+        }
+    }
+}
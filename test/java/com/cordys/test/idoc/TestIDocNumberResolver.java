@@ -0,0 +1,375 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.idoc;
+
+import com.eibus.applicationconnector.sap.SAPConnectorConstants;
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.connection.jco.IDocNumberResolver;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+import com.eibus.applicationconnector.sap.request.OLEDBRequestSender;
+
+import com.eibus.util.logger.config.LoggerConfigurator;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Find;
+import com.eibus.xml.nom.Node;
+
+import com.sap.mw.jco.JCO;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Test for the IDocNumberResolver. A stand-in for RFC_READ_TABLE answers the EDIDC queries from
+ * a table of 1,000 sent IDocs and counts the round trips. The numbers are resolved one
+ * transaction ID per query (as before), in bulk and in the background, and for each mode the
+ * round trips per 1,000 IDocs are printed. In the background mode the updates of the stored
+ * IDocs are counted as well. Finally an update fails halfway through a flush; the IDocs that were
+ * not updated must be updated by the next flush.
+ *
+ * @author  pgussow
+ */
+public class TestIDocNumberResolver
+{
+    /**
+     * Holds the maximum number of transaction IDs per query.
+     */
+    private static final int BATCH_SIZE = 100;
+    /**
+     * Holds the number of IDocs.
+     */
+    private static final int IDOCS = 1000;
+    /**
+     * Holds the pattern that finds the transaction IDs in the OPTIONS of the query.
+     */
+    private static final Pattern PATTERN_RCVLAD = Pattern.compile("RCVLAD = '([^']*)'");
+    /**
+     * Holds the configuration.
+     */
+    private ISAPConfiguration m_config;
+    /**
+     * Holds the NOM document.
+     */
+    private Document m_doc;
+    /**
+     * Holds the IDoc number per transaction ID, as in EDIDC.
+     */
+    private Map<String, String> m_edidc = new LinkedHashMap<String, String>();
+    /**
+     * Holds the number of the update that fails. -1 means none.
+     */
+    private AtomicInteger m_failingUpdate = new AtomicInteger(-1);
+    /**
+     * Holds the number of RFC_READ_TABLE round trips.
+     */
+    private AtomicInteger m_roundTrips = new AtomicInteger();
+    /**
+     * Holds the number of updates of stored IDocs.
+     */
+    private AtomicInteger m_updates = new AtomicInteger();
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        TestIDocNumberResolver tr = new TestIDocNumberResolver();
+
+        try
+        {
+            tr.setup();
+
+            tr.testSingle();
+
+            tr.testBulk();
+
+            tr.testAsynchronous();
+
+            tr.testFailedUpdate();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Initialize the logger and the EDIDC table.
+     */
+    public void setup()
+    {
+        LoggerConfigurator.initLogger("./test/Log4jConfiguration.xml");
+
+        m_doc = new Document();
+
+        for (int i = 0; i < IDOCS; i++)
+        {
+            String tid = "0A0B0C0D0000" + String.valueOf(1000000000000L + i);
+            m_edidc.put(tid, String.valueOf(1000000000000000L + i));
+        }
+
+        m_config = (ISAPConfiguration) Proxy.newProxyInstance(ISAPConfiguration.class
+                                                              .getClassLoader(),
+                                                              new Class[]
+                                                              {
+                                                                  ISAPConfiguration.class
+                                                              }, new InvocationHandler()
+            {
+                public Object invoke(Object proxy, Method method, Object[] args)
+                {
+                    if (method.getName().equals("getServiceGroup"))
+                    {
+                        return "cn=SAP Group,cn=soap nodes,o=system,cn=cordys,cn=local";
+                    }
+                    return null;
+                }
+            });
+    }
+
+    /**
+     * This method checks that the resolved numbers match the EDIDC table.
+     *
+     * @param   numbers  The resolved numbers.
+     *
+     * @throws  Exception  In case a number is wrong.
+     */
+    private void check(Map<String, List<String>> numbers)
+                throws Exception
+    {
+        for (Map.Entry<String, List<String>> entry : numbers.entrySet())
+        {
+            List<String> idocNumbers = entry.getValue();
+
+            if ((idocNumbers.size() != 1) ||
+                    !idocNumbers.get(0).equals(m_edidc.get(entry.getKey())))
+            {
+                throw new Exception("Wrong IDoc number for " + entry.getKey() + ": " +
+                                    idocNumbers);
+            }
+        }
+    }
+
+    /**
+     * This method creates a resolver that uses the stand-ins.
+     *
+     * @param   async  Whether the numbers are resolved in the background.
+     *
+     * @return  The resolver.
+     */
+    private IDocNumberResolver createResolver(boolean async)
+    {
+        return new IDocNumberResolver(m_config, async, BATCH_SIZE, 100)
+            {
+                @Override protected JCO.Client acquireConnection()
+                {
+                    return null;
+                }
+
+                @Override protected OLEDBRequestSender createOLEDBRequestSender()
+                {
+                    return new OLEDBRequestSender(SAPConnectorConstants.IDOC_TABLE_NAME)
+                        {
+                            @Override public void updateIDOCNumber(String tid, String idocNumber,
+                                                                   String soapNodeDN,
+                                                                   Document doc)
+                                                            throws SAPConnectorException
+                            {
+                                if (m_failingUpdate.compareAndSet(m_updates.get(), -1))
+                                {
+                                    throw new SAPConnectorException(SAPConnectorExceptionMessages.ERROR_HANDLING_IDOC_REQUEST);
+                                }
+                                m_updates.incrementAndGet();
+                            }
+                        };
+                }
+
+                @Override protected int readTable(int requestNode, JCO.Client client,
+                                                  Document doc)
+                {
+                    return readEDIDC(requestNode, doc);
+                }
+
+                @Override protected void releaseConnection(JCO.Client client)
+                {
+                }
+            };
+    }
+
+    /**
+     * Stand-in for RFC_READ_TABLE on EDIDC. It returns DOCNUM and RCVLAD of the transaction IDs in
+     * the OPTIONS.
+     *
+     * @param   requestNode  The RFC_READ_TABLE request.
+     * @param   doc          The document to create the response in.
+     *
+     * @return  The response.
+     */
+    private int readEDIDC(int requestNode, Document doc)
+    {
+        m_roundTrips.incrementAndGet();
+
+        int returnValue = doc.createElement("RFC_READ_TABLE.Response");
+        int data = doc.createElement("DATA", returnValue);
+
+        for (int option : Find.match(requestNode, "<RFC_READ_TABLE><OPTIONS><item><TEXT>"))
+        {
+            Matcher matcher = PATTERN_RCVLAD.matcher(Node.getDataWithDefault(option, ""));
+
+            if (matcher.find() && m_edidc.containsKey(matcher.group(1)))
+            {
+                int item = doc.createElement("item", data);
+                doc.createTextElement("WA",
+                                      m_edidc.get(matcher.group(1)) + "|" + matcher.group(1) +
+                                      "    ", item);
+            }
+        }
+
+        return returnValue;
+    }
+
+    /**
+     * Queues the transaction IDs and checks that every stored IDoc is updated.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testAsynchronous()
+                           throws Exception
+    {
+        IDocNumberResolver resolver = createResolver(true);
+        m_roundTrips.set(0);
+        m_updates.set(0);
+
+        for (String tid : m_edidc.keySet())
+        {
+            resolver.resolveLater(tid, "ORDERS");
+        }
+
+        resolver.close();
+
+        System.out.println("Round trips per " + IDOCS + " IDocs in the background: " +
+                           m_roundTrips.get() + ", updated IDocs: " + m_updates.get());
+
+        if (m_updates.get() != IDOCS)
+        {
+            throw new Exception("Expected " + IDOCS + " updated IDocs");
+        }
+    }
+
+    /**
+     * Resolves all transaction IDs with one call.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testBulk()
+                   throws Exception
+    {
+        IDocNumberResolver resolver = createResolver(false);
+        Map<String, String> transactions = new LinkedHashMap<String, String>();
+
+        for (String tid : m_edidc.keySet())
+        {
+            transactions.put(tid, "ORDERS");
+        }
+
+        m_roundTrips.set(0);
+        check(resolver.resolve(transactions, null, m_doc));
+
+        System.out.println("Round trips per " + IDOCS + " IDocs in bulk: " + m_roundTrips.get());
+
+        if (m_roundTrips.get() != (IDOCS / BATCH_SIZE))
+        {
+            throw new Exception("Expected " + (IDOCS / BATCH_SIZE) + " round trips");
+        }
+    }
+
+    /**
+     * Lets an update fail halfway through a flush and checks that the next flush updates the
+     * remaining IDocs, including the one that failed.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testFailedUpdate()
+                           throws Exception
+    {
+        IDocNumberResolver resolver = createResolver(true);
+        // Without the background thread the flushes below are the only ones.
+        resolver.close();
+
+        m_updates.set(0);
+        m_failingUpdate.set(IDOCS / 2);
+
+        for (String tid : m_edidc.keySet())
+        {
+            resolver.resolveLater(tid, "ORDERS");
+        }
+
+        try
+        {
+            resolver.flush();
+            throw new Exception("The failing update was not reported");
+        }
+        catch (SAPConnectorException e)
+        {
+            // Expected
+        }
+
+        if (m_updates.get() != (IDOCS / 2))
+        {
+            throw new Exception("Expected " + (IDOCS / 2) + " updated IDocs before the failure");
+        }
+
+        if (!resolver.flush() || (m_updates.get() != IDOCS))
+        {
+            throw new Exception("Expected " + IDOCS + " updated IDocs after the next flush, got " +
+                                m_updates.get());
+        }
+
+        System.out.println("Failed update: all " + IDOCS + " IDocs updated by the next flush");
+    }
+
+    /**
+     * Resolves the transaction IDs one by one, as sendIDOCRequest does in synchronous mode.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testSingle()
+                     throws Exception
+    {
+        IDocNumberResolver resolver = createResolver(false);
+        m_roundTrips.set(0);
+
+        for (String tid : m_edidc.keySet())
+        {
+            check(resolver.resolve(Collections.singletonMap(tid, "ORDERS"), null, m_doc));
+        }
+
+        System.out.println("Round trips per " + IDOCS + " IDocs one by one: " + m_roundTrips.get());
+    }
+}
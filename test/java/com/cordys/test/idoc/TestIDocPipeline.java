@@ -0,0 +1,380 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+ package com.cordys.test.idoc;
+
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.config.SAPConfigurationFactory;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.idoc.IDocDispatcher;
+import com.eibus.applicationconnector.sap.idoc.IDocPipeline;
+import com.eibus.applicationconnector.sap.idoc.IDocStatistics;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.util.logger.config.LoggerConfigurator;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Find;
+import com.eibus.xml.nom.Node;
+
+import com.sap.mw.idoc.IDoc;
+import com.sap.mw.idoc.jco.JCoIDoc;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Benchmark for the inbound IDoc pipeline. An in-process generator creates IDocs for a number of
+ * message types. They are processed once the way the listener does it (one by one) and once
+ * through the IDocPipeline. The conversion to XML is real; the target lookup, the SOAP dispatch
+ * and the database tuple are simulated, so only the IDoc repository of the SAP system is needed.
+ * The pipeline run also checks that the IDocs of each message type are dispatched in order.
+ *
+ * @author  pgussow
+ */
+public class TestIDocPipeline
+{
+    /**
+     * Holds the time in ms a simulated dispatch takes.
+     */
+    private static final int DISPATCH_TIME = 5;
+    /**
+     * Holds the number of IDocs per document list.
+     */
+    private static final int IDOCS_PER_LIST = 50;
+    /**
+     * Holds the number of document lists.
+     */
+    private static final int LISTS = 20;
+    /**
+     * Holds the IDoc type that is generated.
+     */
+    private static final String IDOC_TYPE = "DEBMAS06";
+    /**
+     * Holds the message types that are generated.
+     */
+    private static final String[] MESSAGE_TYPES = new String[]
+                                                  {
+                                                      "DEBMAS", "DEBMDM", "ADRMAS", "CREMAS",
+                                                      "MATMAS", "ORDERS"
+                                                  };
+    /**
+     * Holds the number of pipeline workers.
+     */
+    private static final int WORKERS = 8;
+    /**
+     * Holds the configuration.
+     */
+    private ISAPConfiguration m_config;
+    /**
+     * Holds the NOM document.
+     */
+    private Document m_doc;
+    /**
+     * Holds the last dispatched IDoc number per message type.
+     */
+    private Map<String, Long> m_lastDispatched = new HashMap<String, Long>();
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        TestIDocPipeline tp = new TestIDocPipeline();
+
+        try
+        {
+            tp.setup();
+
+            // Create the configuration
+            tp.createConnection();
+
+            List<List<IDoc.Document>> lists = tp.generateIDocs();
+
+            tp.runListener(lists);
+            tp.runPipeline(lists);
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            if (tp.m_config != null)
+            {
+                try
+                {
+                    tp.m_config.getJCoConnectionManager().closeAllConnections();
+                }
+                catch (SAPConnectorException e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Initialize the logger.
+     */
+    public void setup()
+    {
+        LoggerConfigurator.initLogger("./test/Log4jConfiguration.xml");
+        System.setProperty("java.library.path",
+                           "./docs/internal/sapdlls" + File.pathSeparator +
+                           System.getProperty("java.library.path"));
+
+        m_doc = new Document();
+    }
+
+    /**
+     * This method loads the configuration.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void createConnection()
+                           throws Exception
+    {
+        int node = m_doc.load(".\\test\\java\\com\\cordys\\test\\xmi\\sapr3config.xml");
+
+        try
+        {
+            m_config = SAPConfigurationFactory.createSAPConfiguration(node,
+                                                                      "o=system,cn=cordys,cn=main,o=gussow.com",
+                                                                      "cn=SAP Group,cn=soap nodes,o=system,cn=cordys,cn=main,o=gussow.com");
+        }
+        finally
+        {
+            BACUtil.deleteNode(node);
+        }
+    }
+
+    /**
+     * Generates the document lists. The IDoc numbers are ascending so the order per message type
+     * can be checked.
+     *
+     * @return  The document lists.
+     */
+    private List<List<IDoc.Document>> generateIDocs()
+    {
+        List<List<IDoc.Document>> lists = new ArrayList<List<IDoc.Document>>();
+        long idocNumber = 1;
+
+        for (int i = 0; i < LISTS; i++)
+        {
+            List<IDoc.Document> list = new ArrayList<IDoc.Document>();
+
+            for (int j = 0; j < IDOCS_PER_LIST; j++)
+            {
+                IDoc.Document idoc = JCoIDoc.createDocument(m_config.getIDOCRepository(),
+                                                            IDOC_TYPE);
+                idoc.setIDocNumber(String.valueOf(idocNumber++));
+                idoc.setMessageType(MESSAGE_TYPES[j % MESSAGE_TYPES.length]);
+                idoc.setRecipientPartnerNumber("CORDYS");
+                idoc.getRootSegment().addChild("E1KNA1M").setValue("KUNNR", "C" + idocNumber);
+                list.add(idoc);
+            }
+            lists.add(list);
+        }
+
+        return lists;
+    }
+
+    /**
+     * Processes the lists the way the listener does without a pipeline.
+     *
+     * @param   lists  The document lists.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void runListener(List<List<IDoc.Document>> lists)
+                      throws Exception
+    {
+        IDocStatistics statistics = new IDocStatistics();
+        IDocDispatcher dispatcher = new SimulatedDispatcher(new Document(), statistics);
+        long start = System.currentTimeMillis();
+        int tid = 0;
+
+        for (List<IDoc.Document> list : lists)
+        {
+            String tidString = "TID" + (tid++);
+
+            for (IDoc.Document idoc : list)
+            {
+                BACUtil.deleteNode(dispatcher.dispatch(idoc, tidString));
+            }
+        }
+
+        report("listener", System.currentTimeMillis() - start, statistics);
+    }
+
+    /**
+     * Processes the lists through the pipeline.
+     *
+     * @param   lists  The document lists.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void runPipeline(List<List<IDoc.Document>> lists)
+                      throws Exception
+    {
+        m_lastDispatched.clear();
+
+        IDocPipeline pipeline = new IDocPipeline(m_config, WORKERS, IDOCS_PER_LIST)
+        {
+            @Override protected IDocDispatcher createDispatcher()
+            {
+                return new SimulatedDispatcher(new Document(), getStatistics());
+            }
+        };
+        pipeline.start();
+
+        try
+        {
+            long start = System.currentTimeMillis();
+            int tid = 0;
+
+            for (List<IDoc.Document> list : lists)
+            {
+                int[] tuples = pipeline.process(list, "TID" + (tid++), m_doc);
+
+                for (int tuple : tuples)
+                {
+                    BACUtil.deleteNode(tuple);
+                }
+            }
+
+            report("pipeline", System.currentTimeMillis() - start, pipeline.getStatistics());
+        }
+        finally
+        {
+            pipeline.stop();
+        }
+    }
+
+    /**
+     * Prints the result of a run.
+     *
+     * @param  name        The name of the run.
+     * @param  duration    The duration in ms.
+     * @param  statistics  The statistics of the run.
+     */
+    private void report(String name, long duration, IDocStatistics statistics)
+    {
+        System.out.println(name + ": " + statistics.getIDocCount() + " IDOCs in " + duration +
+                           " ms (" + ((statistics.getIDocCount() * 1000) / Math.max(duration, 1)) +
+                           " IDOCs/s). " + statistics);
+    }
+
+    /**
+     * Dispatcher that simulates the target lookup, the SOAP call and the database tuple.
+     */
+    private class SimulatedDispatcher extends IDocDispatcher
+    {
+        /**
+         * Holds the document to create the tuples in.
+         */
+        private Document m_tupleDoc;
+
+        /**
+         * Creates a new SimulatedDispatcher object.
+         *
+         * @param  doc         The document to create the nodes in.
+         * @param  statistics  The statistics to update.
+         */
+        SimulatedDispatcher(Document doc, IDocStatistics statistics)
+        {
+            super(m_config, null, doc, statistics);
+            m_tupleDoc = doc;
+        }
+
+        /**
+         * @see  com.eibus.applicationconnector.sap.idoc.IDocDispatcher#findTarget(java.lang.String,
+         *       java.lang.String, java.lang.String)
+         */
+        @Override protected String[] findTarget(String mesType, String idocType,
+                                                String receiverLS)
+        {
+            return new String[]
+                   {
+                       "cn=" + mesType + ",cn=soap nodes,o=system", "Receive" + mesType,
+                       "http://schemas.cordys.com/IDOCReceiver"
+                   };
+        }
+
+        /**
+         * @see  com.eibus.applicationconnector.sap.idoc.IDocDispatcher#frameInsertTuple(com.sap.mw.idoc.IDoc$Document,
+         *       int, java.lang.String, java.lang.String, java.lang.String, java.lang.String)
+         */
+        @Override protected int frameInsertTuple(IDoc.Document idoc, int idocXMLNode, String tid,
+                                                 String localStatus, String errorText,
+                                                 String targetSystem)
+                                          throws SAPConnectorException
+        {
+            if (!"Dispatched".equals(localStatus))
+            {
+                throw new IllegalStateException("IDOC " + idoc.getIDocNumber() + " failed: " +
+                                                errorText);
+            }
+
+            int tuple = m_tupleDoc.createElement("tuple");
+            m_tupleDoc.createTextElement("TID", tid, tuple);
+            m_tupleDoc.createTextElement("IDOCNUM", idoc.getIDocNumber(), tuple);
+            return tuple;
+        }
+
+        /**
+         * @see  com.eibus.applicationconnector.sap.idoc.IDocDispatcher#sendToTarget(java.lang.String,
+         *       java.lang.String, java.lang.String, int)
+         */
+        @Override protected void sendToTarget(String targetSOAPNode, String targetMethod,
+                                              String targetNameSpace, int parameterNode)
+        {
+            String mesType = targetMethod.substring("Receive".length());
+            int docNumNode = Find.firstMatch(parameterNode,
+                                             "<IDOC><" + IDOC_TYPE + "><IDOC><EDI_DC40><DOCNUM>");
+            long idocNumber = Long.parseLong(Node.getDataWithDefault(docNumNode, "0"));
+
+            synchronized (m_lastDispatched)
+            {
+                Long last = m_lastDispatched.get(mesType);
+
+                if ((last != null) && (last.longValue() >= idocNumber))
+                {
+                    throw new IllegalStateException("IDOC " + idocNumber + " of " + mesType +
+                                                    " dispatched after " + last);
+                }
+                m_lastDispatched.put(mesType, idocNumber);
+            }
+
+            try
+            {
+                Thread.sleep(DISPATCH_TIME);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
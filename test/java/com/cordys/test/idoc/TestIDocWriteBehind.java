@@ -0,0 +1,613 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.idoc;
+
+import com.eibus.applicationconnector.sap.SAPConnectorConstants;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+import com.eibus.applicationconnector.sap.request.IDocWriteBehind;
+import com.eibus.applicationconnector.sap.request.OLEDBRequestSender;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.util.logger.config.LoggerConfigurator;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Find;
+import com.eibus.xml.nom.Node;
+
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Test for the write-behind storage of the outbound IDocs. The IDoc table is a stand-in that
+ * waits for the latency of a SOAP call and records the transaction IDs it receives.
+ *
+ * <p>The same 1,000 tuples are stored once the way saveIDOCInDataBase does it without
+ * write-behind (one Update request per IDoc) and once through the IDocWriteBehind. For both runs
+ * the number of database calls and the time per IDoc of the caller are printed. Then the database
+ * is taken down, so the buffer overflows to the spool file, and the connector is stopped while
+ * the database is still down. A new writer must store all tuples from the spool file, in the
+ * order they were added.</p>
+ *
+ * <p>To check that the spool file survives a crash, a writer that is sending the spool file
+ * stalls after three batches and a new writer takes over the spool file. The new writer must
+ * only store the tuples the stalled one did not store. Finally one tuple is rejected by the
+ * database every time: its batch must end up in the dead letter file and the other tuples must
+ * be stored. A tuple that is added after the writer is closed must be stored right away, or
+ * spooled while the database is down.</p>
+ *
+ * <p>Usage: TestIDocWriteBehind [latency in ms].</p>
+ *
+ * @author  pgussow
+ */
+public class TestIDocWriteBehind
+{
+    /**
+     * Holds the number of tuples per Update request.
+     */
+    private static final int BATCH_SIZE = 100;
+    /**
+     * Holds the number of tuples in memory.
+     */
+    private static final int BUFFER_SIZE = 200;
+    /**
+     * Holds the number of IDocs.
+     */
+    private static final int IDOCS = 1000;
+    /**
+     * Holds the path of the transaction ID in a tuple.
+     */
+    private static final String TID_PATH = "<tuple><new><" +
+                                           SAPConnectorConstants.IDOC_TABLE_NAME + "><" +
+                                           OLEDBRequestSender.IDOCTABLE_TID_TAG + ">";
+    /**
+     * Holds the number of Update requests.
+     */
+    private int m_calls;
+    /**
+     * Holds the NOM document.
+     */
+    private Document m_doc;
+    /**
+     * Indicates whether the database is down.
+     */
+    private volatile boolean m_down;
+    /**
+     * Holds the latency of a database call in ms.
+     */
+    private long m_latency;
+    /**
+     * Holds the transaction ID of the tuple the database always rejects.
+     */
+    private volatile String m_poison;
+    /**
+     * Holds the spool file.
+     */
+    private File m_spoolFile;
+    /**
+     * Holds the number of stored tuples after which the database stalls, or -1.
+     */
+    private volatile int m_stall = -1;
+    /**
+     * Holds the latch the stalled database waits for. It is never released.
+     */
+    private final CountDownLatch m_stalled = new CountDownLatch(1);
+    /**
+     * Holds the transaction IDs of the stored tuples in the order they were stored.
+     */
+    private List<String> m_stored = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        TestIDocWriteBehind tw = new TestIDocWriteBehind();
+
+        try
+        {
+            tw.setup((saArguments.length > 0) ? Long.parseLong(saArguments[0]) : 2);
+
+            tw.testSynchronous();
+
+            tw.testWriteBehind();
+
+            tw.testSpool();
+
+            tw.testResume();
+
+            tw.testDeadLetter();
+
+            tw.testAddAfterClose();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            tw.tearDown();
+        }
+    }
+
+    /**
+     * Initialize the logger.
+     *
+     * @param   latency  The latency of a database call in ms.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    public void setup(long latency)
+               throws Exception
+    {
+        LoggerConfigurator.initLogger("./test/Log4jConfiguration.xml");
+
+        m_doc = new Document();
+        m_latency = latency;
+        m_spoolFile = File.createTempFile("idocspool", ".bin");
+        m_spoolFile.delete();
+    }
+
+    /**
+     * Deletes the spool file.
+     */
+    public void tearDown()
+    {
+        if (m_spoolFile != null)
+        {
+            m_spoolFile.delete();
+            new File(m_spoolFile.getPath() + ".failed").delete();
+        }
+    }
+
+    /**
+     * This method adds all tuples to a writer.
+     *
+     * @param   writer  The writer.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void addAll(IDocWriteBehind writer)
+                 throws Exception
+    {
+        for (int i = 0; i < IDOCS; i++)
+        {
+            int tuple = createTuple(i);
+            writer.add(tuple);
+            BACUtil.deleteNode(tuple);
+        }
+    }
+
+    /**
+     * This method checks that all tuples are stored once, in the order they were added.
+     *
+     * @throws  Exception  In case a tuple is missing or out of order.
+     */
+    private void check()
+                throws Exception
+    {
+        if (m_stored.size() != IDOCS)
+        {
+            throw new Exception("Expected " + IDOCS + " stored IDocs, got " + m_stored.size());
+        }
+
+        for (int i = 0; i < IDOCS; i++)
+        {
+            if (!m_stored.get(i).equals(String.valueOf(i)))
+            {
+                throw new Exception("IDoc " + i + " stored as number " + m_stored.get(i));
+            }
+        }
+    }
+
+    /**
+     * This method creates a stand-in for the IDoc table.
+     *
+     * @return  The stand-in.
+     */
+    private OLEDBRequestSender createDatabase()
+    {
+        return new OLEDBRequestSender(SAPConnectorConstants.IDOC_TABLE_NAME)
+            {
+                @Override public void sendOleDBUpdateRequest(int[] params_updateMetod,
+                                                             Document doc)
+                                                      throws SAPConnectorException
+                {
+                    m_calls++;
+
+                    try
+                    {
+                        Thread.sleep(m_latency);
+
+                        if ((m_stall >= 0) && (m_stored.size() >= m_stall))
+                        {
+                            // The connector crashed while it was sending this batch.
+                            m_stalled.await();
+                        }
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    if (m_down)
+                    {
+                        throw new SAPConnectorException(SAPConnectorExceptionMessages.ERROR_EXECUTING_METHOD,
+                                                        "Update");
+                    }
+
+                    List<String> tids = new ArrayList<String>();
+
+                    for (int tuple : params_updateMetod)
+                    {
+                        tids.add(Node.getDataWithDefault(Find.firstMatch(tuple, TID_PATH), ""));
+                    }
+
+                    if (tids.contains(m_poison))
+                    {
+                        throw new SAPConnectorException(SAPConnectorExceptionMessages.ERROR_EXECUTING_METHOD,
+                                                        "Update");
+                    }
+                    m_stored.addAll(tids);
+                }
+            };
+    }
+
+    /**
+     * This method creates a tuple like saveIDOCInDataBase does.
+     *
+     * @param   number  The number of the IDoc, which is also its transaction ID.
+     *
+     * @return  The tuple.
+     */
+    private int createTuple(int number)
+    {
+        int returnValue = m_doc.createElement("tuple");
+        int table = m_doc.createElement(SAPConnectorConstants.IDOC_TABLE_NAME,
+                                        m_doc.createElement("new", returnValue));
+        StringBuilder dataRecord = new StringBuilder();
+
+        for (int i = 0; i < 20; i++)
+        {
+            dataRecord.append("<E1KNA1M SEGMENT=\"1\"><KUNNR>").append(number)
+                      .append("</KUNNR><NAME1>Customer ").append(i).append("</NAME1></E1KNA1M>");
+        }
+
+        m_doc.createTextElement(OLEDBRequestSender.IDOCTABLE_DIRECTION_TAG, "O", table);
+        m_doc.createTextElement(OLEDBRequestSender.IDOCTABLE_TID_TAG, String.valueOf(number),
+                                table);
+        m_doc.createTextElement(OLEDBRequestSender.IDOCTABLE_IDOCNUM_TAG,
+                                String.valueOf(1000000000000000L + number), table);
+        m_doc.createTextElement(OLEDBRequestSender.IDOCTABLE_MESTYPE_TAG, "DEBMAS", table);
+        m_doc.createTextElement(OLEDBRequestSender.IDOCTABLE_IDOCTYPE_TAG, "DEBMAS06", table);
+        m_doc.createTextElement(OLEDBRequestSender.IDOCTABLE_DATARECORD_TAG,
+                                dataRecord.toString(), table);
+
+        return returnValue;
+    }
+
+    /**
+     * This method creates a writer that stores in the stand-in.
+     *
+     * @return  The writer.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private IDocWriteBehind createWriter()
+                                  throws Exception
+    {
+        return createWriter(100);
+    }
+
+    /**
+     * This method creates a writer that stores in the stand-in.
+     *
+     * @param   flushInterval  The number of milliseconds a tuple may wait.
+     *
+     * @return  The writer.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private IDocWriteBehind createWriter(long flushInterval)
+                                  throws Exception
+    {
+        final OLEDBRequestSender database = createDatabase();
+
+        return new IDocWriteBehind(null, BATCH_SIZE, BUFFER_SIZE, flushInterval, m_spoolFile)
+            {
+                @Override protected OLEDBRequestSender createOLEDBRequestSender()
+                {
+                    return database;
+                }
+            };
+    }
+
+    /**
+     * This method prints the result of a run.
+     *
+     * @param  name  The name of the run.
+     * @param  time  The time the caller waited in ns.
+     */
+    private void print(String name, long time)
+    {
+        System.out.println(name + ": " + m_calls + " database calls for " + IDOCS + " IDocs, " +
+                           (time / IDOCS / 1000) + " us per IDoc");
+    }
+
+    /**
+     * This method resets the stand-in.
+     */
+    private void reset()
+    {
+        m_calls = 0;
+        m_down = false;
+        m_poison = null;
+        m_stall = -1;
+        m_stored.clear();
+    }
+
+    /**
+     * Adds tuples after the writer is closed, once while the database is up and once while it is
+     * down. The first must be stored right away, the second must be kept in the spool file.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testAddAfterClose()
+                            throws Exception
+    {
+        reset();
+        m_spoolFile.delete();
+
+        IDocWriteBehind writer = createWriter();
+
+        writer.close();
+
+        int tuple = createTuple(0);
+        writer.add(tuple);
+        BACUtil.deleteNode(tuple);
+
+        if (!m_stored.contains("0"))
+        {
+            throw new Exception("The tuple added after close was not stored");
+        }
+
+        m_down = true;
+        tuple = createTuple(1);
+        writer.add(tuple);
+        BACUtil.deleteNode(tuple);
+
+        if (!m_spoolFile.exists() || (m_stored.size() != 1))
+        {
+            throw new Exception("The tuple added after close was not spooled");
+        }
+
+        m_down = false;
+        createWriter().close();
+
+        if (!m_stored.contains("1") || m_spoolFile.exists())
+        {
+            throw new Exception("The spooled tuple was not stored");
+        }
+
+        System.out.println("Added after close: " + m_stored.size() + " IDocs stored");
+    }
+
+    /**
+     * The database rejects the batch of one tuple every time. That batch must be moved to the
+     * dead letter file, the other tuples must be stored.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testDeadLetter()
+                         throws Exception
+    {
+        reset();
+        m_poison = "250";
+
+        File deadLetter = new File(m_spoolFile.getPath() + ".failed");
+        IDocWriteBehind writer = createWriter(1);
+
+        addAll(writer);
+
+        for (int i = 0; (i < 1000) && !deadLetter.exists(); i++)
+        {
+            Thread.sleep(10);
+        }
+        writer.close();
+
+        if (!deadLetter.exists() || (m_stored.size() != (IDOCS - BATCH_SIZE)) ||
+                m_stored.contains(m_poison))
+        {
+            throw new Exception("The rejected batch was not moved to the dead letter file");
+        }
+
+        System.out.println("Rejected tuple: " + m_stored.size() + " IDocs stored, " +
+                           BATCH_SIZE + " IDocs kept in " + deadLetter.length() +
+                           " bytes of dead letter file");
+
+        // The dead letter file is sent again when it is renamed to the spool file.
+        reset();
+        m_spoolFile.delete();
+        deadLetter.renameTo(m_spoolFile);
+        createWriter().close();
+
+        if ((m_stored.size() != BATCH_SIZE) || !m_stored.contains("250"))
+        {
+            throw new Exception("The dead letter file was not sent again");
+        }
+    }
+
+    /**
+     * A writer that sends the spool file stalls after three batches, like a connector that
+     * crashed. A new writer must store the tuples that were not stored, in order and only once.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testResume()
+                     throws Exception
+    {
+        reset();
+        m_down = true;
+
+        IDocWriteBehind writer = createWriter();
+
+        addAll(writer);
+        writer.close();
+
+        m_down = false;
+        m_stall = 3 * BATCH_SIZE;
+        createWriter(10);
+
+        for (int i = 0; (i < 1000) && (m_stored.size() < m_stall); i++)
+        {
+            Thread.sleep(10);
+        }
+
+        if (m_stored.size() != m_stall)
+        {
+            throw new Exception("Expected " + m_stall + " stored IDocs before the crash, got " +
+                                m_stored.size());
+        }
+
+        // The stalled writer is left behind, its batch is not stored.
+        m_stall = -1;
+        createWriter().close();
+
+        check();
+
+        System.out.println("Crash after " + (3 * BATCH_SIZE) + " IDocs: the new writer stored the " +
+                           (IDOCS - (3 * BATCH_SIZE)) + " other IDocs once");
+    }
+
+    /**
+     * Takes the database down, so the tuples are spooled, and stops the connector while it is
+     * down. A new writer must store the spooled tuples.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testSpool()
+                    throws Exception
+    {
+        reset();
+        m_down = true;
+
+        IDocWriteBehind writer = createWriter();
+
+        for (int i = 0; i < IDOCS; i++)
+        {
+            int tuple = createTuple(i);
+            writer.add(tuple);
+            BACUtil.deleteNode(tuple);
+        }
+
+        // One batch may be on its way to the database.
+        if (!m_spoolFile.exists() || (writer.getPending() < (IDOCS - BATCH_SIZE)))
+        {
+            throw new Exception("The tuples were not spooled");
+        }
+
+        writer.close();
+
+        if (!m_stored.isEmpty() || !m_spoolFile.exists())
+        {
+            throw new Exception("The tuples were not kept in the spool file");
+        }
+
+        System.out.println("Database down: " + IDOCS + " IDocs kept in " + m_spoolFile.length() +
+                           " bytes of spool file");
+
+        m_down = false;
+        writer = createWriter();
+        writer.close();
+
+        check();
+
+        if (m_spoolFile.exists())
+        {
+            throw new Exception("The spool file was not deleted");
+        }
+
+        System.out.println("Database up: " + m_stored.size() +
+                           " spooled IDocs stored in order with " + m_calls + " database calls");
+    }
+
+    /**
+     * Stores the tuples with one Update request per IDoc.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testSynchronous()
+                          throws Exception
+    {
+        reset();
+
+        OLEDBRequestSender database = createDatabase();
+        long startTime = System.nanoTime();
+
+        for (int i = 0; i < IDOCS; i++)
+        {
+            int[] tuple = new int[] { createTuple(i) };
+            database.sendOleDBUpdateRequest(tuple, m_doc);
+            BACUtil.deleteNode(tuple[0]);
+        }
+
+        print("Without write-behind", System.nanoTime() - startTime);
+        check();
+    }
+
+    /**
+     * Stores the tuples through the write-behind buffer.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testWriteBehind()
+                          throws Exception
+    {
+        reset();
+
+        IDocWriteBehind writer = createWriter();
+        long time = 0;
+
+        for (int i = 0; i < IDOCS; i++)
+        {
+            int tuple = createTuple(i);
+            long startTime = System.nanoTime();
+
+            writer.add(tuple);
+
+            time += System.nanoTime() - startTime;
+            BACUtil.deleteNode(tuple);
+        }
+
+        writer.close();
+
+        print("With write-behind", time);
+        check();
+
+        if (m_calls > ((IDOCS / BATCH_SIZE) * 2))
+        {
+            throw new Exception("Expected about " + (IDOCS / BATCH_SIZE) + " database calls");
+        }
+    }
+}
@@ -0,0 +1,501 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.idoc;
+
+import com.eibus.applicationconnector.sap.SAPConnectorConstants;
+import com.eibus.applicationconnector.sap.idoc.TIDStore;
+import com.eibus.applicationconnector.sap.request.OLEDBRequestSender;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.util.logger.config.LoggerConfigurator;
+
+import com.eibus.xml.nom.Document;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Test for the local TID store of the IDoc listener.
+ *
+ * <p>The recovery test starts a second JVM that checks and commits transactions in a loop and
+ * reports every commit. The process is killed while it is committing, and a partly written record
+ * is appended to the log. The store must open again, keep every reported commit and leave at most
+ * one transaction in doubt, which is then resolved against a stand-in for the IDoc table.</p>
+ *
+ * <p>The in-doubt test checks a transaction whose commit record was never written, as when the
+ * commit fails after the IDocs were stored. When SAP sends it again, after a restart or not, it
+ * must be looked up in the IDoc table instead of being processed a second time.</p>
+ *
+ * <p>The benchmark compares the TID checks per second of the store with the checks through a
+ * stand-in for the database, which only waits for the latency of a SOAP call.</p>
+ *
+ * <p>Usage: TestTIDStore [latency in ms].</p>
+ *
+ * @author  pgussow
+ */
+public class TestTIDStore
+{
+    /**
+     * Holds the argument that starts the process that is killed.
+     */
+    private static final String ARG_COMMIT_LOOP = "commit-loop";
+    /**
+     * Holds the number of transactions that are checked against the database.
+     */
+    private static final int DATABASE_CHECKS = 1000;
+    /**
+     * Holds the number of transactions that are checked against the store. Every check is forced
+     * to disk.
+     */
+    private static final int LOCAL_CHECKS = 10000;
+    /**
+     * Holds the number of commits after which the process is killed.
+     */
+    private static final int COMMITS_BEFORE_KILL = 1000;
+    /**
+     * Holds the NOM document.
+     */
+    private Document m_doc;
+    /**
+     * Holds the log file of the store.
+     */
+    private File m_file;
+    /**
+     * Holds the latency of a database call in ms.
+     */
+    private long m_latency;
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        if ((saArguments.length > 1) && ARG_COMMIT_LOOP.equals(saArguments[0]))
+        {
+            commitLoop(new File(saArguments[1]));
+            return;
+        }
+
+        TestTIDStore ts = new TestTIDStore();
+
+        try
+        {
+            ts.setup((saArguments.length > 0) ? Long.parseLong(saArguments[0]) : 2);
+
+            ts.testRecovery();
+
+            ts.testInDoubt();
+
+            ts.testCompaction();
+
+            ts.testChecksPerSecond();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+        finally
+        {
+            ts.tearDown();
+        }
+    }
+
+    /**
+     * Initialize the logger and the log file.
+     *
+     * @param   latency  The latency of a database call in ms.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    public void setup(long latency)
+               throws Exception
+    {
+        LoggerConfigurator.initLogger("./test/Log4jConfiguration.xml");
+
+        m_doc = new Document();
+        m_latency = latency;
+        m_file = File.createTempFile("tidstore", ".log");
+        m_file.delete();
+    }
+
+    /**
+     * Deletes the log file.
+     */
+    public void tearDown()
+    {
+        if (m_file != null)
+        {
+            m_file.delete();
+        }
+    }
+
+    /**
+     * Checks and commits transactions until the process is killed. Every commit is reported on
+     * stdout after it returned.
+     *
+     * @param  file  The log file.
+     */
+    private static void commitLoop(File file)
+    {
+        try
+        {
+            TIDStore store = new TIDStore(file, TIDStore.DEFAULT_COMPACT_THRESHOLD);
+            OLEDBRequestSender database = new TestTIDStore().createDatabase(false);
+            Document doc = new Document();
+
+            for (int i = 0; true; i++)
+            {
+                String tid = toTID(i);
+
+                store.check(tid, database, doc);
+                store.commit(tid);
+
+                System.out.println(i);
+                System.out.flush();
+            }
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * This method creates the transaction ID with the given number.
+     *
+     * @param   number  The number.
+     *
+     * @return  The transaction ID.
+     */
+    private static String toTID(int number)
+    {
+        String returnValue = "0A0B0C0D000000000000" + Integer.toHexString(number).toUpperCase();
+
+        return returnValue.substring(returnValue.length() - 24);
+    }
+
+    /**
+     * This method creates a stand-in for the IDoc table.
+     *
+     * @param   found  Whether the transaction IDs are in the table.
+     *
+     * @return  The stand-in.
+     */
+    private OLEDBRequestSender createDatabase(final boolean found)
+    {
+        return new OLEDBRequestSender(SAPConnectorConstants.IDOC_TABLE_NAME)
+            {
+                @Override public int getTid(String tid, Document doc)
+                {
+                    try
+                    {
+                        Thread.sleep(m_latency);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    int returnValue = doc.createElementNS("GetTidResponse", null, "",
+                                                          SAPConnectorConstants.NS_SAP_IDOC_DB,
+                                                          0);
+
+                    if (found)
+                    {
+                        doc.createTextElement("TID", tid, doc.createElement("tuple", returnValue));
+                    }
+
+                    return returnValue;
+                }
+            };
+    }
+
+    /**
+     * This method prints the result of a run.
+     *
+     * @param  name    The name of the run.
+     * @param  checks  The number of checks.
+     * @param  time    The time in ns.
+     */
+    private void print(String name, int checks, long time)
+    {
+        System.out.println(name + ": " + checks + " TIDs in " + (time / 1000000) + " ms, " +
+                           ((checks * 1000000000L) / Math.max(1, time)) + " checks/s");
+    }
+
+    /**
+     * Measures the TID checks per second through the database and through the store.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testChecksPerSecond()
+                              throws Exception
+    {
+        OLEDBRequestSender database = createDatabase(false);
+        long startTime = System.nanoTime();
+
+        for (int i = 0; i < DATABASE_CHECKS; i++)
+        {
+            BACUtil.deleteNode(database.getTid(toTID(i), m_doc));
+        }
+
+        print("Database", DATABASE_CHECKS, System.nanoTime() - startTime);
+
+        m_file.delete();
+
+        TIDStore store = new TIDStore(m_file, TIDStore.DEFAULT_COMPACT_THRESHOLD);
+
+        try
+        {
+            startTime = System.nanoTime();
+
+            for (int i = 0; i < LOCAL_CHECKS; i++)
+            {
+                store.check(toTID(i), database, m_doc);
+            }
+
+            print("Store, check", LOCAL_CHECKS, System.nanoTime() - startTime);
+
+            // The full lifecycle, with the check and the commit forced to disk.
+            startTime = System.nanoTime();
+
+            for (int i = 0; i < DATABASE_CHECKS; i++)
+            {
+                String tid = toTID(LOCAL_CHECKS + i);
+
+                store.check(tid, database, m_doc);
+                store.commit(tid);
+                store.confirm(tid);
+            }
+
+            print("Store, check, commit and confirm", DATABASE_CHECKS,
+                  System.nanoTime() - startTime);
+        }
+        finally
+        {
+            store.close();
+        }
+    }
+
+    /**
+     * Checks that confirmed transactions are compacted out of the log.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testCompaction()
+                         throws Exception
+    {
+        OLEDBRequestSender database = createDatabase(false);
+
+        m_file.delete();
+
+        TIDStore store = new TIDStore(m_file, 100);
+
+        try
+        {
+            for (int i = 0; i < 1000; i++)
+            {
+                String tid = toTID(i);
+
+                store.check(tid, database, m_doc);
+                store.commit(tid);
+                store.confirm(tid);
+            }
+            store.check(toTID(1000), database, m_doc);
+            store.commit(toTID(1000));
+        }
+        finally
+        {
+            store.close();
+        }
+
+        System.out.println("Log size after 3002 records: " + m_file.length() + " bytes");
+
+        store = new TIDStore(m_file, 100);
+
+        try
+        {
+            if ((store.getSize() != 1) || store.check(toTID(1000), database, m_doc))
+            {
+                throw new Exception("The committed transaction was lost in the compaction");
+            }
+
+            if (m_file.length() > (100 * 27))
+            {
+                throw new Exception("The log was not compacted");
+            }
+        }
+        finally
+        {
+            store.close();
+        }
+    }
+
+    /**
+     * Checks that a transaction without a commit record is looked up in the IDoc table when SAP
+     * sends it again, both in the running store and after a restart.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testInDoubt()
+                      throws Exception
+    {
+        OLEDBRequestSender stored = createDatabase(true);
+
+        m_file.delete();
+
+        TIDStore store = new TIDStore(m_file, TIDStore.DEFAULT_COMPACT_THRESHOLD);
+
+        try
+        {
+            // The IDocs of both transactions are stored, but the commit record is not written.
+            if (!store.check(toTID(0), createDatabase(false), m_doc) ||
+                    !store.check(toTID(1), createDatabase(false), m_doc))
+            {
+                throw new Exception("A new transaction was not accepted");
+            }
+
+            if (store.check(toTID(0), stored, m_doc) || !store.isCommitted(toTID(0)))
+            {
+                throw new Exception("The stored transaction would be processed again");
+            }
+
+            // JCo rolls back a transaction whose commit failed.
+            store.rollback(toTID(0));
+
+            if (!store.isCommitted(toTID(0)))
+            {
+                throw new Exception("The rollback removed a committed transaction");
+            }
+        }
+        finally
+        {
+            store.close();
+        }
+
+        store = new TIDStore(m_file, TIDStore.DEFAULT_COMPACT_THRESHOLD);
+
+        try
+        {
+            if (!store.isInDoubt(toTID(1)))
+            {
+                throw new Exception("The check record was lost in the restart");
+            }
+
+            if (store.check(toTID(1), stored, m_doc) || !store.isCommitted(toTID(1)))
+            {
+                throw new Exception("The stored transaction would be processed again after a " +
+                                    "restart");
+            }
+        }
+        finally
+        {
+            store.close();
+        }
+    }
+
+    /**
+     * Kills a process that is committing transactions and checks the recovered store.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testRecovery()
+                       throws Exception
+    {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator +
+                      "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                                             TestTIDStore.class.getName(), ARG_COMMIT_LOOP,
+                                             m_file.getAbsolutePath()).start();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        int lastCommit = -1;
+
+        try
+        {
+            String line;
+
+            while ((lastCommit < COMMITS_BEFORE_KILL) && ((line = reader.readLine()) != null))
+            {
+                lastCommit = Integer.parseInt(line.trim());
+            }
+        }
+        finally
+        {
+            process.destroy();
+            process.waitFor();
+            reader.close();
+        }
+
+        if (lastCommit < COMMITS_BEFORE_KILL)
+        {
+            throw new Exception("The process stopped after " + lastCommit + " commits");
+        }
+
+        // A record that was cut off by the crash.
+        FileOutputStream out = new FileOutputStream(m_file, true);
+
+        try
+        {
+            out.write(("S " + toTID(lastCommit + 1000).substring(0, 10)).getBytes("US-ASCII"));
+        }
+        finally
+        {
+            out.close();
+        }
+
+        TIDStore store = new TIDStore(m_file, TIDStore.DEFAULT_COMPACT_THRESHOLD);
+        OLEDBRequestSender database = createDatabase(false);
+
+        try
+        {
+            for (int i = 0; i <= lastCommit; i++)
+            {
+                if (store.check(toTID(i), database, m_doc))
+                {
+                    throw new Exception("Committed transaction " + i + " would be processed again");
+                }
+            }
+
+            int inDoubt = store.getInDoubt().size();
+
+            if (inDoubt > 1)
+            {
+                throw new Exception(inDoubt + " transactions in doubt");
+            }
+
+            store.resolveInDoubt(createDatabase(true), m_doc);
+
+            if (!store.getInDoubt().isEmpty())
+            {
+                throw new Exception("The transaction in doubt was not resolved");
+            }
+
+            System.out.println("Killed after " + lastCommit + " reported commits, " + inDoubt +
+                               " transaction in doubt, " + store.getSize() +
+                               " committed transactions recovered.");
+        }
+        finally
+        {
+            store.close();
+        }
+    }
+}
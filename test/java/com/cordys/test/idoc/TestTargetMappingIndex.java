@@ -0,0 +1,247 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+ package com.cordys.test.idoc;
+
+import com.eibus.applicationconnector.sap.idoc.TargetMappingIndex;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Find;
+import com.eibus.xml.nom.Node;
+
+/**
+ * Micro benchmark for the target mapping lookup. A few thousand synthetic mappings are compiled
+ * into a TargetMappingIndex. For a set of IDocs the index is compared with the linear scan over
+ * the mapping XML that the USER-ORDERED search pattern used to do: both must return the same
+ * target, after which both are timed. Finally an IDoc without a mapping is looked up in BAC mode,
+ * which used to loop forever.
+ *
+ * @author  pgussow
+ */
+public class TestTargetMappingIndex
+{
+    /**
+     * Holds the number of lookups that are timed.
+     */
+    private static final int LOOKUPS = 20000;
+    /**
+     * Holds the number of synthetic mappings.
+     */
+    private static final int MAPPINGS = 3000;
+    /**
+     * Holds the NOM document.
+     */
+    private Document m_doc = new Document();
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        TestTargetMappingIndex tm = new TestTargetMappingIndex();
+
+        try
+        {
+            tm.runUserOrdered();
+            tm.runBACWithoutMatch();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates the TargetMappings XML. Every mapping has a unique message type; every tenth mapping
+     * leaves the IDoc type empty and every seventh the recipient.
+     *
+     * @param   searchPattern  The search pattern.
+     *
+     * @return  The TargetMappings node.
+     */
+    private int createMappings(String searchPattern)
+    {
+        int root = m_doc.createElement("TargetMappings");
+        m_doc.createTextElement("SearchPattern", searchPattern, root);
+
+        for (int i = 0; i < MAPPINGS; i++)
+        {
+            int mapping = m_doc.createElement("Mapping", root);
+            m_doc.createTextElement("Name", "Mapping" + i, mapping);
+            m_doc.createTextElement("MESType", "MES" + i, mapping);
+            m_doc.createTextElement("IDOCType", ((i % 10) == 0) ? "" : ("IDOC" + (i % 50)),
+                                    mapping);
+            m_doc.createTextElement("RecipientLS", ((i % 7) == 0) ? "" : ("LS" + (i % 5)), mapping);
+            m_doc.createTextElement("SOAPNodeDN", "cn=Node" + i + ",cn=soap nodes,o=system",
+                                    mapping);
+            m_doc.createTextElement("Method", "Receive" + i, mapping);
+            m_doc.createTextElement("Namespace", "http://schemas.cordys.com/IDOCReceiver", mapping);
+        }
+
+        return root;
+    }
+
+    /**
+     * The linear scan the USER-ORDERED search pattern did before the index existed.
+     *
+     * @param   mappingsNode  The TargetMappings node.
+     * @param   mesType       The message type.
+     * @param   idocType      The IDoc type.
+     * @param   recipientLS   The recipient logical system.
+     *
+     * @return  The SOAP node DN or null if there is no match.
+     */
+    private String legacyScan(int mappingsNode, String mesType, String idocType,
+                              String recipientLS)
+    {
+        int[] nodes_mapping = Find.match(mappingsNode, "<TargetMappings><Mapping>");
+
+        for (int i = 0; i < nodes_mapping.length; i++)
+        {
+            int node_mapping = nodes_mapping[i];
+            String text_mesType = Node.getDataWithDefault(Find.firstMatch(node_mapping,
+                                                                          "<Mapping><MESType>"),
+                                                          "");
+            String text_idocType = Node.getDataWithDefault(Find.firstMatch(node_mapping,
+                                                                           "<Mapping><IDOCType>"),
+                                                           "");
+            String text_recipientLS = Node.getDataWithDefault(Find.firstMatch(node_mapping,
+                                                                              "<Mapping><RecipientLS>"),
+                                                              "");
+
+            boolean mes = text_mesType.equalsIgnoreCase(mesType);
+            boolean noMes = text_mesType.equalsIgnoreCase("");
+            boolean idoc = text_idocType.equals(idocType);
+            boolean noIdoc = text_idocType.equals("");
+            boolean ls = text_recipientLS.equalsIgnoreCase(recipientLS);
+            boolean noLs = text_recipientLS.equalsIgnoreCase("");
+
+            if ((mes && idoc && ls) || (mes && idoc && noLs) || (mes && noIdoc && ls) ||
+                    (mes && noIdoc && noLs) || (noMes && idoc && ls) || (noMes && idoc && noLs) ||
+                    (noMes && noIdoc && ls))
+            {
+                return Node.getDataWithDefault(Find.firstMatch(node_mapping,
+                                                               "<Mapping><SOAPNodeDN>"), "");
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Looks up an IDoc without a mapping in BAC mode.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void runBACWithoutMatch()
+                             throws Exception
+    {
+        int mappingsNode = createMappings(TargetMappingIndex.PATTERN_BAC);
+
+        try
+        {
+            TargetMappingIndex index = TargetMappingIndex.compile(mappingsNode);
+
+            if (index.find("UNKNOWN", "UNKNOWN01", "NOLS") != null)
+            {
+                throw new IllegalStateException("Expected no match in BAC mode");
+            }
+
+            System.out.println("BAC: no match returned for an unmapped IDOC.");
+        }
+        finally
+        {
+            BACUtil.deleteNode(mappingsNode);
+        }
+    }
+
+    /**
+     * Compares and times the index and the linear scan for the USER-ORDERED search pattern.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void runUserOrdered()
+                         throws Exception
+    {
+        int mappingsNode = createMappings(TargetMappingIndex.PATTERN_USER_ORDERED);
+
+        try
+        {
+            long start = System.currentTimeMillis();
+            TargetMappingIndex index = TargetMappingIndex.compile(mappingsNode);
+            long compileTime = System.currentTimeMillis() - start;
+
+            // The lookups: mostly hits spread over the mappings, some misses.
+            int queries = 500;
+            String[][] lookups = new String[queries][];
+
+            for (int i = 0; i < queries; i++)
+            {
+                int m = (i * 7919) % (MAPPINGS + 200);
+                lookups[i] = new String[] { "mes" + m, "IDOC" + (m % 50), "ls" + (m % 5) };
+            }
+
+            for (String[] lookup : lookups)
+            {
+                TargetMappingIndex.TargetMapping mapping = index.find(lookup[0], lookup[1],
+                                                                      lookup[2]);
+                String expected = legacyScan(mappingsNode, lookup[0], lookup[1], lookup[2]);
+                String actual = (mapping == null) ? null : mapping.getSOAPNodeDN();
+
+                if ((expected == null) ? (actual != null) : !expected.equals(actual))
+                {
+                    throw new IllegalStateException("Lookup " + lookup[0] + "/" + lookup[1] +
+                                                    "/" + lookup[2] + ": scan returned " +
+                                                    expected + ", index returned " + actual);
+                }
+            }
+
+            start = System.currentTimeMillis();
+
+            for (int i = 0; i < (LOOKUPS / 100); i++)
+            {
+                String[] lookup = lookups[i % queries];
+                legacyScan(mappingsNode, lookup[0], lookup[1], lookup[2]);
+            }
+
+            long scanTime = System.currentTimeMillis() - start;
+
+            start = System.currentTimeMillis();
+
+            for (int i = 0; i < LOOKUPS; i++)
+            {
+                String[] lookup = lookups[i % queries];
+                index.find(lookup[0], lookup[1], lookup[2]);
+            }
+
+            long indexTime = System.currentTimeMillis() - start;
+
+            System.out.println("USER-ORDERED with " + MAPPINGS + " mappings: compile " +
+                               compileTime + " ms; scan " + ((scanTime * 1000000L) /
+                                                              (LOOKUPS / 100)) +
+                               " ns/lookup; index " + ((indexTime * 1000000L) / LOOKUPS) +
+                               " ns/lookup");
+        }
+        finally
+        {
+            BACUtil.deleteNode(mappingsNode);
+        }
+    }
+}
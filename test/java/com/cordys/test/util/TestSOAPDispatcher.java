@@ -0,0 +1,377 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.util;
+
+import com.eibus.applicationconnector.sap.exception.SAPConnectorException;
+import com.eibus.applicationconnector.sap.exception.SAPConnectorExceptionMessages;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+import com.eibus.applicationconnector.sap.util.ISOAPResponseHandler;
+import com.eibus.applicationconnector.sap.util.LDAPInterface;
+import com.eibus.applicationconnector.sap.util.SOAPDispatcher;
+
+import com.eibus.util.logger.config.LoggerConfigurator;
+
+import com.eibus.xml.nom.Document;
+import com.eibus.xml.nom.Node;
+import com.eibus.xml.xpath.XPathMetaInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test harness for the SOAPDispatcher. The connector is a stand-in that waits for the latency of
+ * the target and answers with the number of the request.
+ *
+ * <p>The same requests are sent with sendAndWait semantics (one request at a time) and through
+ * dispatchers with an increasing number of requests in flight. For every run the throughput is
+ * printed, every response must belong to its request and the number of requests in flight may
+ * never exceed the limit. Then a target that does not answer in time must fail the future and
+ * call the handler, and a closed dispatcher must refuse new requests.</p>
+ *
+ * <p>Usage: TestSOAPDispatcher [latency in ms].</p>
+ *
+ * @author  pgussow
+ */
+public class TestSOAPDispatcher
+{
+    /**
+     * Holds the numbers of requests in flight to measure.
+     */
+    private static final int[] CONCURRENCY = { 1, 2, 4, 8, 16, 32 };
+    /**
+     * Holds the name of the method.
+     */
+    private static final String METHOD = "ReceiveDEBMAS";
+    /**
+     * Holds the namespace of the method.
+     */
+    private static final String NAMESPACE = "http://schemas.cordys.com/1.0/sap/idoc";
+    /**
+     * Holds the number of requests per run.
+     */
+    private static final int REQUESTS = 320;
+    /**
+     * Holds the number of requests in the stand-in at this moment.
+     */
+    private AtomicInteger m_active = new AtomicInteger();
+    /**
+     * Holds the NOM document.
+     */
+    private Document m_doc;
+    /**
+     * Holds the latency of the target in ms.
+     */
+    private long m_latency;
+    /**
+     * Holds the highest number of requests in the stand-in at the same time.
+     */
+    private AtomicInteger m_maxActive = new AtomicInteger();
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        TestSOAPDispatcher td = new TestSOAPDispatcher();
+
+        try
+        {
+            td.setup((saArguments.length > 0) ? Long.parseLong(saArguments[0]) : 10);
+
+            td.testThroughput();
+
+            td.testTimeout();
+
+            td.testClosed();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Initialize the logger.
+     *
+     * @param   latency  The latency of the target in ms.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    public void setup(long latency)
+               throws Exception
+    {
+        LoggerConfigurator.initLogger("./test/Log4jConfiguration.xml");
+
+        m_doc = new Document();
+        m_latency = latency;
+    }
+
+    /**
+     * This method creates a dispatcher that sends to the stand-in.
+     *
+     * @param   maxInFlight  The maximum number of requests in flight.
+     * @param   timeout      The timeout in ms.
+     *
+     * @return  The dispatcher.
+     */
+    private SOAPDispatcher createDispatcher(int maxInFlight, long timeout)
+    {
+        return new SOAPDispatcher(maxInFlight, timeout)
+            {
+                @Override protected int execute(LDAPInterface ldapInterface, String methodName,
+                                                String nameSpace, String receiver,
+                                                int[] parameters, Document doc,
+                                                XPathMetaInfo xmi, long timeout)
+                                         throws SAPConnectorException
+                {
+                    return target(methodName, parameters, doc, timeout);
+                }
+            };
+    }
+
+    /**
+     * This method creates the parameter of a request.
+     *
+     * @param   number  The number of the request.
+     *
+     * @return  The parameter.
+     */
+    private int createParameter(int number)
+    {
+        return m_doc.createTextElement("IDOC", String.valueOf(number));
+    }
+
+    /**
+     * This method prints the result of a run.
+     *
+     * @param  name  The name of the run.
+     * @param  time  The time in ns.
+     */
+    private void print(String name, long time)
+    {
+        System.out.println(name + ": " + REQUESTS + " requests in " + (time / 1000000) + " ms, " +
+                           ((REQUESTS * 1000000000L) / Math.max(1, time)) +
+                           " requests/s, at most " + m_maxActive.get() + " in flight");
+    }
+
+    /**
+     * This method is the stand-in for the connector. It waits for the latency and answers with the
+     * number of the request. If the latency is longer than the timeout it fails like the connector
+     * does.
+     *
+     * @param   methodName  The name of the method.
+     * @param   parameters  The parameters of the request.
+     * @param   doc         The document to create the response in.
+     * @param   timeout     The timeout in ms.
+     *
+     * @return  The MethodResponse node.
+     *
+     * @throws  SAPConnectorException  In case the target did not answer in time.
+     */
+    private int target(String methodName, int[] parameters, Document doc, long timeout)
+                throws SAPConnectorException
+    {
+        int active = m_active.incrementAndGet();
+
+        try
+        {
+            int max;
+
+            while ((max = m_maxActive.get()) < active)
+            {
+                m_maxActive.compareAndSet(max, active);
+            }
+
+            Thread.sleep(((timeout > 0) && (timeout < m_latency)) ? timeout : m_latency);
+
+            if ((timeout > 0) && (timeout < m_latency))
+            {
+                throw new SAPConnectorException(SAPConnectorExceptionMessages.ERROR_EXECUTING_METHOD,
+                                                methodName);
+            }
+
+            int returnValue = doc.createElementNS(methodName + "Response", null, "", NAMESPACE, 0);
+            doc.createTextElement("number", Node.getDataWithDefault(parameters[0], ""),
+                                  returnValue);
+
+            return returnValue;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SAPConnectorException(e,
+                                            SAPConnectorExceptionMessages.INTERRUPTED_WHILE_SENDING_REQUEST,
+                                            methodName);
+        }
+        finally
+        {
+            m_active.decrementAndGet();
+        }
+    }
+
+    /**
+     * Checks that a closed dispatcher refuses new requests.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testClosed()
+                     throws Exception
+    {
+        SOAPDispatcher dispatcher = createDispatcher(1, 0);
+        dispatcher.close();
+
+        int parameter = createParameter(0);
+
+        try
+        {
+            dispatcher.executeMethod(null, METHOD, NAMESPACE, null, new int[] { parameter }, null,
+                                     null);
+            throw new Exception("A closed dispatcher accepted a request");
+        }
+        catch (SAPConnectorException e)
+        {
+            System.out.println("Closed: " + e.getMessage());
+        }
+        finally
+        {
+            BACUtil.deleteNode(parameter);
+        }
+    }
+
+    /**
+     * Sends the requests one at a time and through dispatchers with an increasing number of
+     * requests in flight.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testThroughput()
+                         throws Exception
+    {
+        long startTime = System.nanoTime();
+
+        m_maxActive.set(0);
+
+        for (int i = 0; i < REQUESTS; i++)
+        {
+            int parameter = createParameter(i);
+            BACUtil.deleteNode(target(METHOD, new int[] { parameter }, m_doc, 0));
+            BACUtil.deleteNode(parameter);
+        }
+
+        print("sendAndWait", System.nanoTime() - startTime);
+
+        for (int maxInFlight : CONCURRENCY)
+        {
+            SOAPDispatcher dispatcher = createDispatcher(maxInFlight, 0);
+            m_maxActive.set(0);
+
+            List<Future<Integer>> futures = new ArrayList<Future<Integer>>(REQUESTS);
+
+            startTime = System.nanoTime();
+
+            for (int i = 0; i < REQUESTS; i++)
+            {
+                int parameter = createParameter(i);
+                futures.add(dispatcher.executeMethod(null, METHOD, NAMESPACE, null,
+                                                     new int[] { parameter }, null, null));
+
+                // The request has its own copy, so the parameter can be deleted right away.
+                BACUtil.deleteNode(parameter);
+            }
+
+            for (int i = 0; i < REQUESTS; i++)
+            {
+                int response = SOAPDispatcher.getResponse(futures.get(i), METHOD);
+                String number = Node.getDataWithDefault(Node.getFirstChild(response), "");
+
+                if (!number.equals(String.valueOf(i)))
+                {
+                    throw new Exception("Request " + i + " got the response of request " + number);
+                }
+
+                BACUtil.deleteNode(response);
+            }
+
+            print("Dispatcher, " + maxInFlight + " in flight", System.nanoTime() - startTime);
+            dispatcher.close();
+
+            if (m_maxActive.get() > maxInFlight)
+            {
+                throw new Exception(m_maxActive.get() + " requests in flight, the limit is " +
+                                    maxInFlight);
+            }
+        }
+    }
+
+    /**
+     * Checks that a request that is not answered in time fails the future and calls the handler.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testTimeout()
+                      throws Exception
+    {
+        SOAPDispatcher dispatcher = createDispatcher(2, Math.max(1, m_latency / 2));
+        final AtomicInteger errors = new AtomicInteger();
+        int parameter = createParameter(0);
+
+        try
+        {
+            Future<Integer> future = dispatcher.executeMethod(null, METHOD, NAMESPACE, null,
+                                                              new int[] { parameter }, null,
+                                                              new ISOAPResponseHandler()
+                {
+                    public void onError(String methodName, SAPConnectorException exception)
+                    {
+                        errors.incrementAndGet();
+                    }
+
+                    public void onResponse(String methodName, int response)
+                    {
+                    }
+                });
+
+            try
+            {
+                BACUtil.deleteNode(SOAPDispatcher.getResponse(future, METHOD));
+                throw new Exception("The request did not time out");
+            }
+            catch (SAPConnectorException e)
+            {
+                // Expected.
+            }
+
+            if ((errors.get() != 1) || (dispatcher.getInFlight() != 0))
+            {
+                throw new Exception("The handler was not called or the request is still in flight: " +
+                                    dispatcher);
+            }
+
+            System.out.println("Timeout: " + dispatcher);
+        }
+        finally
+        {
+            dispatcher.close();
+            BACUtil.deleteNode(parameter);
+        }
+    }
+}
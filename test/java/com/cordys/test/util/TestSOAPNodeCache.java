@@ -0,0 +1,278 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.util;
+
+import com.eibus.applicationconnector.sap.util.ISOAPNodeResolver;
+import com.eibus.applicationconnector.sap.util.SOAPNodeCache;
+
+import com.novell.ldap.LDAPException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Test for the SOAPNodeCache. The directory is a stand-in that counts the lookups and waits for
+ * the latency of an LDAP search.
+ *
+ * <p>A number of threads request the SOAP nodes of a few methods at the same time. Every method
+ * must be looked up once. Then the entries must be looked up again after they expired and after
+ * they were removed because a request failed.</p>
+ *
+ * <p>Usage: TestSOAPNodeCache [latency in ms].</p>
+ *
+ * @author  pgussow
+ */
+public class TestSOAPNodeCache
+{
+    /**
+     * Holds the number of requests per thread.
+     */
+    private static final int CALLS = 1000;
+    /**
+     * Holds the number of methods.
+     */
+    private static final int METHODS = 5;
+    /**
+     * Holds the namespace of the methods.
+     */
+    private static final String NAMESPACE = "http://schemas.cordys.com/1.0/sap/idoc";
+    /**
+     * Holds the DN of the organization.
+     */
+    private static final String ORGANIZATION = "o=system,cn=cordys,o=vanenburg.com";
+    /**
+     * Holds the number of threads.
+     */
+    private static final int THREADS = 20;
+    /**
+     * Holds the latency of a lookup in ms.
+     */
+    private long m_latency;
+    /**
+     * Holds the number of lookups.
+     */
+    private AtomicInteger m_lookups = new AtomicInteger();
+    /**
+     * Holds the stand-in for the directory.
+     */
+    private ISOAPNodeResolver m_resolver;
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        TestSOAPNodeCache tc = new TestSOAPNodeCache();
+
+        try
+        {
+            tc.setup((saArguments.length > 0) ? Long.parseLong(saArguments[0]) : 20);
+
+            tc.testConcurrent();
+
+            tc.testExpiry();
+
+            tc.testInvalidate();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Creates the stand-in for the directory.
+     *
+     * @param  latency  The latency of a lookup in ms.
+     */
+    public void setup(long latency)
+    {
+        m_latency = latency;
+        m_resolver = new ISOAPNodeResolver()
+            {
+                public String findSOAPNode(String organization, String namespace,
+                                           String methodName)
+                                    throws LDAPException
+                {
+                    m_lookups.incrementAndGet();
+
+                    try
+                    {
+                        Thread.sleep(m_latency);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    return "cn=SAP," + methodName + "," + organization;
+                }
+            };
+    }
+
+    /**
+     * This method checks the number of lookups.
+     *
+     * @param   expected  The expected number of lookups.
+     *
+     * @throws  Exception  In case the number is different.
+     */
+    private void check(int expected)
+                throws Exception
+    {
+        if (m_lookups.get() != expected)
+        {
+            throw new Exception("Expected " + expected + " lookups, got " + m_lookups.get());
+        }
+    }
+
+    /**
+     * Requests the SOAP nodes from a number of threads at the same time.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testConcurrent()
+                         throws Exception
+    {
+        final SOAPNodeCache cache = new SOAPNodeCache(SOAPNodeCache.DEFAULT_TTL);
+        final AtomicReference<Exception> error = new AtomicReference<Exception>();
+        Thread[] threads = new Thread[THREADS];
+
+        m_lookups.set(0);
+
+        long startTime = System.nanoTime();
+
+        for (int i = 0; i < THREADS; i++)
+        {
+            threads[i] = new Thread()
+                {
+                    @Override public void run()
+                    {
+                        try
+                        {
+                            for (int j = 0; j < CALLS; j++)
+                            {
+                                String method = "Method" + (j % METHODS);
+                                String receiver = cache.getSOAPNode(ORGANIZATION, NAMESPACE,
+                                                                    method, m_resolver);
+
+                                if (!receiver.startsWith("cn=SAP," + method + ","))
+                                {
+                                    throw new Exception("Wrong SOAP node " + receiver + " for " +
+                                                        method);
+                                }
+                            }
+                        }
+                        catch (Exception e)
+                        {
+                            error.set(e);
+                        }
+                    }
+                };
+            threads[i].start();
+        }
+
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        long time = System.nanoTime() - startTime;
+
+        if (error.get() != null)
+        {
+            throw error.get();
+        }
+
+        check(METHODS);
+
+        if ((cache.getHits() + cache.getMisses()) != (THREADS * CALLS))
+        {
+            throw new Exception("Expected " + (THREADS * CALLS) + " requests: " + cache);
+        }
+
+        System.out.println((THREADS * CALLS) + " requests from " + THREADS + " threads in " +
+                           (time / 1000000) + " ms, " + m_lookups.get() + " lookups, without the " +
+                           "cache at least " + (CALLS * m_latency) + " ms");
+        System.out.println(cache);
+    }
+
+    /**
+     * Checks that an expired entry is looked up again.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testExpiry()
+                     throws Exception
+    {
+        SOAPNodeCache cache = new SOAPNodeCache(100);
+
+        m_lookups.set(0);
+
+        cache.getSOAPNode(ORGANIZATION, NAMESPACE, "Method0", m_resolver);
+        cache.getSOAPNode(ORGANIZATION, NAMESPACE, "Method0", m_resolver);
+        check(1);
+
+        Thread.sleep(150);
+
+        cache.getSOAPNode(ORGANIZATION, NAMESPACE, "Method0", m_resolver);
+        check(2);
+
+        // A time to live of 0 disables the cache.
+        cache = new SOAPNodeCache(0);
+
+        cache.getSOAPNode(ORGANIZATION, NAMESPACE, "Method0", m_resolver);
+        cache.getSOAPNode(ORGANIZATION, NAMESPACE, "Method0", m_resolver);
+        check(4);
+
+        // The connector setting switches the cache on after it was created.
+        cache.setTimeToLive(SOAPNodeCache.DEFAULT_TTL);
+
+        cache.getSOAPNode(ORGANIZATION, NAMESPACE, "Method0", m_resolver);
+        cache.getSOAPNode(ORGANIZATION, NAMESPACE, "Method0", m_resolver);
+        check(5);
+
+        System.out.println("Expiry: " + cache);
+    }
+
+    /**
+     * Checks that an entry is looked up again after a failed request removed it.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testInvalidate()
+                         throws Exception
+    {
+        SOAPNodeCache cache = new SOAPNodeCache(SOAPNodeCache.DEFAULT_TTL);
+
+        m_lookups.set(0);
+
+        cache.getSOAPNode(ORGANIZATION, NAMESPACE, "Method0", m_resolver);
+        cache.getSOAPNode(ORGANIZATION, NAMESPACE, "Method1", m_resolver);
+
+        cache.invalidate(ORGANIZATION, NAMESPACE, "Method0");
+
+        cache.getSOAPNode(ORGANIZATION, NAMESPACE, "Method0", m_resolver);
+        cache.getSOAPNode(ORGANIZATION, NAMESPACE, "Method1", m_resolver);
+        check(3);
+
+        System.out.println("Invalidate: " + cache);
+    }
+}
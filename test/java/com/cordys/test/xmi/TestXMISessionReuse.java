@@ -0,0 +1,303 @@
+/**
+ * Copyright 2009 Cordys R&D B.V.
+ *
+ * This file is part of the Cordys SAP Connector.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cordys.test.xmi;
+
+import com.cordys.test.bench.LocalSAPSystem;
+
+import com.eibus.applicationconnector.sap.config.ISAPConfiguration;
+import com.eibus.applicationconnector.sap.connection.jco.SAPJCoConnection;
+import com.eibus.applicationconnector.sap.util.BACUtil;
+import com.eibus.applicationconnector.sap.xmi.XMICallResponse;
+import com.eibus.applicationconnector.sap.xmi.XMISessionManager;
+import com.eibus.applicationconnector.sap.xmi.xbp.XBPRequestManager;
+import com.eibus.applicationconnector.sap.xmi.xbp.XBPSessionContext;
+
+import com.eibus.util.logger.config.LoggerConfigurator;
+
+import com.eibus.xml.nom.Document;
+
+import java.io.File;
+
+/**
+ * Test for the reuse of XMI sessions. Job status requests are sent to a LocalSAPSystem, which
+ * counts the RFC calls. Without reuse every status query costs a logon, the query and a logoff;
+ * with reuse only the first query logs on. After that the status RFC reports a lost session on the
+ * reused session, which must lead to a logoff of the old session, a new logon and a retry. A
+ * business error of the status RFC must be returned without a retry.
+ *
+ * <p>The recording must contain the templates of BAPI_XMI_LOGON, BAPI_XMI_LOGOFF and
+ * BAPI_XBP_JOB_STATUS_GET, see RecordSAPSystem.</p>
+ *
+ * @author  pgussow
+ */
+public class TestXMISessionReuse
+{
+    /**
+     * Holds the number of status queries.
+     */
+    private static final int QUERIES = 100;
+    /**
+     * Holds the status request.
+     */
+    private static final String STATUS_REQUEST = "<GetJobstatus xmlns=\"\"><JobDetails>" +
+                                                 "<JobName>CORDYSCUSTOMERRECV</JobName>" +
+                                                 "<JobId>13544000</JobId>" +
+                                                 "</JobDetails></GetJobstatus>";
+    /**
+     * Holds the response of a status query on a session that is not logged on.
+     */
+    private static final String ERROR_RESPONSE = "<BAPI_XBP_JOB_STATUS_GET.Response><RETURN>" +
+                                                 "<TYPE>E</TYPE><ID>XM</ID><NUMBER>028</NUMBER>" +
+                                                 "<MESSAGE>Not logged on</MESSAGE>" +
+                                                 "</RETURN></BAPI_XBP_JOB_STATUS_GET.Response>";
+    /**
+     * Holds the response of a status query for a job that does not exist.
+     */
+    private static final String BUSINESS_ERROR_RESPONSE = "<BAPI_XBP_JOB_STATUS_GET.Response>" +
+                                                          "<RETURN><TYPE>E</TYPE><ID>XM</ID>" +
+                                                          "<NUMBER>007</NUMBER>" +
+                                                          "<MESSAGE>Job does not exist</MESSAGE>" +
+                                                          "</RETURN>" +
+                                                          "</BAPI_XBP_JOB_STATUS_GET.Response>";
+    /**
+     * Holds the configuration of the local system.
+     */
+    private ISAPConfiguration m_config;
+    /**
+     * Holds the connection the requests are sent on.
+     */
+    private SAPJCoConnection m_connection;
+    /**
+     * Holds the NOM document.
+     */
+    private Document m_doc;
+    /**
+     * Holds the local SAP system.
+     */
+    private LocalSAPSystem m_local;
+
+    /**
+     * Main method.
+     *
+     * @param  saArguments  Commandline arguments.
+     */
+    public static void main(String[] saArguments)
+    {
+        TestXMISessionReuse tr = new TestXMISessionReuse();
+
+        try
+        {
+            tr.setup(new File((saArguments.length > 0) ? saArguments[0]
+                                                        : "./test/java/com/cordys/test/bench/recording"));
+
+            tr.testRFCCount();
+
+            tr.testReLogOn();
+
+            tr.testBusinessError();
+        }
+        catch (Exception e)
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Initialize the logger and the local system.
+     *
+     * @param   folder  The recording folder.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    public void setup(File folder)
+               throws Exception
+    {
+        LoggerConfigurator.initLogger("./test/Log4jConfiguration.xml");
+        System.setProperty("java.library.path",
+                           "./docs/internal/sapdlls" + File.pathSeparator +
+                           System.getProperty("java.library.path"));
+
+        m_doc = new Document();
+        m_local = new LocalSAPSystem(folder, 0);
+        m_config = m_local.createConfiguration();
+        m_connection = m_local.createConnection(m_config);
+    }
+
+    /**
+     * Sends a status query the way SAPJCoRequestHandler does: with a new session context and
+     * request manager for every request.
+     *
+     * @param   sessionManager  The session manager to use.
+     *
+     * @return  The response.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private int queryStatus(XMISessionManager sessionManager)
+                     throws Exception
+    {
+        XBPSessionContext session = new XBPSessionContext();
+        session.setSessionConnection(m_connection);
+        session.setExternalUserId("CORDYS");
+        session.setExtcompany("CORDYS");
+        session.setExtProduct("CORDYS-SCH");
+        session.setNomDocument(m_doc);
+
+        XBPRequestManager xbpRequestManager = new XBPRequestManager();
+        xbpRequestManager.setM_config(m_config);
+        xbpRequestManager.setSession(session);
+        xbpRequestManager.setSessionManager(sessionManager);
+
+        int request = m_doc.parseString(STATUS_REQUEST);
+
+        try
+        {
+            return xbpRequestManager.processRequest(request, 0, 0);
+        }
+        finally
+        {
+            BACUtil.deleteNode(request);
+        }
+    }
+
+    /**
+     * Checks that a business error on a reused session is returned without a new logon or a
+     * retry.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testBusinessError()
+                            throws Exception
+    {
+        XMISessionManager sessionManager = m_config.getXMISessionManager();
+        BACUtil.deleteNode(queryStatus(sessionManager));
+
+        int error = m_doc.parseString(BUSINESS_ERROR_RESPONSE);
+        m_local.setResponse("BAPI_XBP_JOB_STATUS_GET", error);
+
+        try
+        {
+            long start = m_local.getCalls();
+            int response = queryStatus(sessionManager);
+            long calls = m_local.getCalls() - start;
+
+            if (!XMICallResponse.hasException(response))
+            {
+                throw new Exception("The error of the status RFC was not returned");
+            }
+            BACUtil.deleteNode(response);
+
+            if (calls != 1)
+            {
+                throw new Exception("Expected 1 RFC call for a business error, got " + calls);
+            }
+        }
+        finally
+        {
+            m_local.setResponse("BAPI_XBP_JOB_STATUS_GET", 0);
+            BACUtil.deleteNode(error);
+        }
+
+        System.out.println("A business error is returned without a retry.");
+    }
+
+    /**
+     * Checks that a lost session is logged off, logged on again and the call is retried once.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testReLogOn()
+                      throws Exception
+    {
+        XMISessionManager sessionManager = m_config.getXMISessionManager();
+        BACUtil.deleteNode(queryStatus(sessionManager));
+
+        int error = m_doc.parseString(ERROR_RESPONSE);
+        m_local.setResponse("BAPI_XBP_JOB_STATUS_GET", error);
+
+        try
+        {
+            long start = m_local.getCalls();
+            int response = queryStatus(sessionManager);
+            long calls = m_local.getCalls() - start;
+
+            if (!XMICallResponse.hasException(response))
+            {
+                throw new Exception("The error of the status RFC was not returned");
+            }
+            BACUtil.deleteNode(response);
+
+            // The failed query, the logoff of the old session, the new logon and the retried
+            // query.
+            if (calls != 4)
+            {
+                throw new Exception("Expected 4 RFC calls for a lost session, got " + calls);
+            }
+        }
+        finally
+        {
+            m_local.setResponse("BAPI_XBP_JOB_STATUS_GET", 0);
+            BACUtil.deleteNode(error);
+        }
+
+        System.out.println("A lost session is logged on again and the call is retried.");
+    }
+
+    /**
+     * Counts the RFC calls for the status queries with and without reuse of the session.
+     *
+     * @throws  Exception  In case of any exceptions
+     */
+    private void testRFCCount()
+                       throws Exception
+    {
+        XMISessionManager noReuse = new XMISessionManager(0);
+        long start = m_local.getCalls();
+
+        for (int i = 0; i < QUERIES; i++)
+        {
+            BACUtil.deleteNode(queryStatus(noReuse));
+        }
+
+        long withoutReuse = m_local.getCalls() - start;
+
+        XMISessionManager sessionManager = m_config.getXMISessionManager();
+        start = m_local.getCalls();
+
+        for (int i = 0; i < QUERIES; i++)
+        {
+            BACUtil.deleteNode(queryStatus(sessionManager));
+        }
+
+        long withReuse = m_local.getCalls() - start;
+
+        System.out.println("RFC calls for " + QUERIES + " status queries without reuse: " +
+                           withoutReuse + ", with reuse: " + withReuse);
+
+        if (withoutReuse != (3 * QUERIES))
+        {
+            throw new Exception("Expected " + (3 * QUERIES) + " RFC calls without reuse");
+        }
+
+        // One logon for the first query, then one RFC per query.
+        if (withReuse != (QUERIES + 1))
+        {
+            throw new Exception("Expected " + (QUERIES + 1) + " RFC calls with reuse");
+        }
+    }
+}